@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+  *  - José Luis Risco Martín
+ */
+package eco.lib.examples.floorplan;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import eco.core.util.logger.HeroLogger;
+
+/**
+ * Barnes-Hut approximation of the thermal proxy computed by
+ * {@link ThermalProxy}. The proxy is the potential energy of a set of
+ * charges (normalized power densities) placed at the centres of the
+ * components, so it can be evaluated in O(n log n) with an octree: a node
+ * seen from a component under an angle lower than <code>theta</code> (node
+ * side / distance) is replaced by its total power placed at its centre of
+ * power. <code>theta = 0</code> gives the exact value; 0.5 is a usual
+ * compromise.
+ *
+ * Components marked as non valid in the store are left out of the tree, and
+ * every pair involving one of them adds a penalty of 1.0, as in
+ * {@link ThermalProxy#compute(boolean[][])}.
+ *
+ * @author jlrisco
+ */
+public class BarnesHutThermal {
+
+    private static final Logger LOGGER = Logger.getLogger(BarnesHutThermal.class.getName());
+    protected static final int LEAF_SIZE = 8;
+    protected static final int MAX_DEPTH = 24;
+
+    protected static class Node {
+
+        protected double cx, cy, cz, half; // Cube
+        protected double[] q, qx, qy, qz; // Total power and centre of power of every profile
+        protected int from, to; // Components in order[from, to)
+        protected Node[] children = null;
+    }
+
+    protected ComponentStore store;
+    protected double theta;
+    protected int numPowerProfiles;
+    protected int[] order;
+    protected int[] buffer;
+    protected double[] x, y, z;
+    protected double[] phi;
+
+    public BarnesHutThermal(ComponentStore store, double theta) {
+        this.store = store;
+        this.theta = theta;
+        numPowerProfiles = store.numPowerProfiles;
+        int capacity = store.x.length;
+        order = new int[capacity];
+        buffer = new int[capacity];
+        x = new double[capacity];
+        y = new double[capacity];
+        z = new double[capacity];
+        phi = new double[numPowerProfiles];
+    }
+
+    public double getTheta() {
+        return theta;
+    }
+
+    /**
+     * Approximated thermal objective of every power profile over all the
+     * pairs of the store.
+     *
+     * @return One objective per power profile
+     */
+    public double[] compute() {
+        double[] result = new double[numPowerProfiles];
+        int size = store.size();
+        int n = 0;
+        for (int i = 0; i < size; ++i) {
+            if (store.valid[i]) {
+                order[n++] = i;
+                x[i] = store.cx2[i] / 2.0;
+                y[i] = store.cy2[i] / 2.0;
+                z[i] = store.cz2[i] / 2.0;
+            }
+        }
+        int invalid = size - n;
+        double penalties = (double) invalid * n + (double) invalid * (invalid - 1) / 2;
+        if (n > 1) {
+            Node root = build(n);
+            for (int k = 0; k < n; ++k) {
+                int i = order[k];
+                for (int p = 0; p < numPowerProfiles; ++p) {
+                    phi[p] = 0.0;
+                }
+                walk(root, i);
+                for (int p = 0; p < numPowerProfiles; ++p) {
+                    result[p] += store.power[p][i] * phi[p];
+                }
+            }
+        }
+        for (int p = 0; p < numPowerProfiles; ++p) {
+            // Every pair has been counted twice:
+            result[p] = result[p] / 2 + penalties;
+        }
+        return result;
+    }
+
+    protected Node build(int n) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < n; ++k) {
+            int i = order[k];
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            minZ = Math.min(minZ, z[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+            maxZ = Math.max(maxZ, z[i]);
+        }
+        double half = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ)) / 2 + 0.5;
+        return build(0, n, (minX + maxX) / 2, (minY + maxY) / 2, (minZ + maxZ) / 2, half, 0);
+    }
+
+    protected Node build(int from, int to, double cx, double cy, double cz, double half, int depth) {
+        Node node = new Node();
+        node.cx = cx;
+        node.cy = cy;
+        node.cz = cz;
+        node.half = half;
+        node.from = from;
+        node.to = to;
+        node.q = new double[numPowerProfiles];
+        node.qx = new double[numPowerProfiles];
+        node.qy = new double[numPowerProfiles];
+        node.qz = new double[numPowerProfiles];
+        for (int k = from; k < to; ++k) {
+            int i = order[k];
+            for (int p = 0; p < numPowerProfiles; ++p) {
+                double q = store.power[p][i];
+                node.q[p] += q;
+                node.qx[p] += q * x[i];
+                node.qy[p] += q * y[i];
+                node.qz[p] += q * z[i];
+            }
+        }
+        for (int p = 0; p < numPowerProfiles; ++p) {
+            if (node.q[p] > 0) {
+                node.qx[p] /= node.q[p];
+                node.qy[p] /= node.q[p];
+                node.qz[p] /= node.q[p];
+            }
+        }
+        if (to - from <= LEAF_SIZE || depth >= MAX_DEPTH) {
+            return node;
+        }
+        // Counting sort of the components by octant:
+        int[] counts = new int[8];
+        for (int k = from; k < to; ++k) {
+            counts[octant(node, order[k])]++;
+        }
+        int[] starts = new int[9];
+        starts[0] = from;
+        for (int o = 0; o < 8; ++o) {
+            starts[o + 1] = starts[o] + counts[o];
+        }
+        int[] next = new int[8];
+        System.arraycopy(starts, 0, next, 0, 8);
+        for (int k = from; k < to; ++k) {
+            int i = order[k];
+            buffer[next[octant(node, i)]++] = i;
+        }
+        System.arraycopy(buffer, from, order, from, to - from);
+        node.children = new Node[8];
+        double quarter = half / 2;
+        for (int o = 0; o < 8; ++o) {
+            if (counts[o] > 0) {
+                node.children[o] = build(starts[o], starts[o + 1],
+                        cx + ((o & 1) != 0 ? quarter : -quarter),
+                        cy + ((o & 2) != 0 ? quarter : -quarter),
+                        cz + ((o & 4) != 0 ? quarter : -quarter),
+                        quarter, depth + 1);
+            }
+        }
+        return node;
+    }
+
+    protected int octant(Node node, int i) {
+        return (x[i] >= node.cx ? 1 : 0) | (y[i] >= node.cy ? 2 : 0) | (z[i] >= node.cz ? 4 : 0);
+    }
+
+    /**
+     * Accumulates in <code>phi</code> the potential created by the node at
+     * component <code>i</code>.
+     */
+    protected void walk(Node node, int i) {
+        double xi = x[i], yi = y[i], zi = z[i];
+        double dx = xi - node.cx, dy = yi - node.cy, dz = zi - node.cz;
+        boolean outside = Math.abs(dx) > node.half || Math.abs(dy) > node.half || Math.abs(dz) > node.half;
+        if (outside && 2 * node.half < theta * Math.sqrt(dx * dx + dy * dy + dz * dz)) {
+            for (int p = 0; p < numPowerProfiles; ++p) {
+                if (node.q[p] > 0) {
+                    dx = xi - node.qx[p];
+                    dy = yi - node.qy[p];
+                    dz = zi - node.qz[p];
+                    phi[p] += node.q[p] / Math.sqrt(dx * dx + dy * dy + dz * dz);
+                }
+            }
+            return;
+        }
+        if (node.children == null) {
+            for (int k = node.from; k < node.to; ++k) {
+                int j = order[k];
+                if (j == i) {
+                    continue;
+                }
+                dx = xi - x[j];
+                dy = yi - y[j];
+                dz = zi - z[j];
+                double invDist = 1.0 / Math.sqrt(dx * dx + dy * dy + dz * dz);
+                for (int p = 0; p < numPowerProfiles; ++p) {
+                    phi[p] += store.power[p][j] * invDist;
+                }
+            }
+            return;
+        }
+        for (Node child : node.children) {
+            if (child != null) {
+                walk(child, i);
+            }
+        }
+    }
+
+    /**
+     * Compares the approximation with the exact computation for the current
+     * placement of a configuration, and logs time and relative error of
+     * every power profile.
+     *
+     * @param cfg Configuration
+     * @param theta Opening angle
+     * @return The maximum relative error over all the power profiles
+     */
+    public static double report(FloorplanConfiguration cfg, double theta) {
+        long start = System.nanoTime();
+        double[] exact = cfg.computeTempObj(0);
+        long exactTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        double[] approx = cfg.computeTempObj(theta);
+        long approxTime = System.nanoTime() - start;
+        double maxError = 0.0;
+        for (int p = 0; p < exact.length; ++p) {
+            double error = Math.abs(approx[p] - exact[p]) / Math.abs(exact[p]);
+            maxError = Math.max(maxError, error);
+            LOGGER.info("Profile " + p + ": exact=" + exact[p] + ", approx=" + approx[p] + ", relative error=" + error);
+        }
+        LOGGER.info("theta=" + theta + ", components=" + cfg.components.size() + ", exact=" + exactTime / 1000000.0 + " ms, approx=" + approxTime / 1000000.0 + " ms, max relative error=" + maxError);
+        return maxError;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: java -cp eco.jar eco.lib.examples.floorplan.BarnesHutThermal XmlFilePath [Theta ...]");
+            System.out.println("Where:");
+            System.out.println("XmlFilePath: Scenario path file (Absolute or relative)");
+            System.out.println("Theta: Opening angles to compare with the exact thermal objective (0.3, 0.5 and 0.8 by default)");
+            return;
+        }
+        HeroLogger.setup(Level.INFO);
+        FloorplanConfiguration cfg = new FloorplanConfiguration(args[0]);
+        if (args.length == 1) {
+            args = new String[]{args[0], "0.3", "0.5", "0.8"};
+        }
+        for (int i = 1; i < args.length; ++i) {
+            report(cfg, Double.valueOf(args[i]));
+        }
+    }
+}
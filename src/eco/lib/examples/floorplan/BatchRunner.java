@@ -0,0 +1,466 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+  *  - José Luis Risco Martín
+ */
+package eco.lib.examples.floorplan;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import eco.core.algorithm.metaheuristic.moga.NSGAII;
+import eco.core.operator.crossover.CrossoverOperator;
+import eco.core.operator.crossover.CycleCrossover;
+import eco.core.operator.crossover.SinglePointCrossover;
+import eco.core.operator.mutation.BooleanMutation;
+import eco.core.operator.mutation.MutationOperator;
+import eco.core.operator.selection.BinaryTournamentNSGAII;
+import eco.core.problem.Problem;
+import eco.core.problem.Solution;
+import eco.core.problem.Solutions;
+import eco.core.problem.Variable;
+import eco.core.util.logger.HeroLogger;
+import eco.core.util.random.RandomGenerator;
+import eco.lib.examples.floorplan.util.FastNSGAII;
+import eco.lib.examples.floorplan.util.Hypervolume;
+import eco.lib.examples.floorplan.util.JavaProcess;
+
+/**
+ * Runs a plan of NSGAII experiments concurrently on a pool of worker JVMs.
+ *
+ * Each non-empty line of the plan file (lines starting with # are comments)
+ * has the form:
+ * <pre>
+ * ProblemClass XmlFilePath Seed1,Seed2,... [numIndi=N] [numGene=N] [numLCs=N] [fastSort=1]
+ * </pre>
+ * where ProblemClass is one of FloorplanGenetic, FloorplanGeneticPreTsv,
+ * FloorplanTsv, FloorplanThermalViasAux or LiquidChannels. Every seed is an
+ * independent run with its own output directory, where the objectives of the
+ * final non-dominated front are saved in front.csv. A summary.csv file with
+ * wall time, evaluations per second and hypervolume of every run is written
+ * in the output directory. The hypervolume is normalized with the bounds of
+ * all the fronts obtained for the same plan line.
+ *
+ * A seed can be replaced by "random" to launch a run without a fixed seed.
+ * The operators of the ECO library draw from one global random generator, so
+ * concurrent runs in the same JVM could not be reproduced. With more than
+ * one worker, every worker is a child JVM that is started once and then
+ * takes runs from a shared queue, one at a time, so each run has the
+ * generator of its process to itself and is seeded at its start. The JVM of
+ * a worker stays warm from one run to the next. With one worker, or if the
+ * worker processes cannot be started, the runs are executed one after the
+ * other in this JVM, and the summary says so.
+ *
+ * @author jlrisco
+ */
+public class BatchRunner {
+
+    private static final Logger LOGGER = Logger.getLogger(BatchRunner.class.getName());
+
+    protected static class Run {
+
+        protected int line;
+        protected String problemName;
+        protected String xmlFilePath;
+        protected Long seed;
+        protected HashMap<String, Integer> params;
+        protected File outputDir;
+        protected double wallTime;
+        protected long evaluations;
+        protected ArrayList<double[]> front = new ArrayList<>();
+        protected double hypervolume;
+        protected String execution = "not run";
+
+        protected int getParam(String name, int defaultValue) {
+            Integer value = params.get(name);
+            return (value == null) ? defaultValue : value;
+        }
+    }
+
+    // Prefix of the lines that worker processes send to the parent:
+    private static final String WORKER_REPLY = "#BatchRunner ";
+
+    protected ArrayList<Run> runs = new ArrayList<>();
+    protected String planFilePath;
+    protected File outputDir;
+    protected int numWorkers;
+    protected String fallbackReason = null;
+
+    public BatchRunner(String planFilePath, String outputDirPath, int numWorkers) throws IOException {
+        this.planFilePath = planFilePath;
+        this.outputDir = new File(outputDirPath);
+        this.numWorkers = numWorkers;
+        try (BufferedReader reader = new BufferedReader(new FileReader(planFilePath))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                if (parts.length < 3) {
+                    throw new IOException("Line " + lineNumber + ": expected ProblemClass XmlFilePath Seeds [key=value ...]");
+                }
+                HashMap<String, Integer> params = new HashMap<>();
+                for (int i = 3; i < parts.length; ++i) {
+                    String[] keyValue = parts[i].split("=");
+                    params.put(keyValue[0], Integer.valueOf(keyValue[1]));
+                }
+                String[] seeds = parts[2].split(",");
+                for (int i = 0; i < seeds.length; ++i) {
+                    Run run = new Run();
+                    run.line = lineNumber;
+                    run.problemName = parts[0];
+                    run.xmlFilePath = parts[1];
+                    run.seed = seeds[i].equals("random") ? null : Long.valueOf(seeds[i]);
+                    run.params = params;
+                    String instance = new File(run.xmlFilePath).getName().replaceAll(".xml", "");
+                    String suffix = (run.seed == null) ? "_R" + i : "_S" + run.seed;
+                    run.outputDir = new File(outputDir, run.problemName + "_" + instance + "_L" + lineNumber + suffix);
+                    runs.add(run);
+                }
+            }
+        }
+    }
+
+    public void execute() throws IOException {
+        if (numWorkers > 1 && runs.size() > 1) {
+            executeOnWorkers();
+        } else {
+            executeSerially(runs, "serial");
+        }
+        computeHypervolumes();
+        saveSummary();
+        if (fallbackReason != null) {
+            System.out.println("Runs executed one after the other in this JVM: " + fallbackReason);
+        }
+    }
+
+    protected void executeSerially(Iterable<Run> serialRuns, String execution) {
+        for (Run run : serialRuns) {
+            try {
+                execute(run);
+                run.execution = execution;
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    /**
+     * Starts the worker processes and lets each of them take runs from a
+     * shared queue until it is empty. Falls back to serial execution if the
+     * workers cannot be started.
+     */
+    protected void executeOnWorkers() {
+        int workers = Math.min(numWorkers, runs.size());
+        ArrayList<Process> processes = new ArrayList<>();
+        try {
+            for (int i = 0; i < workers; ++i) {
+                processes.add(JavaProcess.builder(BatchRunner.class, null, "-plan", planFilePath, "-out", outputDir.getPath(), "-worker").start());
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, "Worker processes could not be started", ex);
+            for (Process process : processes) {
+                process.destroy();
+            }
+            fallbackReason = "worker processes could not be started (" + ex.getMessage() + ")";
+            executeSerially(runs, "serial fallback");
+            return;
+        }
+        final ConcurrentLinkedQueue<Run> queue = new ConcurrentLinkedQueue<>(runs);
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        ArrayList<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < workers; ++i) {
+            final int worker = i;
+            final Process process = processes.get(i);
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        feedWorker(worker, process, queue);
+                    } catch (IOException ex) {
+                        LOGGER.log(Level.SEVERE, "Worker " + worker + " failed", ex);
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            LOGGER.log(Level.SEVERE, null, ex);
+        } finally {
+            executor.shutdown();
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+        // Runs left behind by workers that died:
+        if (!queue.isEmpty()) {
+            fallbackReason = queue.size() + " runs were left by failed worker processes";
+            executeSerially(queue, "serial fallback");
+        }
+    }
+
+    /**
+     * Sends runs to a worker process, one at a time, and collects their
+     * results.
+     */
+    protected void feedWorker(int worker, Process process, ConcurrentLinkedQueue<Run> queue) throws IOException {
+        try (BufferedWriter toWorker = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
+                BufferedReader fromWorker = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            Run run;
+            while ((run = queue.poll()) != null) {
+                toWorker.write(String.valueOf(runs.indexOf(run)));
+                toWorker.newLine();
+                toWorker.flush();
+                String line;
+                while ((line = fromWorker.readLine()) != null && !line.startsWith(WORKER_REPLY)) {
+                    // Output of the run:
+                    System.out.println(line);
+                }
+                if (line == null) {
+                    // The worker died, another one must take the run:
+                    queue.add(run);
+                    throw new IOException("Worker " + worker + " exited during " + run.outputDir.getName());
+                }
+                String[] reply = line.substring(WORKER_REPLY.length()).split(" ");
+                if (!reply[0].equals("DONE")) {
+                    LOGGER.severe("Worker " + worker + " could not execute " + run.outputDir.getName());
+                    continue;
+                }
+                run.wallTime = Double.valueOf(reply[2]);
+                run.evaluations = Long.valueOf(reply[3]);
+                run.execution = "worker" + worker;
+                loadFront(run);
+            }
+        }
+    }
+
+    /**
+     * Worker process: executes the runs whose indices are read from the
+     * standard input, until it is closed.
+     */
+    protected void serveRuns() throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = in.readLine()) != null) {
+            int index = Integer.valueOf(line.trim());
+            Run run = runs.get(index);
+            try {
+                execute(run);
+                System.out.println(WORKER_REPLY + "DONE " + index + " " + run.wallTime + " " + run.evaluations);
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.log(Level.SEVERE, null, ex);
+                System.out.println(WORKER_REPLY + "FAILED " + index);
+            }
+            System.out.flush();
+        }
+    }
+
+    protected void loadFront(Run run) throws IOException {
+        run.front.clear();
+        try (BufferedReader reader = new BufferedReader(new FileReader(new File(run.outputDir, "front.csv")))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(";");
+                double[] point = new double[parts.length];
+                for (int i = 0; i < parts.length; ++i) {
+                    point[i] = Double.valueOf(parts[i]);
+                }
+                run.front.add(point);
+            }
+        }
+    }
+
+    protected void execute(Run run) throws IOException {
+        LOGGER.info("Starting " + run.outputDir.getName() + " ...");
+        run.outputDir.mkdirs();
+        FloorplanConfiguration cfg = new FloorplanConfiguration(run.xmlFilePath);
+        if (run.seed != null) {
+            RandomGenerator.setSeed(run.seed);
+        }
+        int numComponents = cfg.components.size();
+        int numIndi = run.getParam("numIndi", 100);
+        switch (run.problemName) {
+            case "FloorplanGenetic":
+            case "FloorplanGeneticPreTsv": {
+                int numGene = run.getParam("numGene", Math.max(250, numComponents));
+                FloorplanGenetic problem = run.problemName.equals("FloorplanGenetic") ? new FloorplanGenetic(cfg) : new FloorplanGeneticPreTsv(cfg);
+                execute(run, problem, numIndi, numGene, new ComponentVariable.ComponentMutation(1.0 / problem.getNumberOfVariables()), new CycleCrossover<ComponentVariable>());
+                break;
+            }
+            case "FloorplanTsv":
+            case "FloorplanThermalViasAux": {
+                int numGene = run.getParam("numGene", Math.max(2500, 100 * numComponents));
+                FloorplanTsv problem = run.problemName.equals("FloorplanTsv") ? new FloorplanTsv(cfg) : new FloorplanThermalViasAux(cfg);
+                execute(run, problem, numIndi, numGene, new BitVariable.BitMutation(1.0 / problem.getNumberOfPoints()), new BitVariable.BitCrossover());
+                break;
+            }
+            case "LiquidChannels": {
+                int numGene = run.getParam("numGene", 2500);
+                LiquidChannels problem = new LiquidChannels(cfg, run.getParam("numLCs", 1));
+                execute(run, problem, numIndi, numGene, new BooleanMutation<Variable<Boolean>>(1.0 / problem.getNumberOfVariables()), new SinglePointCrossover<Variable<Boolean>>(problem));
+                break;
+            }
+            default:
+                throw new IOException("Unknown problem class: " + run.problemName);
+        }
+        LOGGER.info("Done " + run.outputDir.getName() + " in " + run.wallTime + " s.");
+    }
+
+    protected <V extends Variable<?>> void execute(Run run, Problem<V> problem, int numIndi, int numGene, MutationOperator<V> mutation, CrossoverOperator<V> crossover) throws IOException {
+        long start = System.nanoTime();
+        NSGAII<V> algorithm;
+        if (run.getParam("fastSort", 0) > 0) {
+            algorithm = new FastNSGAII<V>(problem, numIndi, numGene, mutation, crossover, new BinaryTournamentNSGAII<V>());
+        } else {
+            algorithm = new NSGAII<V>(problem, numIndi, numGene, mutation, crossover, new BinaryTournamentNSGAII<V>());
+        }
+        algorithm.initialize();
+        for (int currentGeneration = 0; currentGeneration < numGene; ++currentGeneration) {
+            algorithm.step();
+        }
+        Solutions<V> solutions = algorithm.getCurrentSolution();
+        run.wallTime = (System.nanoTime() - start) / 1e9;
+        // Initial population plus one offspring population per generation:
+        run.evaluations = (long) numIndi * (numGene + 1);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(run.outputDir, "front.csv")))) {
+            for (Solution<V> solution : solutions) {
+                double[] point = new double[solution.getObjectives().size()];
+                StringBuilder line = new StringBuilder();
+                for (int i = 0; i < point.length; ++i) {
+                    point[i] = solution.getObjective(i);
+                    line.append((i > 0) ? ";" : "").append(point[i]);
+                }
+                run.front.add(point);
+                writer.write(line.toString());
+                writer.newLine();
+            }
+        }
+    }
+
+    protected void computeHypervolumes() {
+        LinkedHashMap<Integer, double[][]> bounds = new LinkedHashMap<>();
+        for (Run run : runs) {
+            for (double[] point : run.front) {
+                double[][] minMax = bounds.get(run.line);
+                if (minMax == null) {
+                    minMax = new double[][]{point.clone(), point.clone()};
+                    bounds.put(run.line, minMax);
+                }
+                for (int i = 0; i < point.length; ++i) {
+                    minMax[0][i] = Math.min(minMax[0][i], point[i]);
+                    minMax[1][i] = Math.max(minMax[1][i], point[i]);
+                }
+            }
+        }
+        for (Run run : runs) {
+            double[][] minMax = bounds.get(run.line);
+            if (minMax == null) {
+                continue;
+            }
+            ArrayList<double[]> normalized = new ArrayList<>();
+            for (double[] point : run.front) {
+                double[] normPoint = new double[point.length];
+                for (int i = 0; i < point.length; ++i) {
+                    double range = minMax[1][i] - minMax[0][i];
+                    normPoint[i] = (range > 0) ? (point[i] - minMax[0][i]) / range : 0.0;
+                }
+                normalized.add(normPoint);
+            }
+            double[] ref = new double[minMax[0].length];
+            Arrays.fill(ref, 1.1);
+            run.hypervolume = Hypervolume.compute(normalized, ref);
+        }
+    }
+
+    protected void saveSummary() throws IOException {
+        outputDir.mkdirs();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(outputDir, "summary.csv")))) {
+            writer.write("Problem;Instance;Seed;WallTime;Evaluations;EvalsPerSecond;FrontSize;Hypervolume;Execution;OutputDir");
+            writer.newLine();
+            for (Run run : runs) {
+                double evalsPerSecond = (run.wallTime > 0) ? run.evaluations / run.wallTime : 0.0;
+                writer.write(run.problemName + ";" + run.xmlFilePath + ";" + ((run.seed == null) ? "random" : run.seed) + ";" + run.wallTime + ";" + run.evaluations + ";" + evalsPerSecond + ";" + run.front.size() + ";" + run.hypervolume + ";" + run.execution + ";" + run.outputDir.getPath());
+                writer.newLine();
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: java -cp eco-rwa.jar eco.lib.examples.floorplan.BatchRunner -plan PlanFilePath [-out OutputDir] [-workers NumWorkers]");
+            System.out.println("Where:");
+            System.out.println("PlanFilePath: Plan file, one line per experiment: ProblemClass XmlFilePath Seed1,Seed2,... [numIndi=N] [numGene=N] [numLCs=N] [fastSort=1]");
+            System.out.println("            A seed can be \"random\"");
+            System.out.println("OutputDir: Directory for results and summary.csv (batch by default)");
+            System.out.println("NumWorkers: Number of worker JVMs running concurrently (number of processors by default). With 1, runs are executed in this JVM");
+            return;
+        }
+        HeroLogger.setup(Level.INFO);
+        String planFilePath = null;
+        String outputDirPath = "batch";
+        int numWorkers = Runtime.getRuntime().availableProcessors();
+        boolean worker = false;
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("-worker")) {
+                // Started by another BatchRunner, see executeOnWorkers():
+                worker = true;
+            } else if (i + 1 < args.length && args[i].equals("-plan")) {
+                planFilePath = args[++i];
+            } else if (i + 1 < args.length && args[i].equals("-out")) {
+                outputDirPath = args[++i];
+            } else if (i + 1 < args.length && args[i].equals("-workers")) {
+                numWorkers = Integer.valueOf(args[++i]);
+            }
+        }
+        try {
+            BatchRunner runner = new BatchRunner(planFilePath, outputDirPath, numWorkers);
+            if (worker) {
+                runner.serveRuns();
+                return;
+            }
+            runner.execute();
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, null, ex);
+        }
+    }
+}
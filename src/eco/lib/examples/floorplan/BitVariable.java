@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+  *  - José Luis Risco Martín
+ */
+package eco.lib.examples.floorplan;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import eco.core.operator.crossover.CrossoverOperator;
+import eco.core.operator.mutation.MutationOperator;
+import eco.core.problem.Solution;
+import eco.core.problem.Solutions;
+import eco.core.problem.Variable;
+import eco.core.util.random.RandomGenerator;
+import eco.lib.examples.floorplan.util.Checkpoint;
+
+/**
+ * Chromosome of bits packed in 64-bit words. A solution holds a single
+ * variable of this type instead of one boxed boolean variable per bit.
+ * Bits beyond the size are always zero.
+ *
+ * @author jlrisco
+ */
+public class BitVariable extends Variable<long[]> {
+
+    /**
+     * Flips every bit with the given probability, as BooleanMutation does
+     * with boolean variables. The gap to the next flipped bit is drawn from
+     * the geometric distribution, so only the flipped bits cost a random
+     * number.
+     */
+    public static class BitMutation extends MutationOperator<BitVariable> {
+
+        public BitMutation(double probability) {
+            super(probability);
+        }
+
+        @Override
+        public Solution<BitVariable> execute(Solution<BitVariable> solution) {
+            if (probability <= 0) {
+                return solution;
+            }
+            for (BitVariable variable : solution.getVariables()) {
+                if (probability >= 1) {
+                    for (int i = 0; i < variable.size; ++i) {
+                        variable.flip(i);
+                    }
+                    continue;
+                }
+                double logQ = Math.log(1.0 - probability);
+                long i = -1;
+                while (true) {
+                    i += 1 + (long) (Math.log(1.0 - RandomGenerator.nextDouble()) / logQ);
+                    if (i >= variable.size) {
+                        break;
+                    }
+                    variable.flip((int) i);
+                }
+            }
+            return solution;
+        }
+    } // Mutation operator
+
+    /**
+     * Swaps the tails of both parents after a random bit, as
+     * SinglePointCrossover does with boolean variables. Whole words are
+     * swapped at once.
+     */
+    public static class BitCrossover extends CrossoverOperator<BitVariable> {
+
+        public static final double DEFAULT_PROBABILITY = 0.9;
+        protected double probability;
+
+        public BitCrossover(double probability) {
+            super();
+            this.probability = probability;
+        }
+
+        public BitCrossover() {
+            this(DEFAULT_PROBABILITY);
+        }
+
+        @Override
+        public Solutions<BitVariable> execute(Solution<BitVariable> parent1, Solution<BitVariable> parent2) {
+            Solution<BitVariable> child1 = parent1.clone();
+            Solution<BitVariable> child2 = parent2.clone();
+            if (RandomGenerator.nextDouble() < probability) {
+                for (int v = 0; v < child1.getVariables().size(); ++v) {
+                    int size = child1.getVariables().get(v).size;
+                    if (size == 0) {
+                        continue;
+                    }
+                    long[] words1 = child1.getVariables().get(v).value;
+                    long[] words2 = child2.getVariables().get(v).value;
+                    int point = RandomGenerator.nextInt(size);
+                    int word = point >>> 6;
+                    // Bits from point on, in the word that contains it:
+                    long mask = -1L << (point & 63);
+                    long diff = (words1[word] ^ words2[word]) & mask;
+                    words1[word] ^= diff;
+                    words2[word] ^= diff;
+                    for (int i = word + 1; i < words1.length; ++i) {
+                        long temp = words1[i];
+                        words1[i] = words2[i];
+                        words2[i] = temp;
+                    }
+                }
+            }
+            Solutions<BitVariable> offspring = new Solutions<BitVariable>();
+            offspring.add(child1);
+            offspring.add(child2);
+            return offspring;
+        }
+    } // Crossover operator
+
+    public static final Checkpoint.Codec<BitVariable> CODEC = new Checkpoint.Codec<BitVariable>() {
+        @Override
+        public void write(DataOutput out, BitVariable variable) throws IOException {
+            out.writeInt(variable.size);
+            for (long word : variable.value) {
+                out.writeLong(word);
+            }
+        }
+
+        @Override
+        public BitVariable read(DataInput in) throws IOException {
+            BitVariable variable = new BitVariable(in.readInt());
+            for (int i = 0; i < variable.value.length; ++i) {
+                variable.value[i] = in.readLong();
+            }
+            return variable;
+        }
+    };
+
+    protected final int size;
+
+    public BitVariable(int size) {
+        super(new long[(size + 63) >>> 6]);
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean get(int i) {
+        return (value[i >>> 6] & (1L << i)) != 0;
+    }
+
+    public void set(int i, boolean bit) {
+        if (bit) {
+            value[i >>> 6] |= 1L << i;
+        } else {
+            value[i >>> 6] &= ~(1L << i);
+        }
+    }
+
+    public void flip(int i) {
+        value[i >>> 6] ^= 1L << i;
+    }
+
+    /**
+     * @return Number of bits set
+     */
+    public int cardinality() {
+        int num = 0;
+        for (long word : value) {
+            num += Long.bitCount(word);
+        }
+        return num;
+    }
+
+    /**
+     * @return Number of bits set in both this variable and the mask
+     */
+    public int cardinality(long[] mask) {
+        int num = 0;
+        for (int i = 0; i < value.length; ++i) {
+            num += Long.bitCount(value[i] & mask[i]);
+        }
+        return num;
+    }
+
+    /**
+     * @param from First bit to check
+     * @return The first bit set from the given one, or -1 if there is none
+     */
+    public int nextSetBit(int from) {
+        if (from >= size) {
+            return -1;
+        }
+        int w = from >>> 6;
+        long word = value[w] & (-1L << from);
+        while (word == 0) {
+            if (++w == value.length) {
+                return -1;
+            }
+            word = value[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    @Override
+    public BitVariable clone() {
+        BitVariable clone = new BitVariable(size);
+        System.arraycopy(value, 0, clone.value, 0, value.length);
+        return clone;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder(size);
+        for (int i = 0; i < size; ++i) {
+            buffer.append(get(i) ? '1' : '0');
+        }
+        return buffer.toString();
+    }
+}
@@ -24,6 +24,7 @@ import com.mxgraph.model.mxGeometry;
 import com.mxgraph.swing.mxGraphComponent;
 import com.mxgraph.view.mxGraph;
 import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import javax.swing.JFrame;
 
@@ -36,6 +37,9 @@ public class Board {
     protected int idxPowerProfile;
     protected int zoom;
     protected FloorplanConfiguration cfg;
+    // If true, layers are drawn as images (see BoardImage), which is much
+    // faster for large grids but the blocks cannot be moved:
+    protected boolean raster = false;
 
     public Board(int idxPowerProfile, int zoom) {
         this.idxPowerProfile = idxPowerProfile;
@@ -50,12 +54,31 @@ public class Board {
         this(10);
     }
 
+    public void setRaster(boolean raster) {
+        this.raster = raster;
+    }
+
     public void buildBoard(String xmlPath) {
         cfg = new FloorplanConfiguration(xmlPath);
         buildBoard();
     }
 
+    /**
+     * Saves every layer in a PNG file, without opening any window.
+     *
+     * @param prefix Path and name prefix of the files
+     * @throws IOException
+     * @see BoardImage#savePng(java.lang.String)
+     */
+    public void savePng(String prefix) throws IOException {
+        new BoardImage(cfg, idxPowerProfile, zoom).savePng(prefix);
+    }
+
     public void buildBoard() {
+        if (raster) {
+            new BoardImage(cfg, idxPowerProfile, zoom).show();
+            return;
+        }
         Collection<Component> components = cfg.components.values();
         for (int layer = 0; layer < cfg.numLayers; ++layer) {
             mxGraph graph = new mxGraph();
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+  *  - José Luis Risco Martín
+ */
+package eco.lib.examples.floorplan;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JScrollPane;
+
+/**
+ * Raster version of {@link Board}. Every layer is drawn into a
+ * BufferedImage, with the same colors: blocks by power density quartile
+ * and thermal vias in black. Cells are first mapped to a color index, and
+ * the pixels are then filled in parallel by bands of rows from a color
+ * table. It does not need a display, so layers can be exported as PNG
+ * files on headless servers.
+ *
+ * @author jlrisco
+ */
+public class BoardImage {
+
+    private static final Logger LOGGER = Logger.getLogger(BoardImage.class.getName());
+    // Color table, blocks are drawn with the first four colors:
+    protected static final int[] COLORS = {Color.BLUE.getRGB(), Color.YELLOW.getRGB(), Color.ORANGE.getRGB(), Color.RED.getRGB(), Color.BLACK.getRGB(), Color.WHITE.getRGB()};
+    protected static final byte COLOR_VIA = 4;
+    protected static final byte COLOR_EMPTY = 5;
+    protected static final int BORDER = Color.DARK_GRAY.getRGB();
+    // Pixel rows rendered by each task:
+    protected static final int BAND_SIZE = 64;
+
+    protected FloorplanConfiguration cfg;
+    protected int idxPowerProfile;
+    protected int zoom;
+    protected int numThreads = Runtime.getRuntime().availableProcessors();
+
+    public BoardImage(FloorplanConfiguration cfg, int idxPowerProfile, int zoom) {
+        this.cfg = cfg;
+        this.idxPowerProfile = idxPowerProfile;
+        this.zoom = zoom;
+    }
+
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * Renders all the layers.
+     *
+     * @return One image per layer
+     * @throws IOException if a band cannot be rendered, or
+     * InterruptedIOException if the thread is interrupted meanwhile (its
+     * interrupt flag is kept). No partial image is returned.
+     */
+    public BufferedImage[] render() throws IOException {
+        int length = cfg.maxLengthInCells, width = cfg.maxWidthInCells;
+        // Color index and owner (to draw the borders) of every cell:
+        final byte[][] colors = new byte[cfg.numLayers][length * width];
+        final int[][] owners = new int[cfg.numLayers][length * width];
+        for (int layer = 0; layer < cfg.numLayers; ++layer) {
+            Arrays.fill(colors[layer], COLOR_EMPTY);
+            Arrays.fill(owners[layer], -1);
+        }
+        for (Component block : cfg.components.values()) {
+            if (block.z < 0 || block.z >= cfg.numLayers) {
+                continue;
+            }
+            double dpAux = block.dps[idxPowerProfile] / cfg.maxDP;
+            byte color = (byte) ((dpAux < 0.25) ? 0 : (dpAux < 0.5) ? 1 : (dpAux < 0.75) ? 2 : 3);
+            for (int x = Math.max(block.x, 0); x < Math.min(block.x + block.l, length); ++x) {
+                for (int y = Math.max(block.y, 0); y < Math.min(block.y + block.w, width); ++y) {
+                    colors[block.z][y * length + x] = color;
+                    owners[block.z][y * length + x] = block.id;
+                }
+            }
+        }
+        for (ThermalVia thermalVia : cfg.thermalVias) {
+            if (thermalVia.x < 0 || thermalVia.x >= length || thermalVia.y < 0 || thermalVia.y >= width) {
+                continue;
+            }
+            // Same rule as Board: the via is drawn from its end layer up
+            for (int layer = Math.max(thermalVia.zEnd, 0); layer < cfg.numLayers; ++layer) {
+                colors[layer][thermalVia.y * length + thermalVia.x] = COLOR_VIA;
+                owners[layer][thermalVia.y * length + thermalVia.x] = -2;
+            }
+        }
+
+        final BufferedImage[] images = new BufferedImage[cfg.numLayers];
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, numThreads));
+        ArrayList<Future<?>> futures = new ArrayList<>();
+        for (int layer = 0; layer < cfg.numLayers; ++layer) {
+            images[layer] = new BufferedImage(length * zoom, width * zoom, BufferedImage.TYPE_INT_RGB);
+            final int[] pixels = ((DataBufferInt) images[layer].getRaster().getDataBuffer()).getData();
+            final byte[] layerColors = colors[layer];
+            final int[] layerOwners = owners[layer];
+            for (int row = 0; row < width * zoom; row += BAND_SIZE) {
+                final int fromRow = row;
+                final int toRow = Math.min(row + BAND_SIZE, width * zoom);
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        renderBand(layerColors, layerOwners, pixels, fromRow, toRow);
+                    }
+                }));
+            }
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+            throw new InterruptedIOException("Rendering interrupted");
+        } catch (ExecutionException ex) {
+            executor.shutdownNow();
+            throw new IOException("Rendering failed", ex.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        if (zoom >= 10) {
+            drawLabels(images);
+        }
+        return images;
+    }
+
+    protected void renderBand(byte[] colors, int[] owners, int[] pixels, int fromRow, int toRow) {
+        int length = cfg.maxLengthInCells, width = cfg.maxWidthInCells;
+        int rowLength = length * zoom;
+        boolean borders = zoom >= 3;
+        for (int py = fromRow; py < toRow; ++py) {
+            int y = py / zoom, dy = py % zoom;
+            int offset = py * rowLength;
+            for (int x = 0; x < length; ++x) {
+                int cell = y * length + x;
+                int rgb = COLORS[colors[cell]];
+                int owner = owners[cell];
+                int px = offset + x * zoom;
+                Arrays.fill(pixels, px, px + zoom, rgb);
+                if (!borders || owner == -1) {
+                    continue;
+                }
+                // Outline of the blocks (and vias):
+                if ((dy == 0 && (y == 0 || owners[cell - length] != owner))
+                        || (dy == zoom - 1 && (y == width - 1 || owners[cell + length] != owner))) {
+                    Arrays.fill(pixels, px, px + zoom, BORDER);
+                    continue;
+                }
+                if (x == 0 || owners[cell - 1] != owner) {
+                    pixels[px] = BORDER;
+                }
+                if (x == length - 1 || owners[cell + 1] != owner) {
+                    pixels[px + zoom - 1] = BORDER;
+                }
+            }
+        }
+    }
+
+    protected void drawLabels(BufferedImage[] images) {
+        for (int layer = 0; layer < images.length; ++layer) {
+            Graphics2D graphics = images[layer].createGraphics();
+            graphics.setColor(Color.BLACK);
+            for (Component block : cfg.components.values()) {
+                if (block.z == layer) {
+                    graphics.drawString("[" + block.id + "]", block.x * zoom + 2, block.y * zoom + graphics.getFontMetrics().getAscent());
+                }
+            }
+            graphics.dispose();
+        }
+    }
+
+    /**
+     * Saves every layer in a PNG file, named prefix + "_layer" + layer +
+     * ".png".
+     *
+     * @param prefix Path and name prefix of the files
+     * @throws IOException if the layers cannot be rendered (then no file is
+     * written) or saved
+     */
+    public void savePng(String prefix) throws IOException {
+        BufferedImage[] images = render();
+        for (int layer = 0; layer < images.length; ++layer) {
+            File file = new File(prefix + "_layer" + layer + ".png");
+            ImageIO.write(images[layer], "png", file);
+            LOGGER.info("Layer " + layer + " saved in " + file.getPath());
+        }
+    }
+
+    /**
+     * Opens one window per layer, as Board does.
+     */
+    public void show() {
+        if (GraphicsEnvironment.isHeadless()) {
+            LOGGER.warning("No display available, use savePng instead.");
+            return;
+        }
+        BufferedImage[] images;
+        try {
+            images = render();
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, null, ex);
+            return;
+        }
+        for (int layer = 0; layer < images.length; ++layer) {
+            JFrame frame = new JFrame("SOLUTION. LAYER " + layer);
+            frame.getContentPane().add(new JScrollPane(new JLabel(new ImageIcon(images[layer]))));
+            frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+            frame.pack();
+            frame.setVisible(true);
+        }
+    }
+}
@@ -20,6 +20,9 @@
 package eco.lib.examples.floorplan;
 
 /**
+ * Block of the floorplan. The id, name, type and power densities describe the
+ * block and never change, so they are shared by all the copies made with
+ * {@link #clone()}. The rest of the fields form the placement of the block.
  *
  * @author jlrisco
  */
@@ -31,23 +34,28 @@ public class Component {
     public static final int TYPE_THERMAL_VIA = 10;
     public static final int TYPE_OTHER = 20;
 
-    protected int id;
+    protected final int id;
     public int getId() { return id; }
-    protected String name;
-    protected int type;
+    protected final String name;
+    protected final int type;
     protected int x;
+    public int getX() { return x; }
     protected int xMin;
     protected int xMax;
     protected int y;
+    public int getY() { return y; }
     protected int yMin;
     protected int yMax;
     protected int z;
+    public int getZ() { return z; }
     protected int zMin;
     protected int zMax;
     protected int l;
+    public int getL() { return l; }
     protected int w;
+    public int getW() { return w; }
     protected int h;
-    protected double[] dps; // Power densities
+    protected final double[] dps; // Power densities, shared by all the copies
 
     public Component(int id, String name, int type, int x, int xMin, int xMax, int y, int yMin, int yMax, int z, int zMin, int zMax, int l, int w, int h, double[] dps) {
         this.id = id;
@@ -71,6 +79,8 @@ public class Component {
     public Component(int id, String name) {
         this.id = id;
         this.name = name;
+        this.type = Component.TYPE_CORE;
+        this.dps = null;
     }
 
     public Component(String validLineOfFile, int cellSize) {
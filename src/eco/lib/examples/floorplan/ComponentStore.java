@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+  *  - José Luis Risco Martín
+ */
+package eco.lib.examples.floorplan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Packed structure-of-arrays view of a placement, used by the O(n^2)
+ * objective loops instead of walking Component objects.
+ *
+ * The static parts (normalized power densities and couplings) are built once
+ * from the configuration. A placement is loaded by appending components in
+ * the order of the solution, which copies their geometry and power rows to
+ * contiguous arrays. Positions follow the order of insertion.
+ *
+ * @author jlrisco
+ */
+public class ComponentStore {
+
+    protected int numPowerProfiles;
+    // Static part, indexed by the order of the configuration:
+    protected HashMap<Integer, Integer> indexes = new HashMap<>();
+    protected double[][] staticPower; // [profile][index], divided by maxDP
+    protected int[] couplingFrom; // Coupled pairs, each one once
+    protected int[] couplingTo;
+    // Placement, indexed by position:
+    protected int size = 0;
+    protected int[] x, y, z, l, w, h;
+    protected int[] cx2, cy2, cz2; // Doubled centres
+    protected double[][] power; // [profile][position], divided by maxDP
+    protected boolean[] valid;
+    protected int[] position; // index -> position, -1 if not loaded
+    protected int[] index; // position -> index
+
+    public ComponentStore(FloorplanConfiguration cfg) {
+        int n = cfg.components.size();
+        numPowerProfiles = cfg.numPowerProfiles;
+        staticPower = new double[numPowerProfiles][n];
+        for (Component c : cfg.components.values()) {
+            int k = indexes.size();
+            indexes.put(c.id, k);
+            for (int p = 0; p < numPowerProfiles; ++p) {
+                staticPower[p][k] = c.dps[p] / cfg.maxDP;
+            }
+        }
+        HashSet<Long> pairs = new HashSet<>();
+        ArrayList<int[]> coupled = new ArrayList<>();
+        for (Integer idFrom : cfg.couplings.keySet()) {
+            Integer from = indexes.get(idFrom);
+            for (Integer idTo : cfg.couplings.get(idFrom)) {
+                Integer to = indexes.get(idTo);
+                if (from == null || to == null || from.equals(to)) {
+                    continue;
+                }
+                long key = ((long) Math.min(from, to) << 32) | Math.max(from, to);
+                if (pairs.add(key)) {
+                    coupled.add(new int[]{from, to});
+                }
+            }
+        }
+        couplingFrom = new int[coupled.size()];
+        couplingTo = new int[coupled.size()];
+        for (int k = 0; k < coupled.size(); ++k) {
+            couplingFrom[k] = coupled.get(k)[0];
+            couplingTo[k] = coupled.get(k)[1];
+        }
+        x = new int[n];
+        y = new int[n];
+        z = new int[n];
+        l = new int[n];
+        w = new int[n];
+        h = new int[n];
+        cx2 = new int[n];
+        cy2 = new int[n];
+        cz2 = new int[n];
+        power = new double[numPowerProfiles][n];
+        valid = new boolean[n];
+        index = new int[n];
+        position = new int[n];
+        Arrays.fill(position, -1);
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; ++i) {
+            position[index[i]] = -1;
+        }
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Appends a component of the configuration.
+     *
+     * @param c Component (or a copy with the same id)
+     * @param isValid Validity flag of the component, interpreted by the
+     * evaluators
+     * @return The position of the component
+     */
+    public int add(Component c, boolean isValid) {
+        int i = size++;
+        int k = indexes.get(c.id);
+        index[i] = k;
+        position[k] = i;
+        x[i] = c.x;
+        y[i] = c.y;
+        z[i] = c.z;
+        l[i] = c.l;
+        w[i] = c.w;
+        h[i] = c.h;
+        cx2[i] = 2 * c.x + c.l;
+        cy2[i] = 2 * c.y + c.w;
+        cz2[i] = 2 * c.z + c.h;
+        for (int p = 0; p < numPowerProfiles; ++p) {
+            power[p][i] = staticPower[p][k];
+        }
+        valid[i] = isValid;
+        return i;
+    }
+
+    /**
+     * Normalized power density of a component of the configuration.
+     *
+     * @param c Component
+     * @param p Power profile
+     * @return Its power density divided by the maximum one
+     */
+    public double getPower(Component c, int p) {
+        return staticPower[p][indexes.get(c.id)];
+    }
+}
@@ -19,10 +19,16 @@
  */
 package eco.lib.examples.floorplan;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+
 import eco.core.operator.mutation.MutationOperator;
 import eco.core.problem.Solution;
 import eco.core.problem.Variable;
 import eco.core.util.random.RandomGenerator;
+import eco.lib.examples.floorplan.util.Checkpoint;
 
 /**
  *
@@ -41,6 +47,7 @@ public class ComponentVariable extends Variable<Component> {
       Solution<ComponentVariable> solution = object;
       int temp, j;
       double random;
+      boolean tempShared;
       Component tempComp;
       ComponentVariable varI, varJ;
       int size = solution.getVariables().size();
@@ -53,15 +60,19 @@ public class ComponentVariable extends Variable<Component> {
             j = RandomGenerator.nextInt(size);
             varJ = solution.getVariables().get(j);
             tempComp = varI.value;
+            tempShared = varI.shared;
             varI.value = varJ.value;
+            varI.shared = varJ.shared;
             varJ.value = tempComp;
+            varJ.shared = tempShared;
           } else {
             // Change the length-width:
-            varI.value.xMax += varI.value.l - varI.value.w;
-            varI.value.yMax += varI.value.w - varI.value.l;
-            temp = varI.value.l;
-            varI.value.l = varI.value.w;
-            varI.value.w = temp;
+            tempComp = varI.getMutableValue();
+            tempComp.xMax += tempComp.l - tempComp.w;
+            tempComp.yMax += tempComp.w - tempComp.l;
+            temp = tempComp.l;
+            tempComp.l = tempComp.w;
+            tempComp.w = temp;
           }
         }
       }
@@ -69,13 +80,113 @@ public class ComponentVariable extends Variable<Component> {
     }
   } // Mutation operator
 
+  /**
+   * Checkpoint codec. Only the id and the geometry are stored, the rest of
+   * the component is taken from the configuration.
+   */
+  public static class ComponentCodec implements Checkpoint.Codec<ComponentVariable> {
+
+    protected HashMap<Integer, Component> components;
+
+    public ComponentCodec(HashMap<Integer, Component> components) {
+      this.components = components;
+    }
+
+    @Override
+    public void write(DataOutput out, ComponentVariable variable) throws IOException {
+      Component c = variable.value;
+      out.writeInt(c.id);
+      out.writeInt(c.x);
+      out.writeInt(c.xMin);
+      out.writeInt(c.xMax);
+      out.writeInt(c.y);
+      out.writeInt(c.yMin);
+      out.writeInt(c.yMax);
+      out.writeInt(c.z);
+      out.writeInt(c.zMin);
+      out.writeInt(c.zMax);
+      out.writeInt(c.l);
+      out.writeInt(c.w);
+      out.writeInt(c.h);
+    }
+
+    @Override
+    public ComponentVariable read(DataInput in) throws IOException {
+      int id = in.readInt();
+      Component original = components.get(id);
+      if (original == null) {
+        throw new IOException("Unknown component in checkpoint: " + id);
+      }
+      Component c = original.clone();
+      c.x = in.readInt();
+      c.xMin = in.readInt();
+      c.xMax = in.readInt();
+      c.y = in.readInt();
+      c.yMin = in.readInt();
+      c.yMax = in.readInt();
+      c.z = in.readInt();
+      c.zMin = in.readInt();
+      c.zMax = in.readInt();
+      c.l = in.readInt();
+      c.w = in.readInt();
+      c.h = in.readInt();
+      return new ComponentVariable(c);
+    }
+  } // Checkpoint codec
+
+  /**
+   * Copy-on-write flag: true if the component may be referenced by other
+   * variables, and therefore must be copied before being modified.
+   */
+  protected boolean shared = false;
+
+  /**
+   * Builds a variable that owns the component.
+   *
+   * @param component Component, not referenced by other variables
+   */
   public ComponentVariable(Component component) {
     super(component);
   }
 
+  /**
+   * Sets a component that may be referenced elsewhere. It will be copied
+   * before being modified.
+   *
+   * @param value Component
+   */
+  @Override
+  public void setValue(Component value) {
+    this.value = value;
+    this.shared = true;
+  }
+
+  /**
+   * Component to be modified (placement, rotation, etc.). The component is
+   * copied first if it is shared with other variables. Use
+   * {@link #getValue()} for read-only access.
+   *
+   * @return The component owned by this variable
+   */
+  public Component getMutableValue() {
+    if (shared) {
+      value = value.clone();
+      shared = false;
+    }
+    return value;
+  }
+
+  /**
+   * Shallow copy: both variables share the component until one of them
+   * calls {@link #getMutableValue()}.
+   *
+   * @return The copy
+   */
   @Override
   public ComponentVariable clone() {
-    ComponentVariable clone = new ComponentVariable(this.value.clone());
+    ComponentVariable clone = new ComponentVariable(this.value);
+    clone.shared = true;
+    this.shared = true;
     return clone;
   }
 
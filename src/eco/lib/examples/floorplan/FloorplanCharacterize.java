@@ -20,6 +20,9 @@
 package eco.lib.examples.floorplan;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Class to calculate wire and temperature from a given XML file.
@@ -32,9 +35,10 @@ public class FloorplanCharacterize {
     public static void main(String[] args) {
 
         if (args.length < 1) {
-            System.out.println("Parameters: XMLFile [displayZoom]");
+            System.out.println("Parameters: XMLFile [displayZoom] [PngPrefix]");
             System.out.println(" ---> XMLFile is the floorplanning file");
-            System.out.println(" ---> [displayZoom] (optional). If 0, no graphical display\n");
+            System.out.println(" ---> [displayZoom] (optional). If 0, no graphical display");
+            System.out.println(" ---> [PngPrefix] (optional). Layers are saved as PngPrefix_layer<i>.png instead of displayed\n");
 
             args = new String[2];
             args[0] = "test_fp" + File.separator + "N3HC48.xml";
@@ -50,7 +54,14 @@ public class FloorplanCharacterize {
 
         System.out.println("\nFile; "+xmlFilePath+"; Wire Length; "+wiring+"; Temperature; "+temp[0]+"\n");
 
-        if ((args.length == 2) && (!args[1].equals("0"))) {
+        if (args.length == 3) {
+            int zoom = Math.max(1, Integer.valueOf(args[1]));
+            try {
+                new BoardImage(cfg, 0, zoom).savePng(args[2]);
+            } catch (IOException ex) {
+                Logger.getLogger(FloorplanCharacterize.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        } else if ((args.length == 2) && (!args[1].equals("0"))) {
             int zoom = Integer.valueOf(args[1]);
             Board board = new Board(0, zoom);
             board.buildBoard(xmlFilePath);
@@ -19,23 +19,22 @@
  */
 package eco.lib.examples.floorplan;
 
-import java.io.BufferedWriter;
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import java.util.zip.GZIPInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 /**
  *
@@ -56,6 +55,9 @@ public class FloorplanConfiguration {
     }
     protected HashMap<Integer, HashSet<Integer>> couplings;
     protected LinkedList<ThermalVia> thermalVias;
+    protected double thermalTheta = 0.0;
+    // Reused by computeTempObj, built on first use:
+    protected ComponentStore tempStore = null;
 
     public FloorplanConfiguration(String xmlFilePath) {
         this.xmlFilePath = xmlFilePath;
@@ -74,11 +76,9 @@ public class FloorplanConfiguration {
                     }
                 }
             }
-        } catch (ParserConfigurationException ex) {
-            Logger.getLogger(FloorplanConfiguration.class.getName()).log(Level.SEVERE, null, ex);
         } catch (IOException ex) {
             Logger.getLogger(FloorplanConfiguration.class.getName()).log(Level.SEVERE, null, ex);
-        } catch (SAXException ex) {
+        } catch (XMLStreamException ex) {
             Logger.getLogger(FloorplanConfiguration.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
@@ -105,98 +105,159 @@ public class FloorplanConfiguration {
     @Override
     public FloorplanConfiguration clone() {
         FloorplanConfiguration clone = new FloorplanConfiguration(this.xmlFilePath);
+        clone.thermalTheta = this.thermalTheta;
         return clone;
     }
 
-    private void load() throws ParserConfigurationException, IOException, SAXException {
+    /**
+     * In-memory copy of the current state, without reloading the XML file
+     * as clone() does. Components are cloned; couplings and thermal vias are
+     * shared, so the copy must not modify them.
+     *
+     * @return the copy
+     */
+    public FloorplanConfiguration copy() {
+        HashMap<Integer, Component> copiedComponents = new HashMap<Integer, Component>(components.size() * 2);
+        for (Component c : components.values()) {
+            copiedComponents.put(c.id, c.clone());
+        }
+        FloorplanConfiguration copy = new FloorplanConfiguration(xmlFilePath, cellSizeInMicroMeters, maxLengthInCells, maxWidthInCells, numLayers, numPowerProfiles, copiedComponents, couplings, thermalVias);
+        copy.xmlVersion = this.xmlVersion;
+        copy.maxID = this.maxID;
+        copy.thermalTheta = this.thermalTheta;
+        return copy;
+    }
+
+    // Factories are not guaranteed to be thread safe, so there is one per thread:
+    private static final ThreadLocal<XMLInputFactory> XML_INPUT_FACTORY = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            return XMLInputFactory.newInstance();
+        }
+    };
+
+    /**
+     * Reads the XML file with a streaming parser, element by element, so the
+     * document is never held in memory. Files ending with ".gz" are
+     * decompressed on the fly.
+     */
+    private void load() throws IOException, XMLStreamException {
         Logger.getLogger(FloorplanConfiguration.class.getName()).fine("Loading " + xmlFilePath + "...");
         components.clear();
         couplings.clear();
         thermalVias.clear();
-        File file = new File(xmlFilePath);
-
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setValidating(false);
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document xmlDoc = builder.parse(file.toURI().toString());
-        Element xmlRoot = xmlDoc.getDocumentElement();
-        xmlVersion = xmlRoot.getAttribute("Version");
-        cellSizeInMicroMeters = Integer.valueOf(xmlRoot.getAttribute("CellSize"));
-        maxLengthInCells = Integer.valueOf(xmlRoot.getAttribute("Length"));
-        maxWidthInCells = Integer.valueOf(xmlRoot.getAttribute("Width"));
-        numLayers = Integer.valueOf(xmlRoot.getAttribute("NumLayers"));
-        numPowerProfiles = Integer.valueOf(xmlRoot.getAttribute("NumPowerProfiles"));
-
-        NodeList xmlBlockList = xmlDoc.getElementsByTagName("Block");
-        for (int i = 0; i < xmlBlockList.getLength(); ++i) {
-            Element xmlBlock = (Element) xmlBlockList.item(i);
-            int id = Integer.valueOf(xmlBlock.getAttribute("id"));
-            String name = xmlBlock.getAttribute("name");
-            int type = Double.valueOf(xmlBlock.getAttribute("type")).intValue();
-            int x = Double.valueOf(xmlBlock.getAttribute("x")).intValue();
-            int xMin = Double.valueOf(xmlBlock.getAttribute("xMin")).intValue();
-            int xMax = Double.valueOf(xmlBlock.getAttribute("xMax")).intValue();
-            int y = Double.valueOf(xmlBlock.getAttribute("y")).intValue();
-            int yMin = Double.valueOf(xmlBlock.getAttribute("yMin")).intValue();
-            int yMax = Double.valueOf(xmlBlock.getAttribute("yMax")).intValue();
-            int z = Double.valueOf(xmlBlock.getAttribute("z")).intValue();
-            int zMin = Double.valueOf(xmlBlock.getAttribute("zMin")).intValue();
-            int zMax = Double.valueOf(xmlBlock.getAttribute("zMax")).intValue();
-            int l = Double.valueOf(xmlBlock.getAttribute("l")).intValue();
-            int w = Double.valueOf(xmlBlock.getAttribute("w")).intValue();
-            int h = Double.valueOf(xmlBlock.getAttribute("h")).intValue();
-            double[] dps = new double[numPowerProfiles];
-            for (int j = 0; j < numPowerProfiles; ++j) {
-                dps[j] = Double.valueOf(xmlBlock.getAttribute("dp" + j)).doubleValue();
+        try (InputStream in = xmlFilePath.endsWith(FloorplanXmlWriter.GZIP_EXTENSION)
+                ? new GZIPInputStream(new FileInputStream(new File(xmlFilePath)), 1 << 16)
+                : new BufferedInputStream(new FileInputStream(new File(xmlFilePath)))) {
+            XMLStreamReader xmlReader = XML_INPUT_FACTORY.get().createXMLStreamReader(in);
+            try {
+                while (xmlReader.hasNext()) {
+                    if (xmlReader.next() != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    String tag = xmlReader.getLocalName();
+                    if (tag.equals("Floorplan")) {
+                        xmlVersion = attribute(xmlReader, "Version");
+                        cellSizeInMicroMeters = Integer.valueOf(attribute(xmlReader, "CellSize"));
+                        maxLengthInCells = Integer.valueOf(attribute(xmlReader, "Length"));
+                        maxWidthInCells = Integer.valueOf(attribute(xmlReader, "Width"));
+                        numLayers = Integer.valueOf(attribute(xmlReader, "NumLayers"));
+                        numPowerProfiles = Integer.valueOf(attribute(xmlReader, "NumPowerProfiles"));
+                    } else if (tag.equals("Block")) {
+                        int id = Integer.valueOf(attribute(xmlReader, "id"));
+                        String name = attribute(xmlReader, "name");
+                        int type = Double.valueOf(attribute(xmlReader, "type")).intValue();
+                        int x = Double.valueOf(attribute(xmlReader, "x")).intValue();
+                        int xMin = Double.valueOf(attribute(xmlReader, "xMin")).intValue();
+                        int xMax = Double.valueOf(attribute(xmlReader, "xMax")).intValue();
+                        int y = Double.valueOf(attribute(xmlReader, "y")).intValue();
+                        int yMin = Double.valueOf(attribute(xmlReader, "yMin")).intValue();
+                        int yMax = Double.valueOf(attribute(xmlReader, "yMax")).intValue();
+                        int z = Double.valueOf(attribute(xmlReader, "z")).intValue();
+                        int zMin = Double.valueOf(attribute(xmlReader, "zMin")).intValue();
+                        int zMax = Double.valueOf(attribute(xmlReader, "zMax")).intValue();
+                        int l = Double.valueOf(attribute(xmlReader, "l")).intValue();
+                        int w = Double.valueOf(attribute(xmlReader, "w")).intValue();
+                        int h = Double.valueOf(attribute(xmlReader, "h")).intValue();
+                        double[] dps = new double[numPowerProfiles];
+                        for (int j = 0; j < numPowerProfiles; ++j) {
+                            dps[j] = Double.valueOf(attribute(xmlReader, "dp" + j)).doubleValue();
+                        }
+                        Component component = new Component(id, name, type, x, xMin, xMax, y, yMin, yMax, z, zMin, zMax, l, w, h, dps);
+                        components.put(id, component);
+                    } else if (tag.equals("Coupling")) {
+                        int idFrom = Integer.valueOf(attribute(xmlReader, "idFrom"));
+                        int idTo = Integer.valueOf(attribute(xmlReader, "idTo"));
+                        HashSet<Integer> idsTo = couplings.get(idFrom);
+                        if (idsTo == null) {
+                            couplings.put(idFrom, new HashSet<Integer>());
+                        }
+                        couplings.get(idFrom).add(idTo);
+                    } else if (tag.equals("ThermalVia")) {
+                        int zIni = Integer.valueOf(attribute(xmlReader, "zIni"));
+                        int zEnd = Integer.valueOf(attribute(xmlReader, "zEnd"));
+                        int x = Integer.valueOf(attribute(xmlReader, "x"));
+                        int y = Integer.valueOf(attribute(xmlReader, "y"));
+                        ThermalVia thermalVia = new ThermalVia(zIni, zEnd, x, y);
+                        thermalVias.add(thermalVia);
+                    }
+                }
+            } finally {
+                xmlReader.close();
             }
-            Component component = new Component(id, name, type, x, xMin, xMax, y, yMin, yMax, z, zMin, zMax, l, w, h, dps);
-            components.put(id, component);
         }
 
-        NodeList xmlCouplingList = xmlDoc.getElementsByTagName("Coupling");
-        for (int i = 0; i < xmlCouplingList.getLength(); ++i) {
-            Element xmlCoupling = (Element) xmlCouplingList.item(i);
-            int idFrom = Integer.valueOf(xmlCoupling.getAttribute("idFrom"));
-            int idTo = Integer.valueOf(xmlCoupling.getAttribute("idTo"));
-            HashSet<Integer> idsTo = couplings.get(idFrom);
-            if (idsTo == null) {
-                couplings.put(idFrom, new HashSet<Integer>());
-            }
-            couplings.get(idFrom).add(idTo);
-        }
+        Logger.getLogger(FloorplanConfiguration.class.getName()).fine("done.");
+    }
 
-        NodeList xmlThermalViaList = xmlDoc.getElementsByTagName("ThermalVia");
-        for (int i = 0; i < xmlThermalViaList.getLength(); ++i) {
-            Element xmlThermalVia = (Element) xmlThermalViaList.item(i);
-            int zIni = Integer.valueOf(xmlThermalVia.getAttribute("zIni"));
-            int zEnd = Integer.valueOf(xmlThermalVia.getAttribute("zEnd"));
-            int x = Integer.valueOf(xmlThermalVia.getAttribute("x"));
-            int y = Integer.valueOf(xmlThermalVia.getAttribute("y"));
-            ThermalVia thermalVia = new ThermalVia(zIni, zEnd, x, y);
-            thermalVias.add(thermalVia);
-        }
+    /**
+     * @return The value of the attribute, or "" if it is missing (as the DOM
+     * parser did)
+     */
+    private static String attribute(XMLStreamReader xmlReader, String name) {
+        String value = xmlReader.getAttributeValue(null, name);
+        return (value == null) ? "" : value;
+    }
 
-        Logger.getLogger(FloorplanConfiguration.class.getName()).fine("done.");
+    /**
+     * Sets the opening angle of the thermal objective. 0 (default) computes
+     * it exactly in O(n^2); a positive value uses the Barnes-Hut
+     * approximation in O(n log n).
+     *
+     * @param thermalTheta Opening angle
+     */
+    public void setThermalTheta(double thermalTheta) {
+        this.thermalTheta = thermalTheta;
+    }
+
+    public double getThermalTheta() {
+        return thermalTheta;
     }
 
     public double[] computeTempObj() {
-        double[] result = new double[numPowerProfiles];
-        for (int i = 0; i < result.length; ++i) {
-            result[i] = 0.0;
+        return computeTempObj(thermalTheta);
+    }
+
+    /**
+     * Thermal objective of the current placement. The component store is
+     * kept between calls, so a configuration must not be evaluated from
+     * several threads at once.
+     *
+     * @param theta Opening angle, 0 for the exact computation
+     * @return Objectives computed by the thermal model
+     */
+    public double[] computeTempObj(double theta) {
+        if (tempStore == null || tempStore.indexes.size() != components.size()) {
+            tempStore = new ComponentStore(this);
         }
-        double dist = 0;
-        Component[] componentsAsArray = components.values().toArray(new Component[components.size()]);
-        for (int i = 0; i < componentsAsArray.length - 1; ++i) {
-            Component cI = componentsAsArray[i];
-            for (int j = i + 1; j < componentsAsArray.length; ++j) {
-                Component cJ = componentsAsArray[j];
-                dist = Math.sqrt(Math.pow(cI.x + cI.l / 2.0 - cJ.x - cJ.l / 2.0, 2) + Math.pow(cI.y + cI.w / 2.0 - cJ.y - cJ.w / 2.0, 2) + Math.pow(cI.z + cI.h / 2.0 - cJ.z - cJ.h / 2.0, 2));
-                for (int p = 0; p < numPowerProfiles; ++p) {
-                    result[p] += ((cI.dps[p] / maxDP) * (cJ.dps[p] / maxDP)) / dist;
-                }
-            }
+        tempStore.clear();
+        for (Component c : components.values()) {
+            tempStore.add(c, true);
         }
-        return result;
+        if (theta > 0) {
+            return new BarnesHutThermal(tempStore, theta).compute();
+        }
+        return new ThermalProxy(tempStore).compute(null);
     }
 
     public double computeWireObj() {
@@ -315,43 +376,21 @@ public class FloorplanConfiguration {
         return result;
     }
 
-    public void save() throws IOException {
-        BufferedWriter writer = new BufferedWriter(new FileWriter(new File(xmlFilePath)));
-        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n");
-
-        writer.write("<Floorplan Version=\"" + FloorplanConfiguration.VERSION + "\" CellSize=\"" + cellSizeInMicroMeters + "\" Length=\"" + maxLengthInCells + "\" Width=\"" + maxWidthInCells + "\" NumLayers=\"" + numLayers + "\" NumPowerProfiles=\"" + numPowerProfiles + "\">\n");
-
-        writer.write("\t<Blocks>\n");
-        for (Component component : components.values()) {
-            writer.write("\t\t<Block id=\"" + component.id + "\" name=\"" + component.name + "\" type=\"" + component.type + "\" xMin=\"" + component.xMin + "\" x=\"" + component.x + "\" xMax=\"" + component.xMax + "\" yMin=\"" + component.yMin + "\" y=\"" + component.y + "\" yMax=\"" + component.yMax + "\" zMin=\"" + component.zMin + "\" z=\"" + component.z + "\" zMax=\"" + component.zMax + "\" l=\"" + component.l + "\" w=\"" + component.w + "\" h=\"" + component.h + "\"");
-            for (int i = 0; i < numPowerProfiles; ++i) {
-                writer.write(" dp" + i + "=\"" + component.dps[i] + "\"");
-            }
-            writer.write("/>\n");
+    // The writers keep their buffers from one file to the next, one per thread:
+    private static final ThreadLocal<FloorplanXmlWriter> XML_WRITER = new ThreadLocal<FloorplanXmlWriter>() {
+        @Override
+        protected FloorplanXmlWriter initialValue() {
+            return new FloorplanXmlWriter();
         }
+    };
 
-        writer.write("\t</Blocks>\n");
-        writer.write("\t<Couplings>\n");
-        Iterator<Integer> itrFrom = couplings.keySet().iterator();
-        while (itrFrom.hasNext()) {
-            int idFrom = itrFrom.next();
-            Component compFrom = components.get(idFrom);
-            Iterator<Integer> itrTo = couplings.get(idFrom).iterator();
-            while (itrTo.hasNext()) {
-                int idTo = itrTo.next();
-                Component compTo = components.get(idTo);
-                writer.write("\t\t<Coupling idFrom=\"" + compFrom.id + "\" idTo=\"" + compTo.id + "\"/>\n");
-            }
-        }
-        writer.write("\t</Couplings>\n");
-        writer.write("\t<ThermalVias>\n");
-        for (ThermalVia thermalVia : thermalVias) {
-            writer.write("\t\t<ThermalVia zIni=\"" + thermalVia.zIni + "\" zEnd=\"" + thermalVia.zEnd + "\" x=\"" + thermalVia.x + "\" y=\"" + thermalVia.y + "\"/>\n");
-        }
-        writer.write("\t</ThermalVias>\n");
-        writer.write("</Floorplan>\n");
-        writer.flush();
-        writer.close();
+    /**
+     * Saves the floorplan in its XML file, see {@link FloorplanXmlWriter}.
+     *
+     * @throws IOException
+     */
+    public void save() throws IOException {
+        XML_WRITER.get().write(this, xmlFilePath);
     }
 
     public void fixLimits() {
@@ -28,12 +28,19 @@ import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import eco.core.algorithm.metaheuristic.moga.NSGAII;
 import eco.core.operator.crossover.CycleCrossover;
 import eco.core.operator.selection.BinaryTournamentNSGAII;
+import eco.lib.examples.floorplan.util.Move;
 import eco.lib.examples.floorplan.util.MultiwayTree;
 import eco.lib.examples.floorplan.util.Solution;
 
@@ -84,14 +91,70 @@ public class FloorplanDTS extends FloorplanSolution {
   protected MultiwayTree<Component> yTree = new MultiwayTree<>();
   protected ArrayList<Component> zOrder = new ArrayList<>();
   /**
-   * Random number generator
+   * Cached objective (NaN if it must be computed) and in-place move
    */
-  private static Random rnd = new Random();
+  private double objective = Double.NaN;
+  private NodeMove move = null;
   /**
-   * Flag: if true, each "toString" call will also backup the floorplan to a xml
-   * file.
+   * Nodes of the layer being built by computeCoordinates, by x (and id, for
+   * the nodes with the same x). The map is kept between calls.
+   */
+  private final TreeMap<Long, Component> layerNodes = new TreeMap<>();
+  /**
+   * Position of every component (by id) in zOrder, and position in zOrder
+   * where the layer of every position starts. The layers of the positions
+   * before the first node that has moved, or has been swapped, since the
+   * last call to computeCoordinates are still valid, so the sweep resumes
+   * from there.
+   */
+  private int[] zPosition = null;
+  private int[] layerStart = null;
+  private int firstChanged = 0;
+  /**
+   * Random number generator, shared by the clones of a solution
+   */
+  private Random rnd = new Random();
+  /**
+   * Flag: if true, each "backup" call (every new incumbent of the search)
+   * will also backup the floorplan to a xml file.
    */
   public static boolean backupToXML = true;
+  /**
+   * Flag: if true, the xml files are compressed with gzip.
+   */
+  public static boolean gzipXML = false;
+  /**
+   * Backups are written by a single background thread, which only writes the
+   * last pending snapshot, so a burst of new incumbents costs one file.
+   */
+  private static final ExecutorService BACKUP_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "FloorplanDTS-backup");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+  private static final AtomicReference<Backup> PENDING_BACKUP = new AtomicReference<Backup>();
+  private static final FloorplanXmlWriter BACKUP_WRITER = new FloorplanXmlWriter();
+
+  static {
+    BACKUP_WRITER.setFixedLimits(true);
+  }
+
+  /**
+   * Snapshot of the floorplan waiting to be saved
+   */
+  private static class Backup {
+
+    private final FloorplanConfiguration cfg;
+    private final String filePath;
+
+    private Backup(FloorplanConfiguration cfg, String filePath) {
+      this.cfg = cfg;
+      this.filePath = filePath;
+    }
+  }
   private static double startTime = System.currentTimeMillis() / 1000;   // In seconds
 
   /* For output print */
@@ -114,7 +177,7 @@ public class FloorplanDTS extends FloorplanSolution {
    * computation
    * @param wireWgt weight to be applied to wiring in the objective computation
    */
-  FloorplanDTS(FloorplanConfiguration config, double wireWgt, double tempWgt,
+  public FloorplanDTS(FloorplanConfiguration config, double wireWgt, double tempWgt,
           long seed, boolean randomEncoding, String currOutputDir) {
     this();
 
@@ -142,6 +205,13 @@ public class FloorplanDTS extends FloorplanSolution {
     // Enconding must be performed even after randomEncoding
     encode();
 
+    // Tree sizes and x, y coordinates are maintained by the trees from now on
+    xTree.setExtent(c -> c.l, null);
+    yTree.setExtent(c -> c.w, null);
+    bindTrees();
+    xTree.updateLayout();
+    yTree.updateLayout();
+
     // State initial x, y and z positions:
     computeCoordinates();
 
@@ -151,6 +221,20 @@ public class FloorplanDTS extends FloorplanSolution {
 
   }
 
+  /**
+   * Replaces the starting wiring and temperature that normalize the
+   * objective, so that solutions built from different encodings of the same
+   * floorplan have comparable objectives.
+   *
+   * @param wiring starting wiring
+   * @param temp starting temperature
+   */
+  void setStartingValues(double wiring, double temp) {
+    startingWiring = wiring;
+    startingTemp = temp;
+    objective = Double.NaN;
+  }
+
   /**
    * Codification method: from the FloorplanConfiguration of the object, the
    * method re-creates the configuration in current object trees.
@@ -338,54 +422,33 @@ public class FloorplanDTS extends FloorplanSolution {
   }
 
   /**
-   * Parses the given tree on a deep first basis obtaining the size of the
-   * longest branch.
-   *
-   * At the same time, <b>all nodes are getting filled their x or y values in
-   * the component list of the configuration</b>
-   *
-   * @param tree
-   * @param x true means to select length (l), false means width (w)
-   * @return size
-   */
-  private int obtainTreeSize(MultiwayTree<Component> tree, boolean x) {
-    int size = 0;
-    if (!tree.isRoot()) {
-      Component node = cfg.components.get(tree.getNode().id);
-      Component parentNode = cfg.components.get(tree.getParent().getNode().id);
-
-      if (parentNode == null) {
-        // Parent is root, which is not in the components list. Create new
-        parentNode = emptyRootNode();
-      }
-
-      if (x) {
-        // Length
-        size += node.l;
-        // Set x in common list !!
-        node.x = parentNode.x + parentNode.l;
-      } else {
-        // Width
-        size += node.w;
-        // Set y in common list !!
-        node.y = parentNode.y + parentNode.w;
+   * Makes the trees write the x and y coordinates of every moved node in the
+   * component list of the configuration (<b>not</b> in the tree elements,
+   * which may belong to other configurations).
+   */
+  private void bindTrees() {
+    xTree.setListener((c, x) -> {
+      Component comp = cfg.components.get(c.id);
+      if (comp.x != x) {
+        comp.x = x;
+        moved(c.id);
       }
-    }
-
-    int childrenMaxSize = 0;
-
-    if (tree.getChildren() != null) {
-      Iterator<MultiwayTree<Component>> iter = tree.getChildren().iterator();
-      while (iter.hasNext()) {
-        MultiwayTree<Component> child = iter.next();
-        int childSize = obtainTreeSize(child, x);
-        if (childSize > childrenMaxSize) {
-          childrenMaxSize = childSize;
-        }
+    });
+    yTree.setListener((c, y) -> {
+      Component comp = cfg.components.get(c.id);
+      if (comp.y != y) {
+        comp.y = y;
+        moved(c.id);
       }
-    }
+    });
+  }
 
-    return (size + childrenMaxSize);
+  /**
+   * The layers must be recomputed from the position of the given component
+   * in zOrder.
+   */
+  private void moved(int id) {
+    firstChanged = (zPosition == null) ? 0 : Math.min(firstChanged, zPosition[id]);
   }
 
   /**
@@ -398,45 +461,79 @@ public class FloorplanDTS extends FloorplanSolution {
   private void computeCoordinates() {
 
     if (!coordsComputed) {
-      // For the trees, it has to find the deepest path in terms of size
-      // The x and y coordinates for the components are set here
-      currMaxLongX = obtainTreeSize(xTree, true);
-      currMaxWidthY = obtainTreeSize(yTree, false);
+      // The trees keep the size of their deepest path and the x and y
+      // coordinates of the components up to date after every move
+      currMaxLongX = xTree.getSize();
+      currMaxWidthY = yTree.getSize();
 
       /* The number of layers is obtained by checking wich nodes are
        * overlapped in the x-y plane. Then, we have to keep the nodes
-       * processed for each layer */
-      currMaxHeightZ = 0;
-      Iterator<Component> iter = zOrder.iterator();
-      ArrayList<Component> layerNodes = new ArrayList<Component>();
-      Component currNode = null;
-      while (iter.hasNext()) {
-        currNode = cfg.components.get(iter.next().id);
-        if (!layerNodes.isEmpty()) {
-          boolean overlap = false;
-          Iterator<Component> iterLayerNodes = layerNodes.iterator();
-          // Check overlapping with any of the nodes of this layer
-          while (!overlap && iterLayerNodes.hasNext()) {
-            Component layerNode = iterLayerNodes.next();
-            // Overlap ?
-            overlap = overlap(currNode, layerNode);
-          }
-          if (overlap) {
+       * processed for each layer, sorted by x (sweep line) */
+      int n = zOrder.size();
+      if (zPosition == null || layerStart.length != n) {
+        int maxId = 0;
+        for (Component c : zOrder) {
+          maxId = Math.max(maxId, c.id);
+        }
+        zPosition = new int[maxId + 1];
+        for (int i = 0; i < n; i++) {
+          zPosition[zOrder.get(i).id] = i;
+        }
+        layerStart = new int[n];
+        firstChanged = 0;
+      }
+      int from = Math.min(firstChanged, n);
+      currMaxHeightZ = (from > 0) ? cfg.components.get(zOrder.get(from - 1).id).z : 0;
+      if (from < n) {
+        // Nodes of the current layer placed before the first change:
+        layerNodes.clear();
+        int start = (from > 0) ? layerStart[from - 1] : 0;
+        int layerMaxL = 0;
+        Component currNode = null;
+        for (int i = start; i < from; i++) {
+          currNode = cfg.components.get(zOrder.get(i).id);
+          layerNodes.put(layerKey(currNode.x, currNode.id), currNode);
+          layerMaxL = Math.max(layerMaxL, currNode.l);
+        }
+        for (int i = from; i < n; i++) {
+          currNode = cfg.components.get(zOrder.get(i).id);
+          if (!layerNodes.isEmpty() && overlapLayer(currNode, layerMaxL)) {
             currMaxHeightZ += 1;
             layerNodes.clear();
+            layerMaxL = 0;
+            start = i;
           }
-
+          currNode.z = currMaxHeightZ;
+          layerStart[i] = start;
+          layerNodes.put(layerKey(currNode.x, currNode.id), currNode);
+          layerMaxL = Math.max(layerMaxL, currNode.l);
         }
-        currNode.z = currMaxHeightZ;
-        layerNodes.add(currNode);
       }
+      firstChanged = n;
 
       coordsComputed = true;
       cfg.numLayers = currMaxHeightZ + 1;
+      objective = Double.NaN;
     }
 
   }
 
+  /**
+   * Recomputes the layout of both trees, the coordinates and the objective
+   * from scratch, discarding the values that are maintained incrementally by
+   * the moves. Meant to check them.
+   *
+   * @return the objective
+   */
+  public double evaluateFromScratch() {
+    xTree.updateLayout();
+    yTree.updateLayout();
+    coordsComputed = false;
+    firstChanged = 0;
+    computeCoordinates();
+    return getObjective();
+  }
+
   @Override
   public boolean isFeasible() {
     boolean feasible = false;
@@ -455,13 +552,18 @@ public class FloorplanDTS extends FloorplanSolution {
   public double getObjective() {
     // The objective is a weighted function:
     computeCoordinates();
+    if (!Double.isNaN(this.objective)) {
+      return this.objective;
+    }
 
     double objective = 0.0;
+    wiring = computeWiring();
+    temperature = computeTemperature();
 
     if ((wireWeight == 1.0) || (temperatureWeight == 1.0)) {
-      objective = ((wireWeight * computeWiring()) + (temperatureWeight * computeTemperature()));
+      objective = ((wireWeight * wiring) + (temperatureWeight * temperature));
     } else {
-      objective = ((wireWeight * computeWiring() / startingWiring) + (temperatureWeight * computeTemperature() / startingTemp));
+      objective = ((wireWeight * wiring / startingWiring) + (temperatureWeight * temperature / startingTemp));
     }
 
     if (!isFeasible()) {
@@ -471,6 +573,7 @@ public class FloorplanDTS extends FloorplanSolution {
       objective *= penalty;
     }
 
+    this.objective = objective;
     return objective;
   }
 
@@ -487,23 +590,23 @@ public class FloorplanDTS extends FloorplanSolution {
     // Move random node
     if (rnd.nextBoolean()) {
       // Change x-tree
-      moveRandomNode(solution.xTree);
+      moveRandomNode(solution.xTree, null);
     } else {
       // Change y-tree
-      moveRandomNode(solution.yTree);
+      moveRandomNode(solution.yTree, null);
     }
 
     // Swap random elements
     int who = rnd.nextInt(3);
     switch (who) {
       case 0:  // Change x-tree
-        swapRandomNode(solution.xTree);
+        swapRandomNode(solution.xTree, null);
         break;
       case 1:  // Change y-tree
-        swapRandomNode(solution.yTree);
+        swapRandomNode(solution.yTree, null);
         break;
       default: // Change z-order
-        swapRandomNode(solution.zOrder);
+        solution.swapRandomZOrder(null);
         break;
     }
 
@@ -517,10 +620,80 @@ public class FloorplanDTS extends FloorplanSolution {
     return Collections.enumeration(succesors);
   }
 
+  @Override
+  public Move getMove() {
+    if (move == null) {
+      move = new NodeMove();
+    }
+    return move;
+  }
+
+  /**
+   * The move of getSuccessors applied in place: a node of the x-tree or the
+   * y-tree is moved, and then two nodes of the x-tree, the y-tree or the
+   * z-order are swapped. Both operations are recorded, so they can be
+   * undone in reverse order.
+   */
+  private class NodeMove implements Move {
+
+    private double objectiveBefore, wiringBefore, temperatureBefore;
+    // Moved node: previous parent, position and number of children
+    private MultiwayTree<Component> movedTree;
+    private Component movedNode;
+    private MultiwayTree<Component> oldParent;
+    private int oldIndex, oldNumChildren;
+    // Swapped nodes (trees) or positions (z-order)
+    private MultiwayTree<Component> swappedTree1, swappedTree2;
+    private int swappedIndex1, swappedIndex2;
+
+    @Override
+    public double apply() {
+      objectiveBefore = getObjective();
+      wiringBefore = wiring;
+      temperatureBefore = temperature;
+      swappedTree1 = null;
+      swappedTree2 = null;
+      moveRandomNode(rnd.nextBoolean() ? xTree : yTree, this);
+      switch (rnd.nextInt(3)) {
+        case 0:
+          swapRandomNode(xTree, this);
+          break;
+        case 1:
+          swapRandomNode(yTree, this);
+          break;
+        default:
+          swapRandomZOrder(this);
+          break;
+      }
+      coordsComputed = false;
+      computeCoordinates();
+      return getObjective() - objectiveBefore;
+    }
+
+    @Override
+    public void undo() {
+      if (swappedTree1 != null) {
+        swappedTree1.swapNodes(swappedTree2);
+      } else {
+        swapZOrder(swappedIndex1, swappedIndex2);
+      }
+      // The moved node is a leaf in its new position
+      MultiwayTree<Component> moved = movedTree.findNode(movedNode);
+      movedTree.removeNode(movedNode, movedTree);
+      oldParent.addChildren(oldIndex, oldNumChildren, moved);
+      coordsComputed = false;
+      computeCoordinates();
+      objective = objectiveBefore;
+      wiring = wiringBefore;
+      temperature = temperatureBefore;
+    }
+  }
+
   @Override
   public Solution clone() {
     FloorplanDTS clone = new FloorplanDTS();
 
+    clone.rnd = this.rnd;
     clone.maxX = this.maxX;
     clone.maxY = this.maxY;
     clone.maxZ = this.maxZ;
@@ -538,10 +711,26 @@ public class FloorplanDTS extends FloorplanSolution {
     clone.temperatureWeight = this.temperatureWeight;
     clone.wireWeight = this.wireWeight;
 
-    clone.cfg = this.cfg.clone();
+    // The cached layout is cloned with the trees, so the configuration must
+    // keep the current coordinates instead of reloading the file
+    clone.cfg = this.cfg.copy();
     clone.startingTemp = this.startingTemp;
     clone.startingWiring = this.startingWiring;
 
+    clone.bindTrees();
+    clone.currMaxLongX = this.currMaxLongX;
+    clone.currMaxWidthY = this.currMaxWidthY;
+    clone.currMaxHeightZ = this.currMaxHeightZ;
+    clone.coordsComputed = this.coordsComputed;
+    clone.objective = this.objective;
+    clone.wiring = this.wiring;
+    clone.temperature = this.temperature;
+    if (this.zPosition != null) {
+      clone.zPosition = this.zPosition.clone();
+      clone.layerStart = this.layerStart.clone();
+      clone.firstChanged = this.firstChanged;
+    }
+
     clone.computeCoordinates();
 
     return clone;
@@ -568,49 +757,84 @@ public class FloorplanDTS extends FloorplanSolution {
 
   @Override
   public String toString() {
-    String cad = "";
+    StringBuilder cad = new StringBuilder();
 
     // x-tree:
-    cad += "x-tree --> " + xTree;
-    cad += "\ny-tree --> " + yTree;
-    cad += "\nz-order --> ";
+    cad.append("x-tree --> ").append(xTree);
+    cad.append("\ny-tree --> ").append(yTree);
+    cad.append("\nz-order --> ");
     Iterator<Component> iter = zOrder.iterator();
     while (iter.hasNext()) {
       Component cmp = iter.next();
-      cad += cmp.toString();
-      cad += " (" + cfg.components.get(cmp.id).x + ",";
-      cad += cfg.components.get(cmp.id).y + ",";
-      cad += cfg.components.get(cmp.id).z + ")  ";
+      cad.append(cmp.toString());
+      cad.append(" (").append(cfg.components.get(cmp.id).x).append(",");
+      cad.append(cfg.components.get(cmp.id).y).append(",");
+      cad.append(cfg.components.get(cmp.id).z).append(")  ");
     }
-    cad += "\nFeasible: " + isFeasible() + " - Fitness: " + this.getObjective() + " ( Wiring (" + wireWeight + " * " + computeWiring();
+    cad.append("\nFeasible: ").append(isFeasible()).append(" - Fitness: ").append(this.getObjective()).append(" ( Wiring (").append(wireWeight).append(" * ").append(computeWiring());
     if (wireWeight != 1.0) {
-      cad += " / " + startingWiring;
+      cad.append(" / ").append(startingWiring);
     }
-    cad += ")  +  Temperature ( " + temperatureWeight + " * " + computeTemperature();
+    cad.append(")  +  Temperature ( ").append(temperatureWeight).append(" * ").append(computeTemperature());
     if (temperatureWeight != 1.0) {
-      cad += " / " + startingTemp;
+      cad.append(" / ").append(startingTemp);
     }
-    cad += ") )";
+    cad.append(") )");
 
-    if (backupToXML) {
-      String newXmlFilePathSuffix = "_" + ((System.currentTimeMillis() / 1000) - startTime) + ".xml";
-      String xmlFilePath = xmlFileName.replaceAll(".xml", newXmlFilePathSuffix);
-      try {
-        save(outputDir, xmlFilePath);
-      } catch (IOException ex) {
-        Logger.getLogger(FloorplanDTS.class.getName()).log(Level.SEVERE, null, ex);
-      }
+    return cad.toString();
+  }
+
+  /**
+   * Backups the floorplan to a xml file, named after the elapsed seconds, if
+   * backupToXML is set. The configuration is copied and saved in the
+   * background, so the search is not delayed by the file system. It is meant
+   * to be called on every new incumbent.
+   */
+  public void backup() {
+    if (!backupToXML) {
+      return;
     }
+    String xmlFilePath = xmlFileName.replaceAll(".xml", "_" + ((System.currentTimeMillis() / 1000) - startTime) + ".xml");
+    Backup backup = new Backup(cfg.copy(), outputFile(outputDir, xmlFilePath));
+    if (PENDING_BACKUP.getAndSet(backup) != null) {
+      // The pending task will save this one instead
+      return;
+    }
+    BACKUP_EXECUTOR.execute(new Runnable() {
+      @Override
+      public void run() {
+        Backup backup = PENDING_BACKUP.getAndSet(null);
+        try {
+          BACKUP_WRITER.write(backup.cfg, backup.filePath);
+        } catch (IOException ex) {
+          Logger.getLogger(FloorplanDTS.class.getName()).log(Level.SEVERE, null, ex);
+        }
+      }
+    });
+  }
 
-    return cad;
+  /**
+   * Waits until all the pending backups are saved.
+   */
+  public static void awaitBackups() {
+    try {
+      BACKUP_EXECUTOR.submit(new Runnable() {
+        @Override
+        public void run() {
+        }
+      }).get();
+    } catch (InterruptedException | ExecutionException ex) {
+      Logger.getLogger(FloorplanDTS.class.getName()).log(Level.SEVERE, null, ex);
+    }
   }
 
   /**
    * Selects a node by random and inserts it in a random new position
    *
    * @param tree where the operation will be performed
+   * @param record if not null, records how to undo the operation
    */
-  private void moveRandomNode(MultiwayTree<Component> tree) {
+  private void moveRandomNode(MultiwayTree<Component> tree, NodeMove record) {
 
     int indexOfNode = 0;
     Component node = null;
@@ -622,6 +846,14 @@ public class FloorplanDTS extends FloorplanSolution {
       // Avoid selecting the root pseudo-node
     } while (node == null);
 
+    MultiwayTree<Component> removed = tree.findNode(node);
+    if (record != null) {
+      record.movedTree = tree;
+      record.movedNode = node;
+      record.oldParent = removed.getParent();
+      record.oldIndex = record.oldParent.getChildren().indexOf(removed);
+      record.oldNumChildren = (removed.getChildren() == null) ? 0 : removed.getChildren().size();
+    }
     tree.removeNode(node, tree);
 
     // Insert in random position:
@@ -629,25 +861,25 @@ public class FloorplanDTS extends FloorplanSolution {
     indexOfNode = rnd.nextInt(cfg.components.size());
     // 2.- Search for the subtree for the indexOfNode-th node
     MultiwayTree<Component> subTree = tree.getSubTree(indexOfNode, tree);
-    // 3.- Insert the extracted node in that position:
+    // 3.- Insert the extracted node (the same subtree object) in that position:
     if (indexOfNode == 0) {
       // Would mean to be "brother" of root -> put as i-th child of root
       indexOfNode = rnd.nextInt(subTree.getChildren().size() + 1);
-      subTree.addChildren(indexOfNode, node);
+      subTree.addChildren(indexOfNode, 0, removed);
     } else {
       // Randomly put on left, right or new child of the node
       int pos = rnd.nextInt(3);
       switch (pos) {
         case 0: // left
           indexOfNode = subTree.getParent().getChildren().indexOf(subTree);
-          subTree.getParent().addChildren(indexOfNode, node);
+          subTree.getParent().addChildren(indexOfNode, 0, removed);
           break;
         case 1: // right
           indexOfNode = subTree.getParent().getChildren().indexOf(subTree) + 1;
-          subTree.getParent().addChildren(indexOfNode, node);
+          subTree.getParent().addChildren(indexOfNode, 0, removed);
           break;
         default: // new child
-          subTree.addChildren(node);
+          subTree.addChildren((subTree.getChildren() == null) ? 0 : subTree.getChildren().size(), 0, removed);
       }
     }
 
@@ -657,8 +889,9 @@ public class FloorplanDTS extends FloorplanSolution {
    * Selects two nodes by random and swap them
    *
    * @param tree where the operation will be performed
+   * @param record if not null, records how to undo the operation
    */
-  private void swapRandomNode(MultiwayTree<Component> tree) {
+  private void swapRandomNode(MultiwayTree<Component> tree, NodeMove record) {
 
     int indexOfNode1 = 0;
     int indexOfNode2 = 0;
@@ -675,18 +908,20 @@ public class FloorplanDTS extends FloorplanSolution {
     MultiwayTree<Component> subTree2 = tree.getSubTree(indexOfNode2, tree);
 
     // Swap nodes
-    Component aux = subTree1.getNode();
-    subTree1.setNode(subTree2.getNode());
-    subTree2.setNode(aux);
+    subTree1.swapNodes(subTree2);
+    if (record != null) {
+      record.swappedTree1 = subTree1;
+      record.swappedTree2 = subTree2;
+    }
 
   }
 
   /**
-   * Selects two nodes by random and swap them
+   * Selects two nodes of the z-order by random and swap them
    *
-   * @param sequence where the operation will be performed
+   * @param record if not null, records how to undo the operation
    */
-  private void swapRandomNode(ArrayList<Component> seq) {
+  private void swapRandomZOrder(NodeMove record) {
     int indexOfNode1 = 0;
     int indexOfNode2 = 0;
 
@@ -695,11 +930,28 @@ public class FloorplanDTS extends FloorplanSolution {
     indexOfNode2 = rnd.nextInt(cfg.components.size());
 
     // Swap nodes
-    Component aux = seq.get(indexOfNode1);
-    seq.set(indexOfNode1, seq.get(indexOfNode2));
-    seq.set(indexOfNode2, aux);
+    swapZOrder(indexOfNode1, indexOfNode2);
+    if (record != null) {
+      record.swappedIndex1 = indexOfNode1;
+      record.swappedIndex2 = indexOfNode2;
+    }
 
   }
+  /**
+   * Swaps two positions of the z-order, keeping the positions of the
+   * components up to date.
+   */
+  private void swapZOrder(int index1, int index2) {
+    Component aux = zOrder.get(index1);
+    zOrder.set(index1, zOrder.get(index2));
+    zOrder.set(index2, aux);
+    if (zPosition != null) {
+      zPosition[zOrder.get(index1).id] = index1;
+      zPosition[zOrder.get(index2).id] = index2;
+    }
+    firstChanged = Math.min(firstChanged, Math.min(index1, index2));
+  }
+
 
   /**
    * Creates a blank node corresponding to a root node where all elements are 0.
@@ -743,29 +995,53 @@ public class FloorplanDTS extends FloorplanSolution {
     return overlap;
   }
 
-  public void save(String outputDir, String xmlName) throws IOException {
-
-    Iterator<Component> iter = cfg.components.values().iterator();
-    while (iter.hasNext()) {
-      Component cCfg = iter.next();
-      cCfg.xMin = cCfg.x;
-      cCfg.xMax = cCfg.x;
-      cCfg.yMin = cCfg.y;
-      cCfg.yMax = cCfg.y;
-      cCfg.zMin = cCfg.z;
-      cCfg.zMax = cCfg.z;
+  /**
+   * Returns true if the given component overlaps in the x-y plane any of the
+   * nodes of the current layer. Layer nodes are sorted by x, so only those
+   * that start less than <code>layerMaxL</code> cells before the component
+   * can overlap it in x.
+   *
+   * @param node
+   * @param layerMaxL maximum length of the nodes of the layer
+   *
+   * @return
+   */
+  private boolean overlapLayer(Component node, int layerMaxL) {
+    int to = node.x + Math.max(node.l, 0);
+    long fromKey = layerKey(node.x - Math.max(layerMaxL, 1) + 1, 0);
+    for (Component layerNode : layerNodes.subMap(fromKey, true, layerKey(to, 0), false).values()) {
+      if (overlap(node, layerNode)) {
+        return true;
+      }
     }
-    String newXmlFilePathSuffix = "_" + this.getClass().getSimpleName() + "_W" + this.wireWeight + "_T" + this.temperatureWeight;
-    newXmlFilePathSuffix += ".xml";
+    return false;
+  }
 
-    String newOutputFile = outputDir + File.separator + xmlName.replaceAll(".xml", newXmlFilePathSuffix);
-    String oldXmlFilePath = cfg.xmlFilePath;
+  /**
+   * @return key of a node of the current layer, ordered by x and then by id
+   */
+  private static long layerKey(int x, int id) {
+    return ((long) x << 32) | (id & 0xffffffffL);
+  }
 
-    cfg.xmlFilePath = newOutputFile;
-    cfg.save();
+  /**
+   * Saves the floorplan, with the limits of the blocks fixed to their
+   * positions. The configuration is not modified.
+   */
+  public void save(String outputDir, String xmlName) throws IOException {
+    FloorplanXmlWriter writer = new FloorplanXmlWriter();
+    writer.setFixedLimits(true);
+    writer.write(cfg, outputFile(outputDir, xmlName));
+  }
 
-    cfg.xmlFilePath = oldXmlFilePath;
+  private String outputFile(String outputDir, String xmlName) {
+    String newXmlFilePathSuffix = "_" + this.getClass().getSimpleName() + "_W" + this.wireWeight + "_T" + this.temperatureWeight;
+    newXmlFilePathSuffix += ".xml";
+    if (gzipXML) {
+      newXmlFilePathSuffix += FloorplanXmlWriter.GZIP_EXTENSION;
+    }
 
+    return outputDir + File.separator + xmlName.replaceAll(".xml", newXmlFilePathSuffix);
   }
 
   // Test code for codification method
@@ -22,12 +22,16 @@ package eco.lib.examples.floorplan;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Properties;
 import java.util.Random;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import eco.lib.examples.floorplan.util.MultiStartAnnealer;
 import eco.lib.examples.floorplan.util.SimulatedAnnealingSolver;
+import eco.lib.examples.floorplan.util.Solution;
 
 /**
  * Class implementing the simulated annealing technique for problem
@@ -101,8 +105,24 @@ public class FloorplanDTSSimulatedAnnealing {
         if (PROPS.getProperty("MaxSeconds") != null) maxSeconds = Long.valueOf(PROPS.getProperty("MaxSeconds"));
 
         FloorplanConfiguration cfg = new FloorplanConfiguration(xmlFilePath);
+        // Opening angle of the Barnes-Hut thermal approximation (0, exact, by default)
+        if (PROPS.getProperty("ThermalTheta") != null) cfg.setThermalTheta(Double.valueOf(PROPS.getProperty("ThermalTheta")));
 
 
+        // Independent SA chains run in parallel (1, the classic single run)
+        int numChains = 1;
+        if (PROPS.getProperty("NumChains") != null) numChains = Integer.valueOf(PROPS.getProperty("NumChains"));
+
+        // XML files (backups and final solution) compressed with gzip (0 by default)
+        if (PROPS.getProperty("GzipXML") != null) FloorplanDTS.gzipXML = PROPS.getProperty("GzipXML").equals("1");
+        // Every new incumbent is saved in the background
+        Consumer<Solution> backup = new Consumer<Solution>() {
+            @Override
+            public void accept(Solution solution) {
+                ((FloorplanDTS) solution).backup();
+            }
+        };
+
         // Create floorplan using DTS notation
         FloorplanDTS cfgDTS = new FloorplanDTS(cfg,wiringWeight,temperatureWeight,seed,randomEncoding,outputDir);
 
@@ -110,11 +130,34 @@ public class FloorplanDTSSimulatedAnnealing {
 
         // Run SA optimization
         LOGGER.log(Level.INFO,"\n# Running SA optimization...\n");
-        SimulatedAnnealingSolver solver = new SimulatedAnnealingSolver(iter,kValue,stopWhenFeasible,seed,maxSeconds);
-        SimulatedAnnealingSolver.logFile = outputDir + File.separator + xmlFileName + "_log" + ".txt";
-
-        FloorplanDTS optimizedCfgDTS = (FloorplanDTS) solver.solve(cfgDTS);
+        String logFile = outputDir + File.separator + xmlFileName + "_log" + ".txt";
+        FloorplanDTS optimizedCfgDTS;
+        if (numChains <= 1) {
+            SimulatedAnnealingSolver solver = new SimulatedAnnealingSolver(iter,kValue,stopWhenFeasible,seed,maxSeconds);
+            SimulatedAnnealingSolver.logFile = logFile;
+            solver.setImprovementListener(backup);
+            optimizedCfgDTS = (FloorplanDTS) solver.solve(cfgDTS);
+        } else {
+            // Every chain starts from its own encoding (a random walk around the XML one if not random),
+            // normalized with the starting values of the first one so the chains can be compared
+            ArrayList<FloorplanDTS> initials = new ArrayList<>();
+            initials.add(cfgDTS);
+            for (int i = 1; i < numChains; ++i) {
+                FloorplanDTS chainDTS = new FloorplanDTS(cfg.copy(),wiringWeight,temperatureWeight,seed+i,randomEncoding,outputDir);
+                chainDTS.setStartingValues(cfgDTS.startingWiring, cfgDTS.startingTemp);
+                if (!randomEncoding) chainDTS = (FloorplanDTS) MultiStartAnnealer.randomWalk(chainDTS, cfg.components.size());
+                initials.add(chainDTS);
+            }
+            MultiStartAnnealer annealer = new MultiStartAnnealer(initials,iter,kValue,stopWhenFeasible,seed,logFile);
+            annealer.setMaxSeconds(maxSeconds);
+            annealer.setIncumbentListener(backup);
+            if (PROPS.getProperty("TargetObjective") != null) annealer.setTargetObjective(Double.valueOf(PROPS.getProperty("TargetObjective")));
+            MultiStartAnnealer.Incumbent incumbent = annealer.execute();
+            LOGGER.log(Level.INFO,"\n# Best chain: {0}\n",incumbent.getChain());
+            optimizedCfgDTS = (FloorplanDTS) incumbent.getSolution();
+        }
 
+        FloorplanDTS.awaitBackups();
         LOGGER.log(Level.INFO,"\n# Final Tree:\n{0}\n",optimizedCfgDTS.toString());
         try {
             optimizedCfgDTS.save(outputDir,xmlFileName.replaceAll(".xml", "_FINAL_"+seed+".xml"));
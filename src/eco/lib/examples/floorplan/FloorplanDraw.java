@@ -19,17 +19,46 @@
  */
 package eco.lib.examples.floorplan;
 
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 public class FloorplanDraw {
 
     public static void main(String[] args) {
-        if (args.length != 3) {
-            System.out.println("Parameters: FileInput IdxPowerProfile Zoom(10 f.e.)");
+        if (args.length < 3) {
+            System.out.println("Parameters: FileInput IdxPowerProfile Zoom(10 f.e.) [-raster] [-png PngPrefix]");
+            System.out.println(" ---> -raster draws the layers as images, much faster for large grids");
+            System.out.println(" ---> -png saves the layers as PngPrefix_layer<i>.png, without any window");
             return;
         }
         String fileInput = args[0];
         Integer idxPowerProfile = Integer.valueOf(args[1]);
         Integer scale = Integer.valueOf(args[2]);
+        boolean raster = false;
+        String pngPrefix = null;
+        for (int i = 3; i < args.length; ++i) {
+            if (args[i].equals("-raster")) {
+                raster = true;
+            } else if (args[i].equals("-png") && i + 1 < args.length) {
+                pngPrefix = args[++i];
+            }
+        }
+        if (pngPrefix != null) {
+            // Images need at least one pixel per cell:
+            scale = Math.max(1, scale);
+        }
         Board board = new Board(idxPowerProfile, scale);
+        board.setRaster(raster);
+        if (pngPrefix != null) {
+            board.cfg = new FloorplanConfiguration(fileInput);
+            try {
+                board.savePng(pngPrefix);
+            } catch (IOException ex) {
+                Logger.getLogger(FloorplanDraw.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            return;
+        }
         board.buildBoard(fileInput);
     }
 
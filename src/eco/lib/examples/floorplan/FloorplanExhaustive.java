@@ -33,25 +33,35 @@ public class FloorplanExhaustive {
 
     protected FloorplanConfiguration cfg;
     protected ArrayList<Component> components = new ArrayList<Component>();
-    protected boolean[][][] freeCells;
+    protected FreeRectangles freeRectangles;
+    protected int[][] visited;
+    protected int visit = 0;
+    // Best position of the block being placed:
+    protected int bestX, bestY, bestZ;
+    protected double bestObj;
+    /**
+     * If true, only the corners of the free rectangles are evaluated. If
+     * false, every feasible position is evaluated, as the cell by cell search
+     * did.
+     */
+    protected boolean cornersOnly = true;
+    protected InverseDistanceTable invDistTable;
 
     public FloorplanExhaustive(String xmlFilePath) {
         cfg = new FloorplanConfiguration(xmlFilePath);
         for (Component c : cfg.components.values()) {
             components.add(c);
         }
-        freeCells = new boolean[cfg.maxLengthInCells][cfg.maxWidthInCells][cfg.numLayers];
-        int x = 0, y = 0, z = 0;
-        for (x = 0; x < cfg.maxLengthInCells; ++x) {
-            for (y = 0; y < cfg.maxWidthInCells; ++y) {
-                for (z = 0; z < cfg.numLayers; ++z) {
-                    freeCells[x][y][z] = true;
-                }
-            }
-        }
+        freeRectangles = new FreeRectangles(cfg.maxLengthInCells, cfg.maxWidthInCells, cfg.numLayers);
+        visited = new int[cfg.maxLengthInCells][cfg.maxWidthInCells];
+        invDistTable = InverseDistanceTable.getInstance(cfg);
         Collections.sort(components, new ComponentThermalComparator());
     }
 
+    public void setCornersOnly(boolean cornersOnly) {
+        this.cornersOnly = cornersOnly;
+    }
+
     public void run() {
         for (int i = 0; i < components.size(); ++i) {
             place(i);
@@ -61,26 +71,29 @@ public class FloorplanExhaustive {
     public boolean place(int idx) {
         Component component = components.get(idx);
         System.out.print(component.toString() + " ... ");
-        int bestX = -1;
-        int bestY = -1;
-        int bestZ = -1;
-        double currentObj = Double.POSITIVE_INFINITY, bestObj = Double.POSITIVE_INFINITY;
+        bestX = -1;
+        bestY = -1;
+        bestZ = -1;
+        bestObj = Double.POSITIVE_INFINITY;
         int x = 0, y = 0, z = 0;
-        for (z = component.zMin; z <= component.zMax; ++z) {
-            for (x = component.xMin; x <= component.xMax; ++x) {
-                for (y = component.yMin; y <= component.yMax; ++y) {
-                    if (freeCells[x][y][z] && feasible(idx, x, y, z)) {
-                        // Calculamos el objetivo
-                        if (component.type == 0) {
-                            currentObj = fitnessTemp(idx, x, y, z);
-                        } else {
-                            currentObj = fitnessWire(idx, x, y, z);
-                        }
-                        if (currentObj < bestObj) {
-                            bestObj = currentObj;
-                            bestX = x;
-                            bestY = y;
-                            bestZ = z;
+        for (z = component.zMin; z <= component.zMax && z + component.h <= cfg.numLayers; ++z) {
+            visit++;
+            for (int[] r : freeRectangles.getRectangles(z)) {
+                // Positions of the block inside the rectangle:
+                int x0 = Math.max(r[0], component.xMin), x1 = Math.min(r[0] + r[2] - component.l, component.xMax);
+                int y0 = Math.max(r[1], component.yMin), y1 = Math.min(r[1] + r[3] - component.w, component.yMax);
+                if (x0 > x1 || y0 > y1) {
+                    continue;
+                }
+                if (cornersOnly) {
+                    evaluate(idx, x0, y0, z);
+                    evaluate(idx, x1, y0, z);
+                    evaluate(idx, x0, y1, z);
+                    evaluate(idx, x1, y1, z);
+                } else {
+                    for (x = x0; x <= x1; ++x) {
+                        for (y = y0; y <= y1; ++y) {
+                            evaluate(idx, x, y, z);
                         }
                     }
                 }
@@ -93,14 +106,34 @@ public class FloorplanExhaustive {
         if (bestX < 0 || bestY < 0 || bestZ < 0) {
             return false;
         }
-        for (x = component.x; x < component.x + component.l; ++x) {
-            for (y = component.y; y < component.y + component.w; ++y) {
-                freeCells[x][y][bestZ] = false;
-            }
-        }
+        freeRectangles.occupy(component.x, component.y, bestZ, component.l, component.w);
         return true;
     }
 
+    /**
+     * Evaluates a feasible position, once per layer. Ties are broken as in
+     * the cell by cell search, in (z, x, y) order.
+     */
+    protected void evaluate(int idx, int x, int y, int z) {
+        if (visited[x][y] == visit) {
+            return;
+        }
+        visited[x][y] = visit;
+        double currentObj;
+        // Calculamos el objetivo
+        if (components.get(idx).type == 0) {
+            currentObj = fitnessTemp(idx, x, y, z);
+        } else {
+            currentObj = fitnessWire(idx, x, y, z);
+        }
+        if (currentObj < bestObj || (currentObj == bestObj && bestZ == z && (x < bestX || (x == bestX && y < bestY)))) {
+            bestObj = currentObj;
+            bestX = x;
+            bestY = y;
+            bestZ = z;
+        }
+    }
+
     public double fitnessTemp(int idx, int xx, int yy, int zz) {
         double[] tempObjs = new double[cfg.numPowerProfiles];
         for (int i = 0; i < tempObjs.length; ++i) {
@@ -108,14 +141,15 @@ public class FloorplanExhaustive {
         }
         Component cI = components.get(idx);
         Component cJ = null;
-        double dist = 0.0;
+        double invDist = 0.0;
+        int xI2 = 2 * xx + cI.l, yI2 = 2 * yy + cI.w, zI2 = 2 * zz + cI.h;
         for (int j = 0; j < idx; ++j) {
             cJ = components.get(j);
-            dist = Math.sqrt(Math.pow(xx + cI.l / 2.0 - cJ.x - cJ.l / 2.0, 2) + Math.pow(yy + cI.w / 2.0 - cJ.y - cJ.w / 2.0, 2) + Math.pow(zz + cI.h / 2.0 - cJ.z - cJ.h / 2.0, 2));
-            if (dist != 0) {
+            invDist = invDistTable.get(xI2 - 2 * cJ.x - cJ.l, yI2 - 2 * cJ.y - cJ.w, zI2 - 2 * cJ.z - cJ.h);
+            if (!Double.isInfinite(invDist)) {
                 for (int p = 0; p < tempObjs.length; ++p) {
                     // Potencia: Minimiza temperaturas máximas
-                    tempObjs[p] += ((cI.dps[p] / cfg.maxDP) * (cJ.dps[p] / cfg.maxDP)) / dist;
+                    tempObjs[p] += ((cI.dps[p] / cfg.maxDP) * (cJ.dps[p] / cfg.maxDP)) * invDist;
                     // Distancia: Minimiza temperaturas promedio
                     // tempObjs[p] -= dist / ((cI.dps[p] / cfg.maxDP) * (cJ.dps[p] / cfg.maxDP));
                 }
@@ -184,15 +218,18 @@ public class FloorplanExhaustive {
     }
 
     public static void main(String args[]) {
-        if (args.length != 1) {
+        if (args.length < 1 || args.length > 2) {
             args = new String[1];
             args[0] = "D:\\jlrisco\\Trabajo\\Investiga\\Estudiantes\\DavidCuesta\\benchmarks\\ComparaTavgVsTmax\\NiagaraC48L4.xml";
-            System.out.println("java -jar ExhaustiveSearch.jar XmlFilePath");
+            System.out.println("java -jar ExhaustiveSearch.jar XmlFilePath [CornersOnly]");
             return;
         }
         double time = System.currentTimeMillis();
         String fileName = args[0];
         FloorplanExhaustive search = new FloorplanExhaustive(fileName);
+        if (args.length > 1) {
+            search.setCornersOnly(Boolean.parseBoolean(args[1]));
+        }
         search.run();
         try {
             search.cfg.xmlFilePath = search.cfg.xmlFilePath.replaceAll(".xml", "_exse.xml");
@@ -43,16 +43,17 @@ public class FloorplanExhaustiveRacks extends FloorplanExhaustive {
 
         Component cI = components.get(idx);
         Component cJ = null;
-        double dist = 0.0;
+        double invDist = 0.0;
+        int xI2 = 2 * xx + cI.l, yI2 = 2 * yy + cI.w, zI2 = 2 * zz + cI.h;
         for (int j = 0; j < idx; ++j) {
             cJ = components.get(j);
             // Minimiza temperaturas máximas
             if (zz == cJ.z) {
-                dist = Math.sqrt(Math.pow(xx + cI.l / 2.0 - cJ.x - cJ.l / 2.0, 2) + Math.pow(yy + cI.w / 2.0 - cJ.y - cJ.w / 2.0, 2) + Math.pow(zz + cI.h / 2.0 - cJ.z - cJ.h / 2.0, 2));
+                invDist = invDistTable.get(xI2 - 2 * cJ.x - cJ.l, yI2 - 2 * cJ.y - cJ.w, zI2 - 2 * cJ.z - cJ.h);
                 // Potencia: Minimiza temperaturas máximas
-                if (dist != 0) {
+                if (!Double.isInfinite(invDist)) {
                     for (int p = 0; p < tempObjs.length; ++p) {
-                        tempObjs[p] += ((cI.dps[p] / cfg.maxDP) * (cJ.dps[p] / cfg.maxDP)) / dist;
+                        tempObjs[p] += ((cI.dps[p] / cfg.maxDP) * (cJ.dps[p] / cfg.maxDP)) * invDist;
                     }
                 }
             }
@@ -65,16 +66,19 @@ public class FloorplanExhaustiveRacks extends FloorplanExhaustive {
     }
 
     public static void main(String args[]) {
-        if (args.length != 1) {
+        if (args.length < 1 || args.length > 2) {
             args = new String[1];
             args[0] = "D:\\jlrisco\\Trabajo\\Investiga\\Estudiantes\\Zorana\\PaperRevista\\10x_opt_arm_30_mips_30.xml";
             //args[1] = "10";
             //args[2] = "";
-            System.out.println("java -jar ExhaustiveSearchRacks.jar XmlFilePath");
+            System.out.println("java -jar ExhaustiveSearchRacks.jar XmlFilePath [CornersOnly]");
             return;
         }
         String fileName = args[0];
         FloorplanExhaustiveRacks search = new FloorplanExhaustiveRacks(fileName);
+        if (args.length > 1) {
+            search.setCornersOnly(Boolean.parseBoolean(args[1]));
+        }
         search.run();
         try {
             search.cfg.xmlFilePath = search.cfg.xmlFilePath.replaceAll(".xml", "_exse.xml");
@@ -22,39 +22,78 @@ package eco.lib.examples.floorplan;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import eco.core.algorithm.metaheuristic.moga.NSGAII;
+import eco.core.operator.crossover.CrossoverOperator;
 import eco.core.operator.crossover.CycleCrossover;
+import eco.core.operator.mutation.MutationOperator;
 import eco.core.operator.selection.BinaryTournamentNSGAII;
+import eco.core.operator.selection.SelectionOperator;
 import eco.core.problem.Problem;
 import eco.core.problem.Solution;
 import eco.core.problem.Solutions;
 import eco.core.util.logger.HeroLogger;
 import eco.core.util.random.RandomGenerator;
+import eco.lib.examples.floorplan.util.Checkpoint;
+import eco.lib.examples.floorplan.util.ConvergenceTracker;
+import eco.lib.examples.floorplan.util.FastNSGAII;
+import eco.lib.examples.floorplan.util.IslandModel;
+import eco.unstable.util.metrics.Metrics;
 
 public class FloorplanGenetic extends Problem<ComponentVariable> {
 
     private static final Logger LOGGER = Logger.getLogger(FloorplanGenetic.class.getName());
+    private static final Metrics.Timer PLACE_TIMER = Metrics.timer("floorplan.genetic.place");
+    private static final Metrics.Timer OBJECTIVES_TIMER = Metrics.timer("floorplan.genetic.objectives");
     public static final int OBJ_UNFEASIBLE = 0;
     public static final int OBJ_WIRELENGTH = 1;
     public static final int OBJ_FIRST_TEMP = 2;
     protected FloorplanConfiguration cfg;
     protected int MaxWireLength = Integer.MAX_VALUE;
     protected boolean[][][] freeCells;
+    protected ComponentStore store;
+    protected ThermalProxy thermalProxy;
+    protected BarnesHutThermal barnesHut = null;
+    protected ThermalProxy.Aggregation tempAggregation = ThermalProxy.Aggregation.MAX;
+    protected boolean gzipResults = false;
 
     public FloorplanGenetic(FloorplanConfiguration cfg) {
         super(cfg.components.size(), FloorplanGenetic.OBJ_FIRST_TEMP + cfg.numPowerProfiles);
         this.cfg = cfg;
         MaxWireLength = cfg.maxLengthInCells * cfg.maxWidthInCells * cfg.numLayers;
         freeCells = new boolean[cfg.maxLengthInCells][cfg.maxWidthInCells][cfg.numLayers];
+        store = new ComponentStore(cfg);
+        thermalProxy = new ThermalProxy(store);
+    }
+
+    /**
+     * Sets how the thermal impact of all the power profiles is aggregated
+     * when a core is placed (MAX by default, the worst profile).
+     *
+     * @param tempAggregation Aggregation mode
+     */
+    public void setTempAggregation(ThermalProxy.Aggregation tempAggregation) {
+        this.tempAggregation = tempAggregation;
+    }
+
+    /**
+     * @param gzipResults If true, the solutions are saved compressed with
+     * gzip (false by default)
+     */
+    public void setGzipResults(boolean gzipResults) {
+        this.gzipResults = gzipResults;
     }
 
   @Override
     public FloorplanGenetic clone() {
         FloorplanGenetic clone = new FloorplanGenetic(cfg.clone());
+        clone.setTempAggregation(tempAggregation);
+        clone.setGzipResults(gzipResults);
         return clone;
     }
 
@@ -66,13 +105,15 @@ public class FloorplanGenetic extends Problem<ComponentVariable> {
             componentsAsList.add(c);
         }
         Collections.sort(componentsAsList, new ComponentThermalComparator());        
+        // Drawn from the global generator, so that seeded runs can be reproduced:
+        Random rnd = new Random(RandomGenerator.nextInt(Integer.MAX_VALUE));
         for (int i = 0; i < size; ++i) {
             Solution<ComponentVariable> solution = new Solution<ComponentVariable>(super.numberOfObjectives);
             for (Component component : componentsAsList) {
                 solution.getVariables().add(new ComponentVariable(component.clone()));
             }
             solutions.add(solution);
-            Collections.shuffle(componentsAsList);
+            Collections.shuffle(componentsAsList, rnd);
         }
         return solutions;
     }
@@ -92,13 +133,18 @@ public class FloorplanGenetic extends Problem<ComponentVariable> {
                 }
             }
         }
+        long start = Metrics.start();
         double unfeasible = 0;
         ArrayList<ComponentVariable> variables = solution.getVariables();
         for (int i = 0; i < variables.size(); ++i) {
             unfeasible += place(solution, i);
         }
+        PLACE_TIMER.stop(start);
 
+        start = Metrics.start();
         double[] objs = computeWireAndTemp(solution);
+        OBJECTIVES_TIMER.stop(start);
+        Metrics.EVALUATIONS.inc();
         solution.getObjectives().set(FloorplanGenetic.OBJ_UNFEASIBLE, unfeasible);
         solution.getObjectives().set(FloorplanGenetic.OBJ_WIRELENGTH, objs[0]);
         for (int p = 0; p < cfg.numPowerProfiles; ++p) {
@@ -153,115 +199,99 @@ public class FloorplanGenetic extends Problem<ComponentVariable> {
     }
 
     public double fitnessTemp(Solution<ComponentVariable> solution, int idx) {
-        double[] tempObjs = new double[cfg.numPowerProfiles];
-        for (int i = 0; i < tempObjs.length; ++i) {
-            tempObjs[i] = 0.0;
-        }
-        Component cI = solution.getVariables().get(idx).getValue();
-        Component cJ = null;
-        double dist = 0.0;
+        loadPlaced(solution, idx);
+        return fitnessTemp(solution.getVariables().get(idx).getValue());
+    }
+
+    /**
+     * Thermal impact of a component against the components stored in the
+     * thermal proxy by {@link #loadPlaced(Solution, int)}, aggregated over
+     * all the power profiles.
+     *
+     * @param cI Component
+     * @return The aggregated thermal impact
+     */
+    protected double fitnessTemp(Component cI) {
+        return ThermalProxy.aggregate(thermalProxy.computeAgainst(cI), tempAggregation);
+    }
+
+    protected void loadPlaced(Solution<ComponentVariable> solution, int idx) {
+        store.clear();
         for (int j = 0; j < idx; ++j) {
-            cJ = solution.getVariables().get(j).getValue();
-            dist = Math.sqrt(Math.pow(cI.x + cI.l / 2.0 - cJ.x - cJ.l / 2.0, 2) + Math.pow(cI.y + cI.w / 2.0 - cJ.y - cJ.w / 2.0, 2) + Math.pow(cI.z + cI.h / 2.0 - cJ.z - cJ.h / 2.0, 2));
-            //if (dist != 0) { -> SE SUPONE QUE DIST es != 0
-            for (int p = 0; p < tempObjs.length; ++p) {
-                // Potencia: Minimiza temperaturas máximas
-                tempObjs[p] += ((cI.dps[p] / cfg.maxDP) * (cJ.dps[p] / cfg.maxDP)) / dist;
-                // Distancia: Minimiza temperaturas promedio
-                //tempObjs[p] -= dist / ((cI.dps[p] / cfg.maxDP) * (cJ.dps[p] / cfg.maxDP));
-            }
-            //}
-        }
-        double fitness = Double.NEGATIVE_INFINITY;
-        for (int i = 0; i < tempObjs.length; ++i) {
-            if (tempObjs[i] > fitness) {
-                fitness = tempObjs[i];
-            }
+            store.add(solution.getVariables().get(j).getValue(), true);
         }
-        return fitness;
     }
 
     public double[] computeWireAndTemp(Solution<ComponentVariable> solution) {
-        boolean feasibleI = true, feasibleJ = true;
         double[] objs = new double[cfg.numPowerProfiles + 1];
-        double dist = 0.0;
-
-        int xLI, xRI, xLJ, xRJ, yUI, yDI, yUJ, yDJ, dx, dy, dz;
-        int idFrom, idTo;
-        ArrayList<ComponentVariable> variables = solution.getVariables();
-        for (int i = 0; i < variables.size() - 1; ++i) {
-            feasibleI = true;
-            Component cI = variables.get(i).getValue();
-            xLI = cI.x;
-            xRI = cI.x + cI.l;
-            yUI = cI.y;
-            yDI = cI.y + cI.w;
-            if (cI.x < 0 || cI.y < 0 || cI.z < 0) {
-                feasibleI = false;
+        store.clear();
+        for (ComponentVariable variable : solution.getVariables()) {
+            Component c = variable.getValue();
+            store.add(c, c.x >= 0 && c.y >= 0 && c.z >= 0);
+        }
+        int xLI, xRI, xLJ, xRJ, yUI, yDI, yUJ, yDJ, dx, dy;
+        int[] x = store.x, y = store.y, z = store.z, l = store.l, w = store.w;
+        for (int k = 0; k < store.couplingFrom.length; ++k) {
+            int i = store.position[store.couplingFrom[k]];
+            int j = store.position[store.couplingTo[k]];
+            if (i < 0 || j < 0) {
+                continue;
             }
-            idFrom = cI.id;
-            for (int j = i + 1; j < variables.size(); ++j) {
-                feasibleJ = true;
-                Component cJ = variables.get(j).getValue();
-                if (cJ.x < 0 || cJ.y < 0 || cJ.z < 0) {
-                    feasibleJ = false;
-                }
-                idTo = cJ.id;
-                // Calculamos el cableado:
-                if ((cfg.couplings.containsKey(idFrom) && cfg.couplings.get(idFrom).contains(idTo))
-                        || (cfg.couplings.containsKey(idTo) && cfg.couplings.get(idTo).contains(idFrom))) {
-                    if (feasibleI && feasibleJ) {
-                        xLJ = cJ.x;
-                        xRJ = cJ.x + cJ.l;
-                        yUJ = cJ.y;
-                        yDJ = cJ.y + cJ.w;
-                        dz = Math.abs(cI.z - cJ.z);
-                        if (dz > 0) { // Prohibimos esta opción
-                            objs[0] += MaxWireLength;
-                        } else {
-                            if ((xLI >= xLJ && xLI <= xRJ) || (xRI >= xLJ && xRI <= xRJ)) {
-                                dx = 0;
-                            } else {
-                                dx = Math.min(Math.abs(xLI - xLJ), Math.abs(xLI - xRJ));
-                                dx = Math.min(Math.abs(xRI - xLJ), dx);
-                                dx = Math.min(Math.abs(xRI - xRJ), dx);
-                            }
-                            if ((yUI >= yUJ && yUI <= yDJ) || (yDI >= yUJ && yDI <= yDJ)) {
-                                dy = 0;
-                            } else {
-                                dy = Math.min(Math.abs(yUI - yUJ), Math.abs(yUI - yDJ));
-                                dy = Math.min(Math.abs(yDI - yUJ), dy);
-                                dy = Math.min(Math.abs(yDI - yDJ), dy);
-                            }
-                            objs[0] += dx + dy;
-                        }
-                    } else {
-                        objs[0] += MaxWireLength;
-                    }
-                }
-                // Ahora Calculamos el impacto térmico:
-                if (feasibleI && feasibleJ) {
-                    dist = Math.sqrt(Math.pow(cI.x + cI.l / 2.0 - cJ.x - cJ.l / 2.0, 2) + Math.pow(cI.y + cI.w / 2.0 - cJ.y - cJ.w / 2.0, 2) + Math.pow(cI.z + cI.h / 2.0 - cJ.z - cJ.h / 2.0, 2));
-                    for (int p = 0; p < cfg.numPowerProfiles; ++p) {
-                        // Potencia: Minimiza temperaturas máximas
-                        objs[p + 1] += ((cI.dps[p] / cfg.maxDP) * (cJ.dps[p] / cfg.maxDP)) / dist;
-                        // Distancia: Minimiza temperaturas promedio
-                        //objs[p + 1] -= dist / ((cI.dps[p] / cfg.maxDP) * (cJ.dps[p] / cfg.maxDP));
-                    }
-                } else {
-                    for (int p = 0; p < cfg.numPowerProfiles; ++p) {
-                        objs[p + 1] += 1.0;
-                    }
-                }
+            if (i > j) { // The overlap test below is not symmetric
+                int tmp = i;
+                i = j;
+                j = tmp;
+            }
+            // Calculamos el cableado:
+            if (!store.valid[i] || !store.valid[j] || z[i] != z[j]) { // Prohibimos esta opción
+                objs[0] += MaxWireLength;
+                continue;
+            }
+            xLI = x[i];
+            xRI = x[i] + l[i];
+            yUI = y[i];
+            yDI = y[i] + w[i];
+            xLJ = x[j];
+            xRJ = x[j] + l[j];
+            yUJ = y[j];
+            yDJ = y[j] + w[j];
+            if ((xLI >= xLJ && xLI <= xRJ) || (xRI >= xLJ && xRI <= xRJ)) {
+                dx = 0;
+            } else {
+                dx = Math.min(Math.abs(xLI - xLJ), Math.abs(xLI - xRJ));
+                dx = Math.min(Math.abs(xRI - xLJ), dx);
+                dx = Math.min(Math.abs(xRI - xRJ), dx);
+            }
+            if ((yUI >= yUJ && yUI <= yDJ) || (yDI >= yUJ && yDI <= yDJ)) {
+                dy = 0;
+            } else {
+                dy = Math.min(Math.abs(yUI - yUJ), Math.abs(yUI - yDJ));
+                dy = Math.min(Math.abs(yDI - yUJ), dy);
+                dy = Math.min(Math.abs(yDI - yDJ), dy);
+            }
+            objs[0] += dx + dy;
+        }
+        // Ahora Calculamos el impacto térmico:
+        double[] temps;
+        if (cfg.thermalTheta > 0) {
+            if (barnesHut == null || barnesHut.getTheta() != cfg.thermalTheta) {
+                barnesHut = new BarnesHutThermal(store, cfg.thermalTheta);
             }
+            temps = barnesHut.compute();
+        } else {
+            temps = thermalProxy.compute(null);
         }
+        System.arraycopy(temps, 0, objs, 1, temps.length);
         return objs;
     }
 
     public double place(Solution<ComponentVariable> solution, int idx) {
-        Component component = solution.getVariables().get(idx).getValue();
+        Component component = solution.getVariables().get(idx).getMutableValue();
         int x = 0, y = 0, z = 0, bestX = -1, bestY = -1, bestZ = -1;
         double currentObj = Double.POSITIVE_INFINITY, bestObj = Double.POSITIVE_INFINITY;
+        if (component.type == Component.TYPE_CORE) {
+            loadPlaced(solution, idx);
+        }
         for (z = component.zMin; z <= component.zMax; ++z) {
             for (x = component.xMin; x <= component.xMax; ++x) {
                 for (y = component.yMin; y <= component.yMax; ++y) {
@@ -271,7 +301,7 @@ public class FloorplanGenetic extends Problem<ComponentVariable> {
                     if (freeCells[x][y][z] && feasible(solution, idx)) {
                         // Calculamos el objetivo
                         if (component.type == Component.TYPE_CORE) {
-                            currentObj = fitnessTemp(solution, idx);
+                            currentObj = fitnessTemp(component);
                         } else {
                             currentObj = fitnessWire(solution, idx);
                         }
@@ -291,12 +321,21 @@ public class FloorplanGenetic extends Problem<ComponentVariable> {
         if (bestX < 0 || bestY < 0 || bestZ < 0) {
             return 1.0;
         }
-        for (x = component.x; x < component.x + component.l; ++x) {
-            for (y = component.y; y < component.y + component.w; ++y) {
-                freeCells[x][y][bestZ] = false;
+        occupy(component);
+        return 0.0;
+    }
+
+    /**
+     * Marks the cells of a placed block as used.
+     *
+     * @param component Placed block
+     */
+    protected void occupy(Component component) {
+        for (int x = component.x; x < component.x + component.l; ++x) {
+            for (int y = component.y; y < component.y + component.w; ++y) {
+                freeCells[x][y][component.z] = false;
             }
         }
-        return 0.0;
     }
 
     public boolean feasible(Solution<ComponentVariable> solution, int idx) {
@@ -333,13 +372,24 @@ public class FloorplanGenetic extends Problem<ComponentVariable> {
 
     public static void main(String[] args) {
         if (args.length < 1) {
-            System.out.println("Usage: java -jar FloorplanGenetic.jar -xml XmlFilePath [-saveRes SaveRes] [-numIndi NumIndi] [-numGene NumGene] [-seed Seed]");
+            System.out.println("Usage: java -jar FloorplanGenetic.jar -xml XmlFilePath [-saveRes SaveRes] [-numIndi NumIndi] [-numGene NumGene] [-seed Seed] [-islands NumIslands] [-migInterval MigInterval] [-migSize MigSize] [-topology Topology] [-checkpoint Interval] [-resume] [-patience Patience] [-fastSort] [-tempAggregation TempAggregation] [-thermalTheta Theta] [-gzip]");
             System.out.println("Where:");
             System.out.println("XmlFilePath: Scenario path file (Absolute or relative)");
             System.out.println("SaveRes: Save results. If 1 the non-dominated front is saved after the last generation. If 2 the population is saved after each generation, and the non-dominated front is saved at the end");
             System.out.println("NumIndi: Number of individuals (100 by default)");
             System.out.println("NumGene: Number of generations (Max(250,NumComponents) by default)");
             System.out.println("Seed: The seed for the random number generator. If provided, it is used just in the last simulation");
+            System.out.println("NumIslands: Number of NSGAII islands running in parallel, each one with NumIndi individuals (1 by default). Every island runs in its own JVM with its own random generator, so runs with a Seed can be reproduced. Not compatible with -checkpoint, -resume, -patience and -fastSort");
+            System.out.println("MigInterval: Generations between migrations (10 by default)");
+            System.out.println("MigSize: Number of solutions sent in each migration (2 by default)");
+            System.out.println("Topology: Migration topology, RING or RANDOM (RING by default)");
+            System.out.println("Interval: Generations between checkpoints of the population, stored in XmlFilePath with extension .ckpt (0, no checkpoints, by default)");
+            System.out.println("-resume: Resume the run from the last checkpoint, if any");
+            System.out.println("-fastSort: Use the O(N log N) non-dominated sorting for the ranking stage (recommended with large populations)");
+            System.out.println("TempAggregation: How the thermal impact of the power profiles is aggregated when a core is placed, MAX or MEAN (MAX by default)");
+            System.out.println("Theta: Opening angle of the Barnes-Hut approximation of the thermal objectives, e.g. 0.5 (0, exact computation, by default)");
+            System.out.println("-gzip: Save the results compressed with gzip (.xml.gz)");
+            System.out.println("Patience: Stop if the hypervolume of the non-dominated archive does not improve during this number of generations (0, never stop, by default)");
             return;
         }
         HeroLogger.setup(Level.INFO);
@@ -348,6 +398,17 @@ public class FloorplanGenetic extends Problem<ComponentVariable> {
         Integer numIndi = null;
         Integer numGene = null;
         Long seed = null;
+        Integer numIslands = 1;
+        Integer migInterval = 10;
+        Integer migSize = 2;
+        IslandModel.Topology topology = IslandModel.Topology.RING;
+        Integer checkpointInterval = 0;
+        boolean resume = false;
+        boolean fastSort = false;
+        boolean gzip = false;
+        Integer patience = 0;
+        ThermalProxy.Aggregation tempAggregation = ThermalProxy.Aggregation.MAX;
+        Double thermalTheta = 0.0;
         for (int i = 0; i < args.length - 1; ++i) {
             if (args[i].equals("-xml")) {
                 xmlFilePath = args[i + 1];
@@ -359,12 +420,42 @@ public class FloorplanGenetic extends Problem<ComponentVariable> {
                 numGene = Integer.valueOf(args[i + 1]);
             } else if (args[i].equals("-seed")) {
                 seed = Long.valueOf(args[i + 1]);
+            } else if (args[i].equals("-islands")) {
+                numIslands = Integer.valueOf(args[i + 1]);
+            } else if (args[i].equals("-migInterval")) {
+                migInterval = Integer.valueOf(args[i + 1]);
+            } else if (args[i].equals("-migSize")) {
+                migSize = Integer.valueOf(args[i + 1]);
+            } else if (args[i].equals("-topology")) {
+                topology = IslandModel.Topology.valueOf(args[i + 1].toUpperCase());
+            } else if (args[i].equals("-checkpoint")) {
+                checkpointInterval = Integer.valueOf(args[i + 1]);
+            } else if (args[i].equals("-patience")) {
+                patience = Integer.valueOf(args[i + 1]);
+            } else if (args[i].equals("-tempAggregation")) {
+                tempAggregation = ThermalProxy.Aggregation.valueOf(args[i + 1].toUpperCase());
+            } else if (args[i].equals("-thermalTheta")) {
+                thermalTheta = Double.valueOf(args[i + 1]);
             }
         }
+        for (String arg : args) {
+            if (arg.equals("-resume")) {
+                resume = true;
+            } else if (arg.equals("-fastSort")) {
+                fastSort = true;
+            } else if (arg.equals("-gzip")) {
+                gzip = true;
+            }
+        }
+        if (numIslands > 1 && (checkpointInterval > 0 || resume || patience > 0 || fastSort)) {
+            LOGGER.severe("-checkpoint, -resume, -patience and -fastSort are not supported with -islands");
+            return;
+        }
         if (seed != null) {
             RandomGenerator.setSeed(seed);
         }
         FloorplanConfiguration cfg = new FloorplanConfiguration(xmlFilePath);
+        cfg.setThermalTheta(thermalTheta);
         if (numIndi == null) {
             numIndi = 100;
         }
@@ -375,14 +466,84 @@ public class FloorplanGenetic extends Problem<ComponentVariable> {
             }
         }
         FloorplanGenetic problem = new FloorplanGenetic(cfg);
-        NSGAII<ComponentVariable> algorithm = new NSGAII<ComponentVariable>(problem, numIndi, numGene, new ComponentVariable.ComponentMutation(1.0 / problem.getNumberOfVariables()), new CycleCrossover<ComponentVariable>(), new BinaryTournamentNSGAII<ComponentVariable>());
+        problem.setTempAggregation(tempAggregation);
+        problem.setGzipResults(gzip);
+        if (numIslands > 1) {
+            final double mutationProbability = 1.0 / problem.getNumberOfVariables();
+            IslandModel<ComponentVariable> islandModel = new IslandModel<ComponentVariable>(problem, numIslands, numIndi, numGene, new IslandModel.OperatorFactory<ComponentVariable>() {
+                @Override
+                public MutationOperator<ComponentVariable> newMutation() {
+                    return new ComponentVariable.ComponentMutation(mutationProbability);
+                }
+
+                @Override
+                public CrossoverOperator<ComponentVariable> newCrossover() {
+                    return new CycleCrossover<ComponentVariable>();
+                }
+
+                @Override
+                public SelectionOperator<ComponentVariable> newSelection() {
+                    return new BinaryTournamentNSGAII<ComponentVariable>();
+                }
+            });
+            if (seed != null) {
+                islandModel.setSeed(seed);
+            }
+            islandModel.setMigrationInterval(migInterval);
+            islandModel.setMigrationSize(migSize);
+            islandModel.setTopology(topology);
+            islandModel.setProcesses(new ComponentVariable.ComponentCodec(cfg.components), FloorplanGenetic.class, args);
+            if (IslandModel.isWorker()) {
+                try {
+                    islandModel.runWorker();
+                } catch (IOException ex) {
+                    LOGGER.log(Level.SEVERE, null, ex);
+                    System.exit(1);
+                }
+                return;
+            }
+            LOGGER.info("Running " + numIslands + " islands ...");
+            Solutions<ComponentVariable> solutions = islandModel.execute();
+            if (saveRes > 0) {
+                try {
+                    problem.save(solutions, xmlFilePath);
+                } catch (IOException ex) {
+                    LOGGER.log(Level.SEVERE, null, ex);
+                }
+            }
+            return;
+        }
+        NSGAII<ComponentVariable> algorithm;
+        if (fastSort) {
+            algorithm = new FastNSGAII<ComponentVariable>(problem, numIndi, numGene, new ComponentVariable.ComponentMutation(1.0 / problem.getNumberOfVariables()), new CycleCrossover<ComponentVariable>(), new BinaryTournamentNSGAII<ComponentVariable>());
+        } else {
+            algorithm = new NSGAII<ComponentVariable>(problem, numIndi, numGene, new ComponentVariable.ComponentMutation(1.0 / problem.getNumberOfVariables()), new CycleCrossover<ComponentVariable>(), new BinaryTournamentNSGAII<ComponentVariable>());
+        }
+        Checkpoint<ComponentVariable> checkpoint = new Checkpoint<ComponentVariable>(xmlFilePath.replaceAll(".xml", ".ckpt"), new ComponentVariable.ComponentCodec(cfg.components));
+        ConvergenceTracker<ComponentVariable> tracker = (patience > 0) ? new ConvergenceTracker<ComponentVariable>(patience) : null;
         LOGGER.info("Initializing ...");
-        algorithm.initialize();
-        int currentGeneration = 0;
+        int currentGeneration = checkpoint.initialize(algorithm, checkpointInterval, resume, tracker);
         while (currentGeneration < numGene) {
             currentGeneration++;
             LOGGER.info("Running generation " + currentGeneration + "/" + numGene + "...");
+            checkpoint.startGeneration(currentGeneration);
             algorithm.step();
+            Metrics.endGeneration();
+            boolean stagnated = tracker != null && tracker.update(algorithm.getCurrentSolution());
+            if (checkpointInterval > 0 && currentGeneration % checkpointInterval == 0) {
+                try {
+                    checkpoint.save(currentGeneration, algorithm.getPopulation(), tracker);
+                } catch (IOException ex) {
+                    LOGGER.log(Level.SEVERE, null, ex);
+                }
+            }
+            if (stagnated) {
+                LOGGER.info("Hypervolume stagnated: " + tracker.getHypervolume() + ". Stopping.");
+                break;
+            }
+            if (tracker != null) {
+                LOGGER.info("Hypervolume = " + tracker.getHypervolume());
+            }
             if (saveRes == 2) {
                 try {
                     String newXmlFilePath = xmlFilePath.replaceAll(".xml", "Gen" + currentGeneration + ".xml");
@@ -393,7 +554,7 @@ public class FloorplanGenetic extends Problem<ComponentVariable> {
             }
         }
         if (saveRes > 0) {
-            Solutions<ComponentVariable> solutions = algorithm.getCurrentSolution();
+            Solutions<ComponentVariable> solutions = (tracker != null && tracker.getArchive() != null) ? tracker.getArchive().getSolutions() : algorithm.getCurrentSolution();
             try {
                 problem.save(solutions, xmlFilePath);
             } catch (IOException ex) {
@@ -403,36 +564,44 @@ public class FloorplanGenetic extends Problem<ComponentVariable> {
 
     }
 
+    /**
+     * Saves every solution in its own file, named after xmlFilePath and the
+     * objectives of the solution, with the limits of the blocks fixed to
+     * their positions. The configuration is not modified.
+     *
+     * @param solutions Solutions to save
+     * @param xmlFilePath Base path, ".gz" is appended if gzipResults is set
+     * @throws IOException
+     */
     public void save(Solutions<ComponentVariable> solutions, String xmlFilePath) throws IOException {
+        FloorplanXmlWriter writer = new FloorplanXmlWriter();
+        writer.setFixedLimits(true);
+        HashMap<Integer, Component> placed = new HashMap<Integer, Component>(cfg.components.size() * 2);
+        ArrayList<Component> blocks = new ArrayList<Component>(cfg.components.size());
         for (Solution<ComponentVariable> solution : solutions) {
-            ArrayList<ComponentVariable> variables = solution.getVariables();
-            for (int i = 0; i < variables.size(); ++i) {
-                Component c = variables.get(i).getValue();
-                if (c.id < 0) // Es un operador
+            placed.clear();
+            for (ComponentVariable variable : solution.getVariables()) {
+                Component c = variable.getValue();
+                if (c.id >= 0) // Si no es un operador
                 {
-                    continue;
+                    placed.put(c.id, c);
                 }
-                Component cCfg = cfg.components.get(c.id);
-                cCfg.x = c.x;
-                cCfg.xMin = c.x;
-                cCfg.xMax = c.x;
-                cCfg.y = c.y;
-                cCfg.yMin = c.y;
-                cCfg.yMax = c.y;
-                cCfg.z = c.z;
-                cCfg.zMin = c.z;
-                cCfg.zMax = c.z;
-                cCfg.l = c.l;
-                cCfg.w = c.w;
-                cCfg.h = c.h;
+            }
+            // Blocks in the order of the configuration:
+            blocks.clear();
+            for (Component cCfg : cfg.components.values()) {
+                Component c = placed.get(cCfg.id);
+                blocks.add((c != null) ? c : cCfg);
             }
             String newXmlFilePathSuffix = "_" + this.getClass().getSimpleName() + "_" + solution.getObjectives().get(FloorplanGenetic.OBJ_UNFEASIBLE) + "_" + solution.getObjectives().get(FloorplanGenetic.OBJ_WIRELENGTH);
             for (int p = 0; p < cfg.numPowerProfiles; ++p) {
                 newXmlFilePathSuffix += "_" + solution.getObjectives().get(FloorplanGenetic.OBJ_FIRST_TEMP + p);
             }
             newXmlFilePathSuffix += ".xml";
-            cfg.xmlFilePath = xmlFilePath.replaceAll(".xml", newXmlFilePathSuffix);
-            cfg.save();
+            if (gzipResults) {
+                newXmlFilePathSuffix += FloorplanXmlWriter.GZIP_EXTENSION;
+            }
+            writer.write(cfg, blocks, xmlFilePath.replaceAll(".xml", newXmlFilePathSuffix));
         }
     }
 
@@ -143,7 +143,7 @@ public class FloorplanGeneticAsocTemp extends Problem<ComponentVariable> {
     }
 
     public double place(Solution<ComponentVariable> solution, int idx) {
-        Component component = solution.getVariables().get(idx).getValue();
+        Component component = solution.getVariables().get(idx).getMutableValue();
         int x = 0, y = 0, z = 0, bestX = -1, bestY = -1, bestZ = -1;
         double currentObj = Double.POSITIVE_INFINITY, bestObj = Double.POSITIVE_INFINITY;
         for (z = component.zMin; z <= component.zMax; ++z) {
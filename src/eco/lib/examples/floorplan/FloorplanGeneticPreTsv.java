@@ -21,6 +21,7 @@ package eco.lib.examples.floorplan;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,8 +36,19 @@ public class FloorplanGeneticPreTsv extends FloorplanGenetic {
 
     private static final Logger logger = Logger.getLogger(FloorplanGeneticPreTsv.class.getName());
 
+    // For every cell, the lowest layer from which it is free up to the top
+    // layer. Cells not stamped with the current evaluation are still free:
+    protected int[][] lowestFree;
+    protected int[][] stamps;
+    protected int stamp = 0;
+    // Number of cells per lowest free layer:
+    protected int[] numCells;
+
     public FloorplanGeneticPreTsv(FloorplanConfiguration cfg) {
         super(cfg);
+        lowestFree = new int[cfg.maxLengthInCells][cfg.maxWidthInCells];
+        stamps = new int[cfg.maxLengthInCells][cfg.maxWidthInCells];
+        numCells = new int[cfg.numLayers + 1];
     }
 
     @Override
@@ -45,8 +57,30 @@ public class FloorplanGeneticPreTsv extends FloorplanGenetic {
         return clone;
     }
 
+    @Override
+    protected void occupy(Component component) {
+        super.occupy(component);
+        int z = component.z;
+        for (int x = component.x; x < component.x + component.l; ++x) {
+            for (int y = component.y; y < component.y + component.w; ++y) {
+                if (stamps[x][y] != stamp) {
+                    stamps[x][y] = stamp;
+                    lowestFree[x][y] = 0;
+                }
+                if (z >= lowestFree[x][y]) {
+                    numCells[lowestFree[x][y]]--;
+                    lowestFree[x][y] = z + 1;
+                    numCells[z + 1]++;
+                }
+            }
+        }
+    }
+
     @Override
     public void evaluate(Solution<ComponentVariable> solution) {
+        stamp++;
+        Arrays.fill(numCells, 0);
+        numCells[0] = cfg.maxLengthInCells * cfg.maxWidthInCells;
         super.evaluate(solution);
 
         // ALLOWED POINTS
@@ -54,26 +88,16 @@ public class FloorplanGeneticPreTsv extends FloorplanGenetic {
         // For example, if there are 4 layers (numbered from 0 to 3),
         // we have 3 pairs to create TSVs:
         // - 3-0 (later 3 to layer 0), 3-1 (later 3 to layer 1), 3-2 (later 3 to layer 2)
-        // TODO: This algorithm can be improved because allowedTSVs(3-0) \in allowedTSVs(3-1) \in allowedTSVs(3-2).
-        int xMin = 0, yMin = 0;
-        int xMax = cfg.maxLengthInCells, yMax = cfg.maxWidthInCells, zMax = cfg.numLayers - 1;
+        // The cells allowed for the pair i-zMax are those free from layer i
+        // up to zMax, counted during the placement.
+        int zMax = cfg.numLayers - 1;
         int[] startIndex = new int[zMax];
         int[] endIndex = new int[zMax];
-        boolean allowed;
+        int allowed = 0;
         for (int i = 0; i < zMax; ++i) {
+            allowed += numCells[i];
             startIndex[i] = (i == 0) ? 0 : endIndex[i - 1];
-            endIndex[i] = startIndex[i];
-            for (int x = xMin; x < xMax; ++x) {
-                for (int y = yMin; y < yMax; ++y) {
-                    allowed = freeCells[x][y][zMax];
-                    for (int z = i; allowed && z < zMax; ++z) {
-                        allowed = allowed && freeCells[x][y][z];
-                    }
-                    if (allowed) {
-                        endIndex[i]++;
-                    }
-                }
-            }
+            endIndex[i] = startIndex[i] + allowed;
         }
 
         // FEASIBILITY
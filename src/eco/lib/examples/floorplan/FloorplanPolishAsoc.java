@@ -62,6 +62,7 @@ public class FloorplanPolishAsoc extends Problem<PostfixVariable> {
   protected boolean useDefaultDesign = true; // Tells if we set the first random individual equal to the original benchmark design
   protected double wireBase = 0.0;
   protected double tempBase = 0.0;
+  protected SlicingEvaluator slicing;
 
   public FloorplanPolishAsoc(FloorplanConfiguration cfg, BENCHMARK_TYPE benchmarkType, boolean useDefaultDesign, OPTIMIZATION_TYPE optimizationType, int numberOfObjectives) {
     super(cfg.components.size(), numberOfObjectives);
@@ -74,6 +75,15 @@ public class FloorplanPolishAsoc extends Problem<PostfixVariable> {
     operators.add(new Component(-1, "Z"));
     wireBase = cfg.computeWireObj();
     tempBase = cfg.computeTempObj()[0];
+    slicing = new SlicingEvaluator(cfg);
+  }
+
+  /**
+   * @param rotateBlocks If true, every evaluation selects the orientation of
+   * the blocks from the shape curves of the slicing tree
+   */
+  public void setRotateBlocks(boolean rotateBlocks) {
+    slicing.setRotateBlocks(rotateBlocks);
   }
 
   @Override
@@ -108,25 +118,11 @@ public class FloorplanPolishAsoc extends Problem<PostfixVariable> {
   }
 
   public void evaluate(Solution<PostfixVariable> solution) {
-    int currentLength = 0;
-    int currentWidth = 0;
-    int currentHeight = 0;
     double dist = 0.0;
-    LinkedList<Component> stack = this.buildStackFromSolution(solution);
-    BinaryNode<Component> root = this.buildTreeFromStack(stack);
-    LinkedList<BinaryNode<Component>> floorplans = this.splicer(root);
-    if (root != null && !root.getValue().name.equals("Z")) {
-      floorplans.addFirst(root);
-    }
-    for (BinaryNode<Component> floorplan : floorplans) {
-      this.allocate(floorplan, currentHeight++);
-      if (floorplan.getValue().l > currentLength) {
-        currentLength = floorplan.getValue().l;
-      }
-      if (floorplan.getValue().w > currentWidth) {
-        currentWidth = floorplan.getValue().w;
-      }
-    }
+    slicing.evaluate(solution);
+    int currentLength = slicing.getLength();
+    int currentWidth = slicing.getWidth();
+    int currentHeight = slicing.getNumLayers();
 
     double wireObj = 0;
     double tempObj = 0;
@@ -334,14 +330,15 @@ public class FloorplanPolishAsoc extends Problem<PostfixVariable> {
   }
 
   public static void main(String[] args) {
-    if (args.length != 5) {
-      System.out.println("Usage: java -jar FloorplanPolishAsoc.jar <XmlFilePath> <N3H48|N3H64|N3H128> <true|false> <TEMP|WIRE|WEIGHTED_SUM|MULTI_OBJECTIVE> <TimeInSeconds>");
+    if (args.length != 5 && args.length != 6) {
+      System.out.println("Usage: java -jar FloorplanPolishAsoc.jar <XmlFilePath> <N3H48|N3H64|N3H128> <true|false> <TEMP|WIRE|WEIGHTED_SUM|MULTI_OBJECTIVE> <TimeInSeconds> [<true|false>]");
       System.out.println("Where:");
       System.out.println("<XmlFilePath>: Scenario path file (Absolute or relative)");
       System.out.println("<N3H48|N3H64|N3H128>: Benchmark being optimized");
       System.out.println("<true|false>: Use default design as seed, set this design as one individual of the first random population");
       System.out.println("<TEMP|WIRE|WEIGHTED_SUM|MULTI_OBJECTIVE>: Mono-objective (temp, wire, and weighted sum) or multi-objective (temp and wire)");
       System.out.println("<TimeInSeconds>: Execution time in seconds");
+      System.out.println("[<true|false>]: Optimal block orientation from shape curves, instead of mutating it (false by default)");
       args = new String[5];
       args[0] = "D:\\jlrisco\\TrabajoExtra\\2012_AppliedSoftComputing\\Results\\N3HC128.xml";
       args[1] = "N3H128";
@@ -356,6 +353,7 @@ public class FloorplanPolishAsoc extends Problem<PostfixVariable> {
     Boolean useDefaultDesign = Boolean.valueOf(args[2]);
     OPTIMIZATION_TYPE optimizationType = OPTIMIZATION_TYPE.valueOf(args[3]);
     Long timeInMiliSeconds = 1000 * Long.valueOf(args[4]);
+    boolean rotateBlocks = (args.length > 5) && Boolean.valueOf(args[5]);
 
     BufferedWriter writer = null;
     try {
@@ -373,7 +371,8 @@ public class FloorplanPolishAsoc extends Problem<PostfixVariable> {
 
     FloorplanConfiguration cfg = new FloorplanConfiguration(xmlFilePath);
     FloorplanPolishAsoc problem = new FloorplanPolishAsoc(cfg, benchmarkType, useDefaultDesign, optimizationType, numberOfObjectives);
-    NSGAII<PostfixVariable> algorithm = new NSGAII<PostfixVariable>(problem, numIndi, numGene, new PostfixVariable.PostfixMutation(1.0 / problem.getNumberOfVariables()), new CycleCrossover<PostfixVariable>(), new BinaryTournamentNSGAII<PostfixVariable>());
+    problem.setRotateBlocks(rotateBlocks);
+    NSGAII<PostfixVariable> algorithm = new NSGAII<PostfixVariable>(problem, numIndi, numGene, new PostfixVariable.PostfixMutation(1.0 / problem.getNumberOfVariables(), !rotateBlocks), new CycleCrossover<PostfixVariable>(), new BinaryTournamentNSGAII<PostfixVariable>());
 
     logger.info("Initializing ...");
     algorithm.initialize();
@@ -490,7 +489,7 @@ public class FloorplanPolishAsoc extends Problem<PostfixVariable> {
   }
 
   public Solutions<PostfixVariable> optimize(Integer numIndi, Integer numGene) {
-    NSGAII<PostfixVariable> moga = new NSGAII<PostfixVariable>(this, numIndi, numGene, new PostfixVariable.PostfixMutation(1.0 / this.getNumberOfVariables()), new CycleCrossover<PostfixVariable>(), new BinaryTournamentNSGAII<PostfixVariable>());
+    NSGAII<PostfixVariable> moga = new NSGAII<PostfixVariable>(this, numIndi, numGene, new PostfixVariable.PostfixMutation(1.0 / this.getNumberOfVariables(), !slicing.rotateBlocks), new CycleCrossover<PostfixVariable>(), new BinaryTournamentNSGAII<PostfixVariable>());
     moga.initialize();
     Solutions<PostfixVariable> solutions = moga.execute();
     return solutions;
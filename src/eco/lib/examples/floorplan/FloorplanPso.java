@@ -21,6 +21,7 @@ package eco.lib.examples.floorplan;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -51,6 +52,8 @@ public class FloorplanPso extends Problem<Variable<Double>> {
   protected FloorplanConfiguration cfg;
   protected ArrayList<Component> components = new ArrayList<Component>();
   protected boolean[][] feasibleIJ;
+  protected ComponentStore store;
+  protected ThermalProxy thermalProxy;
   protected int MaxWireLength = Integer.MAX_VALUE;
 
   public FloorplanPso(FloorplanConfiguration cfg) {
@@ -60,6 +63,8 @@ public class FloorplanPso extends Problem<Variable<Double>> {
       components.add(c.clone());
     }
     feasibleIJ = new boolean[components.size()][components.size()];
+    store = new ComponentStore(cfg);
+    thermalProxy = new ThermalProxy(store);
     Component c = null;
     for (int i = 0; i < components.size(); i++) {
       c = components.get(i);
@@ -115,6 +120,10 @@ public class FloorplanPso extends Problem<Variable<Double>> {
       c.y = (int) Math.round(solution.getVariables().get(3 * i + 1).getValue());
       c.z = (int) Math.round(solution.getVariables().get(3 * i + 2).getValue());
     }
+    store.clear();
+    for (Component component : components) {
+      store.add(component, true);
+    }
     double unfeasible = feasibility();
     double[] objs = computeWireAndTemp();
     solution.getObjectives().set(FloorplanPso.OBJ_UnFeasible, unfeasible);
@@ -126,81 +135,75 @@ public class FloorplanPso extends Problem<Variable<Double>> {
       bestFeasibility = unfeasible;
       logger.info("Best solution found: " + solution.toString());
     }
-    if (unfeasible==0 && objs[1] < bestTemperature) {
-      bestTemperature = objs[1];
+    double temperature = ThermalProxy.aggregate(Arrays.copyOfRange(objs, 1, objs.length), ThermalProxy.Aggregation.MAX);
+    if (unfeasible==0 && temperature < bestTemperature) {
+      bestTemperature = temperature;
       logger.info("Best temperature found: " + solution.toString());
     }
 
   }
 
   public double[] computeWireAndTemp() {
-    double[] fitness = {0.0, 0.0};
-    double dist = 0.0;
-
-    int idFrom, idTo;
-    for (int i = 0; i < components.size() - 1; ++i) {
-      Component cI = components.get(i);
-      idFrom = cI.id;
-      for (int j = i + 1; j < components.size(); ++j) {
-        Component cJ = components.get(j);
-        idTo = cJ.id;
-        // Calculamos el cableado:
-        if ((cfg.couplings.containsKey(idFrom) && cfg.couplings.get(idFrom).contains(idTo))
-                || (cfg.couplings.containsKey(idTo) && cfg.couplings.get(idTo).contains(idFrom))) {
-          if (feasibleIJ[i][i] && feasibleIJ[j][j] && feasibleIJ[i][j]) {
-            fitness[0] += Math.abs(cI.x + cI.l / 2 - cJ.x - cJ.l / 2) + Math.abs(cI.y + cI.w / 2 - cJ.y - cJ.w / 2) + Math.abs(cI.z - cJ.z);
-          } else {
-            fitness[0] += MaxWireLength;
-          }
-        }
-        // Ahora Calculamos el impacto térmico:
-        if (feasibleIJ[i][i] && feasibleIJ[j][j] && feasibleIJ[i][j]) {
-          dist = Math.sqrt(Math.pow(cI.x + cI.l / 2.0 - cJ.x - cJ.l / 2.0, 2) + Math.pow(cI.y + cI.w / 2.0 - cJ.y - cJ.w / 2.0, 2) + Math.pow(cI.z + cI.h / 2.0 - cJ.z - cJ.h / 2.0, 2));
-          fitness[1] += ((cI.dps[0] / cfg.maxDP) * (cJ.dps[0] / cfg.maxDP)) / dist;
-        } else {
-          fitness[1] += 1.0;
-        }
+    double[] fitness = new double[cfg.numPowerProfiles + 1];
+    int[] x = store.x, y = store.y, z = store.z, l = store.l, w = store.w;
+    for (int k = 0; k < store.couplingFrom.length; ++k) {
+      int i = store.position[store.couplingFrom[k]];
+      int j = store.position[store.couplingTo[k]];
+      if (i < 0 || j < 0) {
+        continue;
       }
+      // Calculamos el cableado:
+      if (feasibleIJ[i][i] && feasibleIJ[j][j] && feasibleIJ[i][j]) {
+        fitness[0] += Math.abs(x[i] + l[i] / 2 - x[j] - l[j] / 2) + Math.abs(y[i] + w[i] / 2 - y[j] - w[j] / 2) + Math.abs(z[i] - z[j]);
+      } else {
+        fitness[0] += MaxWireLength;
+      }
+    }
+    // Ahora Calculamos el impacto térmico de todos los perfiles de potencia:
+    for (int i = 0; i < store.size(); ++i) {
+      store.valid[i] = feasibleIJ[i][i];
     }
+    double[] temps = thermalProxy.compute(feasibleIJ);
+    System.arraycopy(temps, 0, fitness, 1, temps.length);
     return fitness;
   }
 
   public double feasibility() {
-    for (int i = 0; i < components.size(); ++i) {
-      for (int j = 0; j < components.size(); ++j) {
+    int n = store.size();
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j < n; ++j) {
         feasibleIJ[i][j] = true;
       }
     }
 
     double res = 0.0;
 
-    Component cI = null, cJ = null;
-    for (int i = 0; i < components.size(); ++i) {
-      cI = components.get(i);
+    int[] x = store.x, y = store.y, z = store.z, l = store.l, w = store.w, h = store.h;
+    int[] cx2 = store.cx2, cy2 = store.cy2;
+    for (int i = 0; i < n; ++i) {
       // Límites del chip
-      if (cI.x + cI.l > cfg.maxLengthInCells) {
-        res += cI.x + cI.l - cfg.maxLengthInCells;
+      if (x[i] + l[i] > cfg.maxLengthInCells) {
+        res += x[i] + l[i] - cfg.maxLengthInCells;
         feasibleIJ[i][i] = false;
       }
-      if (cI.y + cI.w > cfg.maxWidthInCells) {
-        res += cI.y + cI.w - cfg.maxWidthInCells;;
+      if (y[i] + w[i] > cfg.maxWidthInCells) {
+        res += y[i] + w[i] - cfg.maxWidthInCells;
         feasibleIJ[i][i] = false;
       }
-      if (cI.z + cI.h > cfg.numLayers) {
-        res += cI.z + cI.h - cfg.numLayers;
+      if (z[i] + h[i] > cfg.numLayers) {
+        res += z[i] + h[i] - cfg.numLayers;
         feasibleIJ[i][i] = false;
       }
-      // No puede haber nada de por medio
-      double dx = 0, dy = 0;
+      // No puede haber nada de por medio (centros dobles, todo entero)
+      int dx2 = 0, dy2 = 0;
       for (int j = 0; j < i; ++j) {
-        cJ = components.get(j);
-        if (cJ.z != cI.z) {
+        if (z[j] != z[i]) {
           continue;
         }
-        dx = Math.abs(cJ.x + cJ.l / 2.0 - cI.x - cI.l / 2.0);
-        dy = Math.abs(cJ.y + cJ.w / 2.0 - cI.y - cI.w / 2.0);
-        if (dx < (cJ.l / 2.0 + cI.l / 2.0) && dy < (cJ.w / 2.0 + cI.w / 2.0)) {
-          res += (cJ.l / 2.0 + cI.l / 2.0) + (cJ.w / 2.0 + cI.w / 2.0) - dx - dy;
+        dx2 = Math.abs(cx2[j] - cx2[i]);
+        dy2 = Math.abs(cy2[j] - cy2[i]);
+        if (dx2 < l[j] + l[i] && dy2 < w[j] + w[i]) {
+          res += (l[j] + l[i] + w[j] + w[i] - dx2 - dy2) / 2.0;
           feasibleIJ[i][j] = false;
           feasibleIJ[j][i] = false;
         }
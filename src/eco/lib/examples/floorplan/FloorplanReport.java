@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+  *  - José Luis Risco Martín
+ */
+package eco.lib.examples.floorplan;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Headless characterization of a directory of floorplans, for example the
+ * solutions saved by FloorplanGenetic. Every XML file (plain or gzipped)
+ * found in the directory (and its subdirectories) is loaded and characterized in
+ * parallel, and a summary CSV file is written with one line per file:
+ * <ul>
+ * <li>Wire length as in FloorplanCharacterize, and edge to edge without and
+ * with TSVs as in Manager's stats (in cells).</li>
+ * <li>Thermal proxy: maximum and average of the power profiles.</li>
+ * <li>Utilization of the chip and of every layer, cells covered by more
+ * than one block, and block cells out of the chip.</li>
+ * <li>Hot spot: the (x, y) position with the highest power density summed
+ * over all the layers (normalized by the maximum density), in the worst
+ * power profile.</li>
+ * </ul>
+ *
+ * @author jlrisco
+ */
+public class FloorplanReport {
+
+    private static final Logger LOGGER = Logger.getLogger(FloorplanReport.class.getName());
+    public static final String HEADER = "File;Blocks;Layers;ThermalVias;Wire;WireWithoutTsvs;WireWithTsvs;TempMax;TempAvg;Utilization;LayerUtilization;OverlappedCells;OutOfChipCells;HotSpot;HotSpotX;HotSpotY";
+
+    protected File inputDir;
+    protected int numWorkers;
+    protected double thermalTheta = 0.0;
+
+    public FloorplanReport(String inputDirPath, int numWorkers) {
+        this.inputDir = new File(inputDirPath);
+        this.numWorkers = numWorkers;
+    }
+
+    /**
+     * @param thermalTheta Opening angle of the thermal proxy, see
+     * {@link FloorplanConfiguration#setThermalTheta(double)}
+     */
+    public void setThermalTheta(double thermalTheta) {
+        this.thermalTheta = thermalTheta;
+    }
+
+    /**
+     * @return The XML files (and .xml.gz files) of the input directory,
+     * sorted by path
+     * @throws IOException
+     */
+    public ArrayList<String> findFiles() throws IOException {
+        if (!inputDir.isDirectory()) {
+            throw new IOException("Not a directory: " + inputDir.getPath());
+        }
+        ArrayList<String> files = new ArrayList<>();
+        findFiles(inputDir, files);
+        Collections.sort(files);
+        return files;
+    }
+
+    protected void findFiles(File dir, ArrayList<String> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                findFiles(child, files);
+            } else if (child.getName().endsWith(".xml") || child.getName().endsWith(".xml" + FloorplanXmlWriter.GZIP_EXTENSION)) {
+                files.add(child.getPath());
+            }
+        }
+    }
+
+    /**
+     * Characterizes all the files and writes the summary.
+     *
+     * @param csvFilePath Summary file
+     * @return Number of files characterized
+     * @throws IOException
+     */
+    public int execute(String csvFilePath) throws IOException {
+        ArrayList<String> files = findFiles();
+        LOGGER.info("Characterizing " + files.size() + " files with " + numWorkers + " workers ...");
+        ExecutorService executor = Executors.newFixedThreadPool(numWorkers);
+        ArrayList<Future<String>> futures = new ArrayList<>();
+        for (final String file : files) {
+            futures.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return characterize(file);
+                }
+            }));
+        }
+        int numLines = 0;
+        // Lines are written in the order of the files:
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(csvFilePath))) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (int i = 0; i < futures.size(); ++i) {
+                try {
+                    writer.write(futures.get(i).get());
+                    writer.newLine();
+                    numLines++;
+                } catch (ExecutionException ex) {
+                    LOGGER.log(Level.SEVERE, "Skipping " + files.get(i), ex.getCause());
+                }
+            }
+        } catch (InterruptedException ex) {
+            LOGGER.log(Level.SEVERE, null, ex);
+        } finally {
+            executor.shutdownNow();
+        }
+        LOGGER.info("Done. Summary saved in " + csvFilePath);
+        return numLines;
+    }
+
+    /**
+     * @param xmlFilePath Floorplan
+     * @return Line of the summary
+     * @throws IOException if the file is not a valid floorplan
+     */
+    public String characterize(String xmlFilePath) throws IOException {
+        FloorplanConfiguration cfg = new FloorplanConfiguration(xmlFilePath);
+        if (cfg.numLayers <= 0 || cfg.components.isEmpty()) {
+            throw new IOException("Invalid floorplan: " + xmlFilePath);
+        }
+        cfg.setThermalTheta(thermalTheta);
+        int length = cfg.maxLengthInCells, width = cfg.maxWidthInCells, area = length * width;
+
+        // Utilization (blocks per cell) and power density per (x, y):
+        int[][] numBlocks = new int[cfg.numLayers][area];
+        double[][] stacks = new double[cfg.numPowerProfiles][area];
+        int outOfChip = 0;
+        for (Component c : cfg.components.values()) {
+            for (int x = c.x; x < c.x + c.l; ++x) {
+                for (int y = c.y; y < c.y + c.w; ++y) {
+                    if (x < 0 || x >= length || y < 0 || y >= width || c.z < 0 || c.z >= cfg.numLayers) {
+                        outOfChip++;
+                        continue;
+                    }
+                    numBlocks[c.z][y * length + x]++;
+                    for (int p = 0; p < cfg.numPowerProfiles; ++p) {
+                        stacks[p][y * length + x] += c.dps[p] / cfg.maxDP;
+                    }
+                }
+            }
+        }
+        int used = 0, overlapped = 0;
+        StringBuilder layerUtilization = new StringBuilder();
+        for (int z = 0; z < cfg.numLayers; ++z) {
+            int usedInLayer = 0;
+            for (int cell = 0; cell < area; ++cell) {
+                if (numBlocks[z][cell] > 0) {
+                    usedInLayer++;
+                }
+                if (numBlocks[z][cell] > 1) {
+                    overlapped++;
+                }
+            }
+            used += usedInLayer;
+            layerUtilization.append((z > 0) ? "|" : "").append((1.0 * usedInLayer) / area);
+        }
+        double hotSpot = 0.0;
+        int hotSpotCell = 0;
+        for (int p = 0; p < cfg.numPowerProfiles; ++p) {
+            for (int cell = 0; cell < area; ++cell) {
+                if (stacks[p][cell] > hotSpot) {
+                    hotSpot = stacks[p][cell];
+                    hotSpotCell = cell;
+                }
+            }
+        }
+
+        double[] temps = cfg.computeTempObj();
+        double tempMax = Double.NEGATIVE_INFINITY, tempAvg = 0.0;
+        for (double temp : temps) {
+            tempMax = Math.max(tempMax, temp);
+            tempAvg += temp / temps.length;
+        }
+
+        StringBuilder line = new StringBuilder();
+        line.append(xmlFilePath).append(";").append(cfg.components.size()).append(";").append(cfg.numLayers).append(";").append(cfg.thermalVias.size());
+        line.append(";").append(cfg.computeWireObj()).append(";").append(cfg.computeWire(false)).append(";").append(cfg.computeWire(true));
+        line.append(";").append(tempMax).append(";").append(tempAvg);
+        line.append(";").append((1.0 * used) / (area * cfg.numLayers)).append(";").append(layerUtilization).append(";").append(overlapped).append(";").append(outOfChip);
+        line.append(";").append(hotSpot).append(";").append(hotSpotCell % length).append(";").append(hotSpotCell / length);
+        return line.toString();
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: java -cp eco-rwa.jar eco.lib.examples.floorplan.FloorplanReport InputDir CsvFilePath [-workers NumWorkers] [-thermalTheta Theta]");
+        System.out.println("Where:");
+        System.out.println("InputDir: Directory with the XML files to characterize (subdirectories included)");
+        System.out.println("CsvFilePath: Summary file, one line per XML file");
+        System.out.println("NumWorkers: Number of files characterized in parallel (number of processors by default)");
+        System.out.println("Theta: Opening angle of the thermal proxy, 0 (exact) by default");
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            printUsage();
+            return;
+        }
+        int numWorkers = Runtime.getRuntime().availableProcessors();
+        double thermalTheta = 0.0;
+        for (int i = 2; i < args.length; ++i) {
+            try {
+                if (args[i].equals("-workers") && i + 1 < args.length) {
+                    numWorkers = Integer.valueOf(args[++i]);
+                    if (numWorkers < 1) {
+                        throw new NumberFormatException();
+                    }
+                } else if (args[i].equals("-thermalTheta") && i + 1 < args.length) {
+                    thermalTheta = Double.valueOf(args[++i]);
+                    if (!(thermalTheta >= 0.0)) {
+                        throw new NumberFormatException();
+                    }
+                } else {
+                    System.out.println("Unknown or incomplete argument: " + args[i]);
+                    printUsage();
+                    return;
+                }
+            } catch (NumberFormatException ex) {
+                System.out.println("Invalid value for " + args[i - 1] + ": " + args[i]);
+                printUsage();
+                return;
+            }
+        }
+        FloorplanReport report = new FloorplanReport(args[0], numWorkers);
+        report.setThermalTheta(thermalTheta);
+        try {
+            report.execute(args[1]);
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, null, ex);
+        }
+    }
+}
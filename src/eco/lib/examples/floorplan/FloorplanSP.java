@@ -27,6 +27,7 @@ import java.util.Iterator;
 import java.util.Random;
 //import jeco.lib.problems.floorplan.FloorplanConfiguration;
 
+import eco.lib.examples.floorplan.util.Move;
 import eco.lib.examples.floorplan.util.Solution;
 
 /**
@@ -49,13 +50,16 @@ public class FloorplanSP extends FloorplanSolution {
     protected double volumeWeight = COMMON_WEIGHT;
     protected double wireWeight = COMMON_WEIGHT;
     protected double temperatureWeight = COMMON_WEIGHT;
-    //-Random number generator-
-    private static Random rnd = new Random();
+    //-Random number generator, shared by the clones of a solution-
+    private Random rnd = new Random();
     /** Sequence Pair codification:
      *  There is una sequence pair for each layer in the 3DIC
      *  The representation consists of an ArrayList of SequencePair 
      */
     protected ArrayList<SequencePair> layerSP = new ArrayList<SequencePair>();
+    //-Cached objective (NaN if it must be computed) and in-place move-
+    private double objective = Double.NaN;
+    private LayerMove move = null;
 
 // ---------------------------------------------------------------- CONSTRUCTORS  
     public FloorplanSP(FloorplanConfiguration configuration) {
@@ -182,16 +186,22 @@ public class FloorplanSP extends FloorplanSolution {
 
     @Override
     public double getObjective() {
+        if (!Double.isNaN(this.objective)) {
+            return this.objective;
+        }
 
         double objective = 0.0;
         long volume = computeVolume();
 
+        wiring = computeWiring();
+        temperature = computeTemperature();
+
         if ((wireWeight == 1.0) || (temperatureWeight == 1.0)) {
-            objective = ((wireWeight * computeWiring())
-                    + (temperatureWeight * computeTemperature()));
+            objective = ((wireWeight * wiring)
+                    + (temperatureWeight * temperature));
         } else {
-            objective = ((wireWeight * computeWiring() / startingWiring)
-                    + (temperatureWeight * computeTemperature() / startingTemp));
+            objective = ((wireWeight * wiring / startingWiring)
+                    + (temperatureWeight * temperature / startingTemp));
         }
 
         if (!isFeasible()) {
@@ -201,6 +211,7 @@ public class FloorplanSP extends FloorplanSolution {
             objective *= penalty;
         }
 
+        this.objective = objective;
         return objective;
         /*------old version---------- 
         // The objective is a weighted function:
@@ -223,45 +234,11 @@ public class FloorplanSP extends FloorplanSolution {
         ArrayList<Solution> succesors = new ArrayList<>();
         FloorplanSP solution = (FloorplanSP) this.clone();
 
-        // Neighbor is generated through 5 different operations:
-        // 1. swap 2 components from layer1 to layer2 = layer1 + {-1,0,+1}
-        // 2. swap 2 entire layers
-        // 3. extract 1 component from layer1 and insert it in layer2
-        // 4. move 2 components in the same layer
-        // 5. move 2 components only in one of the gamma seq.
-
-        // Move random node
-        boolean printOutTrack=false;
-        switch ( rnd.nextInt(5) ) {
-        ///*for tracking and testing*/ switch (1) {   
-            case 0:
-                if (printOutTrack){System.out.println("swapLayers");}
-                swapLayers(solution);
-                break;
-            case 1:
-                if (printOutTrack){System.out.println("swapComponents");     }        
-                swapComponents(solution);
-                break;
-            case 2: //case 3: 
-                if (printOutTrack){System.out.println("moveComponent");}
-                moveComponent(solution);
-                break;
-            case 3: //case 5: 
-                if (printOutTrack){System.out.println("moveComponentSameLayer");}
-                moveComponentSameLayer(solution);
-                break;
-            case 4: //case 7: 
-                if (printOutTrack){System.out.println("swapNeighborSameLayer");}         
-                swapNeighborSameLayer(solution);
-                break;
-            case 5:
-                if (printOutTrack) {System.out.println("swapNeighborsInGamma");}
-                swapNeighborsInGamma(solution);
-                break;
-        }
+        applyRandomOperation(solution);
 
         // New volume has to be computed
         solution.volumeComputed = false;
+        solution.objective = Double.NaN;
         solution.computeVolume();
 
         Solution sol = solution;
@@ -270,6 +247,79 @@ public class FloorplanSP extends FloorplanSolution {
         return Collections.enumeration(succesors);
     }
 
+    @Override
+    public Move getMove() {
+        if (move == null) {
+            move = new LayerMove();
+        }
+        return move;
+    }
+
+    /**
+     * Random neighbourhood move applied in place. The sequence pairs, the
+     * coordinates and the volume are saved before every move, so undoing it
+     * does not need to decode any layer again.
+     */
+    private class LayerMove implements Move {
+
+        private final Component[] components = cfg.components.values().toArray(new Component[0]);
+        private final int[] xs = new int[components.length];
+        private final int[] ys = new int[components.length];
+        private final int[] zs = new int[components.length];
+        private final SequencePair.State[] states = new SequencePair.State[layerSP.size()];
+        private int maxLongX, maxWidthY, maxHeightZ;
+        private double objectiveBefore, wiringBefore, temperatureBefore;
+
+        private LayerMove() {
+            for (int k = 0; k < states.length; k++) {
+                states[k] = new SequencePair.State();
+            }
+        }
+
+        @Override
+        public double apply() {
+            objectiveBefore = getObjective();
+            wiringBefore = wiring;
+            temperatureBefore = temperature;
+            for (int i = 0; i < components.length; i++) {
+                xs[i] = components[i].x;
+                ys[i] = components[i].y;
+                zs[i] = components[i].z;
+            }
+            for (int k = 0; k < states.length; k++) {
+                layerSP.get(k).save(states[k]);
+            }
+            maxLongX = currMaxLongX;
+            maxWidthY = currMaxWidthY;
+            maxHeightZ = currMaxHeightZ;
+
+            applyRandomOperation(FloorplanSP.this);
+            volumeComputed = false;
+            objective = Double.NaN;
+            computeVolume();
+            return getObjective() - objectiveBefore;
+        }
+
+        @Override
+        public void undo() {
+            for (int k = 0; k < states.length; k++) {
+                layerSP.get(k).restore(states[k]);
+            }
+            for (int i = 0; i < components.length; i++) {
+                components[i].x = xs[i];
+                components[i].y = ys[i];
+                components[i].z = zs[i];
+            }
+            currMaxLongX = maxLongX;
+            currMaxWidthY = maxWidthY;
+            currMaxHeightZ = maxHeightZ;
+            volumeComputed = true;
+            objective = objectiveBefore;
+            wiring = wiringBefore;
+            temperature = temperatureBefore;
+        }
+    }
+
     @Override
     public Solution clone() {
 
@@ -280,6 +330,7 @@ public class FloorplanSP extends FloorplanSolution {
         }
         //FloorplanSP clonedSP = new FloorplanSP(this.cfg.clone(), listSPcodif);
         FloorplanSP clonedSP = new FloorplanSP(this.cfg.clone(), listSPcodif, wireWeight, temperatureWeight);
+        clonedSP.rnd = this.rnd;
         clonedSP.startingTemp = this.startingTemp;
         clonedSP.startingWiring = this.startingWiring;
         return clonedSP;
@@ -326,6 +377,37 @@ public class FloorplanSP extends FloorplanSolution {
         return (currMaxLongX * currMaxWidthY * currMaxHeightZ);
     }
 
+    private void applyRandomOperation(FloorplanSP solution) {
+        // Neighbor is generated through 5 different operations:
+        // 1. swap 2 components from layer1 to layer2 = layer1 + {-1,0,+1}
+        // 2. swap 2 entire layers
+        // 3. extract 1 component from layer1 and insert it in layer2
+        // 4. move 2 components in the same layer
+        // 5. move 2 components only in one of the gamma seq.
+
+        // Move random node
+        switch ( rnd.nextInt(5) ) {
+            case 0:
+                swapLayers(solution);
+                break;
+            case 1:
+                swapComponents(solution);
+                break;
+            case 2: //case 3: 
+                moveComponent(solution);
+                break;
+            case 3: //case 5: 
+                moveComponentSameLayer(solution);
+                break;
+            case 4: //case 7: 
+                swapNeighborSameLayer(solution);
+                break;
+            case 5:
+                swapNeighborsInGamma(solution);
+                break;
+        }
+    }
+
     public void show() {
         for (int k = 0; k < layerSP.size(); k++) {
             layerSP.get(k).show(true, true, false, false);
@@ -31,6 +31,7 @@ import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import eco.lib.examples.floorplan.util.MultiStartAnnealer;
 import eco.lib.examples.floorplan.util.SimulatedAnnealingSolver;
 
 /**
@@ -96,6 +97,8 @@ public class FloorplanSPSimulatedAnnealing {
         if (props.getProperty("MaxSeconds") != null) maxSeconds = Long.valueOf(props.getProperty("MaxSeconds"));
 
         FloorplanConfiguration cfg = new FloorplanConfiguration(xmlFilePath);
+        // Opening angle of the Barnes-Hut thermal approximation (0, exact, by default)
+        if (props.getProperty("ThermalTheta") != null) cfg.setThermalTheta(Double.valueOf(props.getProperty("ThermalTheta")));
 
         // Create floorplan using SP notation
         //--TXT Codification file      
@@ -103,13 +106,37 @@ public class FloorplanSPSimulatedAnnealing {
         ArrayList<ArrayList<Integer>> listSPcodif = new ArrayList<ArrayList<Integer>>();
         listSPcodif = loadDataFile(codifSPfile);
         FloorplanSP fpSP = new FloorplanSP(cfg, listSPcodif, wiringWeight, temperatureWeight, seed);
+        // Independent SA chains run in parallel (1, the classic single run)
+        int numChains = 1;
+        if (props.getProperty("NumChains") != null) {
+            numChains = Integer.valueOf(props.getProperty("NumChains"));
+        }
         // Run SA optimization
         logger.log(Level.INFO, "\n# Running SA optimization...\n");
-        SimulatedAnnealingSolver solver = new SimulatedAnnealingSolver(iter, kValue, stopWhenFeasible, seed, maxSeconds);
         String[] tempCad = xmlFilePath.split(File.separator);
-        SimulatedAnnealingSolver.logFile = outputDir + File.separator + tempCad[tempCad.length-1] + "_log" + ".txt";
-
-        FloorplanSP optimizedCfgSP = (FloorplanSP) solver.solve(fpSP);
+        String logFile = outputDir + File.separator + tempCad[tempCad.length-1] + "_log" + ".txt";
+        FloorplanSP optimizedCfgSP;
+        if (numChains <= 1) {
+            SimulatedAnnealingSolver solver = new SimulatedAnnealingSolver(iter, kValue, stopWhenFeasible, seed, maxSeconds);
+            SimulatedAnnealingSolver.logFile = logFile;
+            optimizedCfgSP = (FloorplanSP) solver.solve(fpSP);
+        } else {
+            // The first chain starts from the codification file, the rest from random walks around it
+            ArrayList<FloorplanSP> initials = new ArrayList<>();
+            initials.add(fpSP);
+            for (int i = 1; i < numChains; ++i) {
+                FloorplanSP chainSP = new FloorplanSP(cfg.copy(), listSPcodif, wiringWeight, temperatureWeight, seed + i);
+                initials.add((FloorplanSP) MultiStartAnnealer.randomWalk(chainSP, cfg.components.size()));
+            }
+            MultiStartAnnealer annealer = new MultiStartAnnealer(initials, iter, kValue, stopWhenFeasible, seed, logFile);
+            annealer.setMaxSeconds(maxSeconds);
+            if (props.getProperty("TargetObjective") != null) {
+                annealer.setTargetObjective(Double.valueOf(props.getProperty("TargetObjective")));
+            }
+            MultiStartAnnealer.Incumbent incumbent = annealer.execute();
+            logger.log(Level.INFO, "\n# Best chain: {0}\n", incumbent.getChain());
+            optimizedCfgSP = (FloorplanSP) incumbent.getSolution();
+        }
         
         String xmlNew = outputDir + File.separator + tempCad[tempCad.length-1].replaceAll(".xml", "_FINAL_" + seed + ".xml");
         
@@ -23,6 +23,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.logging.Level;
@@ -44,6 +45,10 @@ public abstract class FloorplanSolution implements Solution {
     
     /** The configuration is needed in order to compute couplings **/
     public FloorplanConfiguration cfg = null;
+
+    /** Wiring and temperature of the objective cached by the subclasses */
+    protected double wiring = Double.NaN;
+    protected double temperature = Double.NaN;
     
     /**
      * Computes the wiring (Manhattan distance) for the wiring of the flooplan
@@ -72,16 +77,21 @@ public abstract class FloorplanSolution implements Solution {
        try {
            // Appending
            BufferedWriter writer = new BufferedWriter(new FileWriter(new File(fileName),true));
-           
-           double obj = getObjective();
-           
-           // # Time Wiring Temperature Feasible Obj.Value
-           writer.write(time + " " + computeWiring() + " " + computeTemperature() + " "+ (isFeasible() ? "1":"0") + " " + obj + "\n");
+           logObjectives(time, writer);
            writer.close();
         } catch (IOException ex) {
            Logger.getLogger(FloorplanDTS.class.getName()).log(Level.SEVERE, null, ex);
         }          
     }    
+
+    /** Logs execution time and objective values to an open writer */
+    public void logObjectives(double time, Writer writer) throws IOException {
+       // Also caches the wiring and the temperature:
+       double obj = getObjective();
+
+       // # Time Wiring Temperature Feasible Obj.Value
+       writer.write(time + " " + wiring + " " + temperature + " "+ (isFeasible() ? "1":"0") + " " + obj + "\n");
+    }
     
     
     
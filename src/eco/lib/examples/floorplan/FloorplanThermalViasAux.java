@@ -19,41 +19,37 @@
  */
 package eco.lib.examples.floorplan;
 
-import java.awt.Point;
 import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import eco.core.algorithm.metaheuristic.moga.NSGAII;
-import eco.core.operator.crossover.SinglePointCrossover;
-import eco.core.operator.mutation.BooleanMutation;
 import eco.core.operator.selection.BinaryTournamentNSGAII;
 import eco.core.problem.Problem;
 import eco.core.problem.Solution;
 import eco.core.problem.Solutions;
-import eco.core.problem.Variable;
 
 public class FloorplanThermalViasAux extends FloorplanTsv {
     public static int OBJ_BoundaryTsvs = 2;
+    // Allowed points in the boundary:
+    protected BitVariable boundary;
 
     public FloorplanThermalViasAux(FloorplanConfiguration configuration) {
         super(configuration);
         super.numberOfObjectives = super.numberOfObjectives + 1;
+        boundary = new BitVariable(numberOfPoints);
+        for (int i = 0; i < numberOfPoints; ++i) {
+            if (allowedXs[i] == conf.maxLengthInCells - 1) {
+                boundary.set(i, true);
+            }
+        }
     }
 
     @Override
-    public void evaluate(Solution<Variable<Boolean>> solution) {
+    public void evaluate(Solution<BitVariable> solution) {
         super.evaluate(solution);
         // We count the number of TSVs in the boundary:
-        double num = 0.0;
-        for(int i=0; i<solution.getVariables().size(); ++i) {
-            if(solution.getVariables().get(i).getValue()) {
-                Point p = allowedPoints.get(i);
-                if(p.x == conf.maxLengthInCells-1) {
-                    num++;
-                }
-            }
-        }
+        double num = solution.getVariables().get(0).cardinality(boundary.getValue());
         solution.getObjectives().set(OBJ_BoundaryTsvs, num);
     }
 
@@ -72,23 +68,14 @@ public class FloorplanThermalViasAux extends FloorplanTsv {
         }
 
         FloorplanThermalViasAux thermalVias = new FloorplanThermalViasAux(conf);
-        NSGAII<Variable<Boolean>> nsga2 = new NSGAII<Variable<Boolean>>(thermalVias, numIndi, numGene, new BooleanMutation<Variable<Boolean>>(1.0 / thermalVias.getNumberOfVariables()), new SinglePointCrossover<Variable<Boolean>>(thermalVias), new BinaryTournamentNSGAII<Variable<Boolean>>());
+        NSGAII<BitVariable> nsga2 = new NSGAII<BitVariable>(thermalVias, numIndi, numGene, new BitVariable.BitMutation(1.0 / thermalVias.getNumberOfPoints()), new BitVariable.BitCrossover(), new BinaryTournamentNSGAII<BitVariable>());
         nsga2.initialize();
-        Solutions<Variable<Boolean>> solutions = nsga2.execute();
+        Solutions<BitVariable> solutions = nsga2.execute();
         Logger.getLogger(FloorplanThermalViasAux.class.getName()).info(solutions.toString());
 
         try {
-            for (Solution<Variable<Boolean>> solution : solutions) {
-                conf.thermalVias.clear();
-                for (int i = 0; i < conf.numLayers - 1; ++i) {
-                    for (int j = thermalVias.startIndex[i]; j < thermalVias.endIndex[i]; ++j) {
-                        if (solution.getVariables().get(j).getValue()) {//If it is a TSV
-                            Point point = thermalVias.allowedPoints.get(j);
-                            ThermalVia thermalVia = new ThermalVia(conf.numLayers - 1, i, point.x, point.y);
-                            conf.thermalVias.add(thermalVia);
-                        }
-                    }
-                }
+            for (Solution<BitVariable> solution : solutions) {
+                thermalVias.loadThermalVias(solution);
                 conf.xmlFilePath = xmlFilePath.replaceAll(".xml", "") + "_" + FloorplanThermalViasAux.class.getSimpleName() + "_" + solution.getObjectives().get(FloorplanThermalViasAux.OBJ_NumThermalVias) + "_" + solution.getObjectives().get(FloorplanThermalViasAux.OBJ_WireLength) + "_" + solution.getObjectives().get(FloorplanThermalViasAux.OBJ_BoundaryTsvs) + ".xml";
                 conf.save();
             }
@@ -98,7 +85,7 @@ public class FloorplanThermalViasAux extends FloorplanTsv {
     }
 
     @Override
-    public Problem<Variable<Boolean>> clone() {
-        throw new UnsupportedOperationException("Not supported yet.");
+    public Problem<BitVariable> clone() {
+        return new FloorplanThermalViasAux(conf);
     }
 }
@@ -21,9 +21,7 @@ package eco.lib.examples.floorplan;
 
 import java.awt.Point;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Set;
@@ -31,21 +29,37 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import eco.core.algorithm.metaheuristic.moga.NSGAII;
-import eco.core.operator.crossover.SinglePointCrossover;
-import eco.core.operator.mutation.BooleanMutation;
+import eco.core.operator.crossover.CrossoverOperator;
+import eco.core.operator.mutation.MutationOperator;
 import eco.core.operator.selection.BinaryTournamentNSGAII;
+import eco.core.operator.selection.SelectionOperator;
 import eco.core.problem.Problem;
 import eco.core.problem.Solution;
 import eco.core.problem.Solutions;
-import eco.core.problem.Variable;
 import eco.core.util.logger.HeroLogger;
+import eco.core.util.random.RandomGenerator;
+import eco.lib.examples.floorplan.util.Checkpoint;
+import eco.lib.examples.floorplan.util.ConvergenceTracker;
+import eco.lib.examples.floorplan.util.FastNSGAII;
+import eco.lib.examples.floorplan.util.IslandModel;
+import eco.unstable.util.metrics.Metrics;
 
-public class FloorplanTsv extends Problem<Variable<Boolean>> {
+/**
+ * Placement of TSVs between the top layer and the rest of the layers. A
+ * solution holds a single {@link BitVariable}, with one bit per allowed
+ * point and layer pair.
+ *
+ * @author jlrisco
+ */
+public class FloorplanTsv extends Problem<BitVariable> {
 
     public static int OBJ_NumThermalVias = 0;
     public static int OBJ_WireLength = 1;
     protected FloorplanConfiguration conf;
-    protected ArrayList<Point> allowedPoints;
+    // Coordinates of the allowed points:
+    protected int[] allowedXs;
+    protected int[] allowedYs;
+    protected int numberOfPoints;
     protected int startIndex[];
     protected int endIndex[];
     protected int numberOfCores;
@@ -53,12 +67,10 @@ public class FloorplanTsv extends Problem<Variable<Boolean>> {
     protected double MaxWireLength = Double.POSITIVE_INFINITY;
 
     public FloorplanTsv(FloorplanConfiguration configuration) {
-        super(0, 2);
+        super(1, 2);
         this.conf = configuration;
-        allowedPoints = new ArrayList<Point>();
         numberOfCores = 0;
         initialize();
-        super.numberOfVariables += allowedPoints.size();
         MaxWireLength = conf.numLayers * conf.maxLengthInCells * conf.maxWidthInCells;
     }
 
@@ -108,88 +120,106 @@ public class FloorplanTsv extends Problem<Variable<Boolean>> {
         // For example, if there are 4 layers (numbered from 0 to 3),
         // we have 3 pairs to create TSVs:
         // - 3-0 (later 3 to layer 0), 3-1 (later 3 to layer 1), 3-2 (later 3 to layer 2)
-        // TODO: This algorithm can be improved because allowedTSVs(3-0) \in allowedTSVs(3-1) \in allowedTSVs(3-2).
+        // allowedTSVs(3-0) \in allowedTSVs(3-1) \in allowedTSVs(3-2), so we
+        // compute the lowest layer from which every cell is free up to zMax:
+        int[][] lowestFree = new int[xMax][yMax];
+        for (int x = xMin; x < xMax; ++x) {
+            for (int y = yMin; y < yMax; ++y) {
+                int z = zMax;
+                while (z >= 0 && !busy[x][y][z]) {
+                    z--;
+                }
+                lowestFree[x][y] = (busy[x][y][zMax]) ? zMax + 1 : z + 1;
+            }
+        }
         startIndex = new int[zMax];
         endIndex = new int[zMax];
-        boolean allowed;
         for (int i = 0; i < zMax; ++i) {
             startIndex[i] = (i == 0) ? 0 : endIndex[i - 1];
             endIndex[i] = startIndex[i];
             for (int x = xMin; x < xMax; ++x) {
                 for (int y = yMin; y < yMax; ++y) {
-                    allowed = !busy[x][y][zMax];
-                    for (int z = i; allowed && z < zMax; ++z) {
-                        allowed = allowed && !busy[x][y][z];
-                    }
-                    if (allowed) {
-                        allowedPoints.add(new Point(x, y));
+                    if (lowestFree[x][y] <= i) {
                         endIndex[i]++;
                     }
                 }
             }
         }
+        numberOfPoints = (zMax > 0) ? endIndex[zMax - 1] : 0;
+        allowedXs = new int[numberOfPoints];
+        allowedYs = new int[numberOfPoints];
+        int j = 0;
+        for (int i = 0; i < zMax; ++i) {
+            for (int x = xMin; x < xMax; ++x) {
+                for (int y = yMin; y < yMax; ++y) {
+                    if (lowestFree[x][y] <= i) {
+                        allowedXs[j] = x;
+                        allowedYs[j] = y;
+                        j++;
+                    }
+                }
+            }
+        }
 
         // Report:
         Logger.getLogger(FloorplanTsv.class.getName()).log(Level.INFO, "Number of cores = " + numberOfCores);
         Logger.getLogger(FloorplanTsv.class.getName()).log(Level.INFO, "Number of couplings = " + numberOfCouplings);
         for (int i = 0; i < zMax; ++i) {
-            int num = 0;
-            for (int j = startIndex[i]; j < endIndex[i]; ++j) {
-                num++;
-            }
-            Logger.getLogger(FloorplanTsv.class.getName()).info("Allowed TSVs connecting layer " + zMax + " with layer " + i + " = " + num);
+            Logger.getLogger(FloorplanTsv.class.getName()).info("Allowed TSVs connecting layer " + zMax + " with layer " + i + " = " + (endIndex[i] - startIndex[i]));
         }
     }
 
     public LinkedList<Point> getAllowedThermalViasToLevel(int level) {
         LinkedList<Point> thermalVias = new LinkedList<Point>();
         for (int i = startIndex[level]; i < endIndex[level]; ++i) {
-            thermalVias.add(allowedPoints.get(i));
+            thermalVias.add(new Point(allowedXs[i], allowedYs[i]));
         }
         return thermalVias;
     }
 
+    /**
+     * @return Number of bits of the chromosome, one per allowed point and
+     * layer pair
+     */
+    public int getNumberOfPoints() {
+        return numberOfPoints;
+    }
+
   @Override
-    public Solutions<Variable<Boolean>> newRandomSetOfSolutions(int size) {
-      Solutions<Variable<Boolean>> solutions = new Solutions<Variable<Boolean>>();
-        ArrayList<Integer> idxs = new ArrayList<Integer>();
-        for (int i = 0; i < numberOfVariables; ++i) {
-            idxs.add(i);
+    public Solutions<BitVariable> newRandomSetOfSolutions(int size) {
+      Solutions<BitVariable> solutions = new Solutions<BitVariable>();
+        int[] idxs = new int[numberOfPoints];
+        for (int i = 0; i < numberOfPoints; ++i) {
+            idxs[i] = i;
         }
         for (int i=0; i<size; ++i) {
-          Solution<Variable<Boolean>> solution = new Solution<Variable<Boolean>>(super.numberOfObjectives);
-          for(int j=0; j<numberOfVariables; ++j) {
-            solution.getVariables().add(new Variable<Boolean>(false));
-          }
-            Collections.shuffle(idxs);
-            for (int j = 0; j < numberOfVariables; ++j) {
-                int idx = idxs.get(j);
-                boolean varJ = false;
-                if (j < numberOfCores) {
-                    varJ = true;
-                }
-                solution.getVariables().set(idx, new Variable<Boolean>(varJ));
+          Solution<BitVariable> solution = new Solution<BitVariable>(super.numberOfObjectives);
+          BitVariable variable = new BitVariable(numberOfPoints);
+            // As many TSVs as cores, at random points:
+            for (int j = 0; j < numberOfCores && j < numberOfPoints; ++j) {
+                int k = j + RandomGenerator.nextInt(numberOfPoints - j);
+                int idx = idxs[k];
+                idxs[k] = idxs[j];
+                idxs[j] = idx;
+                variable.set(idx, true);
             }
+            solution.getVariables().add(variable);
             solutions.add(solution);
         }
         return solutions;
     }
   
   @Override
-  public void evaluate(Solutions<Variable<Boolean>> solutions) {
-    for(Solution<Variable<Boolean>> solution : solutions) {
+  public void evaluate(Solutions<BitVariable> solutions) {
+    for(Solution<BitVariable> solution : solutions) {
       evaluate(solution);
     }
   }
     
-    public void evaluate(Solution<Variable<Boolean>> solution) {
+    public void evaluate(Solution<BitVariable> solution) {
+        Metrics.EVALUATIONS.inc();
         // First objective, number of TSVs
-        int num = 0;
-        for (int i = 0; i < super.numberOfVariables; ++i) {
-            if (solution.getVariables().get(i).getValue()) {
-                num++;
-            }
-        }
+        int num = solution.getVariables().get(0).cardinality();
         solution.getObjectives().set(0, 1.0 * num);
 
         // Second objective, wire length
@@ -247,38 +277,83 @@ public class FloorplanTsv extends Problem<Variable<Boolean>> {
         solution.getObjectives().set(1, wireLength);
     }
 
-    public double findBestTSV(Component cI, Component cJ, Solution<Variable<Boolean>> solution) {
+    public double findBestTSV(Component cI, Component cJ, Solution<BitVariable> solution) {
         double dist, distMin = Double.POSITIVE_INFINITY;
         boolean found = false;
         int zMin = Math.min(cI.z, cJ.z);
         // I must find the starting index in the chromosome:
-        boolean isTSV = false;
-        for (int i = 0; i < endIndex[zMin]; ++i) {
-            isTSV = solution.getVariables().get(i).getValue();
-            if (isTSV) {
-                Point point = allowedPoints.get(i);
-                dist = Math.min(Math.abs(cI.x - point.x), Math.abs(cI.x + cI.l - point.x))
-                        + Math.min(Math.abs(cI.y - point.y), Math.abs(cI.y + cI.w - point.y))
-                        + Math.abs((cI.z - cJ.z))
-                        + Math.min(Math.abs(cJ.x - point.x), Math.abs(cJ.x + cJ.l - point.x))
-                        + Math.min(Math.abs(cJ.y - point.y), Math.abs(cJ.y + cJ.w - point.y));
-                if (dist < distMin) {
-                    distMin = dist;
-                }
-                found = true;
+        BitVariable variable = solution.getVariables().get(0);
+        for (int i = variable.nextSetBit(0); i >= 0 && i < endIndex[zMin]; i = variable.nextSetBit(i + 1)) {
+            int pointX = allowedXs[i], pointY = allowedYs[i];
+            dist = Math.min(Math.abs(cI.x - pointX), Math.abs(cI.x + cI.l - pointX))
+                    + Math.min(Math.abs(cI.y - pointY), Math.abs(cI.y + cI.w - pointY))
+                    + Math.abs((cI.z - cJ.z))
+                    + Math.min(Math.abs(cJ.x - pointX), Math.abs(cJ.x + cJ.l - pointX))
+                    + Math.min(Math.abs(cJ.y - pointY), Math.abs(cJ.y + cJ.w - pointY));
+            if (dist < distMin) {
+                distMin = dist;
             }
+            found = true;
         }
         return (found) ? distMin : -1;
     }
 
+    private static final String USAGE = "Parameters: xmlFilePath [numIslands] [-seed seed] [-checkpoint interval] [-resume] [-patience generations] [-fastSort]";
+
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Parameters: xmlFilePath");
+        if (args.length < 1) {
+            System.out.println(USAGE);
             return;
         }
         HeroLogger.setup(Level.INFO);
 
         String xmlFilePath = args[0];
+        int numIslands = 1;
+        int checkpointInterval = 0;
+        boolean resume = false;
+        int patience = 0;
+        boolean fastSort = false;
+        Long seed = null;
+        int i = 1;
+        // numIslands is the only positional argument after the file:
+        if (i < args.length && !args[i].startsWith("-")) {
+            try {
+                numIslands = Integer.valueOf(args[i++]);
+            } catch (NumberFormatException ex) {
+                System.out.println(USAGE);
+                return;
+            }
+        }
+        for (; i < args.length; ++i) {
+            try {
+                if (args[i].equals("-checkpoint") && i + 1 < args.length) {
+                    checkpointInterval = Integer.valueOf(args[++i]);
+                } else if (args[i].equals("-resume")) {
+                    resume = true;
+                } else if (args[i].equals("-patience") && i + 1 < args.length) {
+                    patience = Integer.valueOf(args[++i]);
+                } else if (args[i].equals("-fastSort")) {
+                    fastSort = true;
+                } else if (args[i].equals("-seed") && i + 1 < args.length) {
+                    seed = Long.valueOf(args[++i]);
+                } else {
+                    System.out.println("Unknown or incomplete argument: " + args[i]);
+                    System.out.println(USAGE);
+                    return;
+                }
+            } catch (NumberFormatException ex) {
+                System.out.println("Invalid value for " + args[i - 1] + ": " + args[i]);
+                System.out.println(USAGE);
+                return;
+            }
+        }
+        if (numIslands > 1 && (checkpointInterval > 0 || resume || patience > 0 || fastSort)) {
+            Logger.getLogger(FloorplanTsv.class.getName()).severe("-checkpoint, -resume, -patience and -fastSort are not supported with numIslands > 1");
+            return;
+        }
+        if (seed != null) {
+            RandomGenerator.setSeed(seed);
+        }
         FloorplanConfiguration conf = new FloorplanConfiguration(xmlFilePath);
         Integer numIndi = 100;
         Integer numGene = 2500;
@@ -287,22 +362,53 @@ public class FloorplanTsv extends Problem<Variable<Boolean>> {
         }
 
         FloorplanTsv floorplanTsv = new FloorplanTsv(conf);
-        NSGAII<Variable<Boolean>> nsga2 = new NSGAII<Variable<Boolean>>(floorplanTsv, numIndi, numGene, new BooleanMutation<Variable<Boolean>>(1.0 / floorplanTsv.getNumberOfVariables()), new SinglePointCrossover<Variable<Boolean>>(floorplanTsv), new BinaryTournamentNSGAII<Variable<Boolean>>());
-        nsga2.initialize();
-        Solutions<Variable<Boolean>> solutions = nsga2.execute();
+        Solutions<BitVariable> solutions;
+        if (numIslands > 1) {
+            final double mutationProbability = 1.0 / floorplanTsv.getNumberOfPoints();
+            IslandModel<BitVariable> islandModel = new IslandModel<BitVariable>(floorplanTsv, numIslands, numIndi, numGene, new IslandModel.OperatorFactory<BitVariable>() {
+                @Override
+                public MutationOperator<BitVariable> newMutation() {
+                    return new BitVariable.BitMutation(mutationProbability);
+                }
 
-        try {
-            for (Solution<Variable<Boolean>> solution : solutions) {
-                conf.thermalVias.clear();
-                for (int i = 0; i < conf.numLayers - 1; ++i) {
-                    for (int j = floorplanTsv.startIndex[i]; j < floorplanTsv.endIndex[i]; ++j) {
-                        if (solution.getVariables().get(j).getValue()) {//If it is a TSV
-                            Point point = floorplanTsv.allowedPoints.get(j);
-                            ThermalVia thermalVia = new ThermalVia(conf.numLayers - 1, i, point.x, point.y);
-                            conf.thermalVias.add(thermalVia);
-                        }
-                    }
+                @Override
+                public CrossoverOperator<BitVariable> newCrossover() {
+                    return new BitVariable.BitCrossover();
+                }
+
+                @Override
+                public SelectionOperator<BitVariable> newSelection() {
+                    return new BinaryTournamentNSGAII<BitVariable>();
+                }
+            });
+            if (seed != null) {
+                islandModel.setSeed(seed);
+            }
+            islandModel.setProcesses(BitVariable.CODEC, FloorplanTsv.class, args);
+            if (IslandModel.isWorker()) {
+                try {
+                    islandModel.runWorker();
+                } catch (IOException ex) {
+                    Logger.getLogger(FloorplanTsv.class.getName()).log(Level.SEVERE, null, ex);
+                    System.exit(1);
                 }
+                return;
+            }
+            solutions = islandModel.execute();
+        } else {
+            NSGAII<BitVariable> nsga2;
+            if (fastSort) {
+                nsga2 = new FastNSGAII<BitVariable>(floorplanTsv, numIndi, numGene, new BitVariable.BitMutation(1.0 / floorplanTsv.getNumberOfPoints()), new BitVariable.BitCrossover(), new BinaryTournamentNSGAII<BitVariable>());
+            } else {
+                nsga2 = new NSGAII<BitVariable>(floorplanTsv, numIndi, numGene, new BitVariable.BitMutation(1.0 / floorplanTsv.getNumberOfPoints()), new BitVariable.BitCrossover(), new BinaryTournamentNSGAII<BitVariable>());
+            }
+            Checkpoint<BitVariable> checkpoint = new Checkpoint<BitVariable>(xmlFilePath.replaceAll(".xml", ".ckpt"), BitVariable.CODEC);
+            solutions = checkpoint.execute(nsga2, numGene, checkpointInterval, resume, (patience > 0) ? new ConvergenceTracker<BitVariable>(patience) : null);
+        }
+
+        try {
+            for (Solution<BitVariable> solution : solutions) {
+                floorplanTsv.loadThermalVias(solution);
                 conf.xmlFilePath = xmlFilePath.replaceAll(".xml", "") + "_" + floorplanTsv.getClass().getSimpleName() + "_" + solution.getObjectives().get(FloorplanTsv.OBJ_NumThermalVias) + "_" + solution.getObjectives().get(FloorplanTsv.OBJ_WireLength) + ".xml";
                 conf.save();
             }
@@ -311,8 +417,26 @@ public class FloorplanTsv extends Problem<Variable<Boolean>> {
         }
     }
 
+    /**
+     * Replaces the thermal vias of the configuration with the TSVs of the
+     * given solution.
+     *
+     * @param solution Solution
+     */
+    public void loadThermalVias(Solution<BitVariable> solution) {
+        conf.thermalVias.clear();
+        BitVariable variable = solution.getVariables().get(0);
+        for (int i = 0; i < conf.numLayers - 1; ++i) {
+            for (int j = variable.nextSetBit(startIndex[i]); j >= 0 && j < endIndex[i]; j = variable.nextSetBit(j + 1)) {
+                ThermalVia thermalVia = new ThermalVia(conf.numLayers - 1, i, allowedXs[j], allowedYs[j]);
+                conf.thermalVias.add(thermalVia);
+            }
+        }
+    }
+
     @Override
-    public Problem<Variable<Boolean>> clone() {
-        throw new UnsupportedOperationException("Not supported yet.");
+    public Problem<BitVariable> clone() {
+        // The configuration is only read during the evaluation, so it can be shared.
+        return new FloorplanTsv(conf);
     }
 }
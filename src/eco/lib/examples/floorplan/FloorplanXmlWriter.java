@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+  *  - José Luis Risco Martín
+ */
+package eco.lib.examples.floorplan;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.zip.GZIPOutputStream;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Serializes floorplans with a streaming XML writer, in the layout read by
+ * FloorplanConfiguration. The document is written into a buffer that is
+ * reused from one file to the next, and then copied to the file at once.
+ * Files whose name ends with ".gz" are compressed with gzip.
+ *
+ * A writer is not thread safe, use one per thread.
+ *
+ * @author jlrisco
+ */
+public class FloorplanXmlWriter {
+
+    /**
+     * Growable character buffer. The stream writer issues many small writes,
+     * so it is not synchronized as CharArrayWriter is.
+     */
+    protected static class ReusableBuffer extends Writer {
+
+        protected char[] chars;
+        protected int size = 0;
+
+        public ReusableBuffer(int capacity) {
+            chars = new char[capacity];
+        }
+
+        protected void ensureCapacity(int capacity) {
+            if (capacity > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(capacity, 2 * chars.length));
+            }
+        }
+
+        @Override
+        public void write(int c) {
+            ensureCapacity(size + 1);
+            chars[size++] = (char) c;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            ensureCapacity(size + len);
+            System.arraycopy(cbuf, off, chars, size, len);
+            size += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            ensureCapacity(size + len);
+            str.getChars(off, off + len, chars, size);
+            size += len;
+        }
+
+        public void reset() {
+            size = 0;
+        }
+
+        public void writeTo(Writer out) throws IOException {
+            out.write(chars, 0, size);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    public static final String GZIP_EXTENSION = ".gz";
+    protected static final int GZIP_BUFFER_SIZE = 1 << 16;
+
+    protected final XMLOutputFactory factory = XMLOutputFactory.newInstance();
+    protected final ReusableBuffer buffer = new ReusableBuffer(1 << 16);
+    protected boolean fixedLimits = false;
+
+    /**
+     * @param fixedLimits If true, the limits of every block are written as
+     * its position (xMin = x = xMax, and so on), as the optimizers save their
+     * solutions. The blocks are not modified.
+     */
+    public void setFixedLimits(boolean fixedLimits) {
+        this.fixedLimits = fixedLimits;
+    }
+
+    /**
+     * Saves the configuration.
+     *
+     * @param cfg Floorplan
+     * @param filePath Destination, compressed if it ends with ".gz"
+     * @throws IOException
+     */
+    public void write(FloorplanConfiguration cfg, String filePath) throws IOException {
+        write(cfg, cfg.components.values(), filePath);
+    }
+
+    /**
+     * Saves the configuration with other placement of its blocks.
+     *
+     * @param cfg Floorplan
+     * @param blocks Blocks written instead of the ones of the configuration,
+     * in the same order
+     * @param filePath Destination, compressed if it ends with ".gz"
+     * @throws IOException
+     */
+    public void write(FloorplanConfiguration cfg, Iterable<Component> blocks, String filePath) throws IOException {
+        buffer.reset();
+        try {
+            XMLStreamWriter xml = factory.createXMLStreamWriter(buffer);
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeCharacters("\n");
+            xml.writeStartElement("Floorplan");
+            xml.writeAttribute("Version", FloorplanConfiguration.VERSION);
+            xml.writeAttribute("CellSize", Integer.toString(cfg.cellSizeInMicroMeters));
+            xml.writeAttribute("Length", Integer.toString(cfg.maxLengthInCells));
+            xml.writeAttribute("Width", Integer.toString(cfg.maxWidthInCells));
+            xml.writeAttribute("NumLayers", Integer.toString(cfg.numLayers));
+            xml.writeAttribute("NumPowerProfiles", Integer.toString(cfg.numPowerProfiles));
+            xml.writeCharacters("\n\t");
+            xml.writeStartElement("Blocks");
+            for (Component c : blocks) {
+                xml.writeCharacters("\n\t\t");
+                xml.writeEmptyElement("Block");
+                xml.writeAttribute("id", Integer.toString(c.id));
+                xml.writeAttribute("name", c.name);
+                xml.writeAttribute("type", Integer.toString(c.type));
+                xml.writeAttribute("xMin", Integer.toString(fixedLimits ? c.x : c.xMin));
+                xml.writeAttribute("x", Integer.toString(c.x));
+                xml.writeAttribute("xMax", Integer.toString(fixedLimits ? c.x : c.xMax));
+                xml.writeAttribute("yMin", Integer.toString(fixedLimits ? c.y : c.yMin));
+                xml.writeAttribute("y", Integer.toString(c.y));
+                xml.writeAttribute("yMax", Integer.toString(fixedLimits ? c.y : c.yMax));
+                xml.writeAttribute("zMin", Integer.toString(fixedLimits ? c.z : c.zMin));
+                xml.writeAttribute("z", Integer.toString(c.z));
+                xml.writeAttribute("zMax", Integer.toString(fixedLimits ? c.z : c.zMax));
+                xml.writeAttribute("l", Integer.toString(c.l));
+                xml.writeAttribute("w", Integer.toString(c.w));
+                xml.writeAttribute("h", Integer.toString(c.h));
+                for (int i = 0; i < cfg.numPowerProfiles; ++i) {
+                    xml.writeAttribute("dp" + i, Double.toString(c.dps[i]));
+                }
+            }
+            xml.writeCharacters("\n\t");
+            xml.writeEndElement();
+            xml.writeCharacters("\n\t");
+            xml.writeStartElement("Couplings");
+            for (Integer idFrom : cfg.couplings.keySet()) {
+                Iterator<Integer> itrTo = cfg.couplings.get(idFrom).iterator();
+                while (itrTo.hasNext()) {
+                    xml.writeCharacters("\n\t\t");
+                    xml.writeEmptyElement("Coupling");
+                    xml.writeAttribute("idFrom", idFrom.toString());
+                    xml.writeAttribute("idTo", itrTo.next().toString());
+                }
+            }
+            xml.writeCharacters("\n\t");
+            xml.writeEndElement();
+            xml.writeCharacters("\n\t");
+            xml.writeStartElement("ThermalVias");
+            for (ThermalVia thermalVia : cfg.thermalVias) {
+                xml.writeCharacters("\n\t\t");
+                xml.writeEmptyElement("ThermalVia");
+                xml.writeAttribute("zIni", Integer.toString(thermalVia.zIni));
+                xml.writeAttribute("zEnd", Integer.toString(thermalVia.zEnd));
+                xml.writeAttribute("x", Integer.toString(thermalVia.x));
+                xml.writeAttribute("y", Integer.toString(thermalVia.y));
+            }
+            xml.writeCharacters("\n\t");
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            xml.writeEndDocument();
+            xml.close();
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+        // Characters are encoded once, while they are copied to the file. The
+        // file is closed even if the gzip header cannot be written:
+        try (OutputStream file = new FileOutputStream(filePath);
+                OutputStream out = filePath.endsWith(GZIP_EXTENSION) ? new GZIPOutputStream(file, GZIP_BUFFER_SIZE) : file;
+                Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            buffer.writeTo(writer);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+  *  - José Luis Risco Martín
+ */
+package eco.lib.examples.floorplan;
+
+import java.util.ArrayList;
+
+/**
+ * Maximal free rectangles of every layer of the chip. A block fits at (x, y)
+ * if and only if it lies inside one of them, so the feasible positions are
+ * found without testing overlaps against the placed blocks.
+ *
+ * Each rectangle is stored as {x, y, l, w}.
+ *
+ * @author jlrisco
+ */
+public class FreeRectangles {
+
+    protected ArrayList<ArrayList<int[]>> layers = new ArrayList<ArrayList<int[]>>();
+
+    public FreeRectangles(int length, int width, int numLayers) {
+        for (int z = 0; z < numLayers; ++z) {
+            ArrayList<int[]> rectangles = new ArrayList<int[]>();
+            rectangles.add(new int[]{0, 0, length, width});
+            layers.add(rectangles);
+        }
+    }
+
+    public ArrayList<int[]> getRectangles(int z) {
+        return layers.get(z);
+    }
+
+    /**
+     * Marks the given area of a layer as used. Every free rectangle that
+     * intersects it is split into the (up to four) maximal parts around it,
+     * and the parts contained in other rectangles are discarded.
+     */
+    public void occupy(int x, int y, int z, int l, int w) {
+        ArrayList<int[]> rectangles = layers.get(z);
+        ArrayList<int[]> parts = new ArrayList<int[]>();
+        for (int i = rectangles.size() - 1; i >= 0; --i) {
+            int[] r = rectangles.get(i);
+            if (x >= r[0] + r[2] || x + l <= r[0] || y >= r[1] + r[3] || y + w <= r[1]) {
+                continue;
+            }
+            rectangles.set(i, rectangles.get(rectangles.size() - 1));
+            rectangles.remove(rectangles.size() - 1);
+            if (x > r[0]) {
+                parts.add(new int[]{r[0], r[1], x - r[0], r[3]});
+            }
+            if (x + l < r[0] + r[2]) {
+                parts.add(new int[]{x + l, r[1], r[0] + r[2] - x - l, r[3]});
+            }
+            if (y > r[1]) {
+                parts.add(new int[]{r[0], r[1], r[2], y - r[1]});
+            }
+            if (y + w < r[1] + r[3]) {
+                parts.add(new int[]{r[0], y + w, r[2], r[1] + r[3] - y - w});
+            }
+        }
+        // The untouched rectangles were maximal, so only the parts can be
+        // contained in another rectangle:
+        for (int i = 0; i < parts.size(); ++i) {
+            int[] p = parts.get(i);
+            boolean maximal = true;
+            for (int j = 0; maximal && j < rectangles.size(); ++j) {
+                maximal = !contains(rectangles.get(j), p);
+            }
+            // Among equal parts, keep the last one:
+            for (int j = 0; maximal && j < parts.size(); ++j) {
+                if (j != i && contains(parts.get(j), p)) {
+                    maximal = j < i && contains(p, parts.get(j));
+                }
+            }
+            if (maximal) {
+                rectangles.add(p);
+            }
+        }
+    }
+
+    protected static boolean contains(int[] r, int[] p) {
+        return p[0] >= r[0] && p[1] >= r[1] && p[0] + p[2] <= r[0] + r[2] && p[1] + p[3] <= r[1] + r[3];
+    }
+}
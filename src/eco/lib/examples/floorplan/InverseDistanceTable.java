@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+  *  - José Luis Risco Martín
+ */
+package eco.lib.examples.floorplan;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Table of inverse Euclidean distances between centres of blocks placed on
+ * the integer cell grid. Centres lie on half cells, so the table is indexed
+ * by the doubled absolute offsets (2|dx|, 2|dy|, 2|dz|). Offsets out of the
+ * table are computed on the fly.
+ *
+ * Tables are shared among all the evaluators of the same chip size.
+ *
+ * @author jlrisco
+ */
+public class InverseDistanceTable {
+
+    /**
+     * Maximum number of entries of a table (1 MB), so it stays in cache.
+     * Larger chips use a table restricted to the nearest offsets.
+     */
+    public static final int MAX_ENTRIES = 1 << 17;
+    private static final ConcurrentHashMap<String, InverseDistanceTable> TABLES = new ConcurrentHashMap<>();
+
+    protected int nx, ny, nz;
+    protected double[] table;
+
+    protected InverseDistanceTable(int maxLength, int maxWidth, int maxHeight) {
+        nx = 2 * maxLength + 1;
+        ny = 2 * maxWidth + 1;
+        nz = 2 * maxHeight + 1;
+        if ((long) nx * ny * nz > MAX_ENTRIES) {
+            int side = (int) Math.sqrt(MAX_ENTRIES / nz);
+            nx = Math.min(nx, side);
+            ny = Math.min(ny, side);
+        }
+        table = new double[nx * ny * nz];
+        for (int dx = 0; dx < nx; ++dx) {
+            for (int dy = 0; dy < ny; ++dy) {
+                for (int dz = 0; dz < nz; ++dz) {
+                    table[(dx * ny + dy) * nz + dz] = 2.0 / Math.sqrt(dx * dx + dy * dy + dz * dz);
+                }
+            }
+        }
+    }
+
+    /**
+     * Shared table for a chip.
+     *
+     * @param maxLength Length in cells
+     * @param maxWidth Width in cells
+     * @param maxHeight Number of layers
+     * @return The table
+     */
+    public static InverseDistanceTable getInstance(int maxLength, int maxWidth, int maxHeight) {
+        String key = maxLength + "x" + maxWidth + "x" + maxHeight;
+        return TABLES.computeIfAbsent(key, k -> new InverseDistanceTable(maxLength, maxWidth, maxHeight));
+    }
+
+    public static InverseDistanceTable getInstance(FloorplanConfiguration cfg) {
+        return getInstance(cfg.maxLengthInCells, cfg.maxWidthInCells, cfg.numLayers);
+    }
+
+    /**
+     * Inverse distance between two centres given their doubled offsets,
+     * i.e., (2x1 + l1) - (2x2 + l2) and so on. Infinity if both centres are
+     * equal.
+     *
+     * @param dx2 Doubled offset in x
+     * @param dy2 Doubled offset in y
+     * @param dz2 Doubled offset in z
+     * @return 1/distance
+     */
+    public double get(int dx2, int dy2, int dz2) {
+        dx2 = Math.abs(dx2);
+        dy2 = Math.abs(dy2);
+        dz2 = Math.abs(dz2);
+        if (dx2 < nx && dy2 < ny && dz2 < nz) {
+            return table[(dx2 * ny + dy2) * nz + dz2];
+        }
+        return 2.0 / Math.sqrt((double) dx2 * dx2 + (double) dy2 * dy2 + (double) dz2 * dz2);
+    }
+}
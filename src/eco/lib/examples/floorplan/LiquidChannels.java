@@ -44,6 +44,8 @@ import eco.core.problem.Solution;
 import eco.core.problem.Solutions;
 import eco.core.problem.Variable;
 import eco.core.util.logger.HeroLogger;
+import eco.lib.examples.floorplan.util.Checkpoint;
+import eco.lib.examples.floorplan.util.ConvergenceTracker;
 
 public class LiquidChannels extends Problem<Variable<Boolean>> {
 
@@ -398,13 +400,25 @@ public class LiquidChannels extends Problem<Variable<Boolean>> {
     }
 
     public static void main(String[] args) {
-        if (args.length != 2) {
-            System.out.println("Usage: java -jar LiquidChannels.jar <PathToXml> <MaxNumOfLiquidChannels>");
+        if (args.length < 2) {
+            System.out.println("Usage: java -jar LiquidChannels.jar <PathToXml> <MaxNumOfLiquidChannels> [-checkpoint <Interval>] [-resume] [-patience <Generations>]");
             return;
         }
         HeroLogger.setup(Level.INFO);
         String rutaXml = args[0];
         Integer numLCs = Integer.valueOf(args[1]);
+        int checkpointInterval = 0;
+        boolean resume = false;
+        int patience = 0;
+        for (int i = 2; i < args.length; ++i) {
+            if (args[i].equals("-checkpoint") && i + 1 < args.length) {
+                checkpointInterval = Integer.valueOf(args[++i]);
+            } else if (args[i].equals("-resume")) {
+                resume = true;
+            } else if (args[i].equals("-patience") && i + 1 < args.length) {
+                patience = Integer.valueOf(args[++i]);
+            }
+        }
 
         FloorplanConfiguration configuration = new FloorplanConfiguration(rutaXml);
         LiquidChannels liquidC = new LiquidChannels(configuration, numLCs);
@@ -412,8 +426,8 @@ public class LiquidChannels extends Problem<Variable<Boolean>> {
         // se deba a que el modelo de temperaturas es un poco escueto:
         //NSGAII nsga2 = new NSGAII(liquidC, 100, 250, new SwapMutation(1.0 / liquidC.getNumberOfVariables()), new LiquidChannelsCrossover(0.9, NUM_LCS), new BinaryTournamentNSGAII());
         NSGAII<Variable<Boolean>> nsga2 = new NSGAII<Variable<Boolean>>(liquidC, 100, 2500, new BooleanMutation<Variable<Boolean>>(1.0 / liquidC.getNumberOfVariables()), new SinglePointCrossover<Variable<Boolean>>(liquidC), new BinaryTournamentNSGAII<Variable<Boolean>>());
-        nsga2.initialize();
-        Solutions<Variable<Boolean>> solutions = nsga2.execute();
+        Checkpoint<Variable<Boolean>> checkpoint = new Checkpoint<Variable<Boolean>>(rutaXml.replaceAll(".xml", ".ckpt"), Checkpoint.BOOLEAN_CODEC);
+        Solutions<Variable<Boolean>> solutions = checkpoint.execute(nsga2, 2500, checkpointInterval, resume, (patience > 0) ? new ConvergenceTracker<Variable<Boolean>>(patience) : null);
         Logger.getLogger(LiquidChannels.class.getName()).info("solutions.size()=" + solutions.size());
 
         Solution<Variable<Boolean>> bestSolution = null;
@@ -469,6 +483,6 @@ public class LiquidChannels extends Problem<Variable<Boolean>> {
 
     @Override
     public Problem<Variable<Boolean>> clone() {
-        throw new UnsupportedOperationException("Not supported yet.");
+        return new LiquidChannels(configuration, numLCs);
     }
 }
@@ -19,7 +19,6 @@
  */
 package eco.lib.examples.floorplan;
 
-import java.awt.Point;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -57,6 +56,7 @@ public class Manager {
     public static final int XML2OPLDAT1 = 5;
     public static final int XML2OPLDAT2 = 6;
     public static final int FIX_LIMITS = 7;
+    public static final int XML_REPORT = 8;
 
     public static void update3150(String pathToXmlFile) throws ParserConfigurationException, SAXException, IOException {
         HashMap<Integer, Component> components = new HashMap<Integer, Component>();
@@ -357,13 +357,17 @@ public class Manager {
         writer.close();
     }
 
+    /**
+     * Writes the OPL data of the TSV model. Everything is streamed to the
+     * file as it is computed. The TSVs allowed up to a given level are a
+     * prefix of the TSV ids (see FloorplanTsv), so no per-level maps are
+     * needed. The distance sets are indexed by (TSV, component), so a pair
+     * shared by several couplings is written only once.
+     */
     public static void fromXmlToDatTsvs(String pathToXmlFile, int powerProfile, String pathToDatFile) throws IOException {
-        StringBuilder stringIds = new StringBuilder();
-        StringBuilder stringData = new StringBuilder();
-
         FloorplanConfiguration cfg = new FloorplanConfiguration(pathToXmlFile);
 
-        BufferedWriter writer = new BufferedWriter(new FileWriter(new File(pathToDatFile)));
+        BufferedWriter writer = new BufferedWriter(new FileWriter(new File(pathToDatFile)), 1 << 16);
         String doubleLine = "//======================================================\n";
         writer.write(doubleLine);
         writer.write("// " + pathToXmlFile + "\n");
@@ -387,28 +391,22 @@ public class Manager {
         }
         writer.write("]#;\n\n");
 
+        // TSV j has id j + 1, and the TSVs of level i are those in
+        // [startIndex[i], endIndex[i]):
         FloorplanTsv tsvs = new FloorplanTsv(cfg);
-        int idVia = 1;
-        HashMap<Integer, HashMap<Integer, Point>> thermalVias = new HashMap<Integer, HashMap<Integer, Point>>();
-        stringIds.append("// Thermal vias\n");
-        stringIds.append("ThermalIds = {");
-        stringData.append("ThermalVias = #[");
+        writer.write("// Thermal vias\n");
+        writer.write("ThermalIds = {");
+        for (int j = 0; j < tsvs.numberOfPoints; ++j) {
+            writer.write(" " + (j + 1));
+        }
+        writer.write("};\n");
+        writer.write("ThermalVias = #[");
         for (int i = 0; i < cfg.numLayers - 1; ++i) {
-            thermalVias.put(i, new HashMap<Integer, Point>());
-            LinkedList<Point> tsvPoints = tsvs.getAllowedThermalViasToLevel(i);
-            for (Point point : tsvPoints) {
-                stringIds.append(" " + idVia);
-                stringData.append(" " + idVia + ": #<level:" + i + " x:" + point.x + " y:" + point.y + ">#\n");
-                thermalVias.get(i).put(idVia, point);
-                idVia++;
+            for (int j = tsvs.startIndex[i]; j < tsvs.endIndex[i]; ++j) {
+                writer.write(" " + (j + 1) + ": #<level:" + i + " x:" + tsvs.allowedXs[j] + " y:" + tsvs.allowedYs[j] + ">#\n");
             }
         }
-        stringIds.append("};\n");
-        stringData.append("]#;\n\n");
-        writer.write(stringIds.toString());
-        writer.write(stringData.toString());
-        stringIds = new StringBuilder();
-        stringData = new StringBuilder();
+        writer.write("]#;\n\n");
 
         Set<Integer> idsFrom = cfg.couplings.keySet();
         writer.write("// Cableado entre módulos\n");
@@ -432,65 +430,61 @@ public class Manager {
         }
         writer.write("]#;\n\n");
 
-        writer.write("// Distancias de thermal vías a componentes\n");
-        stringIds.append("ThermalToCompIds = {");
-        stringData.append("ThermalToComp = #[");
+        // Number of TSVs reached by every component, as origin and as
+        // destination of a coupling:
+        HashMap<Integer, Integer> numTsvsFrom = new HashMap<Integer, Integer>();
+        HashMap<Integer, Integer> numTsvsTo = new HashMap<Integer, Integer>();
         for (Integer idFrom : idsFrom) {
             Component cFrom = cfg.components.get(idFrom);
-            HashSet<Integer> idsTo = cfg.couplings.get(idFrom);
-            for (Integer idTo : idsTo) {
+            for (Integer idTo : cfg.couplings.get(idFrom)) {
                 Component cTo = cfg.components.get(idTo);
                 int minZ = Math.min(cFrom.z, cTo.z);
                 if (minZ == cfg.numLayers - 1) {
                     continue;
                 }
-                for (int level = 0; level <= minZ; level++) {
-                    HashMap<Integer, Point> tsvPoints = thermalVias.get(level);
-                    Set<Integer> tsvIds = tsvPoints.keySet();
-                    for (Integer tsvId : tsvIds) {
-                        Point p = tsvPoints.get(tsvId);
-                        stringIds.append(" <" + tsvId + " " + idTo + ">\n");
-                        stringData.append(" <" + tsvId + " " + idTo + ">: #<dx:" + Math.abs(cTo.x - p.x) + " dy:" + Math.abs(cTo.y - p.y) + ">#\n");
-                    }
+                int numTsvs = tsvs.endIndex[minZ];
+                if (numTsvsFrom.get(idFrom) == null || numTsvsFrom.get(idFrom) < numTsvs) {
+                    numTsvsFrom.put(idFrom, numTsvs);
+                }
+                if (numTsvsTo.get(idTo) == null || numTsvsTo.get(idTo) < numTsvs) {
+                    numTsvsTo.put(idTo, numTsvs);
                 }
             }
         }
-        stringIds.append("};\n");
-        stringData.append("]#;\n\n");
-        writer.write(stringIds.toString());
-        writer.write(stringData.toString());
-        stringIds = new StringBuilder();
-        stringData = new StringBuilder();
+
+        writer.write("// Distancias de thermal vías a componentes\n");
+        writer.write("ThermalToCompIds = {");
+        for (Integer idTo : numTsvsTo.keySet()) {
+            for (int j = 0; j < numTsvsTo.get(idTo); ++j) {
+                writer.write(" <" + (j + 1) + " " + idTo + ">\n");
+            }
+        }
+        writer.write("};\n");
+        writer.write("ThermalToComp = #[");
+        for (Integer idTo : numTsvsTo.keySet()) {
+            Component cTo = cfg.components.get(idTo);
+            for (int j = 0; j < numTsvsTo.get(idTo); ++j) {
+                writer.write(" <" + (j + 1) + " " + idTo + ">: #<dx:" + Math.abs(cTo.x - tsvs.allowedXs[j]) + " dy:" + Math.abs(cTo.y - tsvs.allowedYs[j]) + ">#\n");
+            }
+        }
+        writer.write("]#;\n\n");
 
         writer.write("// Distancias de componentes a thermal vias\n");
-        stringIds.append("CompToThermalIds = {");
-        stringData.append("CompToThermal = #[");
-        for (Integer idFrom : idsFrom) {
+        writer.write("CompToThermalIds = {");
+        for (Integer idFrom : numTsvsFrom.keySet()) {
+            for (int j = 0; j < numTsvsFrom.get(idFrom); ++j) {
+                writer.write(" <" + idFrom + " " + (j + 1) + ">\n");
+            }
+        }
+        writer.write("};\n");
+        writer.write("CompToThermal = #[");
+        for (Integer idFrom : numTsvsFrom.keySet()) {
             Component cFrom = cfg.components.get(idFrom);
-            HashSet<Integer> idsTo = cfg.couplings.get(idFrom);
-            for (Integer idTo : idsTo) {
-                Component cTo = cfg.components.get(idTo);
-                int minZ = Math.min(cFrom.z, cTo.z);
-                if (minZ == cfg.numLayers - 1) {
-                    continue;
-                }
-                for (int level = 0; level <= minZ; level++) {
-                    HashMap<Integer, Point> tsvPoints = thermalVias.get(level);
-                    Set<Integer> tsvIds = tsvPoints.keySet();
-                    for (Integer tsvId : tsvIds) {
-                        Point p = tsvPoints.get(tsvId);
-                        stringIds.append(" <" + idFrom + " " + tsvId + ">\n");
-                        stringData.append(" <" + idFrom + " " + tsvId + ">: #<dx:" + Math.abs(cFrom.x - p.x) + " dy:" + Math.abs(cFrom.y - p.y) + ">#\n");
-                    }
-                }
+            for (int j = 0; j < numTsvsFrom.get(idFrom); ++j) {
+                writer.write(" <" + idFrom + " " + (j + 1) + ">: #<dx:" + Math.abs(cFrom.x - tsvs.allowedXs[j]) + " dy:" + Math.abs(cFrom.y - tsvs.allowedYs[j]) + ">#\n");
             }
         }
-        stringIds.append("};\n");
-        stringData.append("]#;\n\n");
-        writer.write(stringIds.toString());
-        writer.write(stringData.toString());
-        stringIds = new StringBuilder();
-        stringData = new StringBuilder();
+        writer.write("]#;\n\n");
 
         writer.flush();
         writer.close();
@@ -579,6 +573,14 @@ public class Manager {
                 String pathToXmlFile = args[1];
                 String pathToNewXmlFile = args[2];
                 fixLimits(pathToXmlFile, pathToNewXmlFile);
+            } else if (option == Manager.XML_REPORT) {
+                if (args.length != 3) {
+                    printHelp();
+                    return;
+                }
+                String pathToXmlDir = args[1];
+                String pathToCsvFile = args[2];
+                new FloorplanReport(pathToXmlDir, Runtime.getRuntime().availableProcessors()).execute(pathToCsvFile);
             }
         } catch (ParserConfigurationException ex) {
             Logger.getLogger(Manager.class.getName()).log(Level.SEVERE, null, ex);
@@ -599,5 +601,6 @@ public class Manager {
         System.out.println("5.- Generar DAT (para OPL, modelo global) de XML " + FloorplanConfiguration.VERSION + " (5 PathToXml IdxPowerProfile NewDatFilePath)");
         System.out.println("6.- Generar DAT (para OPL, modelo TSVs) de XML " + FloorplanConfiguration.VERSION + " (6 PathToXml IdxPowerProfile NewDatFilePath)");
         System.out.println("7.- Fix lower and upper limits (7 PathToXml PathToNewXml)");
+        System.out.println("8.- Extraer características de todos los XML de un directorio a un CSV (8 PathToXmlDir PathToCsv)");
     }
 }
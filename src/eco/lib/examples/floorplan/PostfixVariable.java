@@ -32,10 +32,22 @@ public class PostfixVariable extends Variable<Component> {
 
   public static class PostfixMutation extends MutationOperator<PostfixVariable> {
 
+    protected boolean changeOrientation = true;
+
     public PostfixMutation(double probability) {
       super(probability);
     }
 
+    /**
+     * @param probability Mutation probability
+     * @param changeOrientation If false, blocks are never rotated (when the
+     * orientation is chosen by the evaluator, see {@link SlicingEvaluator})
+     */
+    public PostfixMutation(double probability, boolean changeOrientation) {
+      super(probability);
+      this.changeOrientation = changeOrientation;
+    }
+
     @Override
     public Solution<PostfixVariable> execute(Solution<PostfixVariable> object) {
       Solution<PostfixVariable> solution = object;
@@ -43,7 +55,7 @@ public class PostfixVariable extends Variable<Component> {
       for (int i = 0; i < size; ++i) {
         if (RandomGenerator.nextDouble() < probability) {
           PostfixVariable varI = solution.getVariables().get(i);
-          double random = RandomGenerator.nextDouble();
+          double random = changeOrientation ? RandomGenerator.nextDouble() : 0.75 * RandomGenerator.nextDouble();
           if (random < 0.25) {
             // Mutation type 0 - Swap two blocks:
             int j = RandomGenerator.nextInt(size);
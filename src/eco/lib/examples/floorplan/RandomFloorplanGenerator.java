@@ -64,6 +64,7 @@ public class RandomFloorplanGenerator extends Problem<PostfixVariable> {
   protected boolean useDefaultDesign = true; // Tells if we set the first random individual equal to the original benchmark design
   protected double wireBase = 0.0;
   protected double tempBase = 0.0;
+  protected SlicingEvaluator slicing;
 
   public RandomFloorplanGenerator(FloorplanConfiguration cfg, BENCHMARK_TYPE benchmarkType, boolean useDefaultDesign, OPTIMIZATION_TYPE optimizationType, int numberOfObjectives) {
     super(cfg.components.size(), numberOfObjectives);
@@ -76,6 +77,15 @@ public class RandomFloorplanGenerator extends Problem<PostfixVariable> {
     operators.add(new Component(-1, "Z"));
     wireBase = cfg.computeWireObj();
     tempBase = cfg.computeTempObj()[0];
+    slicing = new SlicingEvaluator(cfg);
+  }
+
+  /**
+   * @param rotateBlocks If true, every evaluation selects the orientation of
+   * the blocks from the shape curves of the slicing tree
+   */
+  public void setRotateBlocks(boolean rotateBlocks) {
+    slicing.setRotateBlocks(rotateBlocks);
   }
 
   @Override
@@ -111,25 +121,11 @@ public class RandomFloorplanGenerator extends Problem<PostfixVariable> {
 
   @Override
   public void evaluate(Solution<PostfixVariable> solution) {
-    int currentLength = 0;
-    int currentWidth = 0;
-    int currentHeight = 0;
     double dist;
-    LinkedList<Component> stack = this.buildStackFromSolution(solution);
-    BinaryNode<Component> root = this.buildTreeFromStack(stack);
-    LinkedList<BinaryNode<Component>> floorplans = this.splicer(root);
-    if (root != null && !root.getValue().name.equals("Z")) {
-      floorplans.addFirst(root);
-    }
-    for (BinaryNode<Component> floorplan : floorplans) {
-      this.allocate(floorplan, currentHeight++);
-      if (floorplan.getValue().l > currentLength) {
-        currentLength = floorplan.getValue().l;
-      }
-      if (floorplan.getValue().w > currentWidth) {
-        currentWidth = floorplan.getValue().w;
-      }
-    }
+    slicing.evaluate(solution);
+    int currentLength = slicing.getLength();
+    int currentWidth = slicing.getWidth();
+    int currentHeight = slicing.getNumLayers();
 
     double wireObj = 0;
     double tempObj = 0;
@@ -337,12 +333,13 @@ public class RandomFloorplanGenerator extends Problem<PostfixVariable> {
   }
 
   public static void main(String[] args) {
-    if (args.length != 3) {
-      System.out.println("Usage: java -jar RandomFloorplanGenerator.jar <XmlFilePath> <numberOfSOlutions>");
+    if (args.length != 3 && args.length != 4) {
+      System.out.println("Usage: java -jar RandomFloorplanGenerator.jar <XmlFilePath> <N3H48|N3H64|N3H128> <numberOfSOlutions> [<true|false>]");
       System.out.println("Where:");
       System.out.println("<XmlFilePath>: Scenario path file (Absolute or relative)");
       System.out.println("<N3H48|N3H64|N3H128>: Benchmark being optimized");
       System.out.println("<numberOfSOlutions>: Number of random solutions to be generated");
+      System.out.println("[<true|false>]: Optimal block orientation from shape curves (false by default)");
       args = new String[3];
       args[0] = "test_fp" + File.separator + "N3HC48.xml";
       args[1] = "N3H48";
@@ -353,6 +350,7 @@ public class RandomFloorplanGenerator extends Problem<PostfixVariable> {
     String xmlFilePath = args[0];
     BENCHMARK_TYPE benchmarkType = BENCHMARK_TYPE.valueOf(args[1]);
     int numberOfSolutions = Integer.parseInt(args[2]);
+    boolean rotateBlocks = (args.length > 3) && Boolean.valueOf(args[3]);
 
     Boolean useDefaultDesign = false;
     OPTIMIZATION_TYPE optimizationType = OPTIMIZATION_TYPE.WEIGHTED_SUM; // Irrelevant
@@ -363,7 +361,8 @@ public class RandomFloorplanGenerator extends Problem<PostfixVariable> {
 
     FloorplanConfiguration cfg = new FloorplanConfiguration(xmlFilePath);
     RandomFloorplanGenerator problem = new RandomFloorplanGenerator(cfg, benchmarkType, useDefaultDesign, optimizationType, numberOfObjectives);
-    NSGAII<PostfixVariable> algorithm = new NSGAII<PostfixVariable>(problem, numberOfSolutions, numGene, new PostfixVariable.PostfixMutation(1.0 / problem.getNumberOfVariables()), new CycleCrossover<PostfixVariable>(), new BinaryTournamentNSGAII<PostfixVariable>());
+    problem.setRotateBlocks(rotateBlocks);
+    NSGAII<PostfixVariable> algorithm = new NSGAII<PostfixVariable>(problem, numberOfSolutions, numGene, new PostfixVariable.PostfixMutation(1.0 / problem.getNumberOfVariables(), !rotateBlocks), new CycleCrossover<PostfixVariable>(), new BinaryTournamentNSGAII<PostfixVariable>());
 
     logger.info("Initializing ...");
     algorithm.initialize();
@@ -417,7 +416,7 @@ public class RandomFloorplanGenerator extends Problem<PostfixVariable> {
     }
 
   public Solutions<PostfixVariable> optimize(Integer numIndi, Integer numGene) {
-    NSGAII<PostfixVariable> moga = new NSGAII<PostfixVariable>(this, numIndi, numGene, new PostfixVariable.PostfixMutation(1.0 / this.getNumberOfVariables()), new CycleCrossover<PostfixVariable>(), new BinaryTournamentNSGAII<PostfixVariable>());
+    NSGAII<PostfixVariable> moga = new NSGAII<PostfixVariable>(this, numIndi, numGene, new PostfixVariable.PostfixMutation(1.0 / this.getNumberOfVariables(), !slicing.rotateBlocks), new CycleCrossover<PostfixVariable>(), new BinaryTournamentNSGAII<PostfixVariable>());
     moga.initialize();
     Solutions<PostfixVariable> solutions = moga.execute();
     return solutions;
@@ -343,6 +343,43 @@ public class SequencePair {
         return gammaN.size();
     }
 
+    /**
+     * Sequences and graphs saved by {@link #save(State)}. A State can be
+     * reused, so saving does not allocate once the lists have grown.
+     */
+    public static class State {
+
+        private final ArrayList<Component> gammaN = new ArrayList<Component>();
+        private final ArrayList<Component> gammaP = new ArrayList<Component>();
+        private DirectedAcyclicGraph graphH;
+        private DirectedAcyclicGraph graphV;
+    }
+
+    public void save(State state) {
+        state.gammaN.clear();
+        state.gammaN.addAll(gammaN);
+        state.gammaP.clear();
+        state.gammaP.addAll(gammaP);
+        // Graphs are never modified, only replaced:
+        state.graphH = graphH;
+        state.graphV = graphV;
+    }
+
+    /**
+     * Restores the sequences and graphs. Coordinates are not decoded again,
+     * so the caller must restore them too.
+     *
+     * @param state saved state
+     */
+    public void restore(State state) {
+        gammaN.clear();
+        gammaN.addAll(state.gammaN);
+        gammaP.clear();
+        gammaP.addAll(state.gammaP);
+        graphH = state.graphH;
+        graphV = state.graphV;
+    }
+
     public void show(boolean flagGN, boolean flagGP,
             boolean flagGraphs, boolean flagFP) {
         /* print out of all the data
@@ -0,0 +1,450 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+  *  - José Luis Risco Martín
+ */
+package eco.lib.examples.floorplan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import eco.core.problem.Solution;
+import eco.core.util.random.RandomGenerator;
+
+/**
+ * Array-based evaluator of the Polish expressions used by
+ * {@link FloorplanPolishAsoc} and {@link RandomFloorplanGenerator}.
+ *
+ * The expression is stored in postfix order in an int array. Operands are the
+ * indices of the variables and operators are the negative codes H, V and Z.
+ * The slicing tree is parsed with a fixed-size array stack. Shapes are then
+ * computed bottom-up in a single pass and coordinates top-down, so decoding a
+ * solution does not allocate once the arrays have reached the size of the
+ * problem. Layers are split on Z exactly as the former splicer did: every Z
+ * node is replaced by its right subtree, and its left subtree becomes a new
+ * layer.
+ *
+ * The tree is built again for every evaluation. The evaluator is shared by
+ * all the solutions of a population, so there is no tree per solution that a
+ * mutation could update in place, and an evaluation is O(n) anyway: the
+ * coordinates depend on the shapes of all the blocks placed before.
+ *
+ * Blocks may optionally be rotated (Stockmeyer). In that case every node
+ * keeps the shape curve of its subtree, i.e. the pruned staircase of
+ * non-dominated (length, width) pairs. Curves are merged bottom-up in the
+ * same pass as the shapes. Each layer takes the root point
+ * that best fits the chip outline, and the blocks are rotated to match it.
+ * The curve of a block does not depend on its orientation, so rotations
+ * are no longer part of the search space.
+ *
+ * Instances are not thread safe.
+ *
+ * @author jlrisco
+ */
+public class SlicingEvaluator {
+
+  public static final int H = -1;
+  public static final int V = -2;
+  public static final int Z = -3;
+
+  protected int maxLength;
+  protected int maxWidth;
+  protected boolean rotateBlocks = false;
+  // Postfix code and operands:
+  protected int size = 0;
+  protected int[] code = new int[0];
+  protected Component[] blocks = new Component[0];
+  // Slicing tree and layout, indexed by postfix position (eff skips Z nodes):
+  protected int root = -1;
+  protected int[] left, right, eff;
+  protected int[] l, w, x, y;
+  protected int[] stack, path;
+  // Shape curves, stored in a pool with the points of the children they come from:
+  protected int[] curveFrom, curveSize, chosen;
+  protected int[] poolL = new int[0], poolW = new int[0], pickLeft = new int[0], pickRight = new int[0];
+  protected int poolSize = 0;
+  // Result:
+  protected int numLayers = 0;
+  protected int length = 0;
+  protected int width = 0;
+
+  public SlicingEvaluator(FloorplanConfiguration cfg) {
+    this.maxLength = cfg.maxLengthInCells;
+    this.maxWidth = cfg.maxWidthInCells;
+    ensureCapacity(Math.max(1, 2 * cfg.components.size() - 1));
+  }
+
+  public void setRotateBlocks(boolean rotateBlocks) {
+    this.rotateBlocks = rotateBlocks;
+  }
+
+  public int getNumLayers() {
+    return numLayers;
+  }
+
+  public int getLength() {
+    return length;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Places the components of the solution (x, y and z, and also l and w if
+   * blocks are rotated).
+   *
+   * @param solution Solution
+   */
+  public void evaluate(Solution<PostfixVariable> solution) {
+    encode(solution);
+    build();
+    layout();
+  }
+
+  /**
+   * Builds the postfix code of a solution. Chains are trimmed and the
+   * expression is completed with random operators exactly as
+   * {@link FloorplanPolishAsoc#buildStackFromSolution(Solution)} does.
+   *
+   * @param solution Solution
+   */
+  public void encode(Solution<PostfixVariable> solution) {
+    ArrayList<PostfixVariable> variables = solution.getVariables();
+    int numVars = variables.size();
+    ensureCapacity(Math.max(1, 2 * numVars - 1));
+    if (blocks.length < numVars) {
+      blocks = new Component[numVars];
+    }
+    int size = 0;
+    int currentLength = 0;
+    for (int j = 0; j < numVars; ++j) {
+      PostfixVariable var = variables.get(j);
+      blocks[j] = var.getValue();
+      code[size++] = j;
+      if (currentLength < j) {
+        if (currentLength + var.chain.length() > j) {
+          var.resizeChain(j - currentLength);
+        }
+        currentLength += var.chain.length();
+        for (int k = 0; k < var.chain.length(); ++k) {
+          code[size++] = toCode(var.chain.charAt(k));
+        }
+      }
+    }
+    while (currentLength < numVars - 1) {
+      code[size++] = toCode(PostfixVariable.CHAIN_OPTIONS[RandomGenerator.nextInt(PostfixVariable.CHAIN_OPTIONS.length)].charAt(0));
+      currentLength++;
+    }
+    this.size = size;
+  }
+
+  /**
+   * Parses the current postfix code and computes all the shapes (or shape
+   * curves).
+   */
+  protected void build() {
+    int top = 0;
+    for (int i = 0; i < size; ++i) {
+      if (code[i] < 0) {
+        right[i] = stack[--top];
+        left[i] = stack[--top];
+      }
+      stack[top++] = i;
+    }
+    root = (top > 0) ? stack[top - 1] : -1;
+    computeShapes();
+  }
+
+  /**
+   * Computes all the shapes (or shape curves) in one bottom-up pass.
+   */
+  protected void computeShapes() {
+    // Children always precede their parents:
+    poolSize = 0;
+    for (int i = 0; i < size; ++i) {
+      int op = code[i];
+      if (!rotateBlocks || op == Z) {
+        computeShape(i);
+      } else if (op >= 0) {
+        eff[i] = i;
+        leafCurve(i, blocks[op]);
+      } else {
+        eff[i] = i;
+        mergeCurves(i, op, eff[left[i]], eff[right[i]]);
+      }
+    }
+  }
+
+  /**
+   * Computes the shape of a node from its children.
+   */
+  protected void computeShape(int i) {
+    int op = code[i];
+    eff[i] = i;
+    if (op >= 0) {
+      l[i] = blocks[op].l;
+      w[i] = blocks[op].w;
+      return;
+    }
+    int a = eff[left[i]], b = eff[right[i]];
+    if (op == Z) {
+      eff[i] = b;
+      l[i] = l[b];
+      w[i] = w[b];
+    } else if (op == H) {
+      l[i] = Math.max(l[a], l[b]);
+      w[i] = w[a] + w[b];
+    } else {
+      l[i] = l[a] + l[b];
+      w[i] = Math.max(w[a], w[b]);
+    }
+  }
+
+  /**
+   * Places the components from the shapes of the tree.
+   */
+  public void layout() {
+    numLayers = 0;
+    length = 0;
+    width = 0;
+    if (root < 0) {
+      return;
+    }
+    // Layers, in the order given by a pre-order traversal:
+    place((code[root] == Z) ? eff[right[root]] : root);
+    int top = 0;
+    path[top++] = root;
+    while (top > 0) {
+      int n = path[--top];
+      if (code[n] < 0) {
+        if (code[n] == Z) {
+          place(eff[left[n]]);
+        }
+        path[top++] = right[n];
+        path[top++] = left[n];
+      }
+    }
+  }
+
+  /**
+   * Places a slicing tree without Z nodes in a new layer.
+   */
+  protected void place(int t) {
+    int layer = numLayers++;
+    if (rotateBlocks) {
+      chosen[t] = bestPoint(t);
+      l[t] = poolL[chosen[t]];
+      w[t] = poolW[chosen[t]];
+    }
+    length = Math.max(length, l[t]);
+    width = Math.max(width, w[t]);
+    x[t] = 0;
+    y[t] = 0;
+    int top = 0;
+    stack[top++] = t;
+    while (top > 0) {
+      int m = stack[--top];
+      int op = code[m];
+      if (op >= 0) {
+        Component block = blocks[op];
+        if (rotateBlocks && block.l != l[m]) {
+          rotate(block);
+        }
+        block.x = x[m];
+        block.y = y[m];
+        block.z = layer;
+        continue;
+      }
+      int a = eff[left[m]], b = eff[right[m]];
+      if (rotateBlocks) {
+        int p = chosen[m];
+        chosen[a] = pickLeft[p];
+        chosen[b] = pickRight[p];
+        l[a] = poolL[chosen[a]];
+        w[a] = poolW[chosen[a]];
+        l[b] = poolL[chosen[b]];
+        w[b] = poolW[chosen[b]];
+      }
+      x[a] = x[m];
+      y[a] = y[m];
+      if (op == H) {
+        x[b] = x[m];
+        y[b] = y[m] + w[a];
+      } else {
+        x[b] = x[m] + l[a];
+        y[b] = y[m];
+      }
+      stack[top++] = b;
+      stack[top++] = a;
+    }
+  }
+
+  protected void leafCurve(int i, Component block) {
+    ensurePool(poolSize + 2);
+    curveFrom[i] = poolSize;
+    int small = Math.min(block.l, block.w), big = Math.max(block.l, block.w);
+    addPoint(small, big, -1, -1);
+    if (small != big) {
+      addPoint(big, small, -1, -1);
+    }
+    curveSize[i] = poolSize - curveFrom[i];
+  }
+
+  /**
+   * Merges two curves sorted by increasing length (and decreasing width).
+   * With V lengths are added and widths maximized, so the child that fixes
+   * the width is advanced. H is symmetric, walking both curves backwards.
+   */
+  protected void mergeCurves(int i, int op, int a, int b) {
+    int fromA = curveFrom[a], endA = fromA + curveSize[a];
+    int fromB = curveFrom[b], endB = fromB + curveSize[b];
+    ensurePool(poolSize + curveSize[a] + curveSize[b]);
+    curveFrom[i] = poolSize;
+    if (op == V) {
+      int pa = fromA, pb = fromB;
+      while (true) {
+        addPoint(poolL[pa] + poolL[pb], Math.max(poolW[pa], poolW[pb]), pa, pb);
+        if (poolW[pa] > poolW[pb]) {
+          if (++pa == endA) {
+            break;
+          }
+        } else if (poolW[pa] < poolW[pb]) {
+          if (++pb == endB) {
+            break;
+          }
+        } else if (++pa == endA || ++pb == endB) {
+          break;
+        }
+      }
+    } else {
+      int pa = endA - 1, pb = endB - 1;
+      while (true) {
+        addPoint(Math.max(poolL[pa], poolL[pb]), poolW[pa] + poolW[pb], pa, pb);
+        if (poolL[pa] > poolL[pb]) {
+          if (pa-- == fromA) {
+            break;
+          }
+        } else if (poolL[pa] < poolL[pb]) {
+          if (pb-- == fromB) {
+            break;
+          }
+        } else if (pa-- == fromA || pb-- == fromB) {
+          break;
+        }
+      }
+      // Restore the increasing length order:
+      for (int p = curveFrom[i], q = poolSize - 1; p < q; ++p, --q) {
+        swapPoints(p, q);
+      }
+    }
+    curveSize[i] = poolSize - curveFrom[i];
+  }
+
+  /**
+   * Point of the curve with the lowest excess over the chip outline, and
+   * then with the lowest area.
+   */
+  protected int bestPoint(int t) {
+    int best = -1;
+    long bestExcess = Long.MAX_VALUE, bestArea = Long.MAX_VALUE;
+    for (int p = curveFrom[t]; p < curveFrom[t] + curveSize[t]; ++p) {
+      long excess = Math.max(0, poolL[p] - maxLength) + Math.max(0, poolW[p] - maxWidth);
+      long area = (long) poolL[p] * poolW[p];
+      if (excess < bestExcess || (excess == bestExcess && area < bestArea)) {
+        best = p;
+        bestExcess = excess;
+        bestArea = area;
+      }
+    }
+    return best;
+  }
+
+  protected static void rotate(Component block) {
+    // Same as the length-width change of the mutation operator:
+    block.xMax += block.l - block.w;
+    block.yMax += block.w - block.l;
+    int temp = block.l;
+    block.l = block.w;
+    block.w = temp;
+  }
+
+  protected static int toCode(char operator) {
+    switch (operator) {
+      case 'H':
+        return H;
+      case 'V':
+        return V;
+      case 'Z':
+        return Z;
+      default:
+        throw new IllegalArgumentException("Unknown operator: " + operator);
+    }
+  }
+
+  private void addPoint(int pl, int pw, int pa, int pb) {
+    poolL[poolSize] = pl;
+    poolW[poolSize] = pw;
+    pickLeft[poolSize] = pa;
+    pickRight[poolSize] = pb;
+    poolSize++;
+  }
+
+  private void swapPoints(int p, int q) {
+    int temp = poolL[p];
+    poolL[p] = poolL[q];
+    poolL[q] = temp;
+    temp = poolW[p];
+    poolW[p] = poolW[q];
+    poolW[q] = temp;
+    temp = pickLeft[p];
+    pickLeft[p] = pickLeft[q];
+    pickLeft[q] = temp;
+    temp = pickRight[p];
+    pickRight[p] = pickRight[q];
+    pickRight[q] = temp;
+  }
+
+  private void ensurePool(int capacity) {
+    if (poolL.length < capacity) {
+      int newCapacity = Math.max(capacity, 2 * poolL.length);
+      poolL = Arrays.copyOf(poolL, newCapacity);
+      poolW = Arrays.copyOf(poolW, newCapacity);
+      pickLeft = Arrays.copyOf(pickLeft, newCapacity);
+      pickRight = Arrays.copyOf(pickRight, newCapacity);
+    }
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (code.length >= capacity) {
+      return;
+    }
+    code = new int[capacity];
+    left = new int[capacity];
+    right = new int[capacity];
+    eff = new int[capacity];
+    l = new int[capacity];
+    w = new int[capacity];
+    x = new int[capacity];
+    y = new int[capacity];
+    stack = new int[capacity];
+    path = new int[capacity];
+    curveFrom = new int[capacity];
+    curveSize = new int[capacity];
+    chosen = new int[capacity];
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+  *  - José Luis Risco Martín
+ */
+package eco.lib.examples.floorplan;
+
+/**
+ * Thermal proxy of a floorplan: for every power profile, the sum over all
+ * pairs of components of the product of their normalized power densities
+ * divided by the distance between their centres.
+ *
+ * It works on the structure of arrays of a {@link ComponentStore}, so the
+ * distance of every pair is computed once and the inner loops over profiles
+ * are plain array reductions that the JIT can vectorize. Evaluating all the
+ * power profiles costs little more than evaluating one.
+ *
+ * @author jlrisco
+ */
+public class ThermalProxy {
+
+    /**
+     * How the per-profile objectives are reduced to a single value.
+     */
+    public enum Aggregation {
+        MAX, MEAN
+    }
+
+    protected ComponentStore store;
+    protected double[] invDist;
+    protected double[] against;
+
+    public ThermalProxy(ComponentStore store) {
+        this.store = store;
+        invDist = new double[store.x.length];
+        against = new double[store.numPowerProfiles];
+    }
+
+    public ComponentStore getStore() {
+        return store;
+    }
+
+    /**
+     * Thermal objective of every power profile over all the pairs of the
+     * store. Pairs with a non valid component add a penalty of 1.0.
+     *
+     * @param feasibleIJ Optional pairwise feasibility (may be null). Unfeasible
+     * pairs add a penalty of 1.0 too.
+     * @return One objective per power profile
+     */
+    public double[] compute(boolean[][] feasibleIJ) {
+        int size = store.size;
+        int[] cx2 = store.cx2, cy2 = store.cy2, cz2 = store.cz2;
+        boolean[] valid = store.valid;
+        double[] result = new double[store.numPowerProfiles];
+        for (int i = 0; i < size - 1; ++i) {
+            int xi = cx2[i], yi = cy2[i], zi = cz2[i];
+            for (int j = i + 1; j < size; ++j) {
+                double dx = xi - cx2[j], dy = yi - cy2[j], dz = zi - cz2[j];
+                invDist[j] = 2.0 / Math.sqrt(dx * dx + dy * dy + dz * dz);
+            }
+            int penalties = 0;
+            for (int j = i + 1; j < size; ++j) {
+                if (!valid[i] || !valid[j] || (feasibleIJ != null && !feasibleIJ[i][j])) {
+                    invDist[j] = 0.0;
+                    penalties++;
+                }
+            }
+            for (int p = 0; p < result.length; ++p) {
+                double[] row = store.power[p];
+                double sum = 0.0;
+                for (int j = i + 1; j < size; ++j) {
+                    sum += row[j] * invDist[j];
+                }
+                result[p] += row[i] * sum + penalties;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Thermal impact of a component (not stored) against every stored one.
+     * It is called once per candidate position during the placement, so the
+     * result is written into a buffer of the proxy, like the distances.
+     *
+     * @param c Component
+     * @return One objective per power profile, overwritten by the next call
+     */
+    public double[] computeAgainst(Component c) {
+        int size = store.size;
+        int[] cx2 = store.cx2, cy2 = store.cy2, cz2 = store.cz2;
+        double[] result = against;
+        int xi = 2 * c.x + c.l, yi = 2 * c.y + c.w, zi = 2 * c.z + c.h;
+        int k = store.indexes.get(c.id);
+        for (int j = 0; j < size; ++j) {
+            double dx = xi - cx2[j], dy = yi - cy2[j], dz = zi - cz2[j];
+            invDist[j] = 2.0 / Math.sqrt(dx * dx + dy * dy + dz * dz);
+        }
+        for (int p = 0; p < result.length; ++p) {
+            double[] row = store.power[p];
+            double sum = 0.0;
+            for (int j = 0; j < size; ++j) {
+                sum += row[j] * invDist[j];
+            }
+            result[p] = store.staticPower[p][k] * sum;
+        }
+        return result;
+    }
+
+    public static double aggregate(double[] objs, Aggregation aggregation) {
+        if (aggregation == Aggregation.MEAN) {
+            double sum = 0.0;
+            for (double obj : objs) {
+                sum += obj;
+            }
+            return sum / objs.length;
+        }
+        double max = Double.NEGATIVE_INFINITY;
+        for (double obj : objs) {
+            max = Math.max(max, obj);
+        }
+        return max;
+    }
+}
@@ -33,16 +33,19 @@ import eco.core.problem.Problem;
 import eco.core.problem.Solution;
 import eco.core.problem.Solutions;
 import eco.core.util.logger.HeroLogger;
+import eco.lib.examples.floorplan.InverseDistanceTable;
 
 public class FloorplanRegisterGenetic extends Problem<RegisterVariable> {
 
     private static final Logger logger = Logger.getLogger(FloorplanRegisterGenetic.class.getName());
     protected FloorplanRegisterConfiguration cfg;
     protected boolean feasibleSolutionFound = false;
+    protected InverseDistanceTable invDistTable;
 
     public FloorplanRegisterGenetic(FloorplanRegisterConfiguration cfg) {
         super(cfg.components.size(), 1 + cfg.numPowerProfiles);
         this.cfg = cfg;
+        invDistTable = InverseDistanceTable.getInstance(cfg.maxLengthInCells, cfg.maxWidthInCells, 0);
     }
 
   @Override
@@ -92,18 +95,19 @@ public class FloorplanRegisterGenetic extends Problem<RegisterVariable> {
 
     public double[] fitnessTemp(Solution<RegisterVariable> solution) {
         double[] objs = new double[cfg.numPowerProfiles];
-        double dist = 0.0;
+        double invDist = 0.0;
 
         ArrayList<RegisterVariable> variables = solution.getVariables();
         for (int i = 0; i < variables.size() - 1; ++i) {
             Register cI = variables.get(i).getValue();
+            int xI2 = 2 * cI.x + cI.l, yI2 = 2 * cI.y + cI.w;
             for (int j = i + 1; j < variables.size(); ++j) {
                 Register cJ = variables.get(j).getValue();
                 // Ahora Calculamos el impacto térmico:
-                dist = Math.sqrt(Math.pow(cI.x + cI.l / 2.0 - cJ.x - cJ.l / 2.0, 2) + Math.pow(cI.y + cI.w / 2.0 - cJ.y - cJ.w / 2.0, 2));
-                if (dist > 0) {
+                invDist = invDistTable.get(xI2 - 2 * cJ.x - cJ.l, yI2 - 2 * cJ.y - cJ.w, 0);
+                if (!Double.isInfinite(invDist)) {
                     for (int p = 0; p < cfg.numPowerProfiles; ++p) {
-                        objs[p] += ((cI.dps[p] / cfg.maxDP) * (cJ.dps[p] / cfg.maxDP)) / dist;
+                        objs[p] += ((cI.dps[p] / cfg.maxDP) * (cJ.dps[p] / cfg.maxDP)) * invDist;
                     }
                 }
             }
@@ -20,8 +20,9 @@
 package eco.lib.examples.floorplan.util;
 
 public abstract class AbstractSolver implements Solver {
-	public static Solution bestSolution;
-	public static double bestObjective;
+	// Per solver, so several solvers can run in the same JVM:
+	protected Solution bestSolution;
+	protected double bestObjective;
 	protected abstract void search(Solution initial);
 	
 	public Solution solve(Solution initial) {
@@ -38,4 +39,8 @@ public abstract class AbstractSolver implements Solver {
 			System.out.println("Best: " + bestSolution.toString());
 		}
 	}
+
+	public double getBestObjective() {
+		return bestObjective;
+	}
 }
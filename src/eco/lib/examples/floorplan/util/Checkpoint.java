@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+  *  - José Luis Risco Martín
+ */
+package eco.lib.examples.floorplan.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import eco.core.algorithm.metaheuristic.moga.NSGAII;
+import eco.core.problem.Solution;
+import eco.core.problem.Solutions;
+import eco.core.problem.Variable;
+import eco.core.util.random.RandomGenerator;
+import eco.unstable.util.metrics.Metrics;
+
+/**
+ * Binary checkpoint of a run: generation counter, base seed, objectives and
+ * variables of the population and, if any, the state of the convergence
+ * tracker. The file is first written to a temporary file and then renamed,
+ * so a killed process never leaves a broken checkpoint.
+ *
+ * The state of the random generator cannot be read. Instead, when a run is
+ * checkpointed, the base seed of the run is drawn once at the start (see
+ * {@link #start()}), and the generator is re-seeded at the beginning of
+ * every generation with a seed derived from the base seed and the
+ * generation number (see {@link #startGeneration(int)}). Saving a checkpoint
+ * does not touch the generator, so a resumed run continues exactly as the
+ * original one would have done. Runs without checkpoints are not re-seeded,
+ * so they draw the same numbers as a plain loop of NSGAII steps.
+ *
+ * @param <V> Variable type
+ */
+public class Checkpoint<V extends Variable<?>> {
+
+    private static final Logger LOGGER = Logger.getLogger(Checkpoint.class.getName());
+    private static final int MAGIC = 0x45434f43; // "ECOC"
+    private static final int VERSION = 2;
+    // Odd constant (golden ratio) that spreads the seeds of the generations:
+    private static final long SEED_STEP = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Writes and reads variables of a given type.
+     *
+     * @param <V> Variable type
+     */
+    public interface Codec<V> {
+
+        public void write(DataOutput out, V variable) throws IOException;
+
+        public V read(DataInput in) throws IOException;
+    }
+
+    public static final Codec<Variable<Boolean>> BOOLEAN_CODEC = new Codec<Variable<Boolean>>() {
+        @Override
+        public void write(DataOutput out, Variable<Boolean> variable) throws IOException {
+            out.writeBoolean(variable.getValue());
+        }
+
+        @Override
+        public Variable<Boolean> read(DataInput in) throws IOException {
+            return new Variable<Boolean>(in.readBoolean());
+        }
+    };
+
+    protected File file;
+    protected Codec<V> codec;
+    protected long seed = 0;
+    protected boolean reseed = false;
+
+    public Checkpoint(String filePath, Codec<V> codec) {
+        this.file = new File(filePath);
+        this.codec = codec;
+    }
+
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Draws the base seed of a new checkpointed run from the random
+     * generator. It must be called once, before the first generation, unless
+     * the run is restored.
+     */
+    public void start() {
+        seed = RandomGenerator.nextInt(Integer.MAX_VALUE);
+        reseed = true;
+    }
+
+    /**
+     * Re-seeds the random generator for the given generation if the run was
+     * started with {@link #start()} or restored. It must be called before
+     * every generation.
+     *
+     * @param generation Generation about to run
+     */
+    public void startGeneration(int generation) {
+        if (reseed) {
+            RandomGenerator.setSeed(seed + generation * SEED_STEP);
+        }
+    }
+
+    /**
+     * Initializes the algorithm. If <code>resume</code> is set and the
+     * checkpoint exists, the algorithm starts from the stored population, so
+     * no random population is evaluated, and re-seeding is restored.
+     * Otherwise a random population is evaluated, and re-seeding is started
+     * only if checkpoints are saved.
+     *
+     * @param algorithm Algorithm, not initialized
+     * @param interval Generations between checkpoints (0 for none)
+     * @param resume If true and the checkpoint exists, restore it
+     * @param tracker Convergence tracker to be restored, may be null
+     * @return The last completed generation, 0 for a new run
+     */
+    public int initialize(NSGAII<V> algorithm, int interval, boolean resume, ConvergenceTracker<V> tracker) {
+        if (resume && exists()) {
+            try {
+                Solutions<V> population = new Solutions<>();
+                int generation = restore(population, tracker);
+                algorithm.initialize(population);
+                LOGGER.info("Resuming after generation " + generation + " ...");
+                return generation;
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, null, ex);
+            }
+        }
+        algorithm.initialize();
+        if (interval > 0) {
+            start();
+        }
+        return 0;
+    }
+
+    /**
+     * Saves the population.
+     *
+     * @param generation Last completed generation
+     * @param population Population
+     * @throws IOException
+     */
+    public void save(int generation, Solutions<V> population) throws IOException {
+        save(generation, population, null);
+    }
+
+    /**
+     * Saves the population and the state of the tracker.
+     *
+     * @param generation Last completed generation
+     * @param population Population
+     * @param tracker Convergence tracker, may be null
+     * @throws IOException
+     */
+    public void save(int generation, Solutions<V> population, ConvergenceTracker<V> tracker) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(generation);
+            out.writeLong(seed);
+            writeSolutions(out, population, codec);
+            ParetoArchive<V> archive = (tracker != null) ? tracker.archive : null;
+            out.writeBoolean(archive != null);
+            if (archive != null) {
+                out.writeDouble(tracker.bestHypervolume);
+                out.writeInt(tracker.stagnantGenerations);
+                out.writeInt(archive.numberOfObjectives);
+                for (double value : archive.ref) {
+                    out.writeDouble(value);
+                }
+                writeSolutions(out, archive.getSolutions(), codec);
+            }
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Replaces the content of the population with the stored one and
+     * restores the base seed and re-seeding.
+     *
+     * @param population Population to be overwritten (usually the one of an
+     * already initialized algorithm)
+     * @return The last completed generation
+     * @throws IOException
+     */
+    public int restore(Solutions<V> population) throws IOException {
+        return restore(population, null);
+    }
+
+    /**
+     * Replaces the content of the population with the stored one, and
+     * restores the base seed, re-seeding and the state of the tracker.
+     *
+     * @param population Population to be overwritten (usually the one of an
+     * already initialized algorithm)
+     * @param tracker Convergence tracker to be overwritten, may be null
+     * @return The last completed generation
+     * @throws IOException
+     */
+    public int restore(Solutions<V> population, ConvergenceTracker<V> tracker) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Invalid checkpoint file: " + file.getPath());
+            }
+            int generation = in.readInt();
+            long storedSeed = in.readLong();
+            Solutions<V> solutions = readSolutions(in, codec);
+            ParetoArchive<V> archive = null;
+            double bestHypervolume = 0.0;
+            int stagnantGenerations = 0;
+            if (in.readBoolean()) {
+                bestHypervolume = in.readDouble();
+                stagnantGenerations = in.readInt();
+                double[] ref = new double[in.readInt()];
+                for (int i = 0; i < ref.length; ++i) {
+                    ref[i] = in.readDouble();
+                }
+                archive = new ParetoArchive<>(ref.length, ref);
+                archive.addAll(readSolutions(in, codec));
+            }
+            population.clear();
+            population.addAll(solutions);
+            seed = storedSeed;
+            reseed = true;
+            if (tracker != null) {
+                tracker.archive = archive;
+                tracker.bestHypervolume = bestHypervolume;
+                tracker.stagnantGenerations = stagnantGenerations;
+            }
+            return generation;
+        }
+    }
+
+    /**
+     * Writes the objectives and the variables of the solutions.
+     *
+     * @param <V> Variable type
+     * @param out Output
+     * @param solutions Solutions
+     * @param codec Codec of the variables
+     * @throws IOException
+     */
+    public static <V extends Variable<?>> void writeSolutions(DataOutput out, Solutions<V> solutions, Codec<V> codec) throws IOException {
+        out.writeInt(solutions.size());
+        for (Solution<V> solution : solutions) {
+            out.writeInt(solution.getObjectives().size());
+            for (Double objective : solution.getObjectives()) {
+                out.writeDouble(objective);
+            }
+            out.writeInt(solution.getVariables().size());
+            for (V variable : solution.getVariables()) {
+                codec.write(out, variable);
+            }
+        }
+    }
+
+    /**
+     * Reads solutions written by
+     * {@link #writeSolutions(DataOutput, Solutions, Codec)}.
+     *
+     * @param <V> Variable type
+     * @param in Input
+     * @param codec Codec of the variables
+     * @return The solutions
+     * @throws IOException
+     */
+    public static <V extends Variable<?>> Solutions<V> readSolutions(DataInput in, Codec<V> codec) throws IOException {
+        int size = in.readInt();
+        Solutions<V> solutions = new Solutions<>();
+        for (int i = 0; i < size; ++i) {
+            int numObjectives = in.readInt();
+            Solution<V> solution = new Solution<>(numObjectives);
+            for (int j = 0; j < numObjectives; ++j) {
+                solution.getObjectives().set(j, in.readDouble());
+            }
+            int numVariables = in.readInt();
+            for (int j = 0; j < numVariables; ++j) {
+                solution.getVariables().add(codec.read(in));
+            }
+            solutions.add(solution);
+        }
+        return solutions;
+    }
+
+    /**
+     * Initializes the algorithm and runs it until <code>numGene</code>
+     * generations are completed, saving a checkpoint every
+     * <code>interval</code> generations.
+     *
+     * @param algorithm Algorithm, not initialized
+     * @param numGene Number of generations
+     * @param interval Generations between checkpoints (0 for none)
+     * @param resume If true and the checkpoint exists, the population and the
+     * generation counter are restored before running
+     * @return The non-dominated solutions of the final population
+     */
+    public Solutions<V> execute(NSGAII<V> algorithm, int numGene, int interval, boolean resume) {
+        return execute(algorithm, numGene, interval, resume, null);
+    }
+
+    /**
+     * Same as {@link #execute(NSGAII, int, int, boolean)}, but the run stops
+     * early if the hypervolume tracked by <code>tracker</code> stagnates.
+     *
+     * @param algorithm Algorithm, not initialized
+     * @param numGene Number of generations
+     * @param interval Generations between checkpoints (0 for none)
+     * @param resume If true and the checkpoint exists, the population and the
+     * generation counter are restored before running
+     * @param tracker Convergence tracker, may be null to skip tracking
+     * @return The archive of the tracker, or the non-dominated solutions of
+     * the final population if there is no tracker
+     */
+    public Solutions<V> execute(NSGAII<V> algorithm, int numGene, int interval, boolean resume, ConvergenceTracker<V> tracker) {
+        int currentGeneration = initialize(algorithm, interval, resume, tracker);
+        while (currentGeneration < numGene) {
+            currentGeneration++;
+            startGeneration(currentGeneration);
+            algorithm.step();
+            Metrics.endGeneration();
+            boolean stagnated = tracker != null && tracker.update(algorithm.getCurrentSolution());
+            if (interval > 0 && currentGeneration % interval == 0) {
+                try {
+                    save(currentGeneration, algorithm.getPopulation(), tracker);
+                } catch (IOException ex) {
+                    LOGGER.log(Level.SEVERE, null, ex);
+                }
+            }
+            if (stagnated) {
+                LOGGER.info("Hypervolume stagnated at generation " + currentGeneration + ": " + tracker.getHypervolume());
+                break;
+            }
+        }
+        if (tracker != null && tracker.getArchive() != null) {
+            return tracker.getArchive().getSolutions();
+        }
+        return algorithm.getCurrentSolution();
+    }
+}
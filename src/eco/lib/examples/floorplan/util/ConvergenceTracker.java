@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+  *  - José Luis Risco Martín
+ */
+package eco.lib.examples.floorplan.util;
+
+import eco.core.problem.Solutions;
+import eco.core.problem.Variable;
+
+/**
+ * Tracks the hypervolume of the non-dominated solutions found along the
+ * generations of a run, and detects stagnation. The reference point is taken
+ * from the first front received: the worst value of every objective plus a
+ * 10% margin (at least 1).
+ *
+ * @param <V> Variable type
+ */
+public class ConvergenceTracker<V extends Variable<?>> {
+
+    public static final double DEFAULT_TOLERANCE = 1e-4;
+
+    protected ParetoArchive<V> archive = null;
+    protected int patience;
+    protected double tolerance;
+    protected double bestHypervolume = 0.0;
+    protected int stagnantGenerations = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param patience Number of generations without a relative improvement
+     * of the hypervolume greater than the tolerance before stopping (0 never
+     * stops)
+     * @param tolerance Relative improvement tolerance
+     */
+    public ConvergenceTracker(int patience, double tolerance) {
+        this.patience = patience;
+        this.tolerance = tolerance;
+    }
+
+    public ConvergenceTracker(int patience) {
+        this(patience, DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * Adds the front of the last generation to the archive.
+     *
+     * @param front Current non-dominated solutions
+     * @return true if the hypervolume has stagnated and the run should stop
+     */
+    public boolean update(Solutions<V> front) {
+        if (front.isEmpty()) {
+            return false;
+        }
+        if (archive == null) {
+            int numberOfObjectives = front.get(0).getObjectives().size();
+            double[] ref = new double[numberOfObjectives];
+            for (int i = 0; i < numberOfObjectives; ++i) {
+                double max = Double.NEGATIVE_INFINITY;
+                for (int j = 0; j < front.size(); ++j) {
+                    max = Math.max(max, front.get(j).getObjective(i));
+                }
+                ref[i] = max + Math.max(0.1 * Math.abs(max), 1.0);
+            }
+            archive = new ParetoArchive<>(numberOfObjectives, ref);
+        }
+        archive.addAll(front);
+        double hypervolume = archive.getHypervolume();
+        if (hypervolume > bestHypervolume * (1 + tolerance)) {
+            bestHypervolume = hypervolume;
+            stagnantGenerations = 0;
+        } else {
+            stagnantGenerations++;
+        }
+        return patience > 0 && stagnantGenerations >= patience;
+    }
+
+    /**
+     * @return Hypervolume of the archive, cached until the archive changes
+     */
+    public double getHypervolume() {
+        return (archive == null) ? 0.0 : archive.getHypervolume();
+    }
+
+    public ParetoArchive<V> getArchive() {
+        return archive;
+    }
+}
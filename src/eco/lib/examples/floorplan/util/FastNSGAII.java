@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+  *  - José Luis Risco Martín
+ */
+package eco.lib.examples.floorplan.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import eco.core.algorithm.metaheuristic.moga.NSGAII;
+import eco.core.operator.assigner.CrowdingDistance;
+import eco.core.operator.comparator.ComparatorNSGAII;
+import eco.core.operator.crossover.CrossoverOperator;
+import eco.core.operator.mutation.MutationOperator;
+import eco.core.operator.selection.SelectionOperator;
+import eco.core.problem.Problem;
+import eco.core.problem.Solutions;
+import eco.core.problem.Variable;
+
+/**
+ * NSGAII with the extraction of the fronts replaced by
+ * {@link NonDominatedSort}, which is O(N log N) for two objectives and
+ * O(N log^2 N) for three, instead of O(MN^2). Everything else, including the
+ * population, the operators and the crowding distance, is the one of NSGAII,
+ * so it can be used wherever an NSGAII is expected.
+ *
+ * @param <V> Variable type
+ */
+public class FastNSGAII<V extends Variable<?>> extends NSGAII<V> {
+
+    /**
+     * Property with the front index of a solution, as read by the NSGAII
+     * comparators.
+     */
+    public static final String RANK_PROPERTY = "rank";
+
+    public FastNSGAII(Problem<V> problem, int maxPopulationSize, int maxGenerations, MutationOperator<V> mutationOperator, CrossoverOperator<V> crossoverOperator, SelectionOperator<V> selectionOperator) {
+        super(problem, maxPopulationSize, maxGenerations, mutationOperator, crossoverOperator, selectionOperator);
+    }
+
+    @Override
+    public Solutions<V> reduce(Solutions<V> pop, int maxSize) {
+        ArrayList<Solutions<V>> fronts = NonDominatedSort.sort(pop);
+        Solutions<V> reducedPop = new Solutions<>();
+        CrowdingDistance<V> assigner = new CrowdingDistance<>(problem.getNumberOfObjectives());
+        for (int i = 0; i < fronts.size() && reducedPop.size() < maxSize; ++i) {
+            Solutions<V> front = fronts.get(i);
+            for (int j = 0; j < front.size(); ++j) {
+                front.get(j).getProperties().put(RANK_PROPERTY, (double) i);
+            }
+            assigner.execute(front);
+            reducedPop.addAll(front);
+        }
+        if (reducedPop.size() > maxSize) {
+            Collections.sort(reducedPop, new ComparatorNSGAII<V>());
+            while (reducedPop.size() > maxSize) {
+                reducedPop.remove(reducedPop.size() - 1);
+            }
+        }
+        return reducedPop;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+  *  - José Luis Risco Martín
+ */
+package eco.lib.examples.floorplan.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Exact hypervolume of a set of points (all objectives minimized). Two
+ * objectives are solved with a sweep, three objectives with a dimension sweep
+ * over a 2D staircase (O(n log n)), and more objectives by slicing the last
+ * objective (HSO).
+ */
+public class Hypervolume {
+
+    /**
+     * Non-dominated 2D staircase sorted by the first objective, with the
+     * dominated area (bounded by a reference point) updated on every
+     * insertion. Insertions take O(log n) amortized time.
+     *
+     * @param <T> Payload stored with every point
+     */
+    public static class Staircase<T> {
+
+        protected static class Step<T> {
+
+            protected final double x, y;
+            protected final T payload;
+
+            protected Step(double x, double y, T payload) {
+                this.x = x;
+                this.y = y;
+                this.payload = payload;
+            }
+        }
+
+        protected TreeMap<Double, Step<T>> steps = new TreeMap<>();
+        protected double refX, refY;
+        protected double area = 0.0;
+
+        public Staircase(double refX, double refY) {
+            this.refX = refX;
+            this.refY = refY;
+        }
+
+        /**
+         * Inserts a point, removing the points it dominates.
+         *
+         * @param x First objective
+         * @param y Second objective
+         * @param payload Payload
+         * @return false if the point is weakly dominated by the staircase
+         */
+        public boolean add(double x, double y, T payload) {
+            if (isDominated(x, y)) {
+                return false;
+            }
+            Map.Entry<Double, Step<T>> upper = steps.lowerEntry(x);
+            double top = Math.min((upper != null) ? upper.getValue().y : refY, refY);
+            double cx = Math.min(x, refX), cy = Math.min(y, refY);
+            // Remove dominated steps, subtracting the area they already covered:
+            double covered = 0.0;
+            Map.Entry<Double, Step<T>> next = steps.ceilingEntry(x);
+            Step<T> prev = null;
+            while (next != null && next.getValue().y >= y) {
+                Step<T> step = next.getValue();
+                if (prev != null) {
+                    covered += (Math.min(step.x, refX) - Math.min(prev.x, refX)) * (top - Math.min(prev.y, refY));
+                }
+                prev = step;
+                steps.remove(next.getKey());
+                next = steps.higherEntry(x);
+            }
+            double rightX = Math.min((next != null) ? next.getValue().x : refX, refX);
+            if (prev != null) {
+                covered += (rightX - Math.min(prev.x, refX)) * (top - Math.min(prev.y, refY));
+            }
+            area += (rightX - cx) * (top - cy) - covered;
+            steps.put(x, new Step<>(x, y, payload));
+            return true;
+        }
+
+        /**
+         * Checks if a point is weakly dominated by the staircase.
+         *
+         * @param x First objective
+         * @param y Second objective
+         * @return true if some point of the staircase is not worse in both
+         * objectives
+         */
+        public boolean isDominated(double x, double y) {
+            Map.Entry<Double, Step<T>> left = steps.floorEntry(x);
+            return left != null && left.getValue().y <= y;
+        }
+
+        public double getArea() {
+            return area;
+        }
+
+        public int size() {
+            return steps.size();
+        }
+
+        public ArrayList<T> getPayloads() {
+            ArrayList<T> payloads = new ArrayList<>();
+            for (Step<T> step : steps.values()) {
+                payloads.add(step.payload);
+            }
+            return payloads;
+        }
+    }
+
+    /**
+     * Hypervolume dominated by the points and bounded by the reference point.
+     * Points not strictly better than the reference in every objective are
+     * ignored.
+     *
+     * @param points Points
+     * @param ref Reference point
+     * @return The hypervolume
+     */
+    public static double compute(List<double[]> points, double[] ref) {
+        ArrayList<double[]> front = new ArrayList<>();
+        for (double[] point : points) {
+            boolean inside = true;
+            for (int i = 0; inside && i < ref.length; ++i) {
+                inside = point[i] < ref[i];
+            }
+            if (inside) {
+                front.add(point);
+            }
+        }
+        return compute(front, ref, ref.length);
+    }
+
+    protected static double compute(List<double[]> points, double[] ref, int numObjs) {
+        if (points.isEmpty()) {
+            return 0.0;
+        }
+        if (numObjs == 1) {
+            double best = ref[0];
+            for (double[] point : points) {
+                best = Math.min(best, point[0]);
+            }
+            return ref[0] - best;
+        }
+        if (numObjs == 2) {
+            return compute2D(points, ref);
+        }
+        if (numObjs == 3) {
+            return compute3D(points, ref);
+        }
+        // Slice along the last objective:
+        final int last = numObjs - 1;
+        ArrayList<double[]> sorted = new ArrayList<>(points);
+        sorted.sort(new Comparator<double[]>() {
+            @Override
+            public int compare(double[] p1, double[] p2) {
+                return Double.compare(p1[last], p2[last]);
+            }
+        });
+        double volume = 0.0;
+        ArrayList<double[]> slice = new ArrayList<>();
+        for (int i = 0; i < sorted.size(); ++i) {
+            slice.add(sorted.get(i));
+            double upper = (i + 1 < sorted.size()) ? sorted.get(i + 1)[last] : ref[last];
+            double depth = upper - sorted.get(i)[last];
+            if (depth > 0) {
+                volume += depth * compute(slice, ref, last);
+            }
+        }
+        return volume;
+    }
+
+    protected static double compute2D(List<double[]> points, double[] ref) {
+        double[][] sorted = points.toArray(new double[points.size()][]);
+        Arrays.sort(sorted, new Comparator<double[]>() {
+            @Override
+            public int compare(double[] p1, double[] p2) {
+                int res = Double.compare(p1[0], p2[0]);
+                return (res != 0) ? res : Double.compare(p1[1], p2[1]);
+            }
+        });
+        double volume = 0.0;
+        double bestY = ref[1];
+        for (double[] point : sorted) {
+            if (point[1] < bestY) {
+                volume += (ref[0] - point[0]) * (bestY - point[1]);
+                bestY = point[1];
+            }
+        }
+        return volume;
+    }
+
+    protected static double compute3D(Collection<double[]> points, double[] ref) {
+        double[][] sorted = points.toArray(new double[points.size()][]);
+        Arrays.sort(sorted, new Comparator<double[]>() {
+            @Override
+            public int compare(double[] p1, double[] p2) {
+                return Double.compare(p1[2], p2[2]);
+            }
+        });
+        Staircase<double[]> staircase = new Staircase<>(ref[0], ref[1]);
+        double volume = 0.0;
+        for (int i = 0; i < sorted.length; ++i) {
+            staircase.add(sorted[i][0], sorted[i][1], sorted[i]);
+            double upper = (i + 1 < sorted.length) ? sorted[i + 1][2] : ref[2];
+            volume += staircase.getArea() * (upper - sorted[i][2]);
+        }
+        return volume;
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+  *  - José Luis Risco Martín
+ */
+package eco.lib.examples.floorplan.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import eco.core.algorithm.metaheuristic.moga.NSGAII;
+import eco.core.operator.comparator.SolutionDominance;
+import eco.core.operator.crossover.CrossoverOperator;
+import eco.core.operator.mutation.MutationOperator;
+import eco.core.operator.selection.SelectionOperator;
+import eco.core.problem.Problem;
+import eco.core.problem.Solution;
+import eco.core.problem.Solutions;
+import eco.core.problem.Variable;
+import eco.core.util.random.RandomGenerator;
+
+
+/**
+ * Island model for NSGAII. Every island evolves its own population with its
+ * own copy of the problem. Every <code>migrationInterval</code> generations
+ * each island sends <code>migrationSize</code> copies of its non-dominated
+ * solutions to a neighbour (ring or random topology) and incorporates the
+ * immigrants received, replacing random individuals. The non-dominated
+ * solutions of every island are merged into a shared Pareto archive.
+ *
+ * The operators of the ECO library draw from the global RandomGenerator, so
+ * islands that share a JVM cannot be reproduced. If the model knows the main
+ * class that builds it (see {@link #setProcesses}), every island runs in its
+ * own child JVM instead, with its own generator, seeded from the seed of the
+ * run and the index of the island. The islands talk to this process through
+ * loopback sockets: at every migration point each island sends its
+ * non-dominated solutions, and gets its immigrants once all the islands have
+ * reached that point. Islands run in parallel between migrations and
+ * migrants are exchanged in a fixed order, so a seeded run is reproducible.
+ * Without processes, the islands run in threads of this JVM, migrate
+ * asynchronously and share the generator.
+ *
+ * @param <V> Variable type
+ */
+public class IslandModel<V extends Variable<?>> {
+
+    private static final Logger LOGGER = Logger.getLogger(IslandModel.class.getName());
+    // System properties of the island processes:
+    public static final String PROPERTY_INDEX = "eco.island.index";
+    public static final String PROPERTY_PORT = "eco.island.port";
+    public static final String PROPERTY_SEED = "eco.island.seed";
+    // Time allowed to an island process to start and connect:
+    private static final long CONNECT_TIMEOUT_MILLIS = 300000;
+
+    public enum Topology {
+        RING, RANDOM
+    }
+
+    /**
+     * Builds the operators of every island, so that islands never share
+     * operator instances.
+     *
+     * @param <V> Variable type
+     */
+    public interface OperatorFactory<V extends Variable<?>> {
+
+        MutationOperator<V> newMutation();
+
+        CrossoverOperator<V> newCrossover();
+
+        SelectionOperator<V> newSelection();
+    }
+
+    protected Problem<V> problem;
+    protected int numIslands;
+    protected int numIndi;
+    protected int numGene;
+    protected OperatorFactory<V> operators;
+    protected ArrayList<NSGAII<V>> islands = new ArrayList<>();
+    protected ArrayList<LinkedBlockingQueue<Solution<V>>> inboxes = new ArrayList<>();
+    protected Topology topology = Topology.RING;
+    protected int migrationInterval = 10;
+    protected int migrationSize = 2;
+    protected Solutions<V> archive = new Solutions<>();
+    protected SolutionDominance<V> dominance = new SolutionDominance<>();
+    protected Long seed = null;
+    protected Checkpoint.Codec<V> codec = null;
+    protected Class<?> mainClass = null;
+    protected String[] mainArgs = null;
+
+    /**
+     * Constructor. In threads, the first island uses <code>problem</code>
+     * and the rest use <code>problem.clone()</code>, so the problem must
+     * support cloning. In an island process, the island uses
+     * <code>problem</code>.
+     *
+     * @param problem Problem to solve
+     * @param numIslands Number of islands
+     * @param numIndi Number of individuals per island
+     * @param numGene Number of generations
+     * @param operators Builds the operators of every island
+     */
+    public IslandModel(Problem<V> problem, int numIslands, int numIndi, int numGene, OperatorFactory<V> operators) {
+        this.problem = problem;
+        this.numIslands = numIslands;
+        this.numIndi = numIndi;
+        this.numGene = numGene;
+        this.operators = operators;
+        for (int i = 0; i < numIslands; ++i) {
+            inboxes.add(new LinkedBlockingQueue<Solution<V>>());
+        }
+    }
+
+    public void setTopology(Topology topology) {
+        this.topology = topology;
+    }
+
+    public void setMigrationInterval(int migrationInterval) {
+        this.migrationInterval = migrationInterval;
+    }
+
+    public void setMigrationSize(int migrationSize) {
+        this.migrationSize = migrationSize;
+    }
+
+    /**
+     * @param seed Seed of the run. Only island processes can be reproduced,
+     * see {@link #setProcesses}. A random seed is drawn if none is given.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Runs every island in its own JVM. The island processes execute
+     * <code>mainClass</code> with <code>mainArgs</code>, i.e. the program
+     * that builds this model, which must check {@link #isWorker()} and call
+     * {@link #runWorker()} instead of {@link #execute()}.
+     *
+     * @param codec Codec of the variables, used to exchange solutions
+     * @param mainClass Main class of the program
+     * @param mainArgs Arguments of the program
+     */
+    public void setProcesses(Checkpoint.Codec<V> codec, Class<?> mainClass, String[] mainArgs) {
+        this.codec = codec;
+        this.mainClass = mainClass;
+        this.mainArgs = mainArgs;
+    }
+
+    /**
+     * @return true if this JVM was launched to run one island of a model
+     */
+    public static boolean isWorker() {
+        return System.getProperty(PROPERTY_INDEX) != null;
+    }
+
+    protected NSGAII<V> newIsland(Problem<V> islandProblem) {
+        return new NSGAII<V>(islandProblem, numIndi, numGene, operators.newMutation(), operators.newCrossover(), operators.newSelection());
+    }
+
+    /**
+     * Runs all the islands until <code>numGene</code> generations are
+     * completed.
+     *
+     * @return The merged Pareto archive
+     */
+    public Solutions<V> execute() {
+        if (mainClass != null) {
+            try {
+                runProcesses();
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, null, ex);
+            }
+            return getArchive();
+        }
+        if (seed != null) {
+            LOGGER.warning("Islands in threads share the random generator, the run cannot be reproduced.");
+            RandomGenerator.setSeed(seed);
+        }
+        for (int i = 0; i < numIslands; ++i) {
+            islands.add(newIsland((i == 0) ? problem : problem.clone()));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(numIslands);
+        ArrayList<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < numIslands; ++i) {
+            final int idx = i;
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    runIsland(idx);
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException | ExecutionException ex) {
+            LOGGER.log(Level.SEVERE, null, ex);
+        } finally {
+            executor.shutdownNow();
+        }
+        return getArchive();
+    }
+
+    protected boolean isMigrationPoint(int currentGeneration) {
+        return currentGeneration % migrationInterval == 0 || currentGeneration == numGene;
+    }
+
+    protected void runIsland(int idx) {
+        NSGAII<V> island = islands.get(idx);
+        Random rnd = new Random(idx);
+        island.initialize();
+        for (int currentGeneration = 1; currentGeneration <= numGene; ++currentGeneration) {
+            island.step();
+            if (isMigrationPoint(currentGeneration)) {
+                LOGGER.fine("Island " + idx + ": generation " + currentGeneration + "/" + numGene);
+                Solutions<V> front = island.getCurrentSolution();
+                updateArchive(front);
+                if (currentGeneration < numGene && numIslands > 1) {
+                    emigrate(idx, front, rnd);
+                    Solution<V> immigrant;
+                    while ((immigrant = inboxes.get(idx).poll()) != null) {
+                        immigrate(island.getPopulation(), immigrant, rnd);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Launches one process per island and exchanges the migrants among them.
+     */
+    protected void runProcesses() throws IOException {
+        long runSeed = (seed != null) ? seed : RandomGenerator.nextInt(Integer.MAX_VALUE);
+        ArrayList<Process> processes = new ArrayList<>();
+        DataInputStream[] ins = new DataInputStream[numIslands];
+        DataOutputStream[] outs = new DataOutputStream[numIslands];
+        try (ServerSocket server = new ServerSocket(0, numIslands, InetAddress.getLoopbackAddress())) {
+            for (int idx = 0; idx < numIslands; ++idx) {
+                HashMap<String, String> properties = new HashMap<>();
+                properties.put(PROPERTY_INDEX, String.valueOf(idx));
+                properties.put(PROPERTY_PORT, String.valueOf(server.getLocalPort()));
+                properties.put(PROPERTY_SEED, String.valueOf(runSeed));
+                ProcessBuilder builder = JavaProcess.builder(mainClass, properties, mainArgs);
+                builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+                processes.add(builder.start());
+            }
+            server.setSoTimeout(1000);
+            long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+            for (int connected = 0; connected < numIslands;) {
+                try {
+                    Socket socket = server.accept();
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    int idx = in.readInt();
+                    ins[idx] = in;
+                    outs[idx] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    connected++;
+                } catch (SocketTimeoutException ex) {
+                    for (Process process : processes) {
+                        if (!process.isAlive()) {
+                            throw new IOException("An island process exited with code " + process.exitValue() + " before connecting");
+                        }
+                    }
+                    if (System.currentTimeMillis() > deadline) {
+                        throw new IOException("The island processes did not connect in time");
+                    }
+                }
+            }
+            LOGGER.info("Island processes connected, seed " + runSeed + ".");
+            // The migrants of every island are drawn with its own stream, in island order:
+            ArrayList<Random> rnds = new ArrayList<>();
+            for (int idx = 0; idx < numIslands; ++idx) {
+                rnds.add(new Random(runSeed + idx));
+            }
+            for (int currentGeneration = 1; currentGeneration <= numGene; ++currentGeneration) {
+                if (!isMigrationPoint(currentGeneration)) {
+                    continue;
+                }
+                ArrayList<Solutions<V>> fronts = new ArrayList<>();
+                for (int idx = 0; idx < numIslands; ++idx) {
+                    Solutions<V> front = Checkpoint.readSolutions(ins[idx], codec);
+                    updateArchive(front);
+                    fronts.add(front);
+                }
+                LOGGER.fine("Generation " + currentGeneration + "/" + numGene);
+                if (currentGeneration < numGene && numIslands > 1) {
+                    for (int idx = 0; idx < numIslands; ++idx) {
+                        emigrate(idx, fronts.get(idx), rnds.get(idx));
+                    }
+                    for (int idx = 0; idx < numIslands; ++idx) {
+                        Solutions<V> immigrants = new Solutions<>();
+                        inboxes.get(idx).drainTo(immigrants);
+                        Checkpoint.writeSolutions(outs[idx], immigrants, codec);
+                        outs[idx].flush();
+                    }
+                }
+            }
+            for (Process process : processes) {
+                if (process.waitFor() != 0) {
+                    throw new IOException("An island process exited with code " + process.exitValue());
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the island processes", ex);
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+    }
+
+    /**
+     * Runs the island of this process (see {@link #isWorker()}), with its own
+     * random generator, sending its non-dominated solutions to the parent
+     * process at every migration point and taking its immigrants from it.
+     *
+     * @throws IOException If the parent process cannot be reached
+     */
+    public void runWorker() throws IOException {
+        int idx = Integer.getInteger(PROPERTY_INDEX);
+        long runSeed = Long.getLong(PROPERTY_SEED);
+        RandomGenerator.setSeed(runSeed + idx);
+        Random rnd = new Random(runSeed + idx);
+        NSGAII<V> island = newIsland(problem);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.getInteger(PROPERTY_PORT))) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(idx);
+            out.flush();
+            island.initialize();
+            for (int currentGeneration = 1; currentGeneration <= numGene; ++currentGeneration) {
+                island.step();
+                if (isMigrationPoint(currentGeneration)) {
+                    LOGGER.fine("Island " + idx + ": generation " + currentGeneration + "/" + numGene);
+                    Checkpoint.writeSolutions(out, island.getCurrentSolution(), codec);
+                    out.flush();
+                    if (currentGeneration < numGene && numIslands > 1) {
+                        for (Solution<V> immigrant : Checkpoint.readSolutions(in, codec)) {
+                            immigrate(island.getPopulation(), immigrant, rnd);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    protected void emigrate(int idx, Solutions<V> front, Random rnd) {
+        int target;
+        if (topology == Topology.RING) {
+            target = (idx + 1) % numIslands;
+        } else {
+            target = rnd.nextInt(numIslands - 1);
+            if (target >= idx) {
+                target++;
+            }
+        }
+        LinkedBlockingQueue<Solution<V>> inbox = inboxes.get(target);
+        for (int i = 0; i < migrationSize && !front.isEmpty(); ++i) {
+            inbox.offer(front.get(rnd.nextInt(front.size())).clone());
+        }
+    }
+
+    protected void immigrate(Solutions<V> population, Solution<V> immigrant, Random rnd) {
+        population.set(rnd.nextInt(population.size()), immigrant);
+    }
+
+    protected synchronized void updateArchive(Solutions<V> front) {
+        for (Solution<V> solution : front) {
+            archive.add(solution.clone());
+        }
+        archive.reduceToNonDominated(dominance);
+    }
+
+    public synchronized Solutions<V> getArchive() {
+        Solutions<V> copy = new Solutions<>();
+        copy.addAll(archive);
+        return copy;
+    }
+}
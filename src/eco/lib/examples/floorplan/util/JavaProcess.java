@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+  *  - José Luis Risco Martín
+ */
+package eco.lib.examples.floorplan.util;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Launches a main class in a child JVM with the class path, memory settings
+ * and system properties of the current one.
+ *
+ * The ECO operators draw from a single, global RandomGenerator, so runs that
+ * must be reproducible cannot share a JVM with other concurrent runs. Each
+ * of them gets its own process instead.
+ */
+public class JavaProcess {
+
+    /**
+     * Builds the command of a child JVM. Its standard error is inherited, so
+     * the log of the child goes to the console of the parent.
+     *
+     * @param mainClass Main class
+     * @param properties Extra system properties, may be null
+     * @param args Arguments of the main method
+     * @return The process builder
+     */
+    public static ProcessBuilder builder(Class<?> mainClass, Map<String, String> properties, String... args) {
+        ArrayList<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            // Debug agents would clash on their port:
+            if (arg.startsWith("-X") && !arg.startsWith("-Xdebug") && !arg.startsWith("-Xrunjdwp") || arg.startsWith("-D")) {
+                command.add(arg);
+            }
+        }
+        if (properties != null) {
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                command.add("-D" + property.getKey() + "=" + property.getValue());
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass.getName());
+        for (String arg : args) {
+            command.add(arg);
+        }
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        return builder;
+    }
+}
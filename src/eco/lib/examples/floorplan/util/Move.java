@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+  *  - José Luis Risco Martín
+ */
+package eco.lib.examples.floorplan.util;
+
+/**
+ * Neighbourhood move that modifies a solution in place, so local search can
+ * evaluate a neighbour without cloning the current solution. See
+ * {@link Solution#getMove()}.
+ *
+ * A move is reusable: every call to {@link #apply()} draws a new random
+ * move, and {@link #undo()} reverts the last one.
+ */
+public interface Move {
+	/**
+	 * Draws a random move and applies it to the solution.
+	 *
+	 * @return objective after the move minus objective before it
+	 */
+	double apply();
+
+	/**
+	 * Restores the solution to its state before the last {@link #apply()}.
+	 */
+	void undo();
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+  *  - José Luis Risco Martín
+ */
+package eco.lib.examples.floorplan.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs independent simulated annealing chains, one per initial solution, on
+ * a thread pool. Every chain publishes its improvements into a shared
+ * incumbent. The initial solutions must have comparable objectives, for
+ * instance the same normalization. All the chains are cancelled once the
+ * time budget is exhausted or the incumbent reaches the target objective.
+ */
+public class MultiStartAnnealer {
+
+    private static final Logger LOGGER = Logger.getLogger(MultiStartAnnealer.class.getName());
+
+    /**
+     * Best solution found so far and the chain that found it.
+     */
+    public static class Incumbent {
+
+        protected final Solution solution;
+        protected final double objective;
+        protected final int chain;
+
+        protected Incumbent(Solution solution, double objective, int chain) {
+            this.solution = solution;
+            this.objective = objective;
+            this.chain = chain;
+        }
+
+        public Solution getSolution() {
+            return solution;
+        }
+
+        public double getObjective() {
+            return objective;
+        }
+
+        public int getChain() {
+            return chain;
+        }
+    }
+
+    protected ArrayList<Solution> initials = new ArrayList<>();
+    protected ArrayList<SimulatedAnnealingSolver> solvers = new ArrayList<>();
+    protected AtomicReference<Incumbent> incumbent = new AtomicReference<>();
+    protected int numThreads = Runtime.getRuntime().availableProcessors();
+    protected long maxSeconds = 0;
+    protected double targetObjective = Double.NEGATIVE_INFINITY;
+    protected Consumer<Solution> incumbentListener = null;
+
+    /**
+     * Builds one chain per initial solution. Chain i uses the seed
+     * <code>seed + i</code> and logs its objectives to
+     * <code>logFile</code> with the suffix <code>_chain{i}</code>.
+     *
+     * @param initials Initial solutions, which must not share mutable state
+     * @param maxIterations Iterations of every chain
+     * @param k Weight of the temperature
+     * @param stopWhenFeasible Every chain stops at its first feasible solution
+     * @param seed Base seed
+     * @param logFile Base log file
+     */
+    public MultiStartAnnealer(List<? extends Solution> initials, long maxIterations, double k, boolean stopWhenFeasible, long seed, String logFile) {
+        for (int i = 0; i < initials.size(); ++i) {
+            final int chain = i;
+            SimulatedAnnealingSolver solver = new SimulatedAnnealingSolver(maxIterations, k, stopWhenFeasible, seed + i, 0L);
+            int dot = logFile.lastIndexOf('.');
+            solver.setLogFile((dot > 0) ? logFile.substring(0, dot) + "_chain" + i + logFile.substring(dot) : logFile + "_chain" + i);
+            solver.setImprovementListener(solution -> publish(chain, solution));
+            this.initials.add(initials.get(i));
+            solvers.add(solver);
+        }
+    }
+
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * @param maxSeconds Time budget of the whole run in seconds (0, none)
+     */
+    public void setMaxSeconds(long maxSeconds) {
+        this.maxSeconds = maxSeconds;
+    }
+
+    /**
+     * @param targetObjective All the chains stop as soon as the incumbent
+     * objective is less than or equal to this value
+     */
+    public void setTargetObjective(double targetObjective) {
+        this.targetObjective = targetObjective;
+    }
+
+    /**
+     * @param listener notified with every new incumbent, one at a time and
+     * in order of improvement, from the thread of the chain that found it. The solution is a private clone, which is not
+     * modified afterwards.
+     */
+    public void setIncumbentListener(Consumer<Solution> listener) {
+        this.incumbentListener = listener;
+    }
+
+    /**
+     * Runs all the chains until they finish or are cancelled.
+     *
+     * @return The incumbent, null if no chain has started
+     */
+    public Incumbent execute() {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(numThreads, solvers.size())));
+        ArrayList<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < solvers.size(); ++i) {
+            final int idx = i;
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    SimulatedAnnealingSolver solver = solvers.get(idx);
+                    if (!solver.isCancelled()) {
+                        solver.solve(initials.get(idx));
+                        LOGGER.fine("Chain " + idx + " finished: " + solver.getBestObjective());
+                    }
+                }
+            }));
+        }
+        executor.shutdown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(maxSeconds);
+        try {
+            for (Future<?> future : futures) {
+                if (maxSeconds > 0) {
+                    try {
+                        future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    } catch (TimeoutException ex) {
+                        LOGGER.info("Time budget exhausted, cancelling the chains ...");
+                        cancel();
+                        future.get();
+                    }
+                } else {
+                    future.get();
+                }
+            }
+        } catch (InterruptedException | ExecutionException ex) {
+            LOGGER.log(Level.SEVERE, null, ex);
+            cancel();
+            executor.shutdownNow();
+        }
+        return incumbent.get();
+    }
+
+    /**
+     * Stops all the chains at the end of their current iteration.
+     */
+    public void cancel() {
+        for (SimulatedAnnealingSolver solver : solvers) {
+            solver.cancel();
+        }
+    }
+
+    public Incumbent getIncumbent() {
+        return incumbent.get();
+    }
+
+    /**
+     * Random walk used to diversify the initial solutions of the chains.
+     *
+     * @param solution Initial solution, modified in place if it supports
+     * moves
+     * @param steps Number of random neighbourhood moves
+     * @return The solution reached after the walk
+     */
+    public static Solution randomWalk(Solution solution, int steps) {
+        Move move = solution.getMove();
+        for (int i = 0; i < steps; ++i) {
+            if (move != null) {
+                move.apply();
+            } else {
+                solution = solution.getSuccessors().nextElement();
+            }
+        }
+        return solution;
+    }
+
+    /**
+     * Replaces the incumbent if the solution is better. Worse solutions are
+     * rejected without locking, and the solution is only cloned if it may be
+     * accepted. The replacement and the notification are done under the same
+     * lock, so the listener receives the incumbents in order of improvement.
+     */
+    protected void publish(int chain, Solution solution) {
+        double objective = solution.getObjective();
+        Incumbent current = incumbent.get();
+        if (current != null && current.objective <= objective) {
+            return;
+        }
+        Incumbent candidate = new Incumbent(solution.clone(), objective, chain);
+        synchronized (this) {
+            current = incumbent.get();
+            if (current != null && current.objective <= objective) {
+                return;
+            }
+            incumbent.set(candidate);
+            LOGGER.fine("Chain " + chain + " improved the incumbent: " + objective);
+            if (incumbentListener != null) {
+                incumbentListener.accept(candidate.solution);
+            }
+        }
+        if (objective <= targetObjective) {
+            cancel();
+        }
+    }
+}
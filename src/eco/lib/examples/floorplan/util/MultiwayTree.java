@@ -19,19 +19,34 @@
  */
 package eco.lib.examples.floorplan.util;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ToIntFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Rooted multiway tree where each node of the tree corresponds to an element
  *
+ * Every tree keeps an index from elements to nodes, so elements are found and
+ * removed in constant time, and every node caches the number of nodes of its
+ * subtree, so the i-th node in pre-order is reached without visiting the
+ * previous ones. Traversals do not use recursion, so deep trees do not
+ * overflow the stack.
+ *
+ * Optionally, every node caches a layout (see {@link #setExtent}): its offset,
+ * which is the sum of the extents of its ancestors, and its size, which is
+ * the extent of the longest branch that starts at the node. Both values are
+ * maintained incrementally when nodes are added, removed or replaced, so a
+ * change only visits the affected subtree and the path to the root.
+ *
  * @author J.M. Colmenar
  */
 public class MultiwayTree<T> {
@@ -39,11 +54,43 @@ public class MultiwayTree<T> {
     private MultiwayTree<T> parent;
     private boolean isRoot = false;
     private ArrayList<MultiwayTree<T>> children;
+    // Empty list kept by a removed node for the children it may adopt:
+    private ArrayList<MultiwayTree<T>> spareChildren = null;
 
     public static final int FIRST_CHILD = 0;
 
-    // Helpful for travel the tree
-    private int visitedNodes = 0;
+    /**
+     * State shared by all the nodes of a tree: the index of elements, the
+     * layout functions and the stack of the layout updates.
+     */
+    private static class Context<T> {
+
+        private final HashMap<T, MultiwayTree<T>> index;
+        private ToIntFunction<T> extent = null;
+        private ObjIntConsumer<T> listener = null;
+        // Shared by the nodes removed from the tree, built on first use:
+        private Context<T> detached = null;
+        // Reused by shiftOffsets, which runs on every move:
+        private final ArrayDeque<MultiwayTree<T>> stack = new ArrayDeque<MultiwayTree<T>>();
+
+        private Context(int capacity) {
+            index = new HashMap<T, MultiwayTree<T>>(capacity);
+        }
+
+        private Context<T> detached() {
+            if (detached == null) {
+                detached = new Context<T>(0);
+            }
+            return detached;
+        }
+    }
+
+    private Context<T> context = new Context<T>(16);
+    // Number of nodes of the subtree, this one included:
+    private int numNodes = 1;
+    // Cached layout values:
+    private int offset = 0;
+    private int size = 0;
 
     public void setRoot(boolean b) {
         if (b) parent = null;
@@ -62,8 +109,72 @@ public class MultiwayTree<T> {
         return parent;
     }
 
+    /**
+     * Replaces the element of this node. If the tree has a layout, the
+     * offsets of the descendants and the sizes up to the root are updated.
+     *
+     * @param newNode new element
+     */
     public void setNode(T newNode) {
+        if (!isRoot && parent == null) {
+            // Detached node
+            node = newNode;
+            return;
+        }
+        if (node != null && context.index.get(node) == this) {
+            context.index.remove(node);
+        }
+        if (newNode != null) {
+            context.index.put(newNode, this);
+        }
+        replaceNode(newNode);
+    }
+
+    /**
+     * Replaces the element of this node without touching the index, updating
+     * the layout.
+     */
+    private void replaceNode(T newNode) {
+        int delta = -extentOf(this);
         node = newNode;
+        delta += extentOf(this);
+        if (context.extent == null) {
+            return;
+        }
+        notifyOffset(this);
+        if (delta != 0 && children != null) {
+            for (int i = 0; i < children.size(); i++) {
+                shiftOffsets(children.get(i), delta);
+            }
+        }
+        updateSizes(this);
+    }
+
+    /**
+     * Swaps the elements of two nodes of the same tree.
+     *
+     * @param other the other node
+     */
+    public void swapNodes(MultiwayTree<T> other) {
+        T aux = node;
+        if ((!isRoot && parent == null) || (!other.isRoot && other.parent == null)) {
+            // Detached nodes
+            setNode(other.node);
+            other.setNode(aux);
+            return;
+        }
+        // Both elements stay in the index, only their nodes change:
+        replaceNode(other.node);
+        other.replaceNode(aux);
+        if (node != null) {
+            context.index.put(node, this);
+        }
+        if (other.node != null) {
+            context.index.put(other.node, other);
+        }
+        if (context.extent != null && !isRoot) {
+            notifyOffset(this);
+        }
     }
 
     public void setParent(MultiwayTree<T> newParent) {
@@ -72,18 +183,21 @@ public class MultiwayTree<T> {
 
     @Override
     public String toString() {
-        String cad = " "+node+"";
-        cad += ": (";
-        if (children != null)
-            for (int i=0; i<children.size();i++)
-                cad += " "+children.get(i).node;
-
-        cad += " ) ";
-        if (children != null)
-            for (int i=0; i<children.size();i++)
-                cad += children.get(i);
-        return cad;
-
+        StringBuilder cad = new StringBuilder();
+        ArrayDeque<MultiwayTree<T>> stack = new ArrayDeque<MultiwayTree<T>>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            MultiwayTree<T> curr = stack.pop();
+            cad.append(" ").append(curr.node).append(": (");
+            if (curr.children != null) {
+                for (int i=0; i<curr.children.size();i++)
+                    cad.append(" ").append(curr.children.get(i).node);
+                for (int i=curr.children.size()-1; i>=0;i--)
+                    stack.push(curr.children.get(i));
+            }
+            cad.append(" ) ");
+        }
+        return cad.toString();
     }
 
     /** Adds a new node as the next children of
@@ -99,8 +213,9 @@ public class MultiwayTree<T> {
         MultiwayTree<T> newChild = new MultiwayTree<T>();
         newChild.setRoot(false);
         newChild.setParent(this);
-        newChild.setNode(newNode);
+        newChild.node = newNode;
         children.add(newChild);
+        attach(newChild);
 
         return newChild;
     }
@@ -121,13 +236,255 @@ public class MultiwayTree<T> {
             newChild = new MultiwayTree<T>();
             newChild.setRoot(false);
             newChild.setParent(this);
-            newChild.setNode(newNode);
+            newChild.node = newNode;
             children.add(index,newChild);
+            attach(newChild);
         }     
 
         return newChild;
     }
 
+    /** Adds a new node as the i-th children of the tree, which adopts
+     * as its own children the <code>numAdopted</code> children that
+     * started at that position. It is the inverse of
+     * {@link #removeNode}.
+     *
+     * @param index position of the new node
+     * @param numAdopted number of children to be adopted
+     * @param newNode node to be added
+     * @return reference to the subtree created for the new node
+     */
+    public MultiwayTree<T> addChildren(int index, int numAdopted, T newNode) {
+        if (numAdopted == 0) {
+            return (children == null && index == 0) ? addChildren(newNode) : addChildren(index, newNode);
+        }
+        MultiwayTree<T> newChild = new MultiwayTree<T>();
+        newChild.setRoot(false);
+        newChild.node = newNode;
+        return addChildren(index, numAdopted, newChild);
+    }
+
+    /** Inserts again a node removed with {@link #removeNode} as the i-th
+     * children of the tree, adopting the <code>numAdopted</code> children
+     * that started at that position. The node object is reused, so moving a
+     * node does not allocate a new one.
+     *
+     * @param index position of the node
+     * @param numAdopted number of children to be adopted
+     * @param detached node removed from this tree, with no parent
+     * @return the inserted node, or null if the position is not valid
+     */
+    public MultiwayTree<T> addChildren(int index, int numAdopted, MultiwayTree<T> detached) {
+        if (detached.parent != null || detached.isRoot) {
+            throw new IllegalArgumentException("The node is attached to a tree");
+        }
+        int numChildren = (children == null) ? 0 : children.size();
+        if (index < 0 || index + numAdopted > numChildren) {
+            Logger.getLogger(MultiwayTree.class.getName()).log(Level.SEVERE, "Cannot add children in the desired position ("+index+"). # children: "+numChildren);
+            return null;
+        }
+        if (children == null) {
+            children = new ArrayList<MultiwayTree<T>>();
+        }
+        detached.parent = this;
+        detached.numNodes = 1;
+        if (numAdopted > 0) {
+            List<MultiwayTree<T>> adopted = children.subList(index, index + numAdopted);
+            if (detached.spareChildren != null) {
+                detached.children = detached.spareChildren;
+                detached.spareChildren = null;
+            } else {
+                detached.children = new ArrayList<MultiwayTree<T>>(numAdopted);
+            }
+            detached.children.addAll(adopted);
+            adopted.clear();
+            for (int i = 0; i < detached.children.size(); i++) {
+                detached.children.get(i).parent = detached;
+                detached.numNodes += detached.children.get(i).numNodes;
+            }
+        }
+        children.add(index, detached);
+        attach(detached);
+
+        return detached;
+    }
+
+    /**
+     * Enables the cached layout of the tree. Must be called on the root,
+     * followed by {@link #updateLayout()}.
+     *
+     * @param extent extent of an element along the axis of the tree
+     * @param listener notified with the new offset of every element whose
+     * offset is (re)computed, may be null
+     */
+    public void setExtent(ToIntFunction<T> extent, ObjIntConsumer<T> listener) {
+        context.extent = extent;
+        context.listener = listener;
+    }
+
+    /**
+     * Replaces the listener of the layout without recomputing it, for
+     * instance after cloning the tree for a new owner.
+     *
+     * @param listener new listener, may be null
+     */
+    public void setListener(ObjIntConsumer<T> listener) {
+        context.listener = listener;
+    }
+
+    /**
+     * Recomputes the offsets and sizes of the whole subtree, notifying every
+     * offset to the listener.
+     */
+    public void updateLayout() {
+        if (context.extent == null) {
+            return;
+        }
+        if (parent == null) {
+            offset = 0;
+        }
+        // Offsets in pre-order, sizes in reverse pre-order:
+        ArrayList<MultiwayTree<T>> order = preOrder();
+        for (int i = 0; i < order.size(); i++) {
+            MultiwayTree<T> curr = order.get(i);
+            if (curr.children != null) {
+                int childOffset = curr.offset + extentOf(curr);
+                for (int j = 0; j < curr.children.size(); j++) {
+                    MultiwayTree<T> child = curr.children.get(j);
+                    child.offset = childOffset;
+                    notifyOffset(child);
+                }
+            }
+        }
+        for (int i = order.size() - 1; i >= 0; i--) {
+            MultiwayTree<T> curr = order.get(i);
+            curr.size = extentOf(curr) + curr.maxChildSize();
+        }
+    }
+
+    /**
+     * @return sum of the extents of the ancestors (cached layout)
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return extent of the longest branch starting at this node, this node
+     * included (cached layout). For the root, the size of the whole tree.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return number of nodes of the subtree, this one included
+     */
+    public int getNumNodes() {
+        return numNodes;
+    }
+
+    private int extentOf(MultiwayTree<T> tree) {
+        return (context.extent == null || tree.isRoot) ? 0 : context.extent.applyAsInt(tree.node);
+    }
+
+    private int maxChildSize() {
+        int max = 0;
+        if (children != null) {
+            for (int i = 0; i < children.size(); i++) {
+                if (children.get(i).size > max) {
+                    max = children.get(i).size;
+                }
+            }
+        }
+        return max;
+    }
+
+    private void notifyOffset(MultiwayTree<T> tree) {
+        if (context.listener != null && !tree.isRoot) {
+            context.listener.accept(tree.node, tree.offset);
+        }
+    }
+
+    /**
+     * Registers a new child (a leaf, or a node that has adopted some
+     * existing subtrees) and propagates its count and size upwards.
+     */
+    private void attach(MultiwayTree<T> child) {
+        child.context = context;
+        if (child.node != null) {
+            context.index.put(child.node, child);
+        }
+        for (MultiwayTree<T> curr = this; curr != null; curr = curr.parent) {
+            curr.numNodes++;
+        }
+        if (context.extent == null) {
+            return;
+        }
+        child.offset = offset + extentOf(this);
+        notifyOffset(child);
+        int delta = extentOf(child);
+        if (child.children != null && delta != 0) {
+            for (int i = 0; i < child.children.size(); i++) {
+                shiftOffsets(child.children.get(i), delta);
+            }
+        }
+        child.size = extentOf(child) + child.maxChildSize();
+        updateSizes(this);
+    }
+
+    /**
+     * Adds delta to the offsets of the whole subtree.
+     */
+    private void shiftOffsets(MultiwayTree<T> tree, int delta) {
+        ArrayDeque<MultiwayTree<T>> stack = context.stack;
+        stack.push(tree);
+        while (!stack.isEmpty()) {
+            MultiwayTree<T> curr = stack.pop();
+            curr.offset += delta;
+            notifyOffset(curr);
+            if (curr.children != null) {
+                for (int i = 0; i < curr.children.size(); i++) {
+                    stack.push(curr.children.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Recomputes the sizes from the given node up to the root, stopping as
+     * soon as a size does not change.
+     */
+    private void updateSizes(MultiwayTree<T> tree) {
+        MultiwayTree<T> curr = tree;
+        while (curr != null) {
+            int newSize = extentOf(curr) + curr.maxChildSize();
+            if (newSize == curr.size && curr != tree) {
+                break;
+            }
+            curr.size = newSize;
+            curr = curr.parent;
+        }
+    }
+
+    /**
+     * @return the nodes of the subtree in pre-order
+     */
+    private ArrayList<MultiwayTree<T>> preOrder() {
+        ArrayList<MultiwayTree<T>> order = new ArrayList<MultiwayTree<T>>(numNodes);
+        ArrayDeque<MultiwayTree<T>> stack = new ArrayDeque<MultiwayTree<T>>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            MultiwayTree<T> curr = stack.pop();
+            order.add(curr);
+            if (curr.children != null) {
+                for (int i = curr.children.size() - 1; i >= 0; i--) {
+                    stack.push(curr.children.get(i));
+                }
+            }
+        }
+        return order;
+    }
 
     /** Returns the ith child from left to right **/
     public MultiwayTree<T> getChild(int i) {
@@ -138,110 +495,137 @@ public class MultiwayTree<T> {
         return children;
     }
 
-     @Override
+    /**
+     * Copies the tree without recursion. This is a full O(n) copy: every
+     * node is copied and the index is rebuilt. Nodes cannot be shared between
+     * trees because they keep their parent and are moved in place. Elements
+     * are shared, and the extent of the layout and the cached values are
+     * copied, so the layout is not recomputed. The listener is not copied
+     * because it is bound to the owner of the original tree, see
+     * {@link #setListener}.
+     */
+    @Override
     public MultiwayTree<T> clone() {
-        MultiwayTree<T> cloned = new MultiwayTree<T>();
-
-        // Cannot be cloned !!???
-        cloned.setNode(node);
-        cloned.setRoot(this.isRoot);
-
-        // Children
-        if (this.children != null) {
-            ArrayList<MultiwayTree<T>> clonedChildren = new ArrayList<MultiwayTree<T>>();
-            for (int i=0; i<this.children.size();i++) {
-                MultiwayTree<T> clonedChild = this.children.get(i).clone();
-                clonedChild.parent = cloned;
-                clonedChildren.add(clonedChild);
+        Context<T> clonedContext = new Context<T>(context.index.size() * 2);
+        clonedContext.extent = context.extent;
+        MultiwayTree<T> cloned = copyNode(this, clonedContext);
+
+        ArrayDeque<MultiwayTree<T>> originals = new ArrayDeque<MultiwayTree<T>>();
+        ArrayDeque<MultiwayTree<T>> copies = new ArrayDeque<MultiwayTree<T>>();
+        originals.push(this);
+        copies.push(cloned);
+        while (!originals.isEmpty()) {
+            MultiwayTree<T> original = originals.pop();
+            MultiwayTree<T> copy = copies.pop();
+            if (original.children != null) {
+                copy.children = new ArrayList<MultiwayTree<T>>(original.children.size());
+                for (int i=0; i<original.children.size();i++) {
+                    MultiwayTree<T> clonedChild = copyNode(original.children.get(i), clonedContext);
+                    clonedChild.parent = copy;
+                    copy.children.add(clonedChild);
+                    originals.push(original.children.get(i));
+                    copies.push(clonedChild);
+                }
             }
-
-            cloned.children = clonedChildren;
         }
 
         return cloned;
     }
 
+    private static <T> MultiwayTree<T> copyNode(MultiwayTree<T> original, Context<T> context) {
+        MultiwayTree<T> copy = new MultiwayTree<T>();
+        // Cannot be cloned !!???
+        copy.node = original.node;
+        copy.setRoot(original.isRoot);
+        copy.context = context;
+        copy.numNodes = original.numNodes;
+        copy.offset = original.offset;
+        copy.size = original.size;
+        if (copy.node != null) {
+            context.index.put(copy.node, copy);
+        }
+        return copy;
+    }
+
 
     /**
-     * Searches from a node and removes it from the tree.
+     * Searches from a node and removes it from the tree. The node is found
+     * through the index of the tree, so <code>tree</code> must be the root.
+     * The removed subtree object can be inserted again with
+     * {@link #addChildren(int, int, MultiwayTree)}.
      * 
      * @param node to be removed
      * @return true if node was found and successfully removed; false otherwise
      */
     public boolean removeNode(T node, MultiwayTree<T> tree) {
-        boolean found = false;
-
-        // If node found
-        if (tree.getNode() != null && tree.getNode().equals(node)) {
-
-            // The new parent of the children is the tree parent
-            if (tree.children != null) {
-                for (int i = 0; i<tree.children.size(); i++) {
-                    tree.children.get(i).setParent(tree.parent);
-                }
-                // Insert children in the list of children of the tree parent
-                int index = tree.parent.children.indexOf(tree);
-                tree.parent.children.addAll(index, tree.children);
-                tree.children = null;
-            }
-            
-            // Drop node
-            tree.parent.children.remove(tree);
-            tree = null;
-
-            found = true;
-
-        } else {
-
-            // Node not found, search into the children:
-            if (tree.children != null) {
-                Iterator<MultiwayTree<T>> iter = tree.children.iterator();
-
-                while (!found && iter.hasNext()) {
-                    found = removeNode(node,iter.next());
+        MultiwayTree<T> found = tree.context.index.get(node);
+        if (found == null || found.parent == null) {
+            return false;
+        }
+        MultiwayTree<T> oldParent = found.parent;
+
+        // The new parent of the children is the tree parent
+        if (found.children != null) {
+            int delta = -extentOf(found);
+            for (int i = 0; i<found.children.size(); i++) {
+                found.children.get(i).setParent(oldParent);
+                if (context.extent != null && delta != 0) {
+                    shiftOffsets(found.children.get(i), delta);
                 }
             }
+            // Insert children in the list of children of the tree parent
+            int index = oldParent.children.indexOf(found);
+            oldParent.children.addAll(index, found.children);
+            found.children.clear();
+            found.spareChildren = found.children;
+            found.children = null;
+        }
 
+        // Drop node
+        oldParent.children.remove(found);
+        found.parent = null;
+        found.numNodes = 1;
+        found.context = tree.context.detached();
+        tree.context.index.remove(node);
+        for (MultiwayTree<T> curr = oldParent; curr != null; curr = curr.parent) {
+            curr.numNodes--;
+        }
+        if (context.extent != null) {
+            updateSizes(oldParent);
         }
 
-        return found;
+        return true;
     }
 
     /**
      * Returns a reference to the subtree that results in the position
      * given by the parameter considering that nodes are visited using
-     * a pre-order sequence. The root has index=0.
+     * a pre-order sequence. The root has index=0. The node counts of the
+     * subtrees are used to skip whole branches.
      *
      * @param index
      * @param tree current subtree
-     * @param visited number of already visited nodes
-     * @return subtree
+     * @return subtree, or null if the index is out of the tree
      */
     public MultiwayTree<T> getSubTree(int index, MultiwayTree<T> tree) {
-        MultiwayTree<T> subtree = null;
-
-        // If search found
-        if (index == visitedNodes) {
-
-            subtree = tree;
-            // Reset the counter
-            visitedNodes = 0;
-
-        } else {
-
-            // Node not found, search into the children:
-            if (tree.children != null) {
-                Iterator<MultiwayTree<T>> iter = tree.children.iterator();
-
-                while ((subtree == null) && iter.hasNext()) {
-                    visitedNodes++;
-                    subtree = getSubTree(index,iter.next());
+        if (index < 0 || index >= tree.numNodes) {
+            return null;
+        }
+        MultiwayTree<T> curr = tree;
+        int remaining = index;
+        while (remaining > 0) {
+            // Skip the current node and the previous siblings:
+            remaining--;
+            for (int i = 0; i < curr.children.size(); i++) {
+                MultiwayTree<T> child = curr.children.get(i);
+                if (remaining < child.numNodes) {
+                    curr = child;
+                    break;
                 }
+                remaining -= child.numNodes;
             }
-
         }
-
-        return subtree;
+        return curr;
     }
 
     /**
@@ -260,6 +644,12 @@ public class MultiwayTree<T> {
 
         // Reset current tree maintaining the root
         this.children = null;
+        this.numNodes = 1;
+        this.size = extentOf(this);
+        context.index.clear();
+        if (node != null) {
+            context.index.put(node, this);
+        }
 
         // Start at the root
         MultiwayTree<T> currentNode = this;
@@ -295,13 +685,13 @@ public class MultiwayTree<T> {
      * Returns the list of nodes from a  breadth-first traversal of the tree.
      */
     public List<T>  breadthFirstTraversal() {
-        List<T> elems = new ArrayList<T>();
+        List<T> elems = new ArrayList<T>(numNodes);
         
-        LinkedList<MultiwayTree<T>> queue = new LinkedList<MultiwayTree<T>>();
+        ArrayDeque<MultiwayTree<T>> queue = new ArrayDeque<MultiwayTree<T>>();
         queue.add(this);
         
         MultiwayTree<T> curr = null;
-        while (queue.size() > 0) {
+        while (!queue.isEmpty()) {
             curr = queue.poll();
             elems.add(curr.getNode());
             if ((curr.getChildren() != null) && (curr.getChildren().size() > 0)) 
@@ -313,29 +703,11 @@ public class MultiwayTree<T> {
     
     
     /**
-     * Returns the subtree where the node corresponds to the given node.
-     * Performs a breadth-first search.
+     * Returns the subtree where the node corresponds to the given node
+     * (or an equal one), using the index of the tree.
      */
     public MultiwayTree<T> findNode(T nodeToFind) {
-        MultiwayTree<T> result = null;
-        
-        LinkedList<MultiwayTree<T>> queue = new LinkedList<MultiwayTree<T>>();
-        queue.add(this);
-        
-        MultiwayTree<T> curr = null;
-        boolean found = false;
-        while ((queue.size() > 0) && !found) {
-            curr = queue.poll();
-            if (curr.getNode() == nodeToFind) {
-                found = true;
-                result = curr;
-            } else {
-                if ((curr.getChildren() != null) && (curr.getChildren().size() > 0)) 
-                    queue.addAll(curr.getChildren());                
-            }
-        }
-        
-        return result;
+        return context.index.get(nodeToFind);
     }
     
     /**
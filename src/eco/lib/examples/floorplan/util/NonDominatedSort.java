@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+  *  - José Luis Risco Martín
+ */
+package eco.lib.examples.floorplan.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import eco.core.problem.Solution;
+import eco.core.problem.Solutions;
+import eco.core.problem.Variable;
+
+/**
+ * Efficient non-dominated sorting (ENS) with binary search over the fronts
+ * (all objectives minimized). Points are processed in lexicographic order, so
+ * a point can only be dominated by points already assigned to a front, and
+ * the fronts are monotone: if a point is dominated by front k it is also
+ * dominated by every front before k.
+ *
+ * The dominance test against a front is specialized:
+ * <ul>
+ * <li>2 objectives: a front is dominating iff its minimum second objective is
+ * not greater, O(N log N) overall.</li>
+ * <li>3 objectives: every front keeps a staircase of its (second, third)
+ * objectives in a TreeMap, O(N log^2 N) overall.</li>
+ * <li>More objectives: linear scan of the front (ENS-BS).</li>
+ * </ul>
+ */
+public class NonDominatedSort {
+
+    /**
+     * Computes the front (rank) of every point, starting at 0.
+     *
+     * @param points Objective vectors, all of the same length
+     * @return Rank of every point
+     */
+    public static int[] rank(final double[][] points) {
+        int n = points.length;
+        int[] ranks = new int[n];
+        if (n == 0) {
+            return ranks;
+        }
+        final int m = points[0].length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                double[] p1 = points[i1], p2 = points[i2];
+                for (int k = 0; k < m; ++k) {
+                    int res = Double.compare(p1[k], p2[k]);
+                    if (res != 0) {
+                        return res;
+                    }
+                }
+                return 0;
+            }
+        });
+        Fronts fronts;
+        if (m == 2) {
+            fronts = new Fronts2D();
+        } else if (m == 3) {
+            fronts = new Fronts3D();
+        } else {
+            fronts = new FrontsND();
+        }
+        int previous = -1;
+        for (int i = 0; i < n; ++i) {
+            int idx = order[i];
+            if (previous >= 0 && Arrays.equals(points[previous], points[idx])) {
+                // Duplicates share the front
+                ranks[idx] = ranks[previous];
+                continue;
+            }
+            // Binary search of the first front that does not dominate the point:
+            int low = 0, high = fronts.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (fronts.dominates(mid, points[idx])) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            fronts.add(low, points[idx]);
+            ranks[idx] = low;
+            previous = idx;
+        }
+        return ranks;
+    }
+
+    /**
+     * Sorts the solutions into fronts.
+     *
+     * @param <V> Variable type
+     * @param solutions Solutions
+     * @return Fronts, the first one being the non-dominated solutions
+     */
+    public static <V extends Variable<?>> ArrayList<Solutions<V>> sort(Solutions<V> solutions) {
+        double[][] points = new double[solutions.size()][];
+        for (int i = 0; i < points.length; ++i) {
+            Solution<V> solution = solutions.get(i);
+            points[i] = new double[solution.getObjectives().size()];
+            for (int j = 0; j < points[i].length; ++j) {
+                points[i][j] = solution.getObjective(j);
+            }
+        }
+        int[] ranks = rank(points);
+        ArrayList<Solutions<V>> fronts = new ArrayList<>();
+        for (int i = 0; i < ranks.length; ++i) {
+            while (fronts.size() <= ranks[i]) {
+                fronts.add(new Solutions<V>());
+            }
+            fronts.get(ranks[i]).add(solutions.get(i));
+        }
+        return fronts;
+    }
+
+    /**
+     * Reference implementation (Deb's fast non-dominated sort, O(MN^2)),
+     * used to validate and benchmark {@link #rank(double[][])}.
+     *
+     * @param points Objective vectors
+     * @return Rank of every point
+     */
+    public static int[] rankNaive(double[][] points) {
+        int n = points.length;
+        int[] ranks = new int[n];
+        int[] dominatedBy = new int[n];
+        ArrayList<ArrayList<Integer>> dominates = new ArrayList<>();
+        ArrayList<Integer> current = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            dominates.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < n; ++i) {
+            for (int j = i + 1; j < n; ++j) {
+                if (dominates(points[i], points[j])) {
+                    dominates.get(i).add(j);
+                    dominatedBy[j]++;
+                } else if (dominates(points[j], points[i])) {
+                    dominates.get(j).add(i);
+                    dominatedBy[i]++;
+                }
+            }
+        }
+        for (int i = 0; i < n; ++i) {
+            if (dominatedBy[i] == 0) {
+                current.add(i);
+            }
+        }
+        int rank = 0;
+        while (!current.isEmpty()) {
+            ArrayList<Integer> next = new ArrayList<>();
+            for (int i : current) {
+                ranks[i] = rank;
+                for (int j : dominates.get(i)) {
+                    if (--dominatedBy[j] == 0) {
+                        next.add(j);
+                    }
+                }
+            }
+            current = next;
+            rank++;
+        }
+        return ranks;
+    }
+
+    public static boolean dominates(double[] p1, double[] p2) {
+        boolean better = false;
+        for (int k = 0; k < p1.length; ++k) {
+            if (p1[k] > p2[k]) {
+                return false;
+            }
+            if (p1[k] < p2[k]) {
+                better = true;
+            }
+        }
+        return better;
+    }
+
+    /**
+     * Fronts being built. Points are added in lexicographic order and are
+     * never duplicated, so a point is dominated by a previous one iff the
+     * previous one is not worse in the remaining objectives.
+     */
+    protected static abstract class Fronts {
+
+        public abstract int size();
+
+        public abstract boolean dominates(int front, double[] point);
+
+        public abstract void add(int front, double[] point);
+    }
+
+    protected static class Fronts2D extends Fronts {
+
+        protected double[] minY = new double[16];
+        protected int size = 0;
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean dominates(int front, double[] point) {
+            return minY[front] <= point[1];
+        }
+
+        @Override
+        public void add(int front, double[] point) {
+            if (front == size) {
+                if (size == minY.length) {
+                    minY = Arrays.copyOf(minY, 2 * size);
+                }
+                minY[size++] = point[1];
+            } else {
+                minY[front] = Math.min(minY[front], point[1]);
+            }
+        }
+    }
+
+    protected static class Fronts3D extends Fronts {
+
+        protected ArrayList<TreeMap<Double, Double>> staircases = new ArrayList<>();
+
+        @Override
+        public int size() {
+            return staircases.size();
+        }
+
+        @Override
+        public boolean dominates(int front, double[] point) {
+            Map.Entry<Double, Double> entry = staircases.get(front).floorEntry(point[1]);
+            return entry != null && entry.getValue() <= point[2];
+        }
+
+        @Override
+        public void add(int front, double[] point) {
+            if (front == staircases.size()) {
+                staircases.add(new TreeMap<Double, Double>());
+            }
+            TreeMap<Double, Double> staircase = staircases.get(front);
+            Map.Entry<Double, Double> next = staircase.ceilingEntry(point[1]);
+            while (next != null && next.getValue() >= point[2]) {
+                staircase.remove(next.getKey());
+                next = staircase.higherEntry(point[1]);
+            }
+            staircase.put(point[1], point[2]);
+        }
+    }
+
+    protected static class FrontsND extends Fronts {
+
+        protected ArrayList<ArrayList<double[]>> fronts = new ArrayList<>();
+
+        @Override
+        public int size() {
+            return fronts.size();
+        }
+
+        @Override
+        public boolean dominates(int front, double[] point) {
+            ArrayList<double[]> members = fronts.get(front);
+            // The last members are the most similar ones, check them first:
+            for (int i = members.size() - 1; i >= 0; --i) {
+                if (NonDominatedSort.dominates(members.get(i), point)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void add(int front, double[] point) {
+            if (front == fronts.size()) {
+                fronts.add(new ArrayList<double[]>());
+            }
+            fronts.get(front).add(point);
+        }
+    }
+}
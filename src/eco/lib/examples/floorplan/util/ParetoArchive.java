@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+  *  - José Luis Risco Martín
+ */
+package eco.lib.examples.floorplan.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import eco.core.problem.Solution;
+import eco.core.problem.Solutions;
+import eco.core.problem.Variable;
+
+/**
+ * Archive of non-dominated solutions (all objectives minimized) with its
+ * hypervolume. With two objectives the archive is a staircase and both the
+ * insertion and the hypervolume update take O(log n) amortized time. With
+ * more objectives insertions are linear and the hypervolume is computed on
+ * demand, and kept until the archive changes.
+ *
+ * @param <V> Variable type
+ */
+public class ParetoArchive<V extends Variable<?>> {
+
+    protected int numberOfObjectives;
+    protected double[] ref;
+    protected Hypervolume.Staircase<Solution<V>> staircase = null;
+    protected Solutions<V> solutions = null;
+    protected double hypervolume = Double.NaN;
+
+    /**
+     * Constructor.
+     *
+     * @param numberOfObjectives Number of objectives
+     * @param ref Reference point for the hypervolume
+     */
+    public ParetoArchive(int numberOfObjectives, double[] ref) {
+        this.numberOfObjectives = numberOfObjectives;
+        this.ref = ref;
+        if (numberOfObjectives == 2) {
+            staircase = new Hypervolume.Staircase<>(ref[0], ref[1]);
+        } else {
+            solutions = new Solutions<>();
+        }
+    }
+
+    /**
+     * Adds a copy of the solution if it is not weakly dominated by the
+     * archive, removing the solutions it dominates.
+     *
+     * @param solution Solution
+     * @return true if the solution was added
+     */
+    public boolean add(Solution<V> solution) {
+        if (staircase != null) {
+            double x = solution.getObjective(0), y = solution.getObjective(1);
+            if (staircase.isDominated(x, y)) {
+                return false;
+            }
+            return staircase.add(x, y, solution.clone());
+        }
+        Iterator<Solution<V>> itr = solutions.iterator();
+        while (itr.hasNext()) {
+            Solution<V> current = itr.next();
+            if (weaklyDominates(current, solution)) {
+                return false;
+            }
+            if (weaklyDominates(solution, current)) {
+                itr.remove();
+                hypervolume = Double.NaN;
+            }
+        }
+        solutions.add(solution.clone());
+        hypervolume = Double.NaN;
+        return true;
+    }
+
+    public int addAll(Solutions<V> newSolutions) {
+        int added = 0;
+        for (Solution<V> solution : newSolutions) {
+            if (add(solution)) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    public Solutions<V> getSolutions() {
+        Solutions<V> copy = new Solutions<>();
+        copy.addAll((staircase != null) ? staircase.getPayloads() : solutions);
+        return copy;
+    }
+
+    public int size() {
+        return (staircase != null) ? staircase.size() : solutions.size();
+    }
+
+    public double getHypervolume() {
+        if (staircase != null) {
+            return staircase.getArea();
+        }
+        if (!Double.isNaN(hypervolume)) {
+            return hypervolume;
+        }
+        ArrayList<double[]> points = new ArrayList<>();
+        for (Solution<V> solution : solutions) {
+            double[] point = new double[numberOfObjectives];
+            for (int i = 0; i < numberOfObjectives; ++i) {
+                point[i] = solution.getObjective(i);
+            }
+            points.add(point);
+        }
+        hypervolume = Hypervolume.compute(points, ref);
+        return hypervolume;
+    }
+
+    protected boolean weaklyDominates(Solution<V> s1, Solution<V> s2) {
+        for (int i = 0; i < numberOfObjectives; ++i) {
+            if (s1.getObjective(i) > s2.getObjective(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -24,10 +24,12 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Random;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import eco.lib.examples.floorplan.FloorplanSolution;
+import eco.unstable.util.metrics.Metrics;
 
 /**
  * Class implementing the simulated annealing technique for problem
@@ -47,6 +49,8 @@ public class SimulatedAnnealingSolver extends AbstractSolver {
     private boolean findFeasible = false;
     /** Maximum time in seconds. If 0, then consider maxIterations */
     private long maxSeconds = 0;
+    /** Use the in-place moves of the solutions that support them */
+    private boolean useMoves = true;
 
     /* Cost-related attributes */
     private double currentMinimumCost = Double.MAX_VALUE;
@@ -54,13 +58,26 @@ public class SimulatedAnnealingSolver extends AbstractSolver {
     private double k = 1.0;
 
     /** Random number generator */
-    private static Random rnd;
+    private Random rnd;
+
+    /** Set by cancel(), possibly from another thread */
+    private volatile boolean cancelled = false;
+    /** Notified every time the current solution improves the best objective */
+    private Consumer<Solution> improvementListener = null;
 
     /** Logger */
     private static final Logger logger = Logger.getLogger(SimulatedAnnealingSolver.class.getName());
 
+    /** Metrics */
+    private static final Metrics.Timer SUCCESSOR_TIMER = Metrics.timer("sa.successor");
+    private static final Metrics.Timer CLONE_TIMER = Metrics.timer("sa.clone");
+    private static final Metrics.Timer LOG_TIMER = Metrics.timer("sa.log");
+    private static final Metrics.Counter ACCEPTED = Metrics.counter("sa.accepted");
+
     /** Nome of the log file */
     public static String logFile = "objectives_log.txt";
+    /** Log file of this solver, if null the static logFile is used */
+    private String solverLogFile = null;
 
 
     /** This constructor allows to establish the maximum number of
@@ -90,23 +107,74 @@ public class SimulatedAnnealingSolver extends AbstractSolver {
         maxSeconds = maxSecs;
     }
 
+    /**
+     * Sets the log file of this solver, overriding the static
+     * {@link #logFile}.
+     *
+     * @param logFile path of the log file
+     */
+    public void setLogFile(String logFile) {
+        this.solverLogFile = logFile;
+    }
+
+    /**
+     * @param listener notified with the current solution every time it
+     * improves the best objective found by this solver (the initial solution
+     * included). With in-place moves the solution keeps changing after the
+     * call, so the listener must clone it to keep it.
+     */
+    public void setImprovementListener(Consumer<Solution> listener) {
+        this.improvementListener = listener;
+    }
+
+    /**
+     * Stops the search at the end of the current iteration. It can be called
+     * from any thread. A cancelled solver does not search again.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * If true (default) and the initial solution provides a {@link Move},
+     * neighbours are evaluated in place and rejected moves are undone, so
+     * only the initial solution is cloned. Otherwise, a successor is cloned
+     * for every iteration.
+     *
+     * @param useMoves true to use in-place moves when available
+     */
+    public void setUseMoves(boolean useMoves) {
+        this.useMoves = useMoves;
+    }
+
     @Override
     protected void search(Solution initial) {
 
         Solution bestSol = initial;
-        AbstractSolver.bestSolution = initial.clone();
+        Move move = null;
+        if (useMoves && initial.getMove() != null) {
+            // The working copy is modified in place and is always the last
+            // accepted solution
+            bestSol = initial.clone();
+            move = bestSol.getMove();
+            bestSolution = bestSol;
+        } else {
+            bestSolution = initial.clone();
+        }
+        String logFile = (solverLogFile != null) ? solverLogFile : SimulatedAnnealingSolver.logFile;
 
-        // Log algorithm parameters:
-        
-        final int LOG_RATIO = 1000;
-        
-        // Clean log file:
+        // The log file is cleaned and kept open (and buffered) during the
+        // search, so logging does not add a file open per accepted move:
+        BufferedWriter logWriter = null;
         try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(new File(logFile)));
-            writer.close();
+            logWriter = new BufferedWriter(new FileWriter(new File(logFile)), 1 << 16);
         } catch (IOException ex) {
             logger.log(Level.SEVERE, null, ex);
-        }   
+        }
         
         // Logging SA parameters
         String logStr = "\n# SA Parameters:";
@@ -118,29 +186,69 @@ public class SimulatedAnnealingSolver extends AbstractSolver {
 
         logger.log(Level.INFO, logStr);
 
+        try {
+            anneal(initial, bestSol, move, logWriter);
+        } finally {
+            if (logWriter != null) {
+                try {
+                    logWriter.close();
+                } catch (IOException ex) {
+                    logger.log(Level.SEVERE, null, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Main loop of the search.
+     *
+     * @param initial initial solution
+     * @param bestSol working solution
+     * @param move in-place move of the working solution, null if successors
+     * are cloned
+     * @param logFile open log of the objectives, null if it could not be
+     * opened
+     */
+    private void anneal(Solution initial, Solution bestSol, Move move, BufferedWriter logFile) {
+        String logStr;
+        final int LOG_RATIO = 1000;
+
         initialCost = initial.getObjective();
+        notifyImprovement(bestSol);
 
         double startTime = System.currentTimeMillis();
         // Log starting point:
-        logObjectives(0,bestSol);
+        logObjectives(0,bestSol,logFile);
         
         boolean stopSA = false;
         boolean change = false;
         long numChanges = 0;
 
-        while ( !stopSA && (!findFeasible || (findFeasible && !bestSol.isFeasible())) ) {
+        while ( !stopSA && !cancelled && (!findFeasible || (findFeasible && !bestSol.isFeasible())) ) {
             currentMinimumCost = bestSol.getObjective();
 
             // Obtain a neighbour (next state)
-            Solution newSolution = bestSol.getSuccessors().nextElement();
+            long start = Metrics.start();
+            Solution newSolution = null;
+            double energyDiff = 0.0;
+            if (move == null) {
+                newSolution = bestSol.getSuccessors().nextElement();
+            } else {
+                energyDiff = move.apply();
+            }
+            SUCCESSOR_TIMER.stop(start);
+            Metrics.EVALUATIONS.inc();
 
             currentMoves++;
 
             /* Compute neighbour's (state) energy and check if move to
              the neighbour (state) */
 
-            /* If new solution is has best objetive value, change */
-            if (newSolution.compareTo(bestSol) < 0) {
+            if (move != null) {
+                // Same criterion, with the energy difference of the move
+                change = (energyDiff < 0) || changeState(energyDiff);
+            } else if (newSolution.compareTo(bestSol) < 0) {
+                /* If new solution is has best objetive value, change */
                 change = true;
             } else {
                 // If new solution is worse, change depends on probability
@@ -150,14 +258,26 @@ public class SimulatedAnnealingSolver extends AbstractSolver {
 
             double time = (System.currentTimeMillis() - startTime)/1000.0;
 
+            if (!change && move != null) {
+                move.undo();
+            }
+
             if (change) {
                 numChanges++;
-                bestSol = newSolution.clone();
-                AbstractSolver.bestSolution = bestSol;
+                ACCEPTED.inc();
+                if (move == null) {
+                    start = Metrics.start();
+                    bestSol = newSolution.clone();
+                    CLONE_TIMER.stop(start);
+                    bestSolution = bestSol;
+                }
+                notifyImprovement(bestSol);
                 // Txt for objectives
-                logObjectives(time,bestSol);
+                start = Metrics.start();
+                logObjectives(time,bestSol,logFile);
+                LOG_TIMER.stop(start);
                 // Logs detail only if solution changes and following the ratio
-                if ((numChanges % LOG_RATIO) == 0) {
+                if ((numChanges % LOG_RATIO) == 0 && logger.isLoggable(Level.INFO)) {
                     // Screen and also backups solution to XML file
                     logStr = "\n# SA -- Iterations: "+currentMoves+" -- Current SA Temperature: "+Double.toString(getTemperature())+"\n";
                     logStr += "-- Current Best Solution: "+bestSol+"\n";
@@ -178,7 +298,7 @@ public class SimulatedAnnealingSolver extends AbstractSolver {
         }
 
         double finalTime = (System.currentTimeMillis() - startTime)/1000.0;
-        logObjectives(finalTime,bestSol);
+        logObjectives(finalTime,bestSol,logFile);
         logStr = "\n# TOTAL SA -- Iterations: "+currentMoves+" -- Current SA Temperature: "+Double.toString(getTemperature())+"\n";
         logStr += "TOTAL Time: " + finalTime + " seconds.\n";
         logger.log(Level.INFO,logStr);
@@ -195,7 +315,17 @@ public class SimulatedAnnealingSolver extends AbstractSolver {
     private boolean changeState(Solution oldSol, Solution newSol) {
 
         // Higher cost means new energy to be higher than old energy
-        double energyDiff = newSol.getObjective() - oldSol.getObjective();
+        return changeState(newSol.getObjective() - oldSol.getObjective());
+    }
+
+    /**
+     * Computes probability of changing to a state with the given energy
+     * difference
+     *
+     * @param energyDiff new energy minus old energy
+     * @return true if probability gives chance to change state, false otherwise
+     */
+    private boolean changeState(double energyDiff) {
 
         // Compute probability. Must be between 0 and 1.
         double temp = getTemperature();
@@ -218,21 +348,29 @@ public class SimulatedAnnealingSolver extends AbstractSolver {
 
     }
 
-    private void logObjectives(double time, Solution bestSol) {
-        if (bestSol instanceof FloorplanSolution) {
-            ((FloorplanSolution) bestSol).logObjectives(time,logFile);
-        } else {
-            // File log code
-            try {
-                // Appending
-                BufferedWriter writer = new BufferedWriter(new FileWriter(new File(logFile),true));
+    private void notifyImprovement(Solution solution) {
+        double objective = solution.getObjective();
+        if (objective < bestObjective) {
+            bestObjective = objective;
+            if (improvementListener != null) {
+                improvementListener.accept(solution);
+            }
+        }
+    }
 
+    private void logObjectives(double time, Solution bestSol, BufferedWriter logFile) {
+        if (logFile == null) {
+            return;
+        }
+        try {
+            if (bestSol instanceof FloorplanSolution) {
+                ((FloorplanSolution) bestSol).logObjectives(time,logFile);
+            } else {
                 // # Time Obj.Value Feasible
-                writer.write(time + " " + bestSol.getObjective() + " "+(bestSol.isFeasible() ? "1":"0")+"\n");
-                writer.close();
-            } catch (IOException ex) {
-                logger.log(Level.SEVERE, null, ex);
-            }                        
+                logFile.write(time + " " + bestSol.getObjective() + " "+(bestSol.isFeasible() ? "1":"0")+"\n");
+            }
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, null, ex);
         }
     }
 
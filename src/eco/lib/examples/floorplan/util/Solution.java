@@ -28,4 +28,14 @@ public interface Solution extends Comparable<Solution> {
 	double getBound();
 	Enumeration<Solution> getSuccessors();
 	Solution clone();
+
+	/**
+	 * Optional fast path for local search, see {@link Move}.
+	 *
+	 * @return a move that modifies this solution in place, or null if only
+	 * {@link #getSuccessors()} is supported
+	 */
+	default Move getMove() {
+		return null;
+	}
 }
@@ -28,6 +28,8 @@ import java.util.ArrayList;
 import java.util.Random;
 import java.util.logging.Logger;
 
+import eco.unstable.util.metrics.Metrics;
+
 /**
  * Class to manage a data table. The data table is passed
  * to this class as a regular data table.
@@ -38,6 +40,8 @@ import java.util.logging.Logger;
 public class DataTable {
     
     private static final Logger logger = Logger.getLogger(DataTable.class.getName());
+    private static final Metrics.Timer READ_TIMER = Metrics.timer("parkinson.data.read");
+    private static final Metrics.Counter COPIED_ROWS = Metrics.counter("parkinson.data.copiedRows");
     
     protected ParkinsonClassifier problem;
     protected ArrayList<double[]> table = new ArrayList<>();
@@ -115,6 +119,7 @@ public class DataTable {
     }
        
     public final void readData(String dataPath, ArrayList<double[]> dataTable, Boolean addOutputLine) throws IOException {
+        long start = Metrics.start();
         File file = new File(dataPath);
         if (file.exists()){
             
@@ -149,6 +154,7 @@ public class DataTable {
         else {
             logger.finer("File: " + dataPath + " DOES NOT EXIST");
         }
+        READ_TIMER.stop(start);
     }
         
     public ArrayList<double[]> getDataTable(String  type) {
@@ -163,6 +169,7 @@ public class DataTable {
     }
     
     public ArrayList<double[]> getDataTable(String type, int idx1, int idx2) {
+        COPIED_ROWS.add(idx2 - idx1);
         switch (type) {
             case "rawData":
                 return new ArrayList(table.subList(idx1, idx2));
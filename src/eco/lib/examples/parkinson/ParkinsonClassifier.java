@@ -53,11 +53,16 @@ import eco.core.util.logger.HeroLogger;
 import eco.unstable.util.Maths;
 import eco.unstable.util.classifier.ClassifierEvaluator;
 import eco.unstable.util.classifier.Quantizer;
+import eco.unstable.util.metrics.Metrics;
 
 
 public class ParkinsonClassifier extends AbstractProblemGE {
     
     private static final Logger logger = Logger.getLogger(ParkinsonClassifier.class.getName());
+    private static final Metrics.Timer CODEGEN_TIMER = Metrics.timer("parkinson.codegen");
+    private static final Metrics.Timer COMPILE_TIMER = Metrics.timer("parkinson.compile");
+    private static final Metrics.Timer LOAD_TIMER = Metrics.timer("parkinson.load");
+    private static final Metrics.Timer FOLDS_TIMER = Metrics.timer("parkinson.folds");
     private static boolean whoWas = false;
     
     private static int CURRENT_THREAD_ID = 1;
@@ -134,6 +139,7 @@ public class ParkinsonClassifier extends AbstractProblemGE {
     
     @Override
     public void evaluate(Solutions<Variable<Integer>> solutions) {
+        long start = Metrics.start();
         StringBuilder currentJavaFile = new StringBuilder();
         int numOfIncorrectSolutions = 0;
         
@@ -306,7 +312,9 @@ public class ParkinsonClassifier extends AbstractProblemGE {
         currentJavaFile.append("\t\treturn result;\n");
         currentJavaFile.append("\t}\n");
         currentJavaFile.append("}\n");
+        CODEGEN_TIMER.stop(start);
         // Compilation process:
+        start = Metrics.start();
         try {
             File file = new File(compiler.getWorkDir() + File.separator + "PopEvaluator" + threadId + ".java");
             BufferedWriter writer = new BufferedWriter(new FileWriter(file));
@@ -323,15 +331,18 @@ public class ParkinsonClassifier extends AbstractProblemGE {
         } catch (Exception ex) {
             logger.severe(ex.getLocalizedMessage());
         }
+        COMPILE_TIMER.stop(start);
         
         // For each folding apply the solutions.
         // Evaluate all the solutions with the compiled file.
+        start = Metrics.start();
         evaluator = null;
         try {
             evaluator = (AbstractPopEvaluator) (new MyLoader(compiler.getWorkDir())).loadClass("PopEvaluator" + threadId).newInstance();
         } catch (Exception ex) {
             logger.severe(ex.getLocalizedMessage());
         }
+        LOAD_TIMER.stop(start);
         
         
         // For each solution
@@ -339,7 +350,10 @@ public class ParkinsonClassifier extends AbstractProblemGE {
             Solution<Variable<Integer>> solution = solutions.get(s);
             classifierEval.resetConfusionMatrix();
             //logger.info("Solución: " + generatePhenotype(solution).toString());
+            start = Metrics.start();
             computeFolds(evaluator, solution, s, currentData);
+            FOLDS_TIMER.stop(start);
+            Metrics.EVALUATIONS.inc();
             
             double cr = classifierEval.getClassificationRate();
             double macroPPV = classifierEval.getMacroAveragePrecision();
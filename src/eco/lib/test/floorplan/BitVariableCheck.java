@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *  - José Luis Risco Martín
+ */
+package eco.lib.test.floorplan;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import eco.core.problem.Solution;
+import eco.core.problem.Solutions;
+import eco.core.util.random.RandomGenerator;
+import eco.lib.examples.floorplan.BitVariable;
+
+/**
+ * Checks BitVariable against a plain boolean array. Random bits are flipped
+ * and flipped back, and the queries (get, cardinality, nextSetBit, toString)
+ * are compared with the array after every change. The operators are checked
+ * too: the crossover must swap the tails after a single point, and the
+ * mutation must flip no bit with probability 0 and every bit with
+ * probability 1.
+ *
+ * @author José Luis Risco Martín
+ */
+public class BitVariableCheck {
+
+    private static final Logger logger = Logger.getLogger(BitVariableCheck.class.getName());
+
+    protected int numMoves;
+    protected Random rnd;
+
+    public BitVariableCheck(int numMoves, long seed) {
+        this.numMoves = numMoves;
+        this.rnd = new Random(seed);
+    }
+
+    /**
+     * @param size Number of bits
+     * @return Number of mismatches
+     */
+    public int check(int size) {
+        BitVariable variable = new BitVariable(size);
+        boolean[] bits = new boolean[size];
+        BitVariable mask = new BitVariable(size);
+        boolean[] maskBits = new boolean[size];
+        for (int i = 0; i < size; ++i) {
+            maskBits[i] = rnd.nextBoolean();
+            mask.set(i, maskBits[i]);
+        }
+        int errors = 0;
+        for (int move = 0; move < numMoves; ++move) {
+            int[] flipped = new int[1 + rnd.nextInt(4)];
+            String before = variable.toString();
+            for (int k = 0; k < flipped.length; ++k) {
+                flipped[k] = rnd.nextInt(size);
+                variable.flip(flipped[k]);
+                bits[flipped[k]] = !bits[flipped[k]];
+            }
+            errors += compare(variable, bits, mask, maskBits, move);
+            if (move % 2 == 0) {
+                for (int k = flipped.length - 1; k >= 0; --k) {
+                    variable.flip(flipped[k]);
+                    bits[flipped[k]] = !bits[flipped[k]];
+                }
+                if (!before.equals(variable.toString())) {
+                    logger.severe("Move " + move + ": undo does not restore the bits");
+                    errors++;
+                }
+                errors += compare(variable, bits, mask, maskBits, move);
+            }
+        }
+        BitVariable clone = variable.clone();
+        clone.flip(0);
+        if (clone.get(0) == variable.get(0)) {
+            logger.severe("The clone shares its bits");
+            errors++;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            BitVariable.CODEC.write(new DataOutputStream(bytes), variable);
+            BitVariable read = BitVariable.CODEC.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            if (read.size() != size || !read.toString().equals(variable.toString())) {
+                logger.severe("The codec does not restore the bits");
+                errors++;
+            }
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, null, ex);
+            errors++;
+        }
+        return errors + checkCrossover(size) + checkMutation(size);
+    }
+
+    protected int compare(BitVariable variable, boolean[] bits, BitVariable mask, boolean[] maskBits, int move) {
+        int errors = 0;
+        int cardinality = 0, maskedCardinality = 0;
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < bits.length; ++i) {
+            if (variable.get(i) != bits[i]) {
+                errors++;
+            }
+            cardinality += bits[i] ? 1 : 0;
+            maskedCardinality += (bits[i] && maskBits[i]) ? 1 : 0;
+            expected.append(bits[i] ? '1' : '0');
+        }
+        if (variable.cardinality() != cardinality || variable.cardinality(mask.getValue()) != maskedCardinality) {
+            errors++;
+        }
+        if (!expected.toString().equals(variable.toString())) {
+            errors++;
+        }
+        int expectedNext = -1;
+        for (int i = bits.length - 1; i >= -1; --i) {
+            if (variable.nextSetBit(i + 1) != expectedNext) {
+                errors++;
+            }
+            if (i >= 0 && bits[i]) {
+                expectedNext = i;
+            }
+        }
+        if (errors > 0) {
+            logger.severe("Move " + move + ": " + errors + " differences with the boolean array");
+        }
+        return errors;
+    }
+
+    protected int checkCrossover(int size) {
+        int errors = 0;
+        BitVariable.BitCrossover crossover = new BitVariable.BitCrossover(1.0);
+        for (int t = 0; t < numMoves / 10 + 1; ++t) {
+            Solution<BitVariable> parent1 = random(size);
+            Solution<BitVariable> parent2 = random(size);
+            String bits1 = parent1.getVariables().get(0).toString();
+            String bits2 = parent2.getVariables().get(0).toString();
+            Solutions<BitVariable> offspring = crossover.execute(parent1, parent2);
+            String child1 = offspring.get(0).getVariables().get(0).toString();
+            String child2 = offspring.get(1).getVariables().get(0).toString();
+            boolean singlePoint = false;
+            for (int point = 0; !singlePoint && point <= size; ++point) {
+                singlePoint = child1.equals(bits1.substring(0, point) + bits2.substring(point))
+                        && child2.equals(bits2.substring(0, point) + bits1.substring(point));
+            }
+            if (!singlePoint) {
+                logger.severe("The crossover of " + size + " bits is not a single point one");
+                errors++;
+            }
+        }
+        return errors;
+    }
+
+    protected int checkMutation(int size) {
+        int errors = 0;
+        Solution<BitVariable> solution = random(size);
+        String bits = solution.getVariables().get(0).toString();
+        new BitVariable.BitMutation(0.0).execute(solution);
+        if (!bits.equals(solution.getVariables().get(0).toString())) {
+            logger.severe("A mutation with probability 0 flips bits");
+            errors++;
+        }
+        new BitVariable.BitMutation(1.0).execute(solution);
+        String flipped = solution.getVariables().get(0).toString();
+        for (int i = 0; i < size; ++i) {
+            if (flipped.charAt(i) == bits.charAt(i)) {
+                logger.severe("A mutation with probability 1 does not flip bit " + i);
+                errors++;
+                break;
+            }
+        }
+        return errors;
+    }
+
+    protected Solution<BitVariable> random(int size) {
+        BitVariable variable = new BitVariable(size);
+        for (int i = 0; i < size; ++i) {
+            variable.set(i, rnd.nextBoolean());
+        }
+        Solution<BitVariable> solution = new Solution<BitVariable>(2);
+        solution.getVariables().add(variable);
+        return solution;
+    }
+
+    public static void main(String[] args) {
+        int numMoves = (args.length > 0) ? Integer.valueOf(args[0]) : 1000;
+        RandomGenerator.setSeed(1);
+        BitVariableCheck check = new BitVariableCheck(numMoves, 1);
+        int errors = 0;
+        for (int size : new int[]{1, 63, 64, 65, 130, 1000}) {
+            errors += check.check(size);
+        }
+        System.out.println("BitVariable: " + errors + " errors");
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *  - José Luis Risco Martín
+ */
+package eco.lib.test.floorplan;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import eco.core.algorithm.metaheuristic.moga.NSGAII;
+import eco.core.operator.selection.BinaryTournamentNSGAII;
+import eco.core.problem.Problem;
+import eco.core.problem.Solution;
+import eco.core.problem.Solutions;
+import eco.core.util.random.RandomGenerator;
+import eco.lib.examples.floorplan.BitVariable;
+import eco.lib.examples.floorplan.util.Checkpoint;
+import eco.lib.examples.floorplan.util.ConvergenceTracker;
+
+/**
+ * Checks Checkpoint. Random populations are saved and restored, with and
+ * without a convergence tracker, and compared with the original ones. The
+ * re-seeding of the random generator is checked too: a run that is stopped
+ * after a checkpoint and resumed must draw the same numbers as a run that is
+ * never stopped, and a run without checkpoints must not be re-seeded at all.
+ * Finally, a resumed algorithm must start from the stored population without
+ * building a random one.
+ *
+ * @author José Luis Risco Martín
+ */
+public class CheckpointCheck {
+
+    private static final Logger logger = Logger.getLogger(CheckpointCheck.class.getName());
+
+    protected File file;
+    protected Random rnd;
+
+    public CheckpointCheck(File file, long seed) {
+        this.file = file;
+        this.rnd = new Random(seed);
+    }
+
+    /**
+     * Problem with one bit variable and three objectives: number of ones,
+     * number of zeros and index of the first one. It counts the random
+     * solutions it builds.
+     */
+    protected static class BitProblem extends Problem<BitVariable> {
+
+        protected int size;
+        protected int numRandomSolutions = 0;
+
+        public BitProblem(int size) {
+            super(1, 3);
+            this.size = size;
+        }
+
+        @Override
+        public Solutions<BitVariable> newRandomSetOfSolutions(int n) {
+            Solutions<BitVariable> solutions = new Solutions<BitVariable>();
+            for (int i = 0; i < n; ++i) {
+                BitVariable variable = new BitVariable(size);
+                for (int j = 0; j < size; ++j) {
+                    variable.set(j, RandomGenerator.nextDouble() < 0.5);
+                }
+                Solution<BitVariable> solution = new Solution<BitVariable>(numberOfObjectives);
+                solution.getVariables().add(variable);
+                solutions.add(solution);
+            }
+            numRandomSolutions += n;
+            return solutions;
+        }
+
+        @Override
+        public void evaluate(Solution<BitVariable> solution) {
+            BitVariable variable = solution.getVariables().get(0);
+            int ones = variable.cardinality();
+            solution.getObjectives().set(0, (double) ones);
+            solution.getObjectives().set(1, (double) (size - ones));
+            solution.getObjectives().set(2, (double) variable.nextSetBit(0));
+        }
+
+        @Override
+        public Problem<BitVariable> clone() {
+            return new BitProblem(size);
+        }
+    }
+
+    /**
+     * Saves and restores a random population, and the tracker it has fed.
+     *
+     * @param withTracker Save the state of a convergence tracker too
+     * @return Number of mismatches
+     */
+    public int checkRoundTrip(boolean withTracker) {
+        int errors = 0;
+        BitProblem problem = new BitProblem(1 + rnd.nextInt(200));
+        Solutions<BitVariable> population = problem.newRandomSetOfSolutions(1 + rnd.nextInt(50));
+        problem.evaluate(population);
+        ConvergenceTracker<BitVariable> tracker = withTracker ? new ConvergenceTracker<BitVariable>(10) : null;
+        if (tracker != null) {
+            tracker.update(population);
+        }
+        int generation = rnd.nextInt(1000);
+        Checkpoint<BitVariable> checkpoint = new Checkpoint<BitVariable>(file.getPath(), BitVariable.CODEC);
+        Checkpoint<BitVariable> restored = new Checkpoint<BitVariable>(file.getPath(), BitVariable.CODEC);
+        Solutions<BitVariable> population2 = problem.newRandomSetOfSolutions(3);
+        ConvergenceTracker<BitVariable> tracker2 = withTracker ? new ConvergenceTracker<BitVariable>(10) : null;
+        try {
+            checkpoint.save(generation, population, tracker);
+            if (restored.restore(population2, tracker2) != generation) {
+                logger.severe("The generation counter is not restored");
+                errors++;
+            }
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, null, ex);
+            return errors + 1;
+        }
+        errors += compare(population, population2);
+        if (tracker != null) {
+            if (tracker2.getArchive() == null || tracker2.getHypervolume() != tracker.getHypervolume()) {
+                logger.severe("The tracker is not restored: hypervolume " + tracker2.getHypervolume() + " instead of " + tracker.getHypervolume());
+                errors++;
+            } else {
+                errors += compare(tracker.getArchive().getSolutions(), tracker2.getArchive().getSolutions());
+            }
+        }
+        if (new File(file.getPath() + ".tmp").exists()) {
+            logger.severe("The temporary file is left behind");
+            errors++;
+        }
+        return errors;
+    }
+
+    protected int compare(Solutions<BitVariable> expected, Solutions<BitVariable> actual) {
+        if (expected.size() != actual.size()) {
+            logger.severe(actual.size() + " solutions instead of " + expected.size());
+            return 1;
+        }
+        int errors = 0;
+        for (int i = 0; i < expected.size(); ++i) {
+            Solution<BitVariable> s1 = expected.get(i), s2 = actual.get(i);
+            if (!s1.getObjectives().equals(s2.getObjectives()) || s1.getVariables().size() != s2.getVariables().size()
+                    || !s1.getVariables().get(0).toString().equals(s2.getVariables().get(0).toString())) {
+                errors++;
+            }
+        }
+        if (errors > 0) {
+            logger.severe(errors + " solutions are not restored");
+        }
+        return errors;
+    }
+
+    /**
+     * Draws numbers generation by generation, stopping after a checkpoint
+     * and resuming from it in the middle, and compares them with the numbers
+     * of an uninterrupted run.
+     *
+     * @param numGene Number of generations
+     * @return Number of mismatches
+     */
+    public int checkReseeding(int numGene) {
+        int errors = 0;
+        long seed = rnd.nextLong();
+        int stop = 1 + rnd.nextInt(numGene - 1);
+        double[] expected = new double[numGene + 1];
+        RandomGenerator.setSeed(seed);
+        Checkpoint<BitVariable> checkpoint = new Checkpoint<BitVariable>(file.getPath(), BitVariable.CODEC);
+        checkpoint.start();
+        for (int g = 1; g <= numGene; ++g) {
+            checkpoint.startGeneration(g);
+            expected[g] = RandomGenerator.nextDouble();
+        }
+        RandomGenerator.setSeed(seed);
+        checkpoint = new Checkpoint<BitVariable>(file.getPath(), BitVariable.CODEC);
+        checkpoint.start();
+        try {
+            for (int g = 1; g <= stop; ++g) {
+                checkpoint.startGeneration(g);
+                if (RandomGenerator.nextDouble() != expected[g]) {
+                    errors++;
+                }
+            }
+            checkpoint.save(stop, new Solutions<BitVariable>());
+            // A new process, with another state of the generator:
+            RandomGenerator.setSeed(rnd.nextLong());
+            checkpoint = new Checkpoint<BitVariable>(file.getPath(), BitVariable.CODEC);
+            int g = checkpoint.restore(new Solutions<BitVariable>());
+            while (g < numGene) {
+                checkpoint.startGeneration(++g);
+                if (RandomGenerator.nextDouble() != expected[g]) {
+                    errors++;
+                }
+            }
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, null, ex);
+            errors++;
+        }
+        if (errors > 0) {
+            logger.severe(errors + " generations of the resumed run draw other numbers");
+        }
+        // Without start() or restore(), the generator must not be touched:
+        RandomGenerator.setSeed(seed);
+        double first = RandomGenerator.nextDouble();
+        RandomGenerator.setSeed(seed);
+        new Checkpoint<BitVariable>(file.getPath(), BitVariable.CODEC).startGeneration(1);
+        if (RandomGenerator.nextDouble() != first) {
+            logger.severe("A run without checkpoints is re-seeded");
+            errors++;
+        }
+        return errors;
+    }
+
+    /**
+     * Initializes an algorithm from a checkpoint.
+     *
+     * @return Number of mismatches
+     */
+    public int checkResume() {
+        int errors = 0;
+        BitProblem problem = new BitProblem(64);
+        Solutions<BitVariable> population = problem.newRandomSetOfSolutions(20);
+        problem.evaluate(population);
+        Checkpoint<BitVariable> checkpoint = new Checkpoint<BitVariable>(file.getPath(), BitVariable.CODEC);
+        try {
+            checkpoint.save(7, population);
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, null, ex);
+            return errors + 1;
+        }
+        BitProblem resumedProblem = new BitProblem(64);
+        NSGAII<BitVariable> algorithm = new NSGAII<BitVariable>(resumedProblem, 20, 10, new BitVariable.BitMutation(0.01), new BitVariable.BitCrossover(), new BinaryTournamentNSGAII<BitVariable>());
+        checkpoint = new Checkpoint<BitVariable>(file.getPath(), BitVariable.CODEC);
+        if (checkpoint.initialize(algorithm, 1, true, null) != 7) {
+            logger.severe("The resumed run does not start after the stored generation");
+            errors++;
+        }
+        if (resumedProblem.numRandomSolutions > 0) {
+            logger.severe("The resumed run builds " + resumedProblem.numRandomSolutions + " random solutions");
+            errors++;
+        }
+        errors += compare(population, algorithm.getPopulation());
+        return errors;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int numTests = (args.length > 0) ? Integer.valueOf(args[0]) : 100;
+        File file = File.createTempFile("CheckpointCheck", ".ckpt");
+        file.deleteOnExit();
+        CheckpointCheck check = new CheckpointCheck(file, 1);
+        int errors = 0;
+        for (int i = 0; i < numTests; ++i) {
+            errors += check.checkRoundTrip(i % 2 == 1);
+            errors += check.checkReseeding(2 + i);
+        }
+        errors += check.checkResume();
+        file.delete();
+        System.out.println("Checkpoint: " + errors + " errors");
+    }
+}
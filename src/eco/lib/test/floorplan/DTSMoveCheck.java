@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *  - José Luis Risco Martín
+ */
+package eco.lib.test.floorplan;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import eco.lib.examples.floorplan.FloorplanConfiguration;
+import eco.lib.examples.floorplan.FloorplanDTS;
+import eco.lib.examples.floorplan.util.Move;
+import eco.lib.examples.floorplan.util.MultiwayTree;
+
+/**
+ * Checks the in-place moves of FloorplanDTS and the incremental layout of
+ * MultiwayTree. Random moves are applied, their result is compared with a
+ * layout computed from scratch, and every other move is undone, checking
+ * that the previous state is restored exactly. Swapping the elements of two
+ * nodes, which shifts the offsets of their subtrees, must not allocate once
+ * the code is warm.
+ *
+ * @author José Luis Risco Martín
+ */
+public class DTSMoveCheck {
+
+    private static final Logger logger = Logger.getLogger(DTSMoveCheck.class.getName());
+
+    protected int numMoves;
+    protected Random rnd;
+
+    public DTSMoveCheck(int numMoves, long seed) {
+        this.numMoves = numMoves;
+        this.rnd = new Random(seed);
+    }
+
+    /**
+     * Applies NodeMoves to a DTS encoding of the floorplan.
+     *
+     * @param xmlFilePath Floorplan
+     * @param randomEncoding Start from a random encoding instead of the XML
+     * positions
+     * @return Number of mismatches
+     */
+    public int checkMoves(String xmlFilePath, boolean randomEncoding) {
+        FloorplanDTS.backupToXML = false;
+        FloorplanDTS solution = new FloorplanDTS(new FloorplanConfiguration(xmlFilePath), 0.5, 0.5, rnd.nextLong(), randomEncoding, ".");
+        Move move = solution.getMove();
+        int errors = 0;
+        for (int i = 0; i < numMoves; ++i) {
+            String before = solution.toString();
+            double objectiveBefore = solution.getObjective();
+            double delta = move.apply();
+            String after = solution.toString();
+            double objective = solution.getObjective();
+            if (Math.abs(delta - (objective - objectiveBefore)) > 1e-9) {
+                logger.severe("Move " + i + ": delta " + delta + " instead of " + (objective - objectiveBefore));
+                errors++;
+            }
+            double fresh = solution.evaluateFromScratch();
+            if (fresh != objective || !after.equals(solution.toString())) {
+                logger.severe("Move " + i + ": incremental objective " + objective + ", from scratch " + fresh);
+                errors++;
+            }
+            if (i % 2 == 0) {
+                move.undo();
+                if (solution.getObjective() != objectiveBefore || !before.equals(solution.toString())) {
+                    logger.severe("Move " + i + ": undo does not restore the solution");
+                    errors++;
+                }
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Moves random nodes of a tree with a layout, as NodeMove does, and
+     * compares the cached offsets, sizes and counts with the ones of a copy
+     * laid out from scratch.
+     *
+     * @param numNodes Number of nodes, the root excluded
+     * @return Number of mismatches
+     */
+    public int checkTree(int numNodes) {
+        MultiwayTree<Integer> tree = new MultiwayTree<Integer>();
+        tree.setRoot(true);
+        tree.setNode(-1);
+        tree.setExtent(e -> (e < 0) ? 0 : 1 + e % 7, null);
+        for (int e = 0; e < numNodes; ++e) {
+            MultiwayTree<Integer> parent = tree.getSubTree(rnd.nextInt(tree.getNumNodes()), tree);
+            if (parent.getChildren() == null) {
+                parent.addChildren(e);
+            } else {
+                parent.addChildren(rnd.nextInt(parent.getChildren().size() + 1), e);
+            }
+        }
+        tree.updateLayout();
+        int errors = checkLayout(tree, numNodes);
+        for (int i = 0; i < numMoves; ++i) {
+            String before = tree.toString();
+            Integer e = rnd.nextInt(numNodes);
+            MultiwayTree<Integer> node = tree.findNode(e);
+            MultiwayTree<Integer> oldParent = node.getParent();
+            int oldIndex = oldParent.getChildren().indexOf(node);
+            int oldNumChildren = (node.getChildren() == null) ? 0 : node.getChildren().size();
+            tree.removeNode(e, tree);
+            MultiwayTree<Integer> parent = tree.getSubTree(rnd.nextInt(tree.getNumNodes()), tree);
+            int numChildren = (parent.getChildren() == null) ? 0 : parent.getChildren().size();
+            parent.addChildren(rnd.nextInt(numChildren + 1), 0, node);
+            errors += checkLayout(tree, numNodes);
+            if (i % 2 == 0) {
+                tree.removeNode(e, tree);
+                oldParent.addChildren(oldIndex, oldNumChildren, node);
+                if (!before.equals(tree.toString())) {
+                    logger.severe("Tree move " + i + ": undo does not restore the tree");
+                    errors++;
+                }
+                errors += checkLayout(tree, numNodes);
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Swaps the elements of random nodes of a tree with a layout, counting
+     * the bytes allocated by this thread.
+     *
+     * @param numNodes Number of nodes, the root excluded
+     * @return 1 if the swaps allocate, 0 otherwise
+     */
+    public int checkAllocation(int numNodes) {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            logger.warning("The JVM does not count the allocated bytes");
+            return 0;
+        }
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        MultiwayTree<Integer> tree = new MultiwayTree<Integer>();
+        tree.setRoot(true);
+        tree.setNode(-1);
+        tree.setExtent(e -> (e < 0) ? 0 : 1 + e % 7, null);
+        for (int e = 0; e < numNodes; ++e) {
+            MultiwayTree<Integer> parent = tree.getSubTree(rnd.nextInt(tree.getNumNodes()), tree);
+            if (parent.getChildren() == null) {
+                parent.addChildren(e);
+            } else {
+                parent.addChildren(rnd.nextInt(parent.getChildren().size() + 1), e);
+            }
+        }
+        tree.updateLayout();
+        int numSwaps = 100 * numMoves;
+        long allocated = 0;
+        // The first round warms the code up:
+        for (int round = 0; round < 2; ++round) {
+            long start = sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            for (int i = 0; i < numSwaps; ++i) {
+                MultiwayTree<Integer> node1 = tree.getSubTree(1 + rnd.nextInt(numNodes), tree);
+                MultiwayTree<Integer> node2 = tree.getSubTree(1 + rnd.nextInt(numNodes), tree);
+                node1.swapNodes(node2);
+            }
+            allocated = sunBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - start;
+        }
+        // A few bytes may come from the JVM itself:
+        if (allocated > numSwaps) {
+            logger.severe(numSwaps + " swaps allocate " + allocated + " bytes");
+            return 1 + checkLayout(tree, numNodes);
+        }
+        return checkLayout(tree, numNodes);
+    }
+
+    protected int checkLayout(MultiwayTree<Integer> tree, int numNodes) {
+        MultiwayTree<Integer> fresh = tree.clone();
+        fresh.updateLayout();
+        int errors = 0;
+        if (tree.getSize() != fresh.getSize() || tree.getNumNodes() != numNodes + 1) {
+            errors++;
+        }
+        for (int e = 0; e < numNodes; ++e) {
+            MultiwayTree<Integer> node = tree.findNode(e);
+            MultiwayTree<Integer> freshNode = fresh.findNode(e);
+            if (node.getOffset() != freshNode.getOffset() || node.getSize() != freshNode.getSize()
+                    || node.getNumNodes() != node.breadthFirstTraversal().size()) {
+                errors++;
+            }
+        }
+        if (errors > 0) {
+            logger.severe(errors + " nodes with a wrong layout in " + tree);
+        }
+        return errors;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Parameters: XmlFilePath [NumMoves] [RandomEncoding]");
+            return;
+        }
+        int numMoves = (args.length > 1) ? Integer.valueOf(args[1]) : 1000;
+        boolean randomEncoding = (args.length > 2) && Boolean.valueOf(args[2]);
+        DTSMoveCheck check = new DTSMoveCheck(numMoves, 1);
+        int errors = check.checkTree(200) + check.checkAllocation(200);
+        System.out.println("MultiwayTree: " + errors + " errors");
+        int moveErrors = check.checkMoves(args[0], randomEncoding);
+        System.out.println("FloorplanDTS: " + moveErrors + " errors");
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *  - José Luis Risco Martín
+ */
+package eco.lib.test.floorplan;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import eco.lib.examples.floorplan.FreeRectangles;
+
+/**
+ * Checks FreeRectangles against a grid of cells. Random blocks are placed
+ * where the rectangles say they fit, and after every placement the
+ * rectangles are compared with the free cells of the grid: every rectangle
+ * must be free and maximal, no rectangle may contain another one, every free
+ * cell must be covered, and a block must fit in a rectangle exactly when all
+ * its cells are free.
+ *
+ * @author José Luis Risco Martín
+ */
+public class FreeRectanglesCheck {
+
+    private static final Logger logger = Logger.getLogger(FreeRectanglesCheck.class.getName());
+
+    protected int length;
+    protected int width;
+    protected int maxSide;
+    protected Random rnd;
+
+    public FreeRectanglesCheck(int length, int width, int maxSide, long seed) {
+        this.length = length;
+        this.width = width;
+        this.maxSide = maxSide;
+        this.rnd = new Random(seed);
+    }
+
+    /**
+     * Fills a layer with random blocks until one does not fit.
+     *
+     * @return Number of mismatches
+     */
+    public int check() {
+        FreeRectangles free = new FreeRectangles(length, width, 1);
+        boolean[][] used = new boolean[length][width];
+        int errors = check(free, used, 0);
+        for (int move = 1; true; ++move) {
+            int l = 1 + rnd.nextInt(maxSide), w = 1 + rnd.nextInt(maxSide);
+            ArrayList<int[]> fits = new ArrayList<int[]>();
+            for (int[] r : free.getRectangles(0)) {
+                if (r[2] >= l && r[3] >= w) {
+                    fits.add(r);
+                }
+            }
+            if (fits.isEmpty()) {
+                return errors;
+            }
+            int[] r = fits.get(rnd.nextInt(fits.size()));
+            int x = r[0] + rnd.nextInt(r[2] - l + 1), y = r[1] + rnd.nextInt(r[3] - w + 1);
+            for (int i = x; i < x + l; ++i) {
+                for (int j = y; j < y + w; ++j) {
+                    if (used[i][j]) {
+                        logger.severe("Block " + move + " overlaps a placed block at (" + i + ", " + j + ")");
+                        errors++;
+                    }
+                    used[i][j] = true;
+                }
+            }
+            free.occupy(x, y, 0, l, w);
+            errors += check(free, used, move);
+        }
+    }
+
+    protected int check(FreeRectangles free, boolean[][] used, int move) {
+        ArrayList<int[]> rectangles = free.getRectangles(0);
+        int errors = 0;
+        for (int k = 0; k < rectangles.size(); ++k) {
+            int[] r = rectangles.get(k);
+            boolean maximal = !isFree(used, r[0] - 1, r[1], 1, r[3]) && !isFree(used, r[0] + r[2], r[1], 1, r[3])
+                    && !isFree(used, r[0], r[1] - 1, r[2], 1) && !isFree(used, r[0], r[1] + r[3], r[2], 1);
+            if (!isFree(used, r[0], r[1], r[2], r[3]) || !maximal) {
+                errors++;
+            }
+            for (int m = 0; m < rectangles.size(); ++m) {
+                int[] o = rectangles.get(m);
+                if (m != k && r[0] >= o[0] && r[1] >= o[1] && r[0] + r[2] <= o[0] + o[2] && r[1] + r[3] <= o[1] + o[3]) {
+                    errors++;
+                }
+            }
+        }
+        for (int i = 0; i < length; ++i) {
+            for (int j = 0; j < width; ++j) {
+                if (!used[i][j] && !fits(rectangles, i, j, 1, 1)) {
+                    errors++;
+                }
+            }
+        }
+        for (int t = 0; t < 100; ++t) {
+            int l = 1 + rnd.nextInt(maxSide), w = 1 + rnd.nextInt(maxSide);
+            int x = rnd.nextInt(length), y = rnd.nextInt(width);
+            if (fits(rectangles, x, y, l, w) != isFree(used, x, y, l, w)) {
+                errors++;
+            }
+        }
+        if (errors > 0) {
+            logger.severe("Block " + move + ": " + errors + " differences with the grid");
+        }
+        return errors;
+    }
+
+    protected boolean isFree(boolean[][] used, int x, int y, int l, int w) {
+        if (x < 0 || y < 0 || x + l > length || y + w > width) {
+            return false;
+        }
+        for (int i = x; i < x + l; ++i) {
+            for (int j = y; j < y + w; ++j) {
+                if (used[i][j]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    protected static boolean fits(ArrayList<int[]> rectangles, int x, int y, int l, int w) {
+        for (int[] r : rectangles) {
+            if (x >= r[0] && y >= r[1] && x + l <= r[0] + r[2] && y + w <= r[1] + r[3]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void main(String[] args) {
+        int numTests = (args.length > 0) ? Integer.valueOf(args[0]) : 100;
+        FreeRectanglesCheck check = new FreeRectanglesCheck(48, 32, 8, 1);
+        int errors = 0;
+        for (int i = 0; i < numTests; ++i) {
+            errors += check.check();
+        }
+        System.out.println("FreeRectangles: " + errors + " errors");
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *  - José Luis Risco Martín
+ */
+package eco.lib.test.floorplan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import eco.core.problem.Solution;
+import eco.core.util.random.RandomGenerator;
+import eco.lib.examples.floorplan.Component;
+import eco.lib.examples.floorplan.FloorplanConfiguration;
+import eco.lib.examples.floorplan.PostfixVariable;
+import eco.lib.examples.floorplan.SlicingEvaluator;
+
+/**
+ * Checks that SlicingEvaluator does not depend on its previous evaluations.
+ * A random Polish expression is mutated, every other mutation is undone, and
+ * after each step the placement of an evaluator that is reused along the run
+ * (so it keeps its arrays and its curve pool) is compared with the one of a
+ * new evaluator.
+ *
+ * @author José Luis Risco Martín
+ */
+public class SlicingEvaluatorCheck {
+
+    private static final Logger logger = Logger.getLogger(SlicingEvaluatorCheck.class.getName());
+
+    protected FloorplanConfiguration cfg;
+    protected int numMoves;
+    protected Random rnd;
+
+    public SlicingEvaluatorCheck(FloorplanConfiguration cfg, int numMoves, long seed) {
+        this.cfg = cfg;
+        this.numMoves = numMoves;
+        this.rnd = new Random(seed);
+    }
+
+    /**
+     * @param rotateBlocks Orientation chosen by the evaluator
+     * @return Number of mismatches
+     */
+    public int check(boolean rotateBlocks) {
+        RandomGenerator.setSeed(rnd.nextLong());
+        ArrayList<Component> components = new ArrayList<Component>(cfg.getComponents().values());
+        Collections.shuffle(components, rnd);
+        Solution<PostfixVariable> solution = new Solution<PostfixVariable>(3);
+        for (int j = 0; j < components.size(); ++j) {
+            solution.getVariables().add(new PostfixVariable(components.get(j).clone(), j));
+        }
+        SlicingEvaluator evaluator = new SlicingEvaluator(cfg);
+        evaluator.setRotateBlocks(rotateBlocks);
+        PostfixVariable.PostfixMutation mutation = new PostfixVariable.PostfixMutation(2.0 / components.size(), !rotateBlocks);
+        int errors = check(evaluator, solution, rotateBlocks, 0);
+        for (int i = 0; i < numMoves; ++i) {
+            ArrayList<PostfixVariable> before = new ArrayList<PostfixVariable>();
+            for (PostfixVariable variable : solution.getVariables()) {
+                before.add(variable.clone());
+            }
+            mutation.execute(solution);
+            errors += check(evaluator, solution, rotateBlocks, i);
+            if (i % 2 == 0) {
+                solution.getVariables().clear();
+                solution.getVariables().addAll(before);
+                errors += check(evaluator, solution, rotateBlocks, i);
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Evaluates the solution with the given evaluator and with a new one.
+     * Operators missing in the expression are drawn at random, so both
+     * evaluations start with the same seed.
+     */
+    protected int check(SlicingEvaluator evaluator, Solution<PostfixVariable> solution, boolean rotateBlocks, int move) {
+        long seed = rnd.nextLong();
+        RandomGenerator.setSeed(seed);
+        evaluator.evaluate(solution);
+        int[][] placement = placement(solution);
+        SlicingEvaluator fresh = new SlicingEvaluator(cfg);
+        fresh.setRotateBlocks(rotateBlocks);
+        RandomGenerator.setSeed(seed);
+        fresh.evaluate(solution);
+        int[][] freshPlacement = placement(solution);
+        int errors = 0;
+        for (int j = 0; j < placement.length; ++j) {
+            if (!Arrays.equals(placement[j], freshPlacement[j])) {
+                errors++;
+            }
+        }
+        if (evaluator.getLength() != fresh.getLength() || evaluator.getWidth() != fresh.getWidth() || evaluator.getNumLayers() != fresh.getNumLayers()) {
+            errors++;
+        }
+        if (errors > 0) {
+            logger.severe("Move " + move + " (rotateBlocks=" + rotateBlocks + "): " + errors + " differences with a new evaluator");
+        }
+        return errors;
+    }
+
+    protected static int[][] placement(Solution<PostfixVariable> solution) {
+        int[][] placement = new int[solution.getVariables().size()][];
+        for (int j = 0; j < placement.length; ++j) {
+            Component c = solution.getVariables().get(j).getValue();
+            placement[j] = new int[]{c.getId(), c.getX(), c.getY(), c.getZ(), c.getL(), c.getW()};
+        }
+        return placement;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Parameters: XmlFilePath [NumMoves]");
+            return;
+        }
+        int numMoves = (args.length > 1) ? Integer.valueOf(args[1]) : 1000;
+        SlicingEvaluatorCheck check = new SlicingEvaluatorCheck(new FloorplanConfiguration(args[0]), numMoves, 1);
+        System.out.println("Fixed orientation: " + check.check(false) + " errors");
+        System.out.println("Rotated blocks: " + check.check(true) + " errors");
+    }
+}
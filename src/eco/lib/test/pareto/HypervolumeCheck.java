@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *  - José Luis Risco Martín
+ */
+package eco.lib.test.pareto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+import eco.core.problem.Solution;
+import eco.lib.examples.floorplan.BitVariable;
+import eco.lib.examples.floorplan.util.Hypervolume;
+import eco.lib.examples.floorplan.util.ParetoArchive;
+
+/**
+ * Checks Hypervolume against a brute force computation on a grid. The
+ * coordinates of the points and of the reference point split the space into
+ * cells, and the volume of the cells whose lower corner is dominated by some
+ * point is added up. Points have small integer objectives, so there are ties,
+ * duplicates and points beyond the reference point. The 2D sweep, the 3D
+ * dimension sweep and HSO are checked through Hypervolume.compute, and the
+ * incremental area of the 2D staircase and the archive of ParetoArchive are
+ * checked after every insertion.
+ *
+ * @author José Luis Risco Martín
+ */
+public class HypervolumeCheck {
+
+    private static final Logger logger = Logger.getLogger(HypervolumeCheck.class.getName());
+
+    protected Random rnd;
+
+    public HypervolumeCheck(long seed) {
+        this.rnd = new Random(seed);
+    }
+
+    /**
+     * Random points with integer objectives in [0, 10].
+     *
+     * @param size Number of points
+     * @param no Number of objectives
+     * @return The points
+     */
+    public ArrayList<double[]> generate(int size, int no) {
+        ArrayList<double[]> points = new ArrayList<>();
+        for (int i = 0; i < size; ++i) {
+            double[] point = new double[no];
+            for (int j = 0; j < no; ++j) {
+                point[j] = rnd.nextInt(11);
+            }
+            points.add(point);
+        }
+        return points;
+    }
+
+    /**
+     * Brute force hypervolume.
+     *
+     * @param points Points
+     * @param ref Reference point
+     * @return The volume of the dominated cells
+     */
+    public static double bruteForce(List<double[]> points, double[] ref) {
+        int no = ref.length;
+        double[][] coords = new double[no][];
+        for (int j = 0; j < no; ++j) {
+            TreeSet<Double> values = new TreeSet<>();
+            values.add(ref[j]);
+            for (double[] point : points) {
+                values.add(Math.min(point[j], ref[j]));
+            }
+            coords[j] = new double[values.size()];
+            int k = 0;
+            for (double value : values) {
+                coords[j][k++] = value;
+            }
+            if (coords[j].length == 1) {
+                // No point below the reference in this objective:
+                return 0.0;
+            }
+        }
+        // Index of the lower corner of the current cell, in every dimension:
+        int[] cell = new int[no];
+        double volume = 0.0;
+        while (true) {
+            boolean dominated = false;
+            for (int p = 0; !dominated && p < points.size(); ++p) {
+                dominated = true;
+                for (int j = 0; dominated && j < no; ++j) {
+                    dominated = points.get(p)[j] <= coords[j][cell[j]];
+                }
+            }
+            if (dominated) {
+                double cellVolume = 1.0;
+                for (int j = 0; j < no; ++j) {
+                    cellVolume *= coords[j][cell[j] + 1] - coords[j][cell[j]];
+                }
+                volume += cellVolume;
+            }
+            int j = 0;
+            while (j < no && ++cell[j] == coords[j].length - 1) {
+                cell[j++] = 0;
+            }
+            if (j == no) {
+                return volume;
+            }
+        }
+    }
+
+    /**
+     * Compares Hypervolume.compute with the brute force.
+     *
+     * @param size Number of points
+     * @param no Number of objectives
+     * @return Number of mismatches
+     */
+    public int checkCompute(int size, int no) {
+        ArrayList<double[]> points = generate(size, no);
+        double[] ref = new double[no];
+        for (int j = 0; j < no; ++j) {
+            ref[j] = 6 + rnd.nextInt(6);
+        }
+        double expected = bruteForce(points, ref);
+        double actual = Hypervolume.compute(points, ref);
+        if (Math.abs(actual - expected) > 1e-9 * Math.max(1.0, expected)) {
+            logger.severe(no + " objectives, " + size + " points, reference " + Arrays.toString(ref) + ": " + actual + " instead of " + expected);
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Inserts random points in a staircase and in an archive, comparing the
+     * hypervolume with the brute force after every insertion.
+     *
+     * @param size Number of points
+     * @param no Number of objectives of the archive
+     * @return Number of mismatches
+     */
+    public int checkIncremental(int size, int no) {
+        int errors = 0;
+        ArrayList<double[]> points = generate(size, no);
+        double[] ref = new double[no];
+        for (int j = 0; j < no; ++j) {
+            ref[j] = 6 + rnd.nextInt(6);
+        }
+        Hypervolume.Staircase<double[]> staircase = new Hypervolume.Staircase<>(ref[0], ref[1]);
+        ParetoArchive<BitVariable> archive = new ParetoArchive<>(no, ref);
+        ArrayList<double[]> inserted = new ArrayList<>();
+        ArrayList<double[]> projected = new ArrayList<>();
+        for (double[] point : points) {
+            inserted.add(point);
+            projected.add(new double[]{point[0], point[1]});
+            staircase.add(point[0], point[1], point);
+            Solution<BitVariable> solution = new Solution<BitVariable>(no);
+            for (int j = 0; j < no; ++j) {
+                solution.getObjectives().set(j, point[j]);
+            }
+            archive.add(solution);
+            double expected = bruteForce(projected, new double[]{ref[0], ref[1]});
+            if (Math.abs(staircase.getArea() - expected) > 1e-9 * Math.max(1.0, expected)) {
+                logger.severe("Staircase after " + inserted.size() + " points: " + staircase.getArea() + " instead of " + expected);
+                errors++;
+            }
+            expected = bruteForce(inserted, ref);
+            if (Math.abs(archive.getHypervolume() - expected) > 1e-9 * Math.max(1.0, expected)) {
+                logger.severe("Archive of " + no + " objectives after " + inserted.size() + " points: " + archive.getHypervolume() + " instead of " + expected);
+                errors++;
+            }
+        }
+        return errors;
+    }
+
+    public static void main(String[] args) {
+        int numTests = (args.length > 0) ? Integer.valueOf(args[0]) : 100;
+        HypervolumeCheck check = new HypervolumeCheck(1);
+        for (int no = 2; no <= 5; ++no) {
+            int errors = 0;
+            for (int i = 0; i < numTests; ++i) {
+                errors += check.checkCompute(1 + i % 12, no);
+                errors += check.checkIncremental(1 + i % 12, no);
+            }
+            System.out.println(no + " objectives: " + errors + " errors");
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *  - José Luis Risco Martín
+ */
+package eco.lib.test.pareto;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import eco.lib.examples.floorplan.util.NonDominatedSort;
+
+/**
+ * Compares the efficient non-dominated sorting against Deb's fast
+ * non-dominated sort, checking that both produce the same fronts.
+ *
+ * @author José Luis Risco Martín
+ */
+public class NonDominatedSortBenchmark {
+
+    private static final Logger logger = Logger.getLogger(NonDominatedSortBenchmark.class.getName());
+
+    protected int numTests;
+    protected Random rnd;
+
+    public NonDominatedSortBenchmark(int numTests, long seed) {
+        this.numTests = numTests;
+        this.rnd = new Random(seed);
+    }
+
+    /**
+     * Random population. Objectives are rounded to produce ties and
+     * duplicates, as in the floorplan problems.
+     *
+     * @param size Population size
+     * @param no Number of objectives
+     * @return The objectives of the population
+     */
+    public double[][] generate(int size, int no) {
+        double[][] points = new double[size][no];
+        for (int i = 0; i < size; ++i) {
+            for (int j = 0; j < no; ++j) {
+                points[i][j] = Math.round(100 * rnd.nextDouble());
+            }
+        }
+        return points;
+    }
+
+    public void run() {
+        System.out.println("Objectives;Size;NaiveMillis;EnsMillis;Speedup");
+        for (int no = 2; no <= 4; no++) {
+            for (int size = 500; size <= 8000; size *= 2) {
+                long naiveTime = 0, ensTime = 0;
+                for (int nt = 0; nt < numTests; nt++) {
+                    double[][] points = generate(size, no);
+                    long start = System.nanoTime();
+                    int[] naiveRanks = NonDominatedSort.rankNaive(points);
+                    naiveTime += System.nanoTime() - start;
+                    start = System.nanoTime();
+                    int[] ranks = NonDominatedSort.rank(points);
+                    ensTime += System.nanoTime() - start;
+                    if (!Arrays.equals(naiveRanks, ranks)) {
+                        logger.severe("Different ranks with " + no + " objectives and " + size + " solutions");
+                        return;
+                    }
+                }
+                double naiveMillis = naiveTime / 1e6 / numTests;
+                double ensMillis = ensTime / 1e6 / numTests;
+                System.out.println(no + ";" + size + ";" + naiveMillis + ";" + ensMillis + ";" + (naiveMillis / ensMillis));
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        int numTests = (args.length > 0) ? Integer.valueOf(args[0]) : 10;
+        NonDominatedSortBenchmark benchmark = new NonDominatedSortBenchmark(numTests, 1);
+        benchmark.run();
+    }
+}
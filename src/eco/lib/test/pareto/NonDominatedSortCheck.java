@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *  - José Luis Risco Martín
+ */
+package eco.lib.test.pareto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import eco.core.problem.Solution;
+import eco.core.problem.Solutions;
+import eco.lib.examples.floorplan.BitVariable;
+import eco.lib.examples.floorplan.util.NonDominatedSort;
+
+/**
+ * Checks the efficient non-dominated sort on small populations, where the
+ * benchmark does not go. The ranks of NonDominatedSort.rank are compared with
+ * the ones of the naive O(MN^2) sort and with the definition of the rank: a
+ * point of rank 0 is not dominated, and a point of rank k is dominated by a
+ * point of rank k-1 and by none of rank k or greater. Objectives are drawn
+ * from a few values to get ties and duplicates, and also from the whole unit
+ * interval. The fronts of NonDominatedSort.sort must hold every solution once,
+ * in the front of its rank.
+ *
+ * @author José Luis Risco Martín
+ */
+public class NonDominatedSortCheck {
+
+    private static final Logger logger = Logger.getLogger(NonDominatedSortCheck.class.getName());
+
+    protected Random rnd;
+
+    public NonDominatedSortCheck(long seed) {
+        this.rnd = new Random(seed);
+    }
+
+    /**
+     * Random population.
+     *
+     * @param size Population size
+     * @param no Number of objectives
+     * @param numValues Number of different values of every objective, 0 for
+     * any value in [0, 1)
+     * @return The objectives of the population
+     */
+    public double[][] generate(int size, int no, int numValues) {
+        double[][] points = new double[size][no];
+        for (int i = 0; i < size; ++i) {
+            for (int j = 0; j < no; ++j) {
+                points[i][j] = (numValues > 0) ? rnd.nextInt(numValues) : rnd.nextDouble();
+            }
+        }
+        return points;
+    }
+
+    /**
+     * @param size Population size
+     * @param no Number of objectives
+     * @param numValues Number of different values of every objective
+     * @return Number of mismatches
+     */
+    public int check(int size, int no, int numValues) {
+        double[][] points = generate(size, no, numValues);
+        int[] ranks = NonDominatedSort.rank(points);
+        int[] naiveRanks = NonDominatedSort.rankNaive(points);
+        int errors = 0;
+        if (!Arrays.equals(ranks, naiveRanks)) {
+            logger.severe(no + " objectives, " + size + " points, " + numValues + " values: ranks " + Arrays.toString(ranks) + " instead of " + Arrays.toString(naiveRanks));
+            errors++;
+        }
+        for (int i = 0; i < size; ++i) {
+            boolean previous = false, same = false;
+            for (int j = 0; j < size; ++j) {
+                if (NonDominatedSort.dominates(points[j], points[i])) {
+                    previous |= ranks[j] == ranks[i] - 1;
+                    same |= ranks[j] >= ranks[i];
+                }
+            }
+            if (same || (ranks[i] > 0 && !previous)) {
+                logger.severe(no + " objectives, " + size + " points: rank " + ranks[i] + " of " + Arrays.toString(points[i]) + " is wrong");
+                errors++;
+            }
+        }
+        return errors + checkSort(points, ranks);
+    }
+
+    protected int checkSort(double[][] points, int[] ranks) {
+        Solutions<BitVariable> solutions = new Solutions<BitVariable>();
+        IdentityHashMap<Solution<BitVariable>, Integer> indices = new IdentityHashMap<>();
+        for (int i = 0; i < points.length; ++i) {
+            Solution<BitVariable> solution = new Solution<BitVariable>(points[i].length);
+            for (int j = 0; j < points[i].length; ++j) {
+                solution.getObjectives().set(j, points[i][j]);
+            }
+            solutions.add(solution);
+            indices.put(solution, i);
+        }
+        ArrayList<Solutions<BitVariable>> fronts = NonDominatedSort.sort(solutions);
+        int errors = 0, count = 0;
+        for (int f = 0; f < fronts.size(); ++f) {
+            if (fronts.get(f).isEmpty()) {
+                logger.severe("Front " + f + " is empty");
+                errors++;
+            }
+            for (Solution<BitVariable> solution : fronts.get(f)) {
+                Integer i = indices.remove(solution);
+                if (i == null || ranks[i] != f) {
+                    errors++;
+                }
+                count++;
+            }
+        }
+        if (count != points.length || !indices.isEmpty()) {
+            logger.severe("The fronts hold " + count + " solutions instead of " + points.length);
+            errors++;
+        }
+        return errors;
+    }
+
+    public static void main(String[] args) {
+        int numTests = (args.length > 0) ? Integer.valueOf(args[0]) : 100;
+        NonDominatedSortCheck check = new NonDominatedSortCheck(1);
+        for (int no = 2; no <= 5; ++no) {
+            int errors = 0;
+            for (int i = 0; i < numTests; ++i) {
+                for (int numValues : new int[]{2, 4, 10, 0}) {
+                    errors += check.check(i % 50, no, numValues);
+                }
+            }
+            System.out.println(no + " objectives: " + errors + " errors");
+        }
+    }
+}
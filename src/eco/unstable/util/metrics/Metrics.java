@@ -0,0 +1,413 @@
+/*
+ * Copyright (C) 2010-2016 José Luis Risco Martín <jlrisco@ucm.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *  - José Luis Risco Martín
+ */
+package eco.unstable.util.metrics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lightweight registry of counters, timers and histograms.
+ *
+ * Metrics are disabled by default, and then every update is a single field
+ * check. They are enabled with the system property
+ * <code>-Deco.metrics=file.csv</code> (or <code>file.json</code>), and
+ * exported to that file every <code>eco.metrics.period</code> seconds (10 by
+ * default) and at shutdown. CSV snapshots are appended as rows; JSON
+ * snapshots are appended as one object per line.
+ *
+ * Typical usage:
+ * <pre>
+ * private static final Metrics.Timer PLACE = Metrics.timer("floorplan.place");
+ * ...
+ * long start = Metrics.start();
+ * ...
+ * PLACE.stop(start);
+ * </pre>
+ *
+ * @author jlrisco
+ */
+public class Metrics {
+
+    private static final Logger logger = Logger.getLogger(Metrics.class.getName());
+
+    public static boolean enabled = false;
+
+    private static final ConcurrentSkipListMap<String, Metric> metrics = new ConcurrentSkipListMap<>();
+    private static ScheduledExecutorService exporter = null;
+    private static String exportFilePath = null;
+
+    /**
+     * Global number of objective function evaluations, used to compute the
+     * evaluation rate of every generation.
+     */
+    public static final Counter EVALUATIONS = counter("evaluations");
+
+    private static final Counter GENERATIONS = counter("generations");
+    private static final Histogram GENERATION_MILLIS = histogram("generation.millis");
+    private static final Histogram GENERATION_EVALS_PER_SECOND = histogram("generation.evalsPerSecond");
+    private static final Histogram GENERATION_ALLOCATED_KB = histogram("generation.allocatedKB");
+    private static long lastGenerationTime = 0;
+    private static long lastGenerationEvaluations = 0;
+    // Bytes allocated by every live thread at the end of the previous generation:
+    private static HashMap<Long, Long> lastThreadAllocated = new HashMap<>();
+
+    static {
+        String filePath = System.getProperty("eco.metrics");
+        if (filePath != null && !filePath.isEmpty()) {
+            enable(filePath, Long.getLong("eco.metrics.period", 10));
+        }
+    }
+
+    public static abstract class Metric {
+
+        protected final String name;
+
+        protected Metric(String name) {
+            this.name = name;
+        }
+
+        protected abstract String type();
+
+        protected abstract long count();
+
+        protected abstract double sum();
+
+        protected abstract double min();
+
+        protected abstract double max();
+    }
+
+    public static class Counter extends Metric {
+
+        protected final LongAdder value = new LongAdder();
+
+        protected Counter(String name) {
+            super(name);
+        }
+
+        public void inc() {
+            if (enabled) {
+                value.increment();
+            }
+        }
+
+        public void add(long delta) {
+            if (enabled) {
+                value.add(delta);
+            }
+        }
+
+        @Override
+        protected String type() {
+            return "counter";
+        }
+
+        @Override
+        protected long count() {
+            return value.sum();
+        }
+
+        @Override
+        protected double sum() {
+            return value.sum();
+        }
+
+        @Override
+        protected double min() {
+            return Double.NaN;
+        }
+
+        @Override
+        protected double max() {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Histogram with power-of-two buckets of non-negative values.
+     */
+    public static class Histogram extends Metric {
+
+        protected final LongAdder count = new LongAdder();
+        protected final LongAdder sum = new LongAdder();
+        protected final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+        protected final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+        protected final AtomicLongArray buckets = new AtomicLongArray(64);
+
+        protected Histogram(String name) {
+            super(name);
+        }
+
+        public void record(long value) {
+            if (!enabled) {
+                return;
+            }
+            count.increment();
+            sum.add(value);
+            min.accumulateAndGet(value, Math::min);
+            max.accumulateAndGet(value, Math::max);
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(value, 0)) & 63);
+        }
+
+        /**
+         * Approximated percentile (upper bound of the bucket).
+         *
+         * @param p Percentile in [0,1]
+         * @return The value
+         */
+        public long percentile(double p) {
+            long total = count.sum();
+            long target = (long) Math.ceil(p * total);
+            long accum = 0;
+            for (int i = 0; i < 64; ++i) {
+                accum += buckets.get(i);
+                if (accum >= target && accum > 0) {
+                    return (i == 0) ? 0 : (1L << i) - 1;
+                }
+            }
+            return max.get();
+        }
+
+        @Override
+        protected String type() {
+            return "histogram";
+        }
+
+        @Override
+        protected long count() {
+            return count.sum();
+        }
+
+        @Override
+        protected double sum() {
+            return sum.sum();
+        }
+
+        @Override
+        protected double min() {
+            return (count.sum() == 0) ? Double.NaN : min.get();
+        }
+
+        @Override
+        protected double max() {
+            return (count.sum() == 0) ? Double.NaN : max.get();
+        }
+    }
+
+    /**
+     * Histogram of elapsed times in nanoseconds.
+     */
+    public static class Timer extends Histogram {
+
+        protected Timer(String name) {
+            super(name);
+        }
+
+        public void stop(long start) {
+            if (enabled) {
+                record(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        protected String type() {
+            return "timer";
+        }
+    }
+
+    public static Counter counter(String name) {
+        return (Counter) metrics.computeIfAbsent(name, Counter::new);
+    }
+
+    public static Histogram histogram(String name) {
+        return (Histogram) metrics.computeIfAbsent(name, Histogram::new);
+    }
+
+    public static Timer timer(String name) {
+        return (Timer) metrics.computeIfAbsent(name, Timer::new);
+    }
+
+    /**
+     * Starting time for a timer.
+     *
+     * @return System.nanoTime() if metrics are enabled, 0 otherwise
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Marks the end of a generation, recording its duration, the evaluation
+     * rate and the bytes allocated by the JVM threads since the previous
+     * call.
+     *
+     * The allocation is tracked thread by thread: every live thread
+     * contributes what it has allocated since its previous sample, or since
+     * it started if it is new. A thread that ends between two calls takes
+     * its last allocations with it, so the value may fall short, but it is
+     * never negative.
+     */
+    public static synchronized void endGeneration() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        long evaluations = EVALUATIONS.count();
+        HashMap<Long, Long> threadAllocated = threadAllocatedBytes();
+        if (lastGenerationTime > 0) {
+            long elapsed = now - lastGenerationTime;
+            GENERATION_MILLIS.record(elapsed / 1000000);
+            if (elapsed > 0) {
+                GENERATION_EVALS_PER_SECOND.record((long) ((evaluations - lastGenerationEvaluations) * 1e9 / elapsed));
+            }
+            if (threadAllocated != null) {
+                long allocated = 0;
+                for (Map.Entry<Long, Long> entry : threadAllocated.entrySet()) {
+                    Long last = lastThreadAllocated.get(entry.getKey());
+                    allocated += (last == null || last > entry.getValue()) ? entry.getValue() : entry.getValue() - last;
+                }
+                GENERATION_ALLOCATED_KB.record(allocated / 1024);
+            }
+        }
+        GENERATIONS.inc();
+        lastGenerationTime = now;
+        lastGenerationEvaluations = evaluations;
+        if (threadAllocated != null) {
+            lastThreadAllocated = threadAllocated;
+        }
+    }
+
+    /**
+     * @return Bytes allocated by every live thread, by thread id, or null if
+     * the JVM does not measure them
+     */
+    private static HashMap<Long, Long> threadAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        long[] ids = bean.getAllThreadIds();
+        long[] bytes = sunBean.getThreadAllocatedBytes(ids);
+        HashMap<Long, Long> threadAllocated = new HashMap<>();
+        for (int i = 0; i < ids.length; ++i) {
+            // -1 for threads that ended or when the measure is disabled:
+            if (bytes[i] >= 0) {
+                threadAllocated.put(ids[i], bytes[i]);
+            }
+        }
+        return threadAllocated;
+    }
+
+    /**
+     * Enables the metrics and exports them periodically.
+     *
+     * @param filePath Output file, JSON if it ends with .json, CSV otherwise
+     * @param periodSeconds Export period in seconds
+     */
+    public static synchronized void enable(String filePath, long periodSeconds) {
+        enabled = true;
+        exportFilePath = filePath;
+        if (exporter != null) {
+            exporter.shutdownNow();
+        }
+        exporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "eco-metrics");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        exporter.scheduleAtFixedRate(Metrics::export, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(Metrics::export));
+    }
+
+    public static synchronized void export() {
+        if (exportFilePath == null) {
+            return;
+        }
+        boolean json = exportFilePath.endsWith(".json");
+        long timestamp = System.currentTimeMillis();
+        boolean newFile = !new File(exportFilePath).exists();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(exportFilePath, true))) {
+            if (!json && newFile) {
+                writer.write("Timestamp;Name;Type;Count;Sum;Min;Max;P50;P99");
+                writer.newLine();
+            }
+            if (json) {
+                StringBuilder line = new StringBuilder();
+                line.append("{\"timestamp\":").append(timestamp).append(",\"metrics\":{");
+                boolean first = true;
+                for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+                    Metric metric = entry.getValue();
+                    line.append(first ? "" : ",");
+                    line.append("\"").append(metric.name).append("\":{\"type\":\"").append(metric.type()).append("\",\"count\":").append(metric.count());
+                    line.append(",\"sum\":").append(jsonNumber(metric.sum()));
+                    line.append(",\"min\":").append(jsonNumber(metric.min()));
+                    line.append(",\"max\":").append(jsonNumber(metric.max()));
+                    if (metric instanceof Histogram) {
+                        Histogram histogram = (Histogram) metric;
+                        line.append(",\"p50\":").append(histogram.percentile(0.5));
+                        line.append(",\"p99\":").append(histogram.percentile(0.99));
+                    }
+                    line.append("}");
+                    first = false;
+                }
+                line.append("}}");
+                writer.write(line.toString());
+                writer.newLine();
+            } else {
+                for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+                    Metric metric = entry.getValue();
+                    String p50 = "", p99 = "";
+                    if (metric instanceof Histogram) {
+                        p50 = String.valueOf(((Histogram) metric).percentile(0.5));
+                        p99 = String.valueOf(((Histogram) metric).percentile(0.99));
+                    }
+                    writer.write(timestamp + ";" + metric.name + ";" + metric.type() + ";" + metric.count() + ";" + metric.sum() + ";" + metric.min() + ";" + metric.max() + ";" + p50 + ";" + p99);
+                    writer.newLine();
+                }
+            }
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, null, ex);
+        }
+    }
+
+    private static String jsonNumber(double value) {
+        return (Double.isNaN(value) || Double.isInfinite(value)) ? "null" : String.valueOf(value);
+    }
+}